@@ -0,0 +1,126 @@
+package com.bank;
+
+import com.bank.model.Account;
+import com.bank.model.Card;
+import com.bank.repository.AccountRepository;
+import com.bank.repository.BloomFilterCardRepository;
+import com.bank.repository.CardRepository;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.repository.InMemoryCardRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.account.WithdrawalLimits;
+import com.bank.service.auth.AuthenticationRateLimiter;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.auth.PinVerificationPool;
+import com.bank.service.auth.SessionStore;
+import com.bank.service.auth.TerminalRegistry;
+import com.bank.service.ledger.Ledger;
+import com.bank.service.transaction.IdempotencyCache;
+import com.bank.util.BloomFilter;
+
+/**
+ * Samlar de repositories och services som bankomatsessioner delar på.
+ *
+ * Alla delar är trådsäkra, så samma BankSystem kan användas både av en
+ * enskild konsolsession och av en server med många samtidiga terminaler.
+ */
+public class BankSystem {
+    // Terminaler som testdatan känner till
+    private static final String[] TEST_TERMINAL_IDS = {"terminal-1", "terminal-2", "backoffice-1"};
+
+    private final AccountService accountService;
+    private final AuthenticationService authService;
+    private final TerminalRegistry terminals;
+
+    /**
+     * Skapar ett BankSystem av färdiga services, utan registrerade terminaler.
+     *
+     * @param accountService Service för konton
+     * @param authService Service för autentisering
+     */
+    public BankSystem(AccountService accountService, AuthenticationService authService) {
+        this(accountService, authService, new TerminalRegistry());
+    }
+
+    /**
+     * Skapar ett BankSystem av färdiga services.
+     *
+     * @param accountService Service för konton
+     * @param authService Service för autentisering
+     * @param terminals Terminalerna som får logga in med eget id
+     */
+    public BankSystem(AccountService accountService, AuthenticationService authService, TerminalRegistry terminals) {
+        this.accountService = accountService;
+        this.authService = authService;
+        this.terminals = terminals;
+    }
+
+    /**
+     * Skapar ett BankSystem med minnesbaserade repositories och testdata
+     * för utvecklings- och demonstrationssyfte.
+     *
+     * @return Ett nytt BankSystem med testkort och testkonton
+     */
+    public static BankSystem withTestData() {
+        // Initiera repositories
+        AccountRepository accountRepository = new InMemoryAccountRepository();
+        // Okända kortnummer avvisas av ett Bloomfilter innan repositoryt anropas
+        CardRepository cardRepository = new BloomFilterCardRepository(
+                new InMemoryCardRepository(), BloomFilter.create(10_000, 0.01));
+
+        // Skapa testkonton och kort
+        setupTestData(accountRepository, cardRepository);
+
+        // Alla saldoändringar sparas även i en huvudbok, och uttag begränsas per timme och dygn
+        AccountService accountService = new AccountService(accountRepository, new IdempotencyCache(), new Ledger(),
+                new WithdrawalLimits());
+        // PIN-koder hashas på en begränsad pool i stället för på sessionernas trådar,
+        // och inloggningsförsök begränsas per terminal och kort
+        AuthenticationService authService = new AuthenticationService(cardRepository, new PinVerificationPool(),
+                new SessionStore(), new AuthenticationRateLimiter());
+        TerminalRegistry terminals = new TerminalRegistry();
+        for (String terminalId : TEST_TERMINAL_IDS) {
+            terminals.register(terminalId);
+        }
+        return new BankSystem(accountService, authService, terminals);
+    }
+
+    public AccountService getAccountService() {
+        return accountService;
+    }
+
+    public AuthenticationService getAuthService() {
+        return authService;
+    }
+
+    public TerminalRegistry getTerminals() {
+        return terminals;
+    }
+
+    /**
+     * Initierar testkort och testkonton och kopplar dem till varandra.
+     *
+     * @param accountRepository Repository för kontohantering
+     * @param cardRepository Repository för korthantering
+     */
+    private static void setupTestData(AccountRepository accountRepository, CardRepository cardRepository) {
+        // Skapa testkort
+        Card card1 = Card.withHashedPin("123456789012", "12/25", "1234");
+        Card card2 = Card.withHashedPin("098765432109", "06/26", "4321");
+        cardRepository.saveCard(card1);
+        cardRepository.saveCard(card2);
+
+        // Skapa testkonton
+        Account account1 = new Account("1001", "Lönekonto", 500.0);
+        Account account2 = new Account("1002", "Sparkonto", 1200.0);
+        Account account3 = new Account("2001", "Resekonto", 3000.0);
+        accountRepository.saveAccount(account1);
+        accountRepository.saveAccount(account2);
+        accountRepository.saveAccount(account3);
+
+        // Koppla konton till kort
+        accountRepository.linkAccountToCard("1001", "123456789012");
+        accountRepository.linkAccountToCard("1002", "123456789012");
+        accountRepository.linkAccountToCard("2001", "098765432109");
+    }
+}
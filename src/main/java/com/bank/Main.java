@@ -1,13 +1,51 @@
 package com.bank;
 
+import com.bank.server.AtmServer;
+import com.bank.server.BinaryAtmServer;
+import com.bank.server.http.HttpApiServer;
 import com.bank.ui.ConsoleMenu;
+import com.bank.util.BankConstants;
+
+import java.io.IOException;
+import java.time.Duration;
 
 public class Main {
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
         System.out.println("Startar bankomatsystemet...");
 
+        // Med "--server [port] [max sessioner]" betjänas många terminaler över nätverket
+        if (args.length > 0 && args[0].equals("--server")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : BankConstants.DEFAULT_SERVER_PORT;
+            int maxSessions = args.length > 2 ? Integer.parseInt(args[2]) : BankConstants.MAX_CONCURRENT_SESSIONS;
+            AtmServer server = new AtmServer(BankSystem.withTestData(), port, maxSessions,
+                    Duration.ofSeconds(BankConstants.SESSION_IDLE_TIMEOUT_SECONDS));
+            System.out.println("Servern lyssnar på port " + server.getPort());
+            Thread.currentThread().join();
+            return;
+        }
+
+        // Med "--binary [port] [max anslutningar]" betjänas terminaler som använder det binära protokollet
+        if (args.length > 0 && args[0].equals("--binary")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : BankConstants.DEFAULT_BINARY_SERVER_PORT;
+            int maxConnections = args.length > 2 ? Integer.parseInt(args[2]) : BankConstants.MAX_CONCURRENT_SESSIONS;
+            BinaryAtmServer server = new BinaryAtmServer(BankSystem.withTestData(), port, maxConnections,
+                    Duration.ofSeconds(BankConstants.SESSION_IDLE_TIMEOUT_SECONDS));
+            System.out.println("Binära servern lyssnar på port " + server.getPort());
+            Thread.currentThread().join();
+            return;
+        }
+
+        // Med "--http [port]" startas JSON-API:t för backoffice-verktyg
+        if (args.length > 0 && args[0].equals("--http")) {
+            int port = args.length > 1 ? Integer.parseInt(args[1]) : BankConstants.DEFAULT_HTTP_PORT;
+            HttpApiServer server = new HttpApiServer(BankSystem.withTestData(), port);
+            System.out.println("HTTP-API:t lyssnar på port " + server.getPort());
+            Thread.currentThread().join();
+            return;
+        }
+
         // Skapa och starta konsolgränssnittet
         ConsoleMenu menu = new ConsoleMenu();
         menu.start();
     }
-}
\ No newline at end of file
+}
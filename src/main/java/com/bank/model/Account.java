@@ -1,9 +1,6 @@
 package com.bank.model;
 
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.text.NumberFormat;
-import java.util.Locale;
+import com.bank.util.MoneyFormatter;
 
 /**
  * Representerar ett bankkonto med nummer, namn och saldo.
@@ -12,7 +9,7 @@ import java.util.Locale;
 public class Account {
     private final String accountNumber;
     private final String accountName;
-    private final double balance;
+    private final long balanceInOre;
 
 /**
     * accountNumber och accountName till final-fält eftersom dessa värden inte
@@ -24,12 +21,21 @@ public class Account {
      *
      * @param accountNumber Kontots unika nummer
      * @param accountName Kontots namn/beskrivning
-     * @param balance Kontots startbalans
+     * @param balance Kontots startbalans i kronor
      * @throws IllegalArgumentException om någon parameter är ogiltig
      */
 
 
     public Account(String accountNumber, String accountName, double balance) {
+        this(accountNumber, accountName, Money.ofKronor(balance));
+    }
+
+    /**
+     * Privat konstruktor som tar saldot i ören.
+     * Den är privat så att ett heltal utanför klassen aldrig av misstag
+     * tolkas som ören i stället för kronor; använd withBalanceInOre.
+     */
+    private Account(String accountNumber, String accountName, long balanceInOre) {
         // Validera kontonummer
         if (accountNumber == null || accountNumber.trim().isEmpty()) {
             throw new IllegalArgumentException("Account number cannot be empty");
@@ -41,13 +47,27 @@ public class Account {
         }
 
         // Validera saldo
-        if (balance < 0) {
+        if (balanceInOre < 0) {
             throw new IllegalArgumentException("Balance cannot be negative");
         }
 
         this.accountNumber = accountNumber;
         this.accountName = accountName;
-        this.balance = balance;
+        this.balanceInOre = balanceInOre;
+    }
+
+    /**
+     * Skapar ett konto med saldot angivet i ören.
+     * Används av repository och service där beloppen redan är heltal.
+     *
+     * @param accountNumber Kontots unika nummer
+     * @param accountName Kontots namn/beskrivning
+     * @param balanceInOre Kontots saldo i ören
+     * @return Det nya kontot
+     * @throws IllegalArgumentException om någon parameter är ogiltig
+     */
+    public static Account withBalanceInOre(String accountNumber, String accountName, long balanceInOre) {
+        return new Account(accountNumber, accountName, balanceInOre);
     }
 
     /**
@@ -67,27 +87,27 @@ public class Account {
     }
 
     /**
-     * Hämtar kontots saldo.
+     * Hämtar kontots saldo i kronor.
      * @return kontots saldo
      */
     public double getBalance() {
-        return balance;
+        return Money.toKronor(balanceInOre);
+    }
+
+    /**
+     * Hämtar kontots saldo i ören.
+     * @return kontots saldo i ören
+     */
+    public long getBalanceInOre() {
+        return balanceInOre;
     }
 
     /**
      * Hämtar kontots saldo formaterat med valutasymbol.
+     * Tusentalsavgränsare läggs till för alla tusental, t.ex. "1 234 567,89 kr".
      * @return formaterat saldo med valutasymbol
      */
     public String getFormattedBalance() {
-        // Explicit formatering utan att förlita sig på lokala formatmallar
-        String formatted = String.format("%.2f", balance)
-                .replace(".", ",");
-
-        // Lägg till tusentalsavgränsare manuellt
-        if (balance >= 1000) {
-            formatted = formatted.substring(0, formatted.length() - 6) + " " + formatted.substring(formatted.length() - 6);
-        }
-
-        return formatted + " kr";
+        return MoneyFormatter.format(balanceInOre);
     }
 }
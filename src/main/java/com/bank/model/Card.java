@@ -1,30 +1,71 @@
 package com.bank.model;
 
 import com.bank.util.BankConstants;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
 /*
 * Representerar ett bankkort med information och funktionalitet.
 * Ansvarar för verifiering av PIN-kod och hantering av felaktiga inloggningsförsök.
 * */
 
 public class Card implements PinVerifier{
+    // Säkerhetstillståndet packas i ett ord: antal felaktiga försök i de låga
+    // bitarna och blockeringen i en egen bit, så båda ändras med en enda CAS
+    private static final int BLOCKED = 1 << 30;
+    private static final int ATTEMPTS_MASK = BLOCKED - 1;
+    private static final VarHandle SECURITY_STATE;
+
+    static {
+        try {
+            SECURITY_STATE = MethodHandles.lookup().findVarHandle(Card.class, "securityState", int.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
     private String cardNumber;
     private String expiryDate;
-    private String pin;
-    private boolean blocked;
-    private int failedAttempts;
+    // Lagrad PIN-uppgift: en kodad HashedPin, eller PIN i klartext för äldre kort
+    private volatile String pin;
+    private volatile int securityState;
 
     public Card(String cardNumber, String expiryDate, String pin) {
+        this(cardNumber, expiryDate, pin, false, 0);
+    }
+
+    /*
+    * Återskapar ett kort med sparat säkerhetstillstånd, t.ex. när ett
+    * beständigt repository läses in vid uppstart.
+    * */
+    public Card(String cardNumber, String expiryDate, String pin, boolean blocked, int failedAttempts) {
+        if (failedAttempts < 0 || failedAttempts > ATTEMPTS_MASK) {
+            throw new IllegalArgumentException("Invalid failed attempt count: " + failedAttempts);
+        }
         this.cardNumber = cardNumber;
         this.expiryDate = expiryDate;
         this.pin = pin;
-        this.blocked = false;
-        this.failedAttempts = 0;
+        this.securityState = (blocked ? BLOCKED : 0) | failedAttempts;
+    }
+
+    /*
+    * Skapar ett nytt kort där PIN-koden lagras som en saltad hash.
+    * */
+    public static Card withHashedPin(String cardNumber, String expiryDate, String pin) {
+        return new Card(cardNumber, expiryDate, HashedPin.create(pin).getEncoded());
     }
 
     /*
     * Verifierar om den angivna PIN-koden matchar kortets PIN.
     * Om felaktig PIN anges tre gånger blockeras kortet.
-    * 
+    *
+    * Tillståndet uppdateras med CAS utan lås, så samtidiga försök mot samma
+    * kort från flera terminaler räknas alla och kortet blockeras exakt vid
+    * MAX_FAILED_ATTEMPTS. Ett försök som hinner efter blockeringen nekas.
+    *
     * @param enteredPin PIN-koden som ska verifieras
     * @return true om PIN-koden är korrekt, annars false
     *
@@ -32,20 +73,65 @@ public class Card implements PinVerifier{
 
     @Override
     public boolean verifyPin(String enteredPin) {
-        if (blocked) {
+        if (isBlocked(securityState)) {
             return false;
         }
 
-        boolean isCorrect = this.pin.equals(enteredPin);
-        if (!isCorrect) {
-            failedAttempts++; // vi implementerar blockering senare
-            if (failedAttempts >= BankConstants.MAX_FAILED_ATTEMPTS) {
-                blocked = true;
-            }
-        } else {
-            failedAttempts = 0; // Återställ räknaren vid korrekt PIN
+        return recordPinAttempt(matchesPin(enteredPin));
+    }
+
+    /*
+    * Jämför en PIN-kod med den lagrade utan att ändra kortets tillstånd.
+    * För en hashad PIN är detta det dyra steget; det kan därför köras på en
+    * annan tråd än recordPinAttempt.
+    *
+    * @param enteredPin PIN-koden som ska jämföras
+    * @return true om PIN-koden är korrekt
+    * */
+    public boolean matchesPin(String enteredPin) {
+        if (enteredPin == null) {
+            return false;
         }
-         return isCorrect;
+        String stored = pin;
+        if (HashedPin.isHashed(stored)) {
+            return HashedPin.parse(stored).verifyPin(enteredPin);
+        }
+        // Äldre kort med PIN i klartext jämförs också i konstant tid
+        return MessageDigest.isEqual(stored.getBytes(StandardCharsets.UTF_8),
+                enteredPin.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /*
+    * Räknar ett PIN-försök vars resultat redan är känt från matchesPin.
+    *
+    * @param isCorrect Om PIN-koden var korrekt
+    * @return true om försöket godkändes, false om PIN-koden var fel eller kortet är blockerat
+    * */
+    public boolean recordPinAttempt(boolean isCorrect) {
+        int current;
+        int next;
+        do {
+            current = securityState;
+            if (isBlocked(current)) {
+                return false;
+            }
+            if (isCorrect) {
+                next = 0; // Återställ räknaren vid korrekt PIN
+            } else {
+                int attempts = (current & ATTEMPTS_MASK) + 1;
+                next = attempts >= BankConstants.MAX_FAILED_ATTEMPTS ? BLOCKED | attempts : attempts;
+            }
+        } while (current != next && !SECURITY_STATE.compareAndSet(this, current, next));
+        return isCorrect;
+    }
+
+    /*
+    * Hämtar kortets säkerhetstillstånd som ett ord. Ordet ändras vid varje
+    * felaktigt försök, blockering och återställning, så två läsningar kan
+    * jämföras för att se om tillståndet behöver sparas.
+    * */
+    public int getSecurityState() {
+        return securityState;
     }
 
     public String getCardNumber() {
@@ -57,13 +143,38 @@ public class Card implements PinVerifier{
     public void setExpiryDate(String expiryDate) {
         this.expiryDate = expiryDate;
     }
+    /*
+    * Hämtar den lagrade PIN-uppgiften: en kodad hash, eller PIN-koden i
+    * klartext för kort som ännu inte hashats om.
+    * */
     public String getPin() {
         return pin;
     }
+
+    /*
+    * Avgör om PIN-koden bör hashas om, dvs. om den lagras i klartext eller
+    * med lägre kostnad än den som gäller nu.
+    * */
+    public boolean needsRehash() {
+        String stored = pin;
+        return !HashedPin.isHashed(stored) || HashedPin.parse(stored).getIterations() < BankConstants.PIN_HASH_ITERATIONS;
+    }
+
+    /*
+    * Ersätter den lagrade PIN-uppgiften med en ny hash. Får bara anropas med
+    * en PIN-kod som just verifierats, t.ex. efter en lyckad inloggning.
+    * */
+    public void rehashPin(String verifiedPin) {
+        this.pin = HashedPin.create(verifiedPin).getEncoded();
+    }
     public boolean isBlocked() {
-        return blocked;
+        return isBlocked(securityState);
     }
     public int getFailedAttempts() {
-        return failedAttempts;
+        return securityState & ATTEMPTS_MASK;
+    }
+
+    private static boolean isBlocked(int state) {
+        return (state & BLOCKED) != 0;
     }
 }
@@ -0,0 +1,126 @@
+package com.bank.model;
+
+import com.bank.util.BankConstants;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Base64;
+
+/*
+* En PIN-kod lagrad som en saltad PBKDF2-hash (HMAC-SHA256) i stället för i klartext.
+*
+* Den kodade formen är "pbkdf2-sha256$<iterationer>$<salt>$<hash>" med salt
+* och hash i Base64, så kostnaden följer med hashen och kan höjas senare utan
+* att gamla hashar slutar fungera. Jämförelsen görs i konstant tid.
+*
+* Varje verifiering kostar lika mycket som att skapa hashen; se
+* PinVerificationPool för hur den hålls borta från anropande trådar.
+* */
+public final class HashedPin implements PinVerifier {
+    private static final String PREFIX = "pbkdf2-sha256$";
+    private static final String ALGORITHM = "PBKDF2WithHmacSHA256";
+    private static final int SALT_BYTES = 16;
+    private static final int HASH_BITS = 256;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final int iterations;
+    private final byte[] salt;
+    private final byte[] hash;
+
+    private HashedPin(int iterations, byte[] salt, byte[] hash) {
+        this.iterations = iterations;
+        this.salt = salt;
+        this.hash = hash;
+    }
+
+    /*
+    * Hashar en PIN-kod med ett nytt salt och kostnaden i BankConstants.
+    * */
+    public static HashedPin create(String pin) {
+        return create(pin, BankConstants.PIN_HASH_ITERATIONS);
+    }
+
+    /*
+    * Hashar en PIN-kod med ett nytt salt och en angiven kostnad.
+    *
+    * @param pin PIN-koden i klartext
+    * @param iterations Antal PBKDF2-iterationer
+    * @return den hashade PIN-koden
+    * */
+    public static HashedPin create(String pin, int iterations) {
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Iterations must be positive");
+        }
+        byte[] salt = new byte[SALT_BYTES];
+        RANDOM.nextBytes(salt);
+        return new HashedPin(iterations, salt, derive(pin, salt, iterations));
+    }
+
+    /*
+    * Avgör om en lagrad PIN-uppgift är en hash eller en äldre PIN i klartext.
+    * */
+    public static boolean isHashed(String stored) {
+        return stored != null && stored.startsWith(PREFIX);
+    }
+
+    /*
+    * Läser en kodad hash.
+    *
+    * @param encoded Hashen i den form getEncoded returnerar
+    * @return den hashade PIN-koden
+    * @throws IllegalArgumentException om hashen inte kan läsas
+    * */
+    public static HashedPin parse(String encoded) {
+        if (!isHashed(encoded)) {
+            throw new IllegalArgumentException("Not a hashed PIN");
+        }
+        String[] parts = encoded.substring(PREFIX.length()).split("\\$");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Malformed hashed PIN");
+        }
+        int iterations = Integer.parseInt(parts[0]);
+        if (iterations <= 0) {
+            throw new IllegalArgumentException("Malformed hashed PIN");
+        }
+        Base64.Decoder decoder = Base64.getDecoder();
+        return new HashedPin(iterations, decoder.decode(parts[1]), decoder.decode(parts[2]));
+    }
+
+    @Override
+    public boolean verifyPin(String enteredPin) {
+        if (enteredPin == null) {
+            return false;
+        }
+        return MessageDigest.isEqual(hash, derive(enteredPin, salt, iterations));
+    }
+
+    public int getIterations() {
+        return iterations;
+    }
+
+    /*
+    * Hämtar hashen i den form som lagras, t.ex. i ett beständigt repository.
+    * */
+    public String getEncoded() {
+        Base64.Encoder encoder = Base64.getEncoder();
+        return PREFIX + iterations + "$" + encoder.encodeToString(salt) + "$" + encoder.encodeToString(hash);
+    }
+
+    private static byte[] derive(String pin, byte[] salt, int iterations) {
+        char[] chars = pin.toCharArray();
+        PBEKeySpec spec = new PBEKeySpec(chars, salt, iterations, HASH_BITS);
+        try {
+            return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+        } catch (GeneralSecurityException e) {
+            // PBKDF2WithHmacSHA256 finns i alla JDK
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        } finally {
+            spec.clearPassword();
+            Arrays.fill(chars, '\0');
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.bank.model;
+
+/**
+ * Hjälpklass för belopp i fast decimalform.
+ *
+ * Alla belopp i systemet lagras som ett primitivt long-värde i ören
+ * (1 kr = 100 öre). Heltalsaritmetik ger exakta resultat utan
+ * avrundningsfel och kräver inga wrapper-objekt, till skillnad från double
+ * och Double. Klassen samlar omvandlingarna till och från kronor så att
+ * de bara finns på ett ställe.
+ */
+public final class Money {
+    public static final long ORE_PER_KRONA = 100;
+
+    private Money() {
+        // Endast statiska hjälpmetoder
+    }
+
+    /**
+     * Omvandlar ett helt antal kronor till ören.
+     *
+     * @param kronor Beloppet i hela kronor
+     * @return Beloppet i ören
+     * @throws ArithmeticException om beloppet inte ryms i en long
+     */
+    public static long ofKronor(long kronor) {
+        return Math.multiplyExact(kronor, ORE_PER_KRONA);
+    }
+
+    /**
+     * Omvandlar ett belopp i kronor (t.ex. från användarinmatning) till ören.
+     * Avrundar till närmaste öre.
+     *
+     * @param kronor Beloppet i kronor
+     * @return Beloppet i ören
+     * @throws IllegalArgumentException om beloppet inte är ett ändligt tal eller är för stort
+     */
+    public static long ofKronor(double kronor) {
+        double ore = Math.rint(kronor * ORE_PER_KRONA);
+        if (Double.isNaN(ore) || Math.abs(ore) >= 0x1p63) {
+            throw new IllegalArgumentException("Invalid amount: " + kronor);
+        }
+        return (long) ore;
+    }
+
+    /**
+     * Omvandlar ören till kronor, t.ex. för visning.
+     *
+     * @param ore Beloppet i ören
+     * @return Beloppet i kronor
+     */
+    public static double toKronor(long ore) {
+        return ore / (double) ORE_PER_KRONA;
+    }
+
+    /**
+     * Adderar två belopp och kastar undantag vid överspill i stället för att
+     * tyst slå runt till ett negativt saldo.
+     */
+    public static long add(long ore, long otherOre) {
+        return Math.addExact(ore, otherOre);
+    }
+
+    /**
+     * Subtraherar ett belopp från ett annat och kastar undantag vid överspill.
+     */
+    public static long subtract(long ore, long otherOre) {
+        return Math.subtractExact(ore, otherOre);
+    }
+}
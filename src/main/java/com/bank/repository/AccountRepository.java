@@ -1,7 +1,13 @@
 package com.bank.repository;
 
 import com.bank.model.Account;
+
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.OptionalLong;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 
 /**
  * Interface för hantering av konton i systemet.
@@ -22,6 +28,27 @@ public interface AccountRepository {
      */
     Account findByAccountNumber(String accountNumber);
 
+    /**
+     * Hämtar flera konton i ett anrop.
+     *
+     * För ett repository som ligger på disk eller i en annan process blir det
+     * en enda rundresa i stället för en per konto. Standardimplementationen
+     * hämtar kontona ett i taget och bör ersättas där en riktig batch finns.
+     *
+     * @param accountNumbers Kontonumren som ska hämtas
+     * @return De konton som finns, i samma ordning som kontonumren; saknade konton utelämnas
+     */
+    default List<Account> findByAccountNumbers(Collection<String> accountNumbers) {
+        List<Account> result = new ArrayList<>(accountNumbers.size());
+        for (String accountNumber : accountNumbers) {
+            Account account = findByAccountNumber(accountNumber);
+            if (account != null) {
+                result.add(account);
+            }
+        }
+        return result;
+    }
+
     /**
      * Kopplar ett konto till ett kort.
      * @param accountNumber Kontonumret för kontot
@@ -36,5 +63,79 @@ public interface AccountRepository {
      */
     List<Account> findByCardNumber(String cardNumber);
 
+    /**
+     * Uppdaterar saldot på ett konto atomiskt om villkoret håller.
+     *
+     * Läsning, villkorskontroll och skrivning sker som en odelbar operation
+     * per konto, så att två samtidiga uttag från samma konto inte kan skriva
+     * över varandras resultat eller övertrassera kontot.
+     * Funktionerna anropas högst en gång per anrop och ska vara snabba och
+     * sidoeffektfria, eftersom de körs medan kontot är låst.
+     *
+     * @param accountNumber Kontonumret för kontot som ska uppdateras
+     * @param condition Villkor som testas mot nuvarande saldo i ören
+     * @param newBalance Beräknar det nya saldot i ören utifrån nuvarande saldo
+     * @return BalanceUpdate med utfallet och kontot efter operationen
+     */
+    BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance);
+
+    /**
+     * Uppdaterar saldot atomiskt och registrerar samtidigt operationen under
+     * en idempotensnyckel.
+     *
+     * Ett beständigt repository sparar nyckeln i samma loggpost som det nya
+     * saldot, så efter en omstart är antingen både saldot och nyckeln kvar
+     * eller ingen av dem. Standardimplementationen kommer inte ihåg nyckeln.
+     *
+     * @param accountNumber Kontonumret för kontot som ska uppdateras
+     * @param condition Villkor som testas mot nuvarande saldo i ören
+     * @param newBalance Beräknar det nya saldot i ören utifrån nuvarande saldo
+     * @param operationKey Idempotensnyckeln, eller null
+     * @return BalanceUpdate med utfallet och kontot efter operationen
+     */
+    default BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance,
+                                          String operationKey) {
+        return updateBalanceIf(accountNumber, condition, newBalance);
+    }
 
+    /**
+     * Hämtar saldot efter en genomförd operation som registrerats med en
+     * idempotensnyckel, t.ex. för att svara på ett omförsök efter en omstart.
+     *
+     * @param operationKey Idempotensnyckeln
+     * @return kontots saldo i ören direkt efter operationen, eller tomt om
+     *         nyckeln inte är känd (eller har gått ut)
+     */
+    default OptionalLong findOperationBalance(String operationKey) {
+        return OptionalLong.empty();
+    }
+
+    /**
+     * Flyttar ett belopp från ett konto till ett annat i ett odelbart steg.
+     *
+     * Ingen annan tråd kan se det ena kontot ändrat men inte det andra, och
+     * samtidiga överföringar i motsatta riktningar får inte kunna låsa
+     * varandra. Överföringen genomförs bara om avsändarkontot täcker beloppet.
+     *
+     * @param fromAccountNumber Kontot som pengarna dras från
+     * @param toAccountNumber Kontot som pengarna sätts in på; ska vara ett annat konto
+     * @param amountInOre Beloppet i ören, större än noll
+     * @return BalanceTransfer med utfallet och kontona efter operationen
+     */
+    BalanceTransfer transfer(String fromAccountNumber, String toAccountNumber, long amountInOre);
+
+    /**
+     * Kör flera ändringar på anropande tråd och gör dem beständiga
+     * tillsammans. Ändringarna i omgången väntar inte på beständighet var
+     * för sig; när metoden returnerar är alla beständiga. Ett beständigt
+     * repository gör då en enda fsync för hela omgången.
+     *
+     * Andra trådar kan se ändringarna innan omgången är beständig, precis
+     * som vid group commit. Standardimplementationen kör bara omgången.
+     *
+     * @param batch Ändringarna
+     */
+    default void runBatch(Runnable batch) {
+        batch.run();
+    }
 }
@@ -0,0 +1,64 @@
+package com.bank.repository;
+
+import com.bank.model.Account;
+
+/**
+ * Resultatet av en atomisk överföring mellan två konton i ett AccountRepository.
+ *
+ * Vid en genomförd överföring innehåller resultatet båda kontona med sina
+ * nya saldon, så som de blev i samma odelbara steg.
+ */
+public class BalanceTransfer {
+
+    /**
+     * Möjliga utfall av en överföring.
+     */
+    public enum Status {
+        TRANSFERRED,
+        INSUFFICIENT_FUNDS,
+        FROM_ACCOUNT_NOT_FOUND,
+        TO_ACCOUNT_NOT_FOUND
+    }
+
+    private final Status status;
+    private final Account fromAccount;
+    private final Account toAccount;
+
+    private BalanceTransfer(Status status, Account fromAccount, Account toAccount) {
+        this.status = status;
+        this.fromAccount = fromAccount;
+        this.toAccount = toAccount;
+    }
+
+    public static BalanceTransfer transferred(Account fromAccount, Account toAccount) {
+        return new BalanceTransfer(Status.TRANSFERRED, fromAccount, toAccount);
+    }
+
+    public static BalanceTransfer insufficientFunds(Account fromAccount, Account toAccount) {
+        return new BalanceTransfer(Status.INSUFFICIENT_FUNDS, fromAccount, toAccount);
+    }
+
+    public static BalanceTransfer fromAccountNotFound() {
+        return new BalanceTransfer(Status.FROM_ACCOUNT_NOT_FOUND, null, null);
+    }
+
+    public static BalanceTransfer toAccountNotFound() {
+        return new BalanceTransfer(Status.TO_ACCOUNT_NOT_FOUND, null, null);
+    }
+
+    // Getters
+    public Status getStatus() { return status; }
+    public boolean isTransferred() { return status == Status.TRANSFERRED; }
+
+    /**
+     * @return avsändarkontot efter överföringen, oförändrat vid INSUFFICIENT_FUNDS,
+     *         eller null om något av kontona saknas
+     */
+    public Account getFromAccount() { return fromAccount; }
+
+    /**
+     * @return mottagarkontot efter överföringen, oförändrat vid INSUFFICIENT_FUNDS,
+     *         eller null om något av kontona saknas
+     */
+    public Account getToAccount() { return toAccount; }
+}
@@ -0,0 +1,54 @@
+package com.bank.repository;
+
+import com.bank.model.Account;
+
+/**
+ * Resultatet av en atomisk saldouppdatering i ett AccountRepository.
+ *
+ * Innehåller både utfallet och kontot så som det såg ut när operationen
+ * avgjordes, så att anroparen inte behöver läsa kontot en gång till
+ * (vilket skulle kunna ge ett annat värde under samtidig belastning).
+ */
+public class BalanceUpdate {
+
+    /**
+     * Möjliga utfall av en villkorad saldouppdatering.
+     */
+    public enum Status {
+        UPDATED,
+        CONDITION_FAILED,
+        ACCOUNT_NOT_FOUND
+    }
+
+    private static final BalanceUpdate NOT_FOUND = new BalanceUpdate(Status.ACCOUNT_NOT_FOUND, null);
+
+    private final Status status;
+    private final Account account;
+
+    private BalanceUpdate(Status status, Account account) {
+        this.status = status;
+        this.account = account;
+    }
+
+    public static BalanceUpdate updated(Account updatedAccount) {
+        return new BalanceUpdate(Status.UPDATED, updatedAccount);
+    }
+
+    public static BalanceUpdate conditionFailed(Account currentAccount) {
+        return new BalanceUpdate(Status.CONDITION_FAILED, currentAccount);
+    }
+
+    public static BalanceUpdate accountNotFound() {
+        return NOT_FOUND;
+    }
+
+    // Getters
+    public Status getStatus() { return status; }
+    public boolean isUpdated() { return status == Status.UPDATED; }
+
+    /**
+     * @return det uppdaterade kontot vid UPDATED, det oförändrade kontot vid
+     *         CONDITION_FAILED och null om kontot inte finns
+     */
+    public Account getAccount() { return account; }
+}
@@ -0,0 +1,113 @@
+package com.bank.repository;
+
+import com.bank.model.Card;
+import com.bank.util.BloomFilter;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ett CardRepository som lägger ett Bloomfilter framför ett annat repository.
+ *
+ * Okända kortnummer, t.ex. vid felinläsningar eller när någon provar många
+ * kortnummer i följd, avvisas direkt av filtret utan att det underliggande
+ * repositoryt anropas. Kända kort och en liten andel okända (filtrets
+ * felfrekvens) går vidare som vanligt, så resultatet blir alltid detsamma
+ * som utan filtret.
+ *
+ * Filtret hålls uppdaterat genom att alla kort sparas via detta repository.
+ * Kort som redan finns i det underliggande repositoryt måste läggas till
+ * i filtret med registerExisting innan det används.
+ */
+public class BloomFilterCardRepository implements CardRepository {
+    private final CardRepository delegate;
+    private final BloomFilter filter;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    /**
+     * Skapar ett filtrerande repository.
+     *
+     * @param delegate Repositoryt som korten faktiskt lagras i
+     * @param filter Ett filter dimensionerat för det förväntade antalet kort
+     */
+    public BloomFilterCardRepository(CardRepository delegate, BloomFilter filter) {
+        this.delegate = delegate;
+        this.filter = filter;
+    }
+
+    /**
+     * Lägger till kortnummer som redan finns i det underliggande repositoryt.
+     * @param cardNumbers Befintliga kortnummer
+     */
+    public void registerExisting(Iterable<String> cardNumbers) {
+        for (String cardNumber : cardNumbers) {
+            filter.add(cardNumber);
+        }
+    }
+
+    /**
+     * Sparar kortet och lägger till det i filtret. Filtret uppdateras innan
+     * kortet sparas, så en samtidig sökning kan aldrig avvisa ett sparat kort.
+     *
+     * @param card Kortet som ska sparas
+     */
+    @Override
+    public void saveCard(Card card) {
+        filter.add(card.getCardNumber());
+        delegate.saveCard(card);
+    }
+
+    /**
+     * Hämtar ett kort, men bara om filtret säger att det kan finnas.
+     *
+     * @param cardNumber Kortnumret
+     * @return Kortet om det finns, annars null
+     */
+    @Override
+    public Card findCardByCardNumber(String cardNumber) {
+        lookups.increment();
+        if (!filter.mightContain(cardNumber)) {
+            rejected.increment();
+            return null;
+        }
+        Card card = delegate.findCardByCardNumber(cardNumber);
+        if (card == null) {
+            falsePositives.increment();
+        }
+        return card;
+    }
+
+    /**
+     * Hämtar antalet uppslagningar.
+     * @return totalt antal anrop till findCardByCardNumber
+     */
+    public long getLookupCount() {
+        return lookups.sum();
+    }
+
+    /**
+     * Hämtar antalet uppslagningar som avvisades av filtret utan att nå repositoryt.
+     * @return antal avvisade uppslagningar
+     */
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    /**
+     * Hämtar antalet okända kort som filtret släppte igenom.
+     * @return antal falska träffar
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Hämtar det underliggande filtret, t.ex. för att läsa dess storlek.
+     * @return Bloomfiltret
+     */
+    public BloomFilter getFilter() {
+        return filter;
+    }
+}
@@ -0,0 +1,250 @@
+package com.bank.repository;
+
+import com.bank.model.Card;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ett CardRepository som cachar kort framför ett långsammare repository.
+ *
+ * Cachen har en fast maxstorlek och använder segmenterad LRU (SLRU):
+ * - Kort som läses in hamnar först i en "provperiod" (probation).
+ * - Läses ett kort igen flyttas det till den skyddade delen (protected).
+ * - När den skyddade delen är full flyttas dess äldsta kort tillbaka till
+ *   provperioden, och när cachen är full kastas det äldsta kortet i
+ *   provperioden ut.
+ * Ett kort som bara läses en gång, t.ex. vid en genomsökning, kan därmed
+ * inte tränga undan kort som används ofta.
+ *
+ * Cachen är uppdelad i flera segment med var sitt lås, valda utifrån
+ * kortnumrets hash, så att många terminaler kan läsa samtidigt.
+ *
+ * saveCard skriver alltid direkt till det underliggande repositoryt och
+ * ersätter sedan kortet i cachen (write-through), så blockering och antal
+ * felaktiga försök aldrig läses från en inaktuell kopia. Okända kort cachas
+ * inte.
+ */
+public class CachingCardRepository implements CardRepository {
+    // Andel av varje segment som är skyddad, som i klassisk SLRU
+    private static final double PROTECTED_SHARE = 0.8;
+
+    private final CardRepository delegate;
+    private final Segment[] segments;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Skapar en cache med angiven maxstorlek.
+     *
+     * @param delegate Repositoryt som korten faktiskt lagras i
+     * @param maximumSize Högsta antal kort i cachen
+     * @throws IllegalArgumentException om maxstorleken inte är positiv
+     */
+    public CachingCardRepository(CardRepository delegate, int maximumSize) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive");
+        }
+        this.delegate = delegate;
+
+        // Ett segment per cirka 64 kort, men högst fyra per kärna och alltid en tvåpotens
+        int wanted = Math.min(Runtime.getRuntime().availableProcessors() * 4, Math.max(1, maximumSize / 64));
+        int segmentCount = Integer.highestOneBit(wanted);
+        this.segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            // Fördela resten så att summan blir exakt maxstorleken
+            int capacity = maximumSize / segmentCount + (i < maximumSize % segmentCount ? 1 : 0);
+            segments[i] = new Segment(capacity);
+        }
+    }
+
+    /**
+     * Sparar kortet i det underliggande repositoryt och därefter i cachen.
+     * @param card Kortet som ska sparas
+     */
+    @Override
+    public void saveCard(Card card) {
+        Segment segment = segmentFor(card.getCardNumber());
+        delegate.saveCard(card);
+        segment.put(card.getCardNumber(), card);
+    }
+
+    /**
+     * Hämtar ett kort från cachen, eller från det underliggande repositoryt
+     * vid miss.
+     *
+     * @param cardNumber Kortnumret
+     * @return Kortet om det finns, annars null
+     */
+    @Override
+    public Card findCardByCardNumber(String cardNumber) {
+        Segment segment = segmentFor(cardNumber);
+        Card cached = segment.get(cardNumber);
+        if (cached != null) {
+            hits.increment();
+            return cached;
+        }
+
+        misses.increment();
+        long version = segment.writeVersion();
+        Card loaded = delegate.findCardByCardNumber(cardNumber);
+        if (loaded != null) {
+            segment.putIfUnchanged(cardNumber, loaded, version);
+        }
+        return loaded;
+    }
+
+    /**
+     * Hämtar antalet träffar i cachen.
+     * @return antal uppslagningar som besvarades från cachen
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * Hämtar antalet missar.
+     * @return antal uppslagningar som gick till det underliggande repositoryt
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    /**
+     * Hämtar antalet kort som kastats ut för att ge plats åt andra.
+     * @return antal utkastade kort
+     */
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Hämtar antalet kort som just nu ligger i cachen.
+     * @return cachens storlek
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private Segment segmentFor(String cardNumber) {
+        int h = cardNumber.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * En del av cachen med eget lås och egna SLRU-listor.
+     */
+    private final class Segment {
+        private final ReentrantLock lock = new ReentrantLock();
+        private final int capacity;
+        private final int protectedCapacity;
+        // Insättningsordning; äldst först
+        private final LinkedHashMap<String, Card> probation = new LinkedHashMap<>();
+        // Åtkomstordning; minst nyligen använd först
+        private final LinkedHashMap<String, Card> protectedEntries = new LinkedHashMap<>(16, 0.75f, true);
+        // Räknas upp vid varje saveCard, så att en långsam inläsning inte skriver över nyare data
+        private long writeVersion;
+
+        Segment(int capacity) {
+            this.capacity = Math.max(1, capacity);
+            this.protectedCapacity = (int) (this.capacity * PROTECTED_SHARE);
+        }
+
+        Card get(String cardNumber) {
+            lock.lock();
+            try {
+                Card card = protectedEntries.get(cardNumber);
+                if (card != null) {
+                    return card;
+                }
+                card = probation.remove(cardNumber);
+                if (card != null) {
+                    promote(cardNumber, card);
+                }
+                return card;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void put(String cardNumber, Card card) {
+            lock.lock();
+            try {
+                writeVersion++;
+                if (protectedEntries.containsKey(cardNumber)) {
+                    protectedEntries.put(cardNumber, card);
+                } else {
+                    probation.remove(cardNumber);
+                    addToProbation(cardNumber, card);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        long writeVersion() {
+            lock.lock();
+            try {
+                return writeVersion;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void putIfUnchanged(String cardNumber, Card card, long expectedVersion) {
+            lock.lock();
+            try {
+                if (writeVersion == expectedVersion
+                        && !protectedEntries.containsKey(cardNumber) && !probation.containsKey(cardNumber)) {
+                    addToProbation(cardNumber, card);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return probation.size() + protectedEntries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void promote(String cardNumber, Card card) {
+            if (protectedCapacity == 0) {
+                addToProbation(cardNumber, card);
+                return;
+            }
+            protectedEntries.put(cardNumber, card);
+            if (protectedEntries.size() > protectedCapacity) {
+                // Den minst nyligen använda skyddade posten får en ny provperiod
+                Iterator<Map.Entry<String, Card>> eldest = protectedEntries.entrySet().iterator();
+                Map.Entry<String, Card> demoted = eldest.next();
+                eldest.remove();
+                addToProbation(demoted.getKey(), demoted.getValue());
+            }
+        }
+
+        private void addToProbation(String cardNumber, Card card) {
+            probation.put(cardNumber, card);
+            while (probation.size() + protectedEntries.size() > capacity && !probation.isEmpty()) {
+                Iterator<String> eldest = probation.keySet().iterator();
+                eldest.next();
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+}
@@ -3,6 +3,11 @@ package com.bank.repository;
 import com.bank.model.Account;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
 
 /**
  * En minnesbaserad implementation av AccountRepository-interfacet.
@@ -12,16 +17,34 @@ import java.util.*;
  * Relationsmodell:
  * - Ett kort kan ha tillgång till flera konton (t.ex. lönekonto, sparkonto)
  * - Ett konto kan potentiellt nås av flera kort (t.ex. gemensamt konto)
+ *
+ * Trådsäkerhet:
+ * Klassen kan delas mellan många samtidiga bankomatsessioner. Läsningar går
+ * direkt mot en ConcurrentHashMap utan lås (Account är immutable), medan alla
+ * skrivningar av ett konto sker under ett av flera "striped" lås som väljs
+ * utifrån kontonumrets hash. Två uppdateringar av samma konto serialiseras
+ * därför, medan uppdateringar av olika konton oftast kan köras parallellt
+ * utan ett gemensamt globalt lås.
  */
 
 public class InMemoryAccountRepository implements AccountRepository {
 
     // accounts Lagrar konton med kontonummer som nyckel
-    // cardToAccountLinks Lagrar kopplingar mellan kort och konton (kortnummer -> lista av kontonummer)
-    // accountToCardLinks Håller reda på vilka kort som redan är kopplade till ett visst konto
-    private final Map<String, Account> accounts= new HashMap<>();
-    private final Map<String, List<String>> cardToAccountLinks = new HashMap<>();
-    private final Map<String, List<String>> accountToCardLinks = new HashMap<>();
+    // links Lagrar kopplingar mellan kort och konton i båda riktningarna
+    private final Map<String, Account> accounts = new ConcurrentHashMap<>();
+    private final LinkIndex links = new LinkIndex();
+
+    // Antalet lås är en tvåpotens så att index kan räknas fram med en bitmask.
+    // Fyra lås per kärna ger låg risk att två heta konton delar lås.
+    private static final int LOCK_STRIPES =
+            Integer.highestOneBit(Math.max(16, Runtime.getRuntime().availableProcessors() * 4) * 2 - 1);
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+    public InMemoryAccountRepository() {
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
 
     /**
      * Sparar ett konto i minnet.
@@ -30,7 +53,14 @@ public class InMemoryAccountRepository implements AccountRepository {
      */
     @Override
     public void saveAccount(Account account) {
-        accounts.put(account.getAccountNumber(), account);
+        ReentrantLock lock = lockFor(account.getAccountNumber());
+        lock.lock();
+        try {
+            onAccountSaved(account);
+            accounts.put(account.getAccountNumber(), account);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -51,25 +81,33 @@ public class InMemoryAccountRepository implements AccountRepository {
      * - Ett konto kan i vissa fall nås av flera kort (t.ex. gemensamma konton)
      *
      * Denna metod lägger till kopplingen i båda riktningarna för att
-     * möjliggöra senare kontroll och eventuella begränsningar.
+     * möjliggöra senare kontroll och eventuella begränsningar. Att koppla
+     * samma konto och kort igen har ingen effekt.
      *
      * @param accountNumber Kontonumret för kontot
      * @param cardNumber Kortnumret för kortet
      */
     @Override
     public void linkAccountToCard(String accountNumber, String cardNumber) {
-        // Kontrollera att kontot finns
-        if (!accounts.containsKey(accountNumber)) {
-            throw new IllegalArgumentException("Account number " + accountNumber + " does not exist");
-        }
-
-        // Lägger till koppling från kort till konto
-        cardToAccountLinks.computeIfAbsent(cardNumber, k -> new ArrayList<>()).add(accountNumber);
+        ReentrantLock lock = lockFor(accountNumber);
+        lock.lock();
+        try {
+            // Kontrollera att kontot finns
+            if (!accounts.containsKey(accountNumber)) {
+                throw new IllegalArgumentException("Account number " + accountNumber + " does not exist");
+            }
 
-        // Lägger även till koppling från konto till kort (för spårbarhet)
-        accountToCardLinks.computeIfAbsent(accountNumber, k -> new ArrayList<>()).add(cardNumber);
+            if (links.contains(accountNumber, cardNumber)) {
+                return;
+            }
 
+            onAccountLinked(accountNumber, cardNumber);
 
+            // Indexet lagrar kopplingen i båda riktningarna
+            links.add(accountNumber, cardNumber);
+        } finally {
+            lock.unlock();
+        }
     }
 
     /**
@@ -83,18 +121,213 @@ public class InMemoryAccountRepository implements AccountRepository {
      */
     @Override
     public List<Account> findByCardNumber(String cardNumber) {
-        // Hämta lista med kontonummer för det angivna kortet
-        List<String> accountNumbers = cardToAccountLinks.getOrDefault(cardNumber, Collections.emptyList());
-        List<Account> result = new ArrayList<>();
+        // Hämta kontonumren för kortet och slå upp alla konton i ett anrop
+        return findByAccountNumbers(links.accountsOf(cardNumber));
+    }
+
+    /**
+     * Uppdaterar saldot atomiskt under kontots lås.
+     *
+     * Eftersom alla skrivningar av samma konto tar samma lås kan ingen annan
+     * tråd hinna ändra saldot mellan villkorskontrollen och skrivningen.
+     *
+     * @param accountNumber Kontonumret för kontot som ska uppdateras
+     * @param condition Villkor som testas mot nuvarande saldo i ören
+     * @param newBalance Beräknar det nya saldot i ören utifrån nuvarande saldo
+     * @return BalanceUpdate med utfallet och kontot efter operationen
+     */
+    @Override
+    public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance) {
+        return updateBalanceIf(accountNumber, condition, newBalance, null);
+    }
+
+    /**
+     * Uppdaterar saldot atomiskt under kontots lås och lämnar nyckeln vidare
+     * till onBalanceChanged. Minnesversionen sparar inte själva nyckeln.
+     */
+    @Override
+    public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance,
+                                         String operationKey) {
+        ReentrantLock lock = lockFor(accountNumber);
+        lock.lock();
+        try {
+            Account current = accounts.get(accountNumber);
+            if (current == null) {
+                return BalanceUpdate.accountNotFound();
+            }
+            if (!condition.test(current.getBalanceInOre())) {
+                return BalanceUpdate.conditionFailed(current);
+            }
+
+            // Account är immutable, så den nya versionen ersätter den gamla
+            Account updated = Account.withBalanceInOre(current.getAccountNumber(), current.getAccountName(),
+                    newBalance.applyAsLong(current.getBalanceInOre()));
+            onBalanceChanged(updated, operationKey);
+            accounts.put(accountNumber, updated);
+            return BalanceUpdate.updated(updated);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Överför ett belopp under båda kontonas lås.
+     *
+     * Låsen tas alltid i stigande ordning efter låsens index, oavsett
+     * riktning, så två överföringar A till B och B till A kan aldrig vänta
+     * på varandra i en cirkel. Delar kontona lås tas det bara en gång.
+     *
+     * @param fromAccountNumber Kontot som pengarna dras från
+     * @param toAccountNumber Kontot som pengarna sätts in på
+     * @param amountInOre Beloppet i ören
+     * @return BalanceTransfer med utfallet och kontona efter operationen
+     * @throws IllegalArgumentException om kontona är samma eller beloppet inte är positivt
+     */
+    @Override
+    public BalanceTransfer transfer(String fromAccountNumber, String toAccountNumber, long amountInOre) {
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            throw new IllegalArgumentException("Cannot transfer to the same account");
+        }
+        if (amountInOre <= 0) {
+            throw new IllegalArgumentException("Transfer amount must be positive");
+        }
+
+        int fromStripe = stripeOf(fromAccountNumber);
+        int toStripe = stripeOf(toAccountNumber);
+        ReentrantLock first = locks[Math.min(fromStripe, toStripe)];
+        ReentrantLock second = locks[Math.max(fromStripe, toStripe)];
+        first.lock();
+        try {
+            if (second != first) {
+                second.lock();
+            }
+            try {
+                Account from = accounts.get(fromAccountNumber);
+                if (from == null) {
+                    return BalanceTransfer.fromAccountNotFound();
+                }
+                Account to = accounts.get(toAccountNumber);
+                if (to == null) {
+                    return BalanceTransfer.toAccountNotFound();
+                }
+                if (from.getBalanceInOre() < amountInOre) {
+                    return BalanceTransfer.insufficientFunds(from, to);
+                }
+
+                // Räkna ut båda saldona innan något ändras, så ett överspill inte lämnar halva överföringen
+                Account debited = Account.withBalanceInOre(from.getAccountNumber(), from.getAccountName(),
+                        from.getBalanceInOre() - amountInOre);
+                Account credited = Account.withBalanceInOre(to.getAccountNumber(), to.getAccountName(),
+                        Math.addExact(to.getBalanceInOre(), amountInOre));
+                onBalancesTransferred(debited, credited);
+                accounts.put(fromAccountNumber, debited);
+                accounts.put(toAccountNumber, credited);
+                return BalanceTransfer.transferred(debited, credited);
+            } finally {
+                if (second != first) {
+                    second.unlock();
+                }
+            }
+        } finally {
+            first.unlock();
+        }
+    }
+
+    /**
+     * Anropas under kontots lås precis innan ett sparat konto blir synligt.
+     * Subklasser kan t.ex. skriva ändringen till en logg; eftersom anropet
+     * sker under låset kommer ändringar av samma konto i rätt ordning.
+     * Kastar metoden ett undantag genomförs inte ändringen.
+     *
+     * @param account Kontot som ska sparas
+     */
+    protected void onAccountSaved(Account account) {
+        // Ingen åtgärd i minnesversionen
+    }
+
+    /**
+     * Anropas under kontots lås precis innan ett nytt saldo blir synligt.
+     * Kastar metoden ett undantag genomförs inte ändringen.
+     *
+     * @param updatedAccount Kontot med det nya saldot
+     * @param operationKey Operationens idempotensnyckel, eller null
+     */
+    protected void onBalanceChanged(Account updatedAccount, String operationKey) {
+        // Ingen åtgärd i minnesversionen
+    }
+
+    /**
+     * Anropas under båda kontonas lås precis innan en överföring blir synlig.
+     * Båda saldona ändras i samma anrop, så en subklass kan logga dem som en
+     * enda post. Kastar metoden ett undantag genomförs inte överföringen.
+     *
+     * @param fromAccount Avsändarkontot med det nya saldot
+     * @param toAccount Mottagarkontot med det nya saldot
+     */
+    protected void onBalancesTransferred(Account fromAccount, Account toAccount) {
+        // Ingen åtgärd i minnesversionen
+    }
+
+    /**
+     * Anropas under kontots lås precis innan en koppling mellan konto och
+     * kort läggs till.
+     * Kastar metoden ett undantag genomförs inte kopplingen.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param cardNumber Kortnumret för kortet
+     */
+    protected void onAccountLinked(String accountNumber, String cardNumber) {
+        // Ingen åtgärd i minnesversionen
+    }
 
-        // Hämta varje konto från accounts-kartan och lägg till i resultatlistan
-        for (String accountNumber : accountNumbers) {
-            Account account = findByAccountNumber(accountNumber);
+    /**
+     * Går igenom alla konton tillsammans med de kort som är kopplade till dem,
+     * t.ex. för att skriva en snapshot.
+     *
+     * Varje konto läses under sitt lås, så en ändring som påbörjats innan
+     * genomgången når kontot syns fullt ut. Ändringar som sker under
+     * genomgången kan däremot komma med eller inte.
+     *
+     * @param visitor Anropas en gång per konto med kontot och dess kopplade kort
+     */
+    protected void forEachAccount(BiConsumer<Account, List<String>> visitor) {
+        for (String accountNumber : accounts.keySet()) {
+            Account account;
+            List<String> linkedCards;
+            ReentrantLock lock = lockFor(accountNumber);
+            lock.lock();
+            try {
+                account = accounts.get(accountNumber);
+                linkedCards = links.cardsOf(accountNumber);
+            } finally {
+                lock.unlock();
+            }
             if (account != null) {
-                result.add(account);
+                visitor.accept(account, linkedCards);
             }
         }
-        return result;
+    }
+
+    /**
+     * Returnerar antalet konton i repositoryt.
+     * @return antalet sparade konton
+     */
+    public int getAccountCount() {
+        return accounts.size();
+    }
+
+    /**
+     * Väljer det lås som skyddar ett visst konto.
+     * Hashvärdet blandas så att närliggande kontonummer hamnar på olika lås.
+     */
+    private ReentrantLock lockFor(String accountNumber) {
+        return locks[stripeOf(accountNumber)];
+    }
+
+    private int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        h ^= (h >>> 16);
+        return h & (locks.length - 1);
     }
 
     /**
@@ -106,8 +339,7 @@ public class InMemoryAccountRepository implements AccountRepository {
      * @return true om kopplingen redan finns, annars false
      */
     public boolean isAccountLinkedToCard(String accountNumber, String cardNumber) {
-        List<String> linkedCards = accountToCardLinks.getOrDefault(cardNumber, Collections.emptyList());
-        return linkedCards.contains(cardNumber);
+        return links.contains(accountNumber, cardNumber);
     }
 
     /**
@@ -118,7 +350,7 @@ public class InMemoryAccountRepository implements AccountRepository {
      * @return Antalet kort kopplade till kontot
      */
     public int getNumberOfLinkedCards(String accountNumber) {
-        return accountToCardLinks.getOrDefault(accountNumber, Collections.emptyList()).size();
+        return links.countCardsOf(accountNumber);
     }
 }
 /*
@@ -2,11 +2,13 @@ package com.bank.repository;
 
 import com.bank.model.Card;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 public class InMemoryCardRepository  implements CardRepository{
-    private final Map<String, Card> cards = new HashMap<>();
+    // ConcurrentHashMap eftersom flera sessioner kan läsa och spara kort samtidigt
+    private final Map<String, Card> cards = new ConcurrentHashMap<>();
 
     /**
      * Sparar ett kort i lagringssystemet.
@@ -26,4 +28,12 @@ public class InMemoryCardRepository  implements CardRepository{
     public Card findCardByCardNumber(String cardNumber) {
         return cards.get(cardNumber);
     }
+
+    /**
+     * Går igenom alla sparade kort, t.ex. för att skriva en snapshot.
+     * @param visitor Anropas en gång per kort
+     */
+    protected void forEachCard(Consumer<Card> visitor) {
+        cards.values().forEach(visitor);
+    }
 }
@@ -0,0 +1,367 @@
+package com.bank.repository;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Ett kompakt index över kopplingar mellan kort och konton.
+ *
+ * Varje kontonummer och kortnummer får ett heltals-id första gången det
+ * förekommer, och strängen lagras bara en gång. Kopplingarna lagras sedan
+ * som heltal i parallella arrayer i stället för som listor av strängar:
+ * - Varje koppling är en "kant" med kort-id, konto-id och pekare till nästa
+ *   kant för samma kort respektive samma konto (länkade listor i arrayer).
+ * - Ett kort och ett konto pekar på sin första och sista kant, så nya
+ *   kopplingar läggs sist och listorna behåller insättningsordningen.
+ * - Alla kopplingar finns också i en hashtabell av long-värden (kort-id och
+ *   konto-id packade i ett tal), så att medlemskontroll går i konstant tid.
+ *
+ * Inga objekt skapas per koppling, vilket ger en bråkdel av minnesåtgången
+ * jämfört med en Map av listor när det finns tiotals miljoner kopplingar.
+ *
+ * Trådsäkerhet: skrivningar tar ett exklusivt lås. Medlemskontroller görs
+ * utan lås (optimistisk läsning som görs om vid samtidig skrivning), medan
+ * listningar tar ett delat läslås.
+ */
+public final class LinkIndex {
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final StampedLock lock = new StampedLock();
+    private final Ids accountIds = new Ids();
+    private final Ids cardIds = new Ids();
+
+    // Per kort och per konto: första och sista kanten samt antal kopplingar (index = id)
+    private int[] cardFirst = new int[INITIAL_CAPACITY];
+    private int[] cardLast = new int[INITIAL_CAPACITY];
+    private int[] cardLinkCount = new int[INITIAL_CAPACITY];
+    private int[] accountFirst = new int[INITIAL_CAPACITY];
+    private int[] accountLast = new int[INITIAL_CAPACITY];
+    private int[] accountLinkCount = new int[INITIAL_CAPACITY];
+
+    // Kanter, numrerade från 1 så att 0 kan betyda "ingen kant"
+    private int[] edgeCard = new int[INITIAL_CAPACITY];
+    private int[] edgeAccount = new int[INITIAL_CAPACITY];
+    private int[] nextForCard = new int[INITIAL_CAPACITY];
+    private int[] nextForAccount = new int[INITIAL_CAPACITY];
+    private int edgeCount;
+
+    // Hashtabell med packade (kort-id, konto-id); 0 markerar en tom plats
+    private volatile long[] links = new long[INITIAL_CAPACITY];
+
+    /**
+     * Lägger till en koppling mellan ett konto och ett kort.
+     *
+     * @param accountNumber Kontonumret
+     * @param cardNumber Kortnumret
+     * @return true om kopplingen lades till, false om den redan fanns
+     */
+    public boolean add(String accountNumber, String cardNumber) {
+        long stamp = lock.writeLock();
+        try {
+            int account = accountIds.getOrAdd(accountNumber);
+            int card = cardIds.getOrAdd(cardNumber);
+            long key = pack(card, account);
+            if (containsKey(links, key)) {
+                return false;
+            }
+            ensureNodeCapacity(Math.max(account, card) + 1);
+            insertKey(key);
+
+            int edge = ++edgeCount;
+            ensureEdgeCapacity(edge + 1);
+            edgeCard[edge] = card;
+            edgeAccount[edge] = account;
+
+            // Lägg kanten sist i kortets och kontots listor
+            if (cardLast[card] == 0) {
+                cardFirst[card] = edge;
+            } else {
+                nextForCard[cardLast[card]] = edge;
+            }
+            cardLast[card] = edge;
+            cardLinkCount[card]++;
+
+            if (accountLast[account] == 0) {
+                accountFirst[account] = edge;
+            } else {
+                nextForAccount[accountLast[account]] = edge;
+            }
+            accountLast[account] = edge;
+            accountLinkCount[account]++;
+            return true;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Kontrollerar om ett konto är kopplat till ett kort, i konstant tid.
+     *
+     * @param accountNumber Kontonumret
+     * @param cardNumber Kortnumret
+     * @return true om kopplingen finns
+     */
+    public boolean contains(String accountNumber, String cardNumber) {
+        long stamp = lock.tryOptimisticRead();
+        boolean found = containsUnlocked(accountNumber, cardNumber);
+        if (lock.validate(stamp)) {
+            return found;
+        }
+        stamp = lock.readLock();
+        try {
+            return containsUnlocked(accountNumber, cardNumber);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Hämtar kontonumren som är kopplade till ett kort, i den ordning de kopplades.
+     *
+     * @param cardNumber Kortnumret
+     * @return Kontonummer, tom lista om kortet saknar kopplingar
+     */
+    public List<String> accountsOf(String cardNumber) {
+        long stamp = lock.readLock();
+        try {
+            int card = cardIds.get(cardNumber);
+            if (card == 0) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>(cardLinkCount[card]);
+            for (int edge = cardFirst[card]; edge != 0; edge = nextForCard[edge]) {
+                result.add(accountIds.name(edgeAccount[edge]));
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Hämtar kortnumren som är kopplade till ett konto, i den ordning de kopplades.
+     *
+     * @param accountNumber Kontonumret
+     * @return Kortnummer, tom lista om kontot saknar kopplingar
+     */
+    public List<String> cardsOf(String accountNumber) {
+        long stamp = lock.readLock();
+        try {
+            int account = accountIds.get(accountNumber);
+            if (account == 0) {
+                return Collections.emptyList();
+            }
+            List<String> result = new ArrayList<>(accountLinkCount[account]);
+            for (int edge = accountFirst[account]; edge != 0; edge = nextForAccount[edge]) {
+                result.add(cardIds.name(edgeCard[edge]));
+            }
+            return result;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Räknar antalet kort som är kopplade till ett konto.
+     *
+     * @param accountNumber Kontonumret
+     * @return Antalet kopplade kort
+     */
+    public int countCardsOf(String accountNumber) {
+        long stamp = lock.readLock();
+        try {
+            int account = accountIds.get(accountNumber);
+            return account == 0 ? 0 : accountLinkCount[account];
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Hämtar det totala antalet kopplingar.
+     * @return antalet kopplingar
+     */
+    public int size() {
+        long stamp = lock.readLock();
+        try {
+            return edgeCount;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private boolean containsUnlocked(String accountNumber, String cardNumber) {
+        int account = accountIds.get(accountNumber);
+        int card = cardIds.get(cardNumber);
+        return account != 0 && card != 0 && containsKey(links, pack(card, account));
+    }
+
+    private static long pack(int card, int account) {
+        return ((long) card << 32) | (account & 0xFFFFFFFFL);
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32) & mask;
+    }
+
+    /**
+     * Letar efter en nyckel. Sökningen är begränsad till tabellens storlek,
+     * så den avslutas även om tabellen ändras under en optimistisk läsning.
+     */
+    private static boolean containsKey(long[] table, long key) {
+        int mask = table.length - 1;
+        int index = slot(key, mask);
+        for (int probes = 0; probes < table.length; probes++) {
+            long current = table[index];
+            if (current == key) {
+                return true;
+            }
+            if (current == 0) {
+                return false;
+            }
+            index = (index + 1) & mask;
+        }
+        return false;
+    }
+
+    private void insertKey(long key) {
+        long[] table = links;
+        // Max 50 % fyllnad så att sökningarna blir korta
+        if ((edgeCount + 1) * 2 > table.length) {
+            long[] grown = new long[table.length * 2];
+            for (long existing : table) {
+                if (existing != 0) {
+                    place(grown, existing);
+                }
+            }
+            place(grown, key);
+            links = grown;
+        } else {
+            place(table, key);
+        }
+    }
+
+    private static void place(long[] table, long key) {
+        int mask = table.length - 1;
+        int index = slot(key, mask);
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = key;
+    }
+
+    private void ensureNodeCapacity(int required) {
+        if (required > cardFirst.length || required > accountFirst.length) {
+            int capacity = grow(Math.max(cardFirst.length, accountFirst.length), required);
+            cardFirst = Arrays.copyOf(cardFirst, capacity);
+            cardLast = Arrays.copyOf(cardLast, capacity);
+            cardLinkCount = Arrays.copyOf(cardLinkCount, capacity);
+            accountFirst = Arrays.copyOf(accountFirst, capacity);
+            accountLast = Arrays.copyOf(accountLast, capacity);
+            accountLinkCount = Arrays.copyOf(accountLinkCount, capacity);
+        }
+    }
+
+    private void ensureEdgeCapacity(int required) {
+        if (required > edgeCard.length) {
+            int capacity = grow(edgeCard.length, required);
+            edgeCard = Arrays.copyOf(edgeCard, capacity);
+            edgeAccount = Arrays.copyOf(edgeAccount, capacity);
+            nextForCard = Arrays.copyOf(nextForCard, capacity);
+            nextForAccount = Arrays.copyOf(nextForAccount, capacity);
+        }
+    }
+
+    private static int grow(int current, int required) {
+        return Math.max(required, current + (current >> 1));
+    }
+
+    /**
+     * Tilldelar heltals-id (från 1) till strängar och lagrar varje sträng en gång.
+     * Uppslagstabellen byts ut som en helhet vid tillväxt, så en läsare utan
+     * lås ser alltid en tabell där nycklar och id hör ihop.
+     */
+    private static final class Ids {
+        private volatile Table table = new Table(INITIAL_CAPACITY);
+        private String[] names = new String[INITIAL_CAPACITY];
+        private int count;
+
+        int get(String name) {
+            return table.get(name);
+        }
+
+        int getOrAdd(String name) {
+            int id = table.get(name);
+            if (id != 0) {
+                return id;
+            }
+            id = ++count;
+            if (id >= names.length) {
+                names = Arrays.copyOf(names, grow(names.length, id + 1));
+            }
+            names[id] = name;
+
+            Table current = table;
+            if (count * 2 > current.keys.length) {
+                Table grown = new Table(current.keys.length * 2);
+                for (int i = 1; i < id; i++) {
+                    grown.put(names[i], i);
+                }
+                grown.put(name, id);
+                table = grown;
+            } else {
+                current.put(name, id);
+            }
+            return id;
+        }
+
+        String name(int id) {
+            return names[id];
+        }
+    }
+
+    private static final class Table {
+        final String[] keys;
+        final int[] ids;
+
+        Table(int capacity) {
+            keys = new String[capacity];
+            ids = new int[capacity];
+        }
+
+        int get(String name) {
+            int mask = keys.length - 1;
+            int index = spread(name.hashCode()) & mask;
+            for (int probes = 0; probes < keys.length; probes++) {
+                String key = keys[index];
+                if (key == null) {
+                    return 0;
+                }
+                if (key.equals(name)) {
+                    return ids[index];
+                }
+                index = (index + 1) & mask;
+            }
+            return 0;
+        }
+
+        void put(String name, int id) {
+            int mask = keys.length - 1;
+            int index = spread(name.hashCode()) & mask;
+            while (keys[index] != null) {
+                index = (index + 1) & mask;
+            }
+            // Id skrivs före nyckeln så att en läsare som ser nyckeln även ser id:t
+            ids[index] = id;
+            keys[index] = name;
+        }
+
+        private static int spread(int h) {
+            return h ^ (h >>> 16);
+        }
+    }
+}
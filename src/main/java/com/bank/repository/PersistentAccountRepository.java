@@ -0,0 +1,444 @@
+package com.bank.repository;
+
+import com.bank.model.Account;
+import com.bank.repository.wal.LogRecords;
+import com.bank.repository.wal.SnapshotFile;
+import com.bank.repository.wal.WriteAheadLog;
+import com.bank.util.BankConstants;
+import com.bank.util.ExpiringMap;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.OptionalLong;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * Ett beständigt AccountRepository som överlever omstart.
+ *
+ * Konton hålls i minnet precis som i InMemoryAccountRepository, men varje
+ * ändring (sparat konto, nytt saldo, ny koppling till kort) skrivs först
+ * till en binär write-ahead-logg. Vid uppstart spelas loggen upp igen.
+ *
+ * Loggposten skrivs under kontots lås, så poster för samma konto hamnar i
+ * samma ordning som ändringarna. En överföring loggas som en enda post med
+ * båda kontonas nya saldon. Själva fsync sker efter att låset släppts
+ * och delas med andra samtidiga transaktioner (group commit), så ett anrop
+ * returnerar först när ändringen är beständig. Inom runBatch väntar
+ * ändringarna inte var för sig, utan omgången synkas en gång på slutet.
+ *
+ * Snapshots:
+ * Med snapshot() skrivs alla konton och kopplingar till en kompakt binär fil
+ * och loggsegmenten före den tas bort. Uppstarten läser då snapshoten och
+ * spelar bara upp ändringar som gjorts efter den, i stället för hela historiken.
+ *
+ * Idempotensnycklar:
+ * Ett saldo som ändras med en idempotensnyckel loggas i en egen posttyp där
+ * nyckeln och tidpunkten ligger i samma post som det nya saldot. Nycklarna
+ * hålls i en ExpiringMap och skrivs även med i snapshoten, så ett omförsök
+ * efter en omstart känns igen så länge nyckeln inte har gått ut. Kartan
+ * glömmer aldrig nycklar i förtid; är den full avvisas en ändring med ny
+ * nyckel med IllegalStateException innan något loggas eller ändras.
+ */
+public final class PersistentAccountRepository extends InMemoryAccountRepository implements Closeable, Snapshottable {
+    private static final String NAME = "accounts";
+    private static final byte ACCOUNT_SAVED = 1;
+    private static final byte BALANCE_CHANGED = 2;
+    private static final byte ACCOUNT_LINKED = 3;
+    private static final byte BALANCES_TRANSFERRED = 4;
+    private static final byte KEYED_BALANCE_CHANGED = 5;
+
+    // Markerar om ett konto till följer i snapshoten
+    private static final byte SNAPSHOT_ENTRY = 1;
+    private static final byte SNAPSHOT_END = 0;
+
+    private final Path directory;
+    private final WriteAheadLog log;
+    private final Duration operationKeyTtl = Duration.ofHours(BankConstants.IDEMPOTENCY_KEY_TTL_HOURS);
+    // Dubbla IdempotencyCaches storlek, så att alla nycklar som fortfarande gäller
+    // ryms i en generation när de läses in vid uppstart
+    private final ExpiringMap<CompletedOperation> operations = new ExpiringMap<>(operationKeyTtl,
+            2 * BankConstants.MAX_IDEMPOTENCY_KEYS, System::currentTimeMillis, false);
+    private volatile boolean recovering;
+    // Sant på en tråd som kör runBatch; fsync görs då en gång för hela omgången
+    private final ThreadLocal<Boolean> batching = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private long sequenceAtLastSnapshot = -1;
+
+    /**
+     * Öppnar repositoryt och läser in den senaste snapshoten och de
+     * ändringar som loggats efter den.
+     *
+     * @param directory Katalogen där snapshots och loggsegment lagras
+     * @throws IOException om loggen eller snapshoten inte kan läsas
+     */
+    public PersistentAccountRepository(Path directory) throws IOException {
+        this.directory = directory;
+        this.log = new WriteAheadLog(directory, NAME);
+        recovering = true;
+        try {
+            long snapshotGeneration = SnapshotFile.load(directory, NAME, this::loadSnapshot);
+            if (log.getGeneration() < snapshotGeneration) {
+                throw new IOException("Account log segments are missing for snapshot " + snapshotGeneration);
+            }
+            log.replay(snapshotGeneration, this::apply);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        } finally {
+            recovering = false;
+        }
+    }
+
+    @Override
+    public void saveAccount(Account account) {
+        super.saveAccount(account);
+        awaitDurable();
+    }
+
+    /**
+     * Sparar många konton och väntar på en enda fsync för alla, t.ex. vid
+     * import av befintliga konton.
+     *
+     * @param newAccounts Konton som ska sparas
+     */
+    public void saveAccounts(Iterable<Account> newAccounts) {
+        for (Account account : newAccounts) {
+            super.saveAccount(account);
+        }
+        awaitDurable();
+    }
+
+    @Override
+    public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance) {
+        BalanceUpdate update = super.updateBalanceIf(accountNumber, condition, newBalance);
+        if (update.isUpdated()) {
+            awaitDurable();
+        }
+        return update;
+    }
+
+    @Override
+    public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance,
+                                         String operationKey) {
+        BalanceUpdate update = super.updateBalanceIf(accountNumber, condition, newBalance, operationKey);
+        if (update.isUpdated()) {
+            awaitDurable();
+        }
+        return update;
+    }
+
+    @Override
+    public OptionalLong findOperationBalance(String operationKey) {
+        CompletedOperation operation = operations.get(operationKey);
+        return operation != null ? OptionalLong.of(operation.balanceInOre) : OptionalLong.empty();
+    }
+
+    @Override
+    public BalanceTransfer transfer(String fromAccountNumber, String toAccountNumber, long amountInOre) {
+        BalanceTransfer transfer = super.transfer(fromAccountNumber, toAccountNumber, amountInOre);
+        if (transfer.isTransferred()) {
+            awaitDurable();
+        }
+        return transfer;
+    }
+
+    @Override
+    public void runBatch(Runnable batch) {
+        if (batching.get()) {
+            batch.run(); // Redan i en omgång, som synkar när den är klar
+            return;
+        }
+        batching.set(Boolean.TRUE);
+        try {
+            batch.run();
+        } finally {
+            batching.set(Boolean.FALSE);
+            // Även om omgången avbröts ska det som hann loggas bli beständigt
+            awaitDurable();
+        }
+    }
+
+    @Override
+    public void linkAccountToCard(String accountNumber, String cardNumber) {
+        super.linkAccountToCard(accountNumber, cardNumber);
+        awaitDurable();
+    }
+
+    @Override
+    protected void onAccountSaved(Account account) {
+        if (recovering) {
+            return;
+        }
+        byte[] number = LogRecords.utf8(account.getAccountNumber());
+        byte[] name = LogRecords.utf8(account.getAccountName());
+        ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(number) + LogRecords.sizeOf(name) + 8);
+        record.put(ACCOUNT_SAVED);
+        LogRecords.putString(record, number);
+        LogRecords.putString(record, name);
+        record.putLong(account.getBalanceInOre());
+        append(record);
+    }
+
+    @Override
+    protected void onBalanceChanged(Account updatedAccount, String operationKey) {
+        if (recovering) {
+            return;
+        }
+        byte[] number = LogRecords.utf8(updatedAccount.getAccountNumber());
+        if (operationKey == null) {
+            ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(number) + 8);
+            record.put(BALANCE_CHANGED);
+            LogRecords.putString(record, number);
+            record.putLong(updatedAccount.getBalanceInOre());
+            append(record);
+            return;
+        }
+
+        // Nyckeln reserveras först, så att en full karta avvisar ändringen innan den
+        // loggas; en nyckel som redan finns behålls som den är
+        long timestamp = System.currentTimeMillis();
+        CompletedOperation operation = new CompletedOperation(updatedAccount.getBalanceInOre(), timestamp);
+        boolean reserved = operations.putIfAbsent(operationKey, operation) == null;
+
+        // Nyckeln och saldot i samma post, så de blir beständiga tillsammans
+        byte[] key = LogRecords.utf8(operationKey);
+        ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(number) + 8 + LogRecords.sizeOf(key) + 8);
+        record.put(KEYED_BALANCE_CHANGED);
+        LogRecords.putString(record, number);
+        record.putLong(updatedAccount.getBalanceInOre());
+        LogRecords.putString(record, key);
+        record.putLong(timestamp);
+        try {
+            append(record);
+        } catch (RuntimeException e) {
+            if (reserved) {
+                operations.remove(operationKey, operation);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Loggar båda saldona i en enda post, så att en krasch aldrig kan lämna
+     * en överföring till hälften genomförd efter uppspelning.
+     */
+    @Override
+    protected void onBalancesTransferred(Account fromAccount, Account toAccount) {
+        if (recovering) {
+            return;
+        }
+        byte[] from = LogRecords.utf8(fromAccount.getAccountNumber());
+        byte[] to = LogRecords.utf8(toAccount.getAccountNumber());
+        ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(from) + 8 + LogRecords.sizeOf(to) + 8);
+        record.put(BALANCES_TRANSFERRED);
+        LogRecords.putString(record, from);
+        record.putLong(fromAccount.getBalanceInOre());
+        LogRecords.putString(record, to);
+        record.putLong(toAccount.getBalanceInOre());
+        append(record);
+    }
+
+    @Override
+    protected void onAccountLinked(String accountNumber, String cardNumber) {
+        if (recovering) {
+            return;
+        }
+        byte[] account = LogRecords.utf8(accountNumber);
+        byte[] card = LogRecords.utf8(cardNumber);
+        ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(account) + LogRecords.sizeOf(card));
+        record.put(ACCOUNT_LINKED);
+        LogRecords.putString(record, account);
+        LogRecords.putString(record, card);
+        append(record);
+    }
+
+    /**
+     * Skriver en snapshot av alla konton och kopplingar.
+     *
+     * Först påbörjas ett nytt loggsegment. Därefter läses varje konto under
+     * sitt lås, så allt som loggats i de gamla segmenten finns med i
+     * snapshoten och de segmenten kan tas bort. Ändringar som görs under
+     * tiden hamnar i det nya segmentet och spelas upp efter snapshoten;
+     * eftersom posterna innehåller absoluta värden gör det inget om samma
+     * ändring även råkar finnas i snapshoten.
+     *
+     * @return true om en snapshot skrevs, false om inget ändrats sedan förra
+     * @throws IOException om snapshoten inte kan skrivas
+     */
+    @Override
+    public synchronized boolean snapshot() throws IOException {
+        long sequence = log.getAppendedSequence();
+        if (sequence == sequenceAtLastSnapshot) {
+            return false;
+        }
+        long generation = log.roll();
+        SnapshotFile.write(directory, NAME, generation, this::writeSnapshot);
+        log.deleteSegmentsBefore(generation);
+        SnapshotFile.deleteBefore(directory, NAME, generation);
+        sequenceAtLastSnapshot = sequence;
+        return true;
+    }
+
+    /**
+     * Hämtar den underliggande loggen, t.ex. för att läsa statistik.
+     * @return write-ahead-loggen
+     */
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    /**
+     * Skriver varje konto som [1][kontonummer][namn][saldo][antal kort][kortnummer...]
+     * och avslutar med en nolla. Därefter följer idempotensnycklarna som
+     * [1][nyckel][saldo][tidpunkt], också avslutade med en nolla.
+     */
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        try {
+            forEachAccount((account, linkedCards) -> {
+                try {
+                    out.writeByte(SNAPSHOT_ENTRY);
+                    LogRecords.writeString(out, account.getAccountNumber());
+                    LogRecords.writeString(out, account.getAccountName());
+                    out.writeLong(account.getBalanceInOre());
+                    out.writeShort(linkedCards.size());
+                    for (String cardNumber : linkedCards) {
+                        LogRecords.writeString(out, cardNumber);
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeByte(SNAPSHOT_END);
+
+        try {
+            operations.forEach((key, operation) -> {
+                try {
+                    out.writeByte(SNAPSHOT_ENTRY);
+                    LogRecords.writeString(out, key);
+                    out.writeLong(operation.balanceInOre);
+                    out.writeLong(operation.timestampMillis);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeByte(SNAPSHOT_END);
+    }
+
+    private void loadSnapshot(ByteBuffer data) {
+        byte[] scratch = LogRecords.newScratch();
+        while (data.get() == SNAPSHOT_ENTRY) {
+            String number = LogRecords.getString(data, scratch);
+            String name = LogRecords.getString(data, scratch);
+            super.saveAccount(Account.withBalanceInOre(number, name, data.getLong()));
+            int linkedCards = data.getShort() & 0xFFFF;
+            for (int i = 0; i < linkedCards; i++) {
+                super.linkAccountToCard(number, LogRecords.getString(data, scratch));
+            }
+        }
+        // Snapshots från före idempotensnycklarna slutar efter kontona
+        while (data.hasRemaining() && data.get() == SNAPSHOT_ENTRY) {
+            String key = LogRecords.getString(data, scratch);
+            long balance = data.getLong();
+            restoreOperation(key, balance, data.getLong());
+        }
+    }
+
+    /**
+     * Applicerar en loggpost på minnesstrukturerna vid uppstart.
+     * Posterna innehåller absoluta värden, så de kan spelas upp i ordning
+     * utan att känna till tidigare saldon.
+     */
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case ACCOUNT_SAVED -> {
+                String number = LogRecords.getString(record);
+                String name = LogRecords.getString(record);
+                super.saveAccount(Account.withBalanceInOre(number, name, record.getLong()));
+            }
+            case BALANCE_CHANGED -> {
+                String number = LogRecords.getString(record);
+                long balance = record.getLong();
+                super.updateBalanceIf(number, current -> true, current -> balance);
+            }
+            case KEYED_BALANCE_CHANGED -> {
+                String number = LogRecords.getString(record);
+                long balance = record.getLong();
+                String key = LogRecords.getString(record);
+                long timestamp = record.getLong();
+                super.updateBalanceIf(number, current -> true, current -> balance);
+                restoreOperation(key, balance, timestamp);
+            }
+            case BALANCES_TRANSFERRED -> {
+                String from = LogRecords.getString(record);
+                long fromBalance = record.getLong();
+                String to = LogRecords.getString(record);
+                long toBalance = record.getLong();
+                super.updateBalanceIf(from, current -> true, current -> fromBalance);
+                super.updateBalanceIf(to, current -> true, current -> toBalance);
+            }
+            case ACCOUNT_LINKED -> {
+                String account = LogRecords.getString(record);
+                String card = LogRecords.getString(record);
+                super.linkAccountToCard(account, card);
+            }
+            default -> throw new IllegalStateException("Unknown account log record type: " + type);
+        }
+    }
+
+    private void restoreOperation(String key, long balanceInOre, long timestampMillis) {
+        // Nycklar som redan gått ut behövs inte; övriga får ny livslängd från uppstarten
+        if (System.currentTimeMillis() - timestampMillis < operationKeyTtl.toMillis()) {
+            operations.putIfAbsent(key, new CompletedOperation(balanceInOre, timestampMillis));
+        }
+    }
+
+    private void append(ByteBuffer record) {
+        record.flip();
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write account change to log", e);
+        }
+    }
+
+    private void awaitDurable() {
+        if (batching.get()) {
+            return; // Synkas när omgången är klar
+        }
+        try {
+            log.syncAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync account log", e);
+        }
+    }
+
+    /**
+     * Saldot efter en operation med idempotensnyckel och när den gjordes.
+     */
+    private static final class CompletedOperation {
+        final long balanceInOre;
+        final long timestampMillis;
+
+        CompletedOperation(long balanceInOre, long timestampMillis) {
+            this.balanceInOre = balanceInOre;
+            this.timestampMillis = timestampMillis;
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package com.bank.repository;
+
+import com.bank.model.Card;
+import com.bank.repository.wal.LogRecords;
+import com.bank.repository.wal.SnapshotFile;
+import com.bank.repository.wal.WriteAheadLog;
+
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+/**
+ * Ett beständigt CardRepository som överlever omstart.
+ *
+ * Varje gång ett kort sparas, både nya kort och kort vars säkerhetstillstånd
+ * ändrats (blockerat, antal felaktiga PIN-försök), skrivs kortets fullständiga
+ * tillstånd som en post i en write-ahead-logg. Vid uppstart gäller den sista
+ * posten för varje kort. Fsync delas mellan samtidiga anrop via group commit.
+ *
+ * Med snapshot() skrivs alla kort till en binär fil så att äldre loggsegment
+ * kan tas bort, på samma sätt som i PersistentAccountRepository.
+ */
+public final class PersistentCardRepository extends InMemoryCardRepository implements Closeable, Snapshottable {
+    private static final String NAME = "cards";
+    private static final byte CARD_SAVED = 1;
+
+    // Markerar om ett kort till följer i snapshoten
+    private static final byte SNAPSHOT_ENTRY = 1;
+    private static final byte SNAPSHOT_END = 0;
+
+    private final Path directory;
+    private final WriteAheadLog log;
+    private long sequenceAtLastSnapshot = -1;
+
+    /**
+     * Öppnar repositoryt och läser in den senaste snapshoten och de kort
+     * som sparats efter den.
+     *
+     * @param directory Katalogen där snapshots och loggsegment lagras
+     * @throws IOException om loggen eller snapshoten inte kan läsas
+     */
+    public PersistentCardRepository(Path directory) throws IOException {
+        this.directory = directory;
+        this.log = new WriteAheadLog(directory, NAME);
+        try {
+            long snapshotGeneration = SnapshotFile.load(directory, NAME, this::loadSnapshot);
+            if (log.getGeneration() < snapshotGeneration) {
+                throw new IOException("Card log segments are missing for snapshot " + snapshotGeneration);
+            }
+            log.replay(snapshotGeneration, this::apply);
+        } catch (IOException | RuntimeException e) {
+            log.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Sparar ett kort och väntar tills ändringen är beständig.
+     * Kortets tillstånd läses och loggas under kortets eget lås, så att
+     * den sista posten för ett kort alltid speglar dess senaste tillstånd.
+     *
+     * @param card Kortet som ska sparas
+     */
+    @Override
+    public void saveCard(Card card) {
+        synchronized (card) {
+            append(cardRecord(card));
+            super.saveCard(card);
+        }
+        try {
+            log.syncAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not sync card log", e);
+        }
+    }
+
+    /**
+     * Skriver en snapshot av alla kort. Varje kort läses under sitt eget lås,
+     * samma lås som saveCard loggar under, så snapshoten täcker allt som
+     * skrivits till segmenten före den.
+     *
+     * @return true om en snapshot skrevs, false om inget ändrats sedan förra
+     * @throws IOException om snapshoten inte kan skrivas
+     */
+    @Override
+    public synchronized boolean snapshot() throws IOException {
+        long sequence = log.getAppendedSequence();
+        if (sequence == sequenceAtLastSnapshot) {
+            return false;
+        }
+        long generation = log.roll();
+        SnapshotFile.write(directory, NAME, generation, this::writeSnapshot);
+        log.deleteSegmentsBefore(generation);
+        SnapshotFile.deleteBefore(directory, NAME, generation);
+        sequenceAtLastSnapshot = sequence;
+        return true;
+    }
+
+    /**
+     * Hämtar den underliggande loggen, t.ex. för att läsa statistik.
+     * @return write-ahead-loggen
+     */
+    public WriteAheadLog getLog() {
+        return log;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    private ByteBuffer cardRecord(Card card) {
+        byte[] number = LogRecords.utf8(card.getCardNumber());
+        byte[] expiry = LogRecords.utf8(card.getExpiryDate());
+        byte[] pin = LogRecords.utf8(card.getPin());
+        ByteBuffer record = ByteBuffer.allocate(1 + LogRecords.sizeOf(number) + LogRecords.sizeOf(expiry)
+                + LogRecords.sizeOf(pin) + 1 + 4);
+        record.put(CARD_SAVED);
+        LogRecords.putString(record, number);
+        LogRecords.putString(record, expiry);
+        LogRecords.putString(record, pin);
+        record.put((byte) (card.isBlocked() ? 1 : 0));
+        record.putInt(card.getFailedAttempts());
+        return record;
+    }
+
+    private void writeSnapshot(DataOutputStream out) throws IOException {
+        try {
+            forEachCard(card -> {
+                try {
+                    synchronized (card) {
+                        out.writeByte(SNAPSHOT_ENTRY);
+                        LogRecords.writeString(out, card.getCardNumber());
+                        LogRecords.writeString(out, card.getExpiryDate());
+                        LogRecords.writeString(out, card.getPin());
+                        out.writeByte(card.isBlocked() ? 1 : 0);
+                        out.writeInt(card.getFailedAttempts());
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        out.writeByte(SNAPSHOT_END);
+    }
+
+    private void loadSnapshot(ByteBuffer data) {
+        byte[] scratch = LogRecords.newScratch();
+        while (data.get() == SNAPSHOT_ENTRY) {
+            String number = LogRecords.getString(data, scratch);
+            String expiry = LogRecords.getString(data, scratch);
+            String pin = LogRecords.getString(data, scratch);
+            boolean blocked = data.get() != 0;
+            super.saveCard(new Card(number, expiry, pin, blocked, data.getInt()));
+        }
+    }
+
+    /**
+     * Applicerar en loggpost vid uppstart. En senare post för samma kort
+     * ersätter den tidigare.
+     */
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+            case CARD_SAVED -> {
+                String number = LogRecords.getString(record);
+                String expiry = LogRecords.getString(record);
+                String pin = LogRecords.getString(record);
+                boolean blocked = record.get() != 0;
+                super.saveCard(new Card(number, expiry, pin, blocked, record.getInt()));
+            }
+            default -> throw new IllegalStateException("Unknown card log record type: " + type);
+        }
+    }
+
+    private void append(ByteBuffer record) {
+        record.flip();
+        try {
+            log.append(record);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write card change to log", e);
+        }
+    }
+}
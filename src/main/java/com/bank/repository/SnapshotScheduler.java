@@ -0,0 +1,86 @@
+package com.bank.repository;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tar snapshots av ett eller flera repositories med jämna mellanrum i en
+ * egen bakgrundstråd, så att loggarna hålls korta och uppstarten snabb.
+ *
+ * Ett misslyckat försök loggas inte vidare utan räknas bara; loggen finns
+ * kvar och nästa försök görs vid nästa intervall.
+ */
+public class SnapshotScheduler implements Closeable {
+    private final List<Snapshottable> repositories;
+    private final ScheduledExecutorService executor;
+    private final AtomicLong snapshotCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+
+    /**
+     * Startar schemaläggningen.
+     *
+     * @param interval Tid mellan två snapshots
+     * @param repositories Repositories som ska snapshottas
+     * @throws IllegalArgumentException om intervallet inte är positivt
+     */
+    public SnapshotScheduler(Duration interval, Snapshottable... repositories) {
+        if (interval.isZero() || interval.isNegative()) {
+            throw new IllegalArgumentException("Snapshot interval must be positive");
+        }
+        this.repositories = List.of(repositories);
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "snapshot-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long millis = interval.toMillis();
+        executor.scheduleWithFixedDelay(this::snapshotAll, millis, millis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Hämtar antalet snapshots som skrivits.
+     * @return antalet lyckade snapshots
+     */
+    public long getSnapshotCount() {
+        return snapshotCount.get();
+    }
+
+    /**
+     * Hämtar antalet snapshots som misslyckats.
+     * @return antalet misslyckade försök
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    /**
+     * Stoppar schemaläggningen och väntar tills en pågående snapshot är klar.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void snapshotAll() {
+        for (Snapshottable repository : repositories) {
+            try {
+                if (repository.snapshot()) {
+                    snapshotCount.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException e) {
+                failureCount.incrementAndGet();
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.bank.repository;
+
+import java.io.IOException;
+
+/**
+ * Ett repository som kan skriva en snapshot av hela sitt tillstånd, så att
+ * uppstarten bara behöver läsa snapshoten och loggens svans.
+ */
+public interface Snapshottable {
+
+    /**
+     * Skriver en snapshot och tar bort loggsegment som den ersätter.
+     *
+     * @return true om en snapshot skrevs, false om inget ändrats sedan förra
+     * @throws IOException om snapshoten inte kan skrivas
+     */
+    boolean snapshot() throws IOException;
+}
@@ -0,0 +1,98 @@
+package com.bank.repository.wal;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hjälpmetoder för att koda och avkoda fält i binära loggposter.
+ *
+ * Strängar lagras som [längd (short)][UTF-8-bytes]. Kontonummer och
+ * kortnummer är korta, så två bytes för längden räcker gott.
+ */
+public final class LogRecords {
+    private static final int MAX_STRING_BYTES = 0xFFFF;
+
+    private LogRecords() {
+        // Endast statiska hjälpmetoder
+    }
+
+    /**
+     * Kodar en sträng till UTF-8 så att postens storlek kan räknas ut i förväg.
+     *
+     * @param value Strängen som ska kodas
+     * @return Strängens UTF-8-bytes
+     * @throws IllegalArgumentException om strängen är för lång för en loggpost
+     */
+    public static byte[] utf8(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_STRING_BYTES) {
+            throw new IllegalArgumentException("String too long for log record: " + bytes.length + " bytes");
+        }
+        return bytes;
+    }
+
+    /**
+     * Antal bytes som en kodad sträng tar i en post.
+     */
+    public static int sizeOf(byte[] utf8) {
+        return 2 + utf8.length;
+    }
+
+    /**
+     * Skriver en redan kodad sträng med längdprefix.
+     */
+    public static void putString(ByteBuffer buffer, byte[] utf8) {
+        buffer.putShort((short) utf8.length);
+        buffer.put(utf8);
+    }
+
+    /**
+     * Läser en sträng med längdprefix.
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        String value;
+        if (buffer.hasArray()) {
+            value = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+            buffer.position(buffer.position() + length);
+        } else {
+            byte[] bytes = new byte[length];
+            buffer.get(bytes);
+            value = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return value;
+    }
+
+    /**
+     * Läser en sträng med längdprefix via en återanvändbar buffert, vilket
+     * sparar en allokering per sträng när källan inte är en array, t.ex. en
+     * minnesmappad fil.
+     *
+     * @param buffer Källan
+     * @param scratch Mellanbuffert, minst 0xFFFF bytes stor
+     * @return Den lästa strängen
+     */
+    public static String getString(ByteBuffer buffer, byte[] scratch) {
+        int length = buffer.getShort() & 0xFFFF;
+        buffer.get(scratch, 0, length);
+        return new String(scratch, 0, length, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skapar en mellanbuffert som räcker för den längsta tillåtna strängen.
+     */
+    public static byte[] newScratch() {
+        return new byte[MAX_STRING_BYTES];
+    }
+
+    /**
+     * Skriver en sträng med längdprefix till en ström, i samma format som putString.
+     */
+    public static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = utf8(value);
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+}
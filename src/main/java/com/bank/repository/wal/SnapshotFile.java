@@ -0,0 +1,209 @@
+package com.bank.repository.wal;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Läser och skriver kompakta binära snapshots av ett repositorys tillstånd.
+ *
+ * En snapshot hör ihop med ett loggsegment i WriteAheadLog: snapshot nummer N
+ * innehåller allt som skrivits till segmenten före N. Vid uppstart läses den
+ * senaste snapshoten och därefter spelas bara segment N och senare upp.
+ *
+ * Filformat: [magic (int)][version (int)][segment (long)][data][CRC32 (int)].
+ * Filen skrivs först till en temporär fil som sedan döps om atomiskt, så en
+ * krasch mitt i en snapshot lämnar den föregående snapshoten orörd. Efter
+ * namnbytet synkas katalogen, så att loggsegmenten som snapshoten ersätter
+ * aldrig kan tas bort beständigt medan namnbytet går förlorat. Vid
+ * inläsning mappas filen in i minnet i stället för att läsas via strömmar.
+ */
+public final class SnapshotFile {
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    private static final int TRAILER_SIZE = 4;
+    private static final String SNAPSHOT_SUFFIX = ".snap";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final int WRITE_BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Skriver snapshotens data. Kan kasta IOException till skillnad från Consumer.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private SnapshotFile() {
+        // Endast statiska hjälpmetoder
+    }
+
+    /**
+     * Skriver en ny snapshot och gör den synlig först när den är komplett
+     * och beständig. När metoden returnerar är även namnbytet beständigt, så
+     * segmenten före snapshoten kan tas bort.
+     *
+     * @param directory Katalogen där snapshoten lagras
+     * @param name Repositoryts namn, samma som loggens
+     * @param generation Loggsegmentet som snapshoten hör till
+     * @param writer Skriver själva datat
+     * @throws IOException om snapshoten inte kan skrivas
+     */
+    public static void write(Path directory, String name, long generation, Writer writer) throws IOException {
+        Path target = snapshotPath(directory, name, generation);
+        Path temp = target.resolveSibling(target.getFileName() + TEMP_SUFFIX);
+
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(generation).flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            // CRC räknas löpande medan datat skrivs, så filen behöver inte läsas om
+            CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(unclosable(channel), WRITE_BUFFER_SIZE), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            writer.write(out);
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        WriteAheadLog.syncDirectory(directory);
+    }
+
+    /**
+     * Läser in den senaste snapshoten, om någon finns.
+     *
+     * @param directory Katalogen där snapshoten lagras
+     * @param name Repositoryts namn
+     * @param reader Tar emot snapshotens data (utan header och kontrollsumma)
+     * @return Loggsegmentet som snapshoten hör till, eller 0 om ingen snapshot finns
+     * @throws IOException om snapshoten inte kan läsas eller är trasig
+     */
+    public static long load(Path directory, String name, Consumer<ByteBuffer> reader) throws IOException {
+        long generation = latestGeneration(directory, name);
+        if (generation == 0) {
+            return 0;
+        }
+
+        Path file = snapshotPath(directory, name, generation);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE + TRAILER_SIZE || size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot has invalid size: " + file);
+            }
+            // Bufferten lever kvar efter att kanalen stängts tills den samlas in
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (mapped.getInt() != MAGIC || mapped.getInt() != VERSION || mapped.getLong() != generation) {
+                throw new IOException("Snapshot header does not match: " + file);
+            }
+            int dataEnd = (int) size - TRAILER_SIZE;
+            ByteBuffer data = mapped.slice(HEADER_SIZE, dataEnd - HEADER_SIZE);
+
+            CRC32 crc = new CRC32();
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != mapped.getInt(dataEnd)) {
+                throw new IOException("Snapshot checksum does not match: " + file);
+            }
+            reader.accept(data);
+        }
+        return generation;
+    }
+
+    /**
+     * Tar bort snapshots som är äldre än den angivna, samt kvarlämnade
+     * temporära filer från avbrutna skrivningar.
+     *
+     * @param directory Katalogen där snapshotarna lagras
+     * @param name Repositoryts namn
+     * @param generationToKeep Den äldsta snapshot som ska behållas
+     * @throws IOException om en fil inte kan tas bort
+     */
+    public static void deleteBefore(Path directory, String name, long generationToKeep) throws IOException {
+        String prefix = name + "-";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SNAPSHOT_SUFFIX + "*")) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                long generation = parseGeneration(fileName, prefix);
+                if (fileName.endsWith(TEMP_SUFFIX) || (generation > 0 && generation < generationToKeep)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hittar numret på den senaste färdiga snapshoten.
+     *
+     * @return Loggsegmentet för den senaste snapshoten, eller 0 om ingen finns
+     */
+    public static long latestGeneration(Path directory, String name) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        String prefix = name + "-";
+        long latest = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SNAPSHOT_SUFFIX)) {
+            for (Path file : files) {
+                latest = Math.max(latest, parseGeneration(file.getFileName().toString(), prefix));
+            }
+        }
+        return latest;
+    }
+
+    private static Path snapshotPath(Path directory, String name, long generation) {
+        return directory.resolve(String.format("%s-%06d%s", name, generation, SNAPSHOT_SUFFIX));
+    }
+
+    /**
+     * Läser ut segmentnumret ur ett filnamn, eller 0 om namnet inte följer mönstret.
+     */
+    private static long parseGeneration(String fileName, String prefix) {
+        int end = fileName.indexOf(SNAPSHOT_SUFFIX, prefix.length());
+        if (end < 0) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(fileName.substring(prefix.length(), end));
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * En ström som skriver till kanalen men lämnar stängningen åt anroparen.
+     */
+    private static OutputStream unclosable(FileChannel channel) {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] bytes, int offset, int length) throws IOException {
+                ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        };
+    }
+}
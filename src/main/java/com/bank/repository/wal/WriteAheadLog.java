@@ -0,0 +1,436 @@
+package com.bank.repository.wal;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * En binär logg där poster endast läggs till i slutet (append-only).
+ *
+ * Varje post lagras som [längd (int)][CRC32 (int)][data]. Vid start läses
+ * loggen igenom och en ofullständig eller trasig post i slutet (t.ex. efter
+ * strömavbrott mitt i en skrivning) kapas bort.
+ *
+ * Segment:
+ * Loggen består av numrerade segmentfiler, "namn-000001.wal", "namn-000002.wal"
+ * osv. Med roll() påbörjas ett nytt segment. En snapshot som tas direkt efter
+ * roll() täcker allt i de tidigare segmenten, som då kan tas bort, så att
+ * uppstarten bara behöver spela upp loggens svans.
+ *
+ * Group commit:
+ * Att skriva en post är billigt, men force() (fsync) är dyrt. I stället för
+ * att varje transaktion gör en egen fsync turas skrivarna om: den första tråd
+ * som behöver vänta blir "ledare" och gör en enda force() som täcker alla
+ * poster som skrivits fram till dess. Trådar som kommer under tiden väntar in
+ * nästa omgång, så många transaktioner delar på varje fsync.
+ *
+ * Misslyckade skrivningar:
+ * Om en skrivning misslyckas halvvägs (t.ex. full disk) kapas segmentet
+ * tillbaka till postens början, så att nästa post inte hamnar efter en trasig
+ * post och försvinner vid nästa start. Går inte heller det markeras loggen
+ * som trasig och alla senare append avvisas.
+ */
+public class WriteAheadLog implements Closeable {
+    private static final int HEADER_SIZE = 8;
+    private static final String SEGMENT_SUFFIX = ".wal";
+
+    private final Path directory;
+    private final String name;
+    private volatile FileChannel channel;
+    private long generation;
+
+    // Skyddar skrivpositionen så att poster aldrig blandas ihop
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ByteBuffer header = ByteBuffer.allocateDirect(HEADER_SIZE);
+    private volatile long appendedSequence;
+    // Sätts om en trasig post inte kunde kapas bort; loggen tar då inte emot fler poster
+    private volatile IOException failure;
+
+    // Samordnar group commit
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncFinished = syncLock.newCondition();
+    private boolean syncInProgress;
+    private long durableSequence;
+    private final AtomicLong syncCount = new AtomicLong();
+
+    /**
+     * Öppnar (eller skapar) en segmenterad logg i en katalog.
+     * En eventuell trasig post i slutet av det senaste segmentet tas bort.
+     *
+     * @param directory Katalogen där segmentfilerna ligger
+     * @param name Loggens namn, används som prefix för filerna
+     * @throws IOException om loggen inte kan öppnas
+     */
+    public WriteAheadLog(Path directory, String name) throws IOException {
+        this.directory = directory;
+        this.name = name;
+        Files.createDirectories(directory);
+
+        List<Long> generations = listGenerations();
+        this.generation = generations.isEmpty() ? 1 : generations.get(generations.size() - 1);
+        this.channel = openSegment(generation);
+        long validEnd = scan(channel, 0, null);
+        if (validEnd < channel.size()) {
+            channel.truncate(validEnd);
+        }
+        channel.position(validEnd);
+    }
+
+    /**
+     * Läser alla poster från och med ett visst segment och skickar dem till
+     * handler, i den ordning de skrevs. Ska anropas innan nya poster skrivs,
+     * normalt vid uppstart.
+     *
+     * @param fromGeneration Första segmentet som ska spelas upp
+     * @param handler Tar emot varje posts data (positionerad vid dess början)
+     * @throws IOException om loggen inte kan läsas
+     */
+    public void replay(long fromGeneration, Consumer<ByteBuffer> handler) throws IOException {
+        for (long segment : listGenerations()) {
+            if (segment < fromGeneration) {
+                continue;
+            }
+            if (segment == generation) {
+                scan(channel, 0, handler);
+            } else {
+                try (FileChannel old = FileChannel.open(segmentPath(segment), StandardOpenOption.READ)) {
+                    scan(old, 0, handler);
+                }
+            }
+        }
+    }
+
+    /**
+     * Läser alla poster i loggen från början.
+     *
+     * @param handler Tar emot varje posts data
+     * @throws IOException om loggen inte kan läsas
+     */
+    public void replay(Consumer<ByteBuffer> handler) throws IOException {
+        replay(0, handler);
+    }
+
+    /**
+     * Avslutar det aktuella segmentet och påbörjar ett nytt.
+     * Allt som skrivits till tidigare segment görs beständigt först, så efter
+     * anropet finns varje ändring antingen i ett äldre segment eller i det nya.
+     *
+     * @return Numret på det nya segmentet
+     * @throws IOException om segmentet inte kan skapas
+     */
+    public long roll() throws IOException {
+        writeLock.lock();
+        try {
+            FileChannel previous = channel;
+            previous.force(false);
+            long rolledSequence = appendedSequence;
+
+            generation++;
+            FileChannel next = openSegment(generation);
+            // Det nya segmentet ska finnas kvar efter en krasch innan poster bekräftas i det
+            syncDirectory(directory);
+
+            // En ledare som synkar det gamla segmentet får göra klart innan det
+            // stängs; senare ledare ser det nya segmentet
+            syncLock.lock();
+            try {
+                while (syncInProgress) {
+                    syncFinished.awaitUninterruptibly();
+                }
+                channel = next;
+                // Allt som skrivits till det gamla segmentet är nu beständigt
+                if (rolledSequence > durableSequence) {
+                    durableSequence = rolledSequence;
+                }
+                syncFinished.signalAll();
+            } finally {
+                syncLock.unlock();
+            }
+            previous.close();
+            return generation;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Tar bort segment som är äldre än det angivna, t.ex. när en snapshot
+     * som täcker dem har skrivits klart.
+     *
+     * @param generationToKeep Det äldsta segmentet som ska behållas
+     * @throws IOException om en fil inte kan tas bort
+     */
+    public void deleteSegmentsBefore(long generationToKeep) throws IOException {
+        for (long segment : listGenerations()) {
+            if (segment < generationToKeep) {
+                Files.deleteIfExists(segmentPath(segment));
+            }
+        }
+    }
+
+    /**
+     * Hämtar numret på segmentet som nya poster skrivs till.
+     * @return aktuellt segmentnummer
+     */
+    public long getGeneration() {
+        writeLock.lock();
+        try {
+            return generation;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Lägger till en post i loggen. Posten skrivs till filen men är inte
+     * garanterat beständig förrän sync anropats med det returnerade numret.
+     *
+     * @param payload Postens data från position till limit
+     * @return Postens sekvensnummer
+     * @throws IOException om skrivningen misslyckas eller loggen är trasig
+     */
+    public long append(ByteBuffer payload) throws IOException {
+        int length = payload.remaining();
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+
+        writeLock.lock();
+        try {
+            if (failure != null) {
+                throw new IOException("Log is unusable after an earlier write failure", failure);
+            }
+            long start = channel.position();
+            try {
+                header.clear();
+                header.putInt(length).putInt((int) crc.getValue()).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (payload.hasRemaining()) {
+                    channel.write(payload);
+                }
+            } catch (IOException e) {
+                discardFrom(start, e);
+                throw e;
+            }
+            long sequence = appendedSequence + 1;
+            appendedSequence = sequence;
+            return sequence;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Kapar bort en post som bara delvis skrevs. Anropas med writeLock.
+     */
+    private void discardFrom(long start, IOException cause) {
+        try {
+            channel.truncate(start);
+            channel.position(start);
+        } catch (IOException e) {
+            cause.addSuppressed(e);
+            failure = cause;
+        }
+    }
+
+    /**
+     * Väntar tills posten med angivet sekvensnummer (och alla före den) har
+     * skrivits ner till disk. Se klassbeskrivningen för hur anrop grupperas.
+     *
+     * @param sequence Sekvensnummer från append
+     * @throws IOException om force() misslyckas
+     */
+    public void sync(long sequence) throws IOException {
+        syncLock.lock();
+        try {
+            while (durableSequence < sequence) {
+                if (syncInProgress) {
+                    // En annan tråd gör redan en fsync; vänta och kontrollera igen
+                    syncFinished.awaitUninterruptibly();
+                    continue;
+                }
+
+                // Den här tråden blir ledare och synkar allt som skrivits hittills
+                syncInProgress = true;
+                long target = appendedSequence;
+                // roll() byter och stänger bara segment under syncLock, när ingen ledare synkar
+                FileChannel segment = channel;
+                IOException failure = null;
+                syncLock.unlock();
+                try {
+                    segment.force(false);
+                    syncCount.incrementAndGet();
+                } catch (IOException e) {
+                    failure = e;
+                } finally {
+                    syncLock.lock();
+                    syncInProgress = false;
+                    if (failure == null && target > durableSequence) {
+                        durableSequence = target;
+                    }
+                    syncFinished.signalAll();
+                }
+                if (failure != null) {
+                    throw failure;
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Väntar tills alla poster som hittills lagts till är beständiga.
+     *
+     * @throws IOException om force() misslyckas
+     */
+    public void syncAll() throws IOException {
+        sync(appendedSequence);
+    }
+
+    /**
+     * Hämtar antalet force()-anrop som gjorts, vilket visar hur väl
+     * group commit slår ihop transaktioner.
+     * @return antalet fsync-anrop
+     */
+    public long getSyncCount() {
+        return syncCount.get();
+    }
+
+    /**
+     * Hämtar antalet poster som lagts till sedan loggen öppnades.
+     * @return sekvensnumret för den senaste posten
+     */
+    public long getAppendedSequence() {
+        return appendedSequence;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            syncAll();
+        } finally {
+            channel.close();
+        }
+    }
+
+    /**
+     * Gör skapade, omdöpta och borttagna filer i en katalog beständiga.
+     *
+     * @param directory Katalogen
+     * @throws IOException om katalogen inte kan synkas
+     */
+    static void syncDirectory(Path directory) throws IOException {
+        FileChannel dir;
+        try {
+            dir = FileChannel.open(directory, StandardOpenOption.READ);
+        } catch (AccessDeniedException e) {
+            return; // Windows tillåter inte att kataloger öppnas, och NTFS journalför namnändringar
+        }
+        try (dir) {
+            dir.force(true);
+        }
+    }
+
+    private Path segmentPath(long segment) {
+        return directory.resolve(String.format("%s-%06d%s", name, segment, SEGMENT_SUFFIX));
+    }
+
+    private FileChannel openSegment(long segment) throws IOException {
+        return FileChannel.open(segmentPath(segment),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Listar befintliga segment i stigande ordning.
+     */
+    private List<Long> listGenerations() throws IOException {
+        List<Long> generations = new ArrayList<>();
+        String prefix = name + "-";
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, prefix + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String number = fileName.substring(prefix.length(), fileName.length() - SEGMENT_SUFFIX.length());
+                try {
+                    generations.add(Long.parseLong(number));
+                } catch (NumberFormatException ignored) {
+                    // Filer som inte följer namnmönstret tillhör inte loggen
+                }
+            }
+        }
+        Collections.sort(generations);
+        return generations;
+    }
+
+    /**
+     * Går igenom ett segment från en viss position och returnerar var den
+     * sista hela, korrekta posten slutar.
+     *
+     * @param file Segmentet som ska läsas
+     * @param from Position att börja läsa från
+     * @param handler Tar emot varje post, eller null för att bara validera
+     * @return Positionen direkt efter den sista giltiga posten
+     */
+    private long scan(FileChannel file, long from, Consumer<ByteBuffer> handler) throws IOException {
+        long size = file.size();
+        long position = from;
+        ByteBuffer head = ByteBuffer.allocate(HEADER_SIZE);
+        ByteBuffer data = ByteBuffer.allocate(256);
+        CRC32 crc = new CRC32();
+
+        while (position + HEADER_SIZE <= size) {
+            head.clear();
+            readFully(file, head, position);
+            head.flip();
+            int length = head.getInt();
+            int expectedCrc = head.getInt();
+            if (length < 0 || position + HEADER_SIZE + length > size) {
+                break; // Ofullständig post i slutet
+            }
+
+            if (data.capacity() < length) {
+                data = ByteBuffer.allocate(Math.max(length, data.capacity() * 2));
+            }
+            data.clear().limit(length);
+            readFully(file, data, position + HEADER_SIZE);
+            data.flip();
+
+            crc.reset();
+            crc.update(data.duplicate());
+            if ((int) crc.getValue() != expectedCrc) {
+                break; // Trasig post, allt efter den betraktas som ej skrivet
+            }
+
+            if (handler != null) {
+                handler.accept(data);
+            }
+            position += HEADER_SIZE + length;
+        }
+        return position;
+    }
+
+    private static void readFully(FileChannel file, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position);
+            if (read < 0) {
+                throw new IOException("Unexpected end of log at position " + position);
+            }
+            position += read;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.bank.server;
+
+import com.bank.BankSystem;
+import com.bank.ui.ConsoleMenu;
+import com.bank.ui.SocketUI;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * En server där många bankomatterminaler kan vara anslutna samtidigt.
+ *
+ * Servern lyssnar på en lokal port. Varje ansluten terminal får en egen
+ * session med en egen SocketUI och ConsoleMenu som körs på en virtuell tråd,
+ * medan alla sessioner delar samma trådsäkra services i ett BankSystem.
+ * En session som väntar på input binder därför ingen plattformstråd.
+ *
+ * Antalet samtidiga sessioner begränsas av en semafor. När gränsen är nådd
+ * får nya terminaler ett meddelande och kopplas ner direkt, i stället för
+ * att köa obegränsat. Inaktiva sessioner kopplas ner efter en tidsgräns.
+ *
+ * Inloggningsförsök räknas mot ett terminal-id som bygger på terminalens
+ * adress, så att en ny anslutning inte ger en ny, full hink. Terminaler
+ * bakom samma adress delar därför gräns.
+ */
+public class AtmServer implements Closeable {
+    private static final String SERVER_FULL_MESSAGE = "Servern är full, försök igen senare.\n";
+
+    private final BankSystem bankSystem;
+    private final ServerSocket serverSocket;
+    private final int maxSessions;
+    private final Semaphore sessionPermits;
+    private final Set<Socket> openSockets = ConcurrentHashMap.newKeySet();
+    private final int idleTimeoutMillis;
+    private final ExecutorService sessions = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread acceptThread;
+
+    private final LongAdder acceptedSessions = new LongAdder();
+    private final LongAdder rejectedSessions = new LongAdder();
+
+    /**
+     * Startar servern och börjar ta emot anslutningar.
+     *
+     * @param bankSystem Services som delas mellan alla sessioner
+     * @param port Porten att lyssna på, eller 0 för en ledig port
+     * @param maxSessions Högsta antal samtidiga sessioner
+     * @param idleTimeout Hur länge en session får vänta på input innan den kopplas ner
+     * @throws IOException om porten inte kan öppnas
+     */
+    public AtmServer(BankSystem bankSystem, int port, int maxSessions, Duration idleTimeout) throws IOException {
+        if (maxSessions <= 0) {
+            throw new IllegalArgumentException("Max sessions must be positive");
+        }
+        this.bankSystem = bankSystem;
+        this.maxSessions = maxSessions;
+        this.sessionPermits = new Semaphore(maxSessions);
+        this.idleTimeoutMillis = (int) Math.min(Integer.MAX_VALUE, idleTimeout.toMillis());
+        this.serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+
+        acceptThread = Thread.ofPlatform().name("atm-server-accept").daemon(true).start(this::acceptLoop);
+    }
+
+    /**
+     * Hämtar porten som servern lyssnar på.
+     * @return den lokala porten
+     */
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Hämtar antalet sessioner som pågår just nu.
+     * @return antal aktiva sessioner
+     */
+    public int getActiveSessionCount() {
+        return maxSessions - sessionPermits.availablePermits();
+    }
+
+    /**
+     * Hämtar antalet sessioner som startats sedan servern startade.
+     * @return antal accepterade sessioner
+     */
+    public long getAcceptedSessionCount() {
+        return acceptedSessions.sum();
+    }
+
+    /**
+     * Hämtar antalet anslutningar som nekats för att servern var full.
+     * @return antal nekade anslutningar
+     */
+    public long getRejectedSessionCount() {
+        return rejectedSessions.sum();
+    }
+
+    /**
+     * Slutar ta emot anslutningar och kopplar ner pågående sessioner.
+     * Sessionerna avbryts inte med interrupt, så en transaktion som redan
+     * påbörjats hinner skrivas klart till loggen.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        // Att stänga socketarna väcker sessioner som väntar på input
+        for (Socket socket : openSockets) {
+            closeQuietly(socket);
+        }
+        sessions.shutdown();
+        try {
+            acceptThread.join(TimeUnit.SECONDS.toMillis(5));
+            sessions.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            Socket socket;
+            try {
+                socket = serverSocket.accept();
+            } catch (SocketException e) {
+                return; // Servern har stängts
+            } catch (IOException e) {
+                continue;
+            }
+
+            if (!sessionPermits.tryAcquire()) {
+                rejectedSessions.increment();
+                rejectConnection(socket);
+                continue;
+            }
+            acceptedSessions.increment();
+            try {
+                String terminalId = "atm@" + socket.getInetAddress().getHostAddress();
+                sessions.execute(() -> runSession(socket, terminalId));
+            } catch (RuntimeException e) {
+                sessionPermits.release();
+                closeQuietly(socket);
+            }
+        }
+    }
+
+    private void runSession(Socket socket, String terminalId) {
+        openSockets.add(socket);
+        try (SocketUI ui = new SocketUI(socket)) {
+            socket.setSoTimeout(idleTimeoutMillis);
+            new ConsoleMenu(ui, bankSystem, terminalId).start();
+        } catch (IOException | UncheckedIOException e) {
+            // Terminalen kopplade ner eller var inaktiv för länge; sessionen avslutas
+        } finally {
+            openSockets.remove(socket);
+            sessionPermits.release();
+        }
+    }
+
+    private void rejectConnection(Socket socket) {
+        try (socket) {
+            OutputStream out = socket.getOutputStream();
+            out.write(SERVER_FULL_MESSAGE.getBytes(StandardCharsets.UTF_8));
+            out.flush();
+        } catch (IOException ignored) {
+            // Terminalen får inget meddelande, men anslutningen stängs ändå
+        }
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Inget mer att göra
+        }
+    }
+}
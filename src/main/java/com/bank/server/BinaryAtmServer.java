@@ -0,0 +1,625 @@
+package com.bank.server;
+
+import com.bank.BankSystem;
+import com.bank.model.Account;
+import com.bank.service.auth.LoginResult;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.util.BankConstants;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * En icke-blockerande server för det binära terminalprotokollet (se BinaryProtocol).
+ *
+ * En enda tråd hanterar alla anslutningar med en Selector. Varje anslutning
+ * har en läs- och en skrivbuffert (direkta ByteBuffers som återanvänds
+ * mellan anslutningar via en pool), och förfrågningar avkodas direkt ur
+ * läsbufferten och svaren kodas direkt in i skrivbufferten.
+ *
+ * Pipelining:
+ * Alla hela förfrågningar som kommit in på en anslutning behandlas i tur och
+ * ordning som en omgång på en virtuell tråd, eftersom services kan blockera
+ * (t.ex. fsync i ett beständigt repository). Under tiden läses inget mer från
+ * anslutningen, vilket både bevarar svarsordningen och ger mottryck mot en
+ * terminal som skickar snabbare än den läser svar.
+ *
+ * Varje anslutning har en egen inloggning från en registrerad terminal,
+ * vars id gäller för hela anslutningen. Konton kan bara nås efter
+ * AUTHENTICATE och bara om de är kopplade till det inloggade kortet.
+ * Sessionen kontrolleras vid varje kontooperation, så en anslutning vars
+ * session gått ut eller vars kort blockerats måste logga in igen.
+ * Inloggningens session avslutas när anslutningen stängs eller när
+ * terminalen loggar in på nytt.
+ *
+ * Som i AtmServer begränsas antalet samtidiga anslutningar, eftersom varje
+ * anslutning binder egna buffertar. Över gränsen stängs nya anslutningar
+ * direkt. Anslutningar som varken skickat eller tagit emot något under
+ * tidsgränsen stängs; selektortråden letar efter dem några gånger per
+ * tidsgräns.
+ */
+public class BinaryAtmServer implements Closeable {
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_POOLED_BUFFERS = 256;
+    private static final long MAX_IDLE_CHECK_INTERVAL_MILLIS = 1_000;
+
+    private final BankSystem bankSystem;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread selectorThread;
+    private final int maxConnections;
+    private final long idleTimeoutNanos;
+    private final long idleCheckIntervalMillis;
+
+    // Anslutningar vars omgång är klar och som selektortråden ska ta över igen
+    private final Queue<Connection> completed = new ConcurrentLinkedQueue<>();
+
+    // Används bara av selektortråden
+    private final ArrayDeque<ByteBuffer> readBufferPool = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> writeBufferPool = new ArrayDeque<>();
+    private long nextIdleCheckNanos;
+
+    // Ändras bara av selektortråden
+    private volatile int openConnections;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder rejectedConnections = new LongAdder();
+    private final LongAdder idleDisconnects = new LongAdder();
+
+    /**
+     * Startar servern med standardgränserna i BankConstants.
+     *
+     * @param bankSystem Services som delas mellan alla anslutningar
+     * @param port Porten att lyssna på, eller 0 för en ledig port
+     * @throws IOException om porten inte kan öppnas
+     */
+    public BinaryAtmServer(BankSystem bankSystem, int port) throws IOException {
+        this(bankSystem, port, BankConstants.MAX_CONCURRENT_SESSIONS,
+                Duration.ofSeconds(BankConstants.SESSION_IDLE_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Startar servern.
+     *
+     * @param bankSystem Services som delas mellan alla anslutningar
+     * @param port Porten att lyssna på, eller 0 för en ledig port
+     * @param maxConnections Högsta antal samtidiga anslutningar
+     * @param idleTimeout Hur länge en anslutning får vara inaktiv innan den stängs
+     * @throws IOException om porten inte kan öppnas
+     */
+    public BinaryAtmServer(BankSystem bankSystem, int port, int maxConnections, Duration idleTimeout)
+            throws IOException {
+        if (maxConnections <= 0) {
+            throw new IllegalArgumentException("Max connections must be positive");
+        }
+        if (idleTimeout.isZero() || idleTimeout.isNegative()) {
+            throw new IllegalArgumentException("Idle timeout must be positive");
+        }
+        this.bankSystem = bankSystem;
+        this.maxConnections = maxConnections;
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.idleCheckIntervalMillis = Math.max(1, Math.min(MAX_IDLE_CHECK_INTERVAL_MILLIS, idleTimeout.toMillis() / 4));
+        this.nextIdleCheckNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(idleCheckIntervalMillis);
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+
+        selectorThread = Thread.ofPlatform().name("binary-atm-selector").daemon(true).start(this::selectLoop);
+    }
+
+    /**
+     * Hämtar porten som servern lyssnar på.
+     * @return den lokala porten
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Hämtar antalet behandlade förfrågningar.
+     * @return antal förfrågningar
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Hämtar antalet anslutningar sedan servern startade.
+     * @return antal anslutningar
+     */
+    public long getConnectionCount() {
+        return connections.sum();
+    }
+
+    /**
+     * Hämtar antalet anslutningar som är öppna just nu.
+     * @return antal öppna anslutningar
+     */
+    public int getOpenConnectionCount() {
+        return openConnections;
+    }
+
+    /**
+     * Hämtar antalet anslutningar som stängts direkt för att servern var full.
+     * @return antal nekade anslutningar
+     */
+    public long getRejectedConnectionCount() {
+        return rejectedConnections.sum();
+    }
+
+    /**
+     * Hämtar antalet anslutningar som stängts för att de var inaktiva för länge.
+     * @return antal stängda inaktiva anslutningar
+     */
+    public long getIdleDisconnectCount() {
+        return idleDisconnects.sum();
+    }
+
+    /**
+     * Stänger servern och väntar kort på pågående anrop. De avbryts inte med
+     * interrupt, så en transaktion som redan påbörjats hinner skrivas klart
+     * till loggen.
+     */
+    @Override
+    public void close() throws IOException {
+        selector.close();
+        serverChannel.close();
+        workers.shutdown();
+        try {
+            selectorThread.join(TimeUnit.SECONDS.toMillis(5));
+            workers.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void selectLoop() {
+        try {
+            while (selector.isOpen()) {
+                selector.select(idleCheckIntervalMillis);
+                resumeCompleted();
+                closeIdleIfDue();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    try {
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        if (key.isAcceptable()) {
+                            accept();
+                        } else {
+                            Connection connection = (Connection) key.attachment();
+                            if (key.isReadable()) {
+                                read(connection);
+                            } else if (key.isWritable()) {
+                                write(connection);
+                            }
+                        }
+                    } catch (IOException e) {
+                        if (key.attachment() instanceof Connection connection) {
+                            closeConnection(connection);
+                        }
+                    }
+                }
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            // Servern stängs
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) {
+            return;
+        }
+        if (openConnections >= maxConnections) {
+            rejectedConnections.increment();
+            channel.close();
+            return;
+        }
+        channel.configureBlocking(false);
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel, borrow(readBufferPool, READ_BUFFER_SIZE),
+                borrow(writeBufferPool, WRITE_BUFFER_SIZE));
+        connection.lastActiveNanos = System.nanoTime();
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+        openConnections++;
+        connections.increment();
+    }
+
+    /**
+     * Stänger anslutningar som varit inaktiva längre än tidsgränsen. En
+     * anslutning vars omgång pågår räknas som aktiv.
+     */
+    private void closeIdleIfDue() {
+        long now = System.nanoTime();
+        if (now - nextIdleCheckNanos < 0) {
+            return;
+        }
+        nextIdleCheckNanos = now + TimeUnit.MILLISECONDS.toNanos(idleCheckIntervalMillis);
+        for (SelectionKey key : selector.keys()) {
+            if (key.attachment() instanceof Connection connection && !connection.busy && !connection.closed
+                    && now - connection.lastActiveNanos >= idleTimeoutNanos) {
+                idleDisconnects.increment();
+                closeConnection(connection);
+            }
+        }
+    }
+
+    private void read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.in);
+        if (read < 0) {
+            closeConnection(connection);
+            return;
+        }
+        if (read > 0) {
+            connection.lastActiveNanos = System.nanoTime();
+        }
+        startBatchIfComplete(connection);
+    }
+
+    private void write(Connection connection) throws IOException {
+        ByteBuffer out = connection.out;
+        out.flip();
+        if (connection.channel.write(out) > 0) {
+            connection.lastActiveNanos = System.nanoTime();
+        }
+        out.compact();
+        if (out.position() > 0) {
+            return; // Resten skrivs när kanalen blir skrivbar igen
+        }
+        if (connection.failed) {
+            closeConnection(connection);
+            return;
+        }
+        connection.key.interestOps(SelectionKey.OP_READ);
+        startBatchIfComplete(connection);
+    }
+
+    /**
+     * Startar en omgång på en arbetstråd om det finns minst en hel förfrågan.
+     */
+    private void startBatchIfComplete(Connection connection) {
+        if (!hasCompleteRequest(connection.in)) {
+            if (!connection.in.hasRemaining()) {
+                // Bufferten är full utan en hel förfrågan; längden är ogiltig
+                closeConnection(connection);
+            }
+            return;
+        }
+        connection.busy = true;
+        connection.key.interestOps(0);
+        workers.execute(() -> {
+            processBatch(connection);
+            completed.add(connection);
+            selector.wakeup();
+        });
+    }
+
+    /**
+     * Tar tillbaka anslutningar vars omgång är klar och skickar deras svar.
+     */
+    private void resumeCompleted() throws IOException {
+        Connection connection;
+        while ((connection = completed.poll()) != null) {
+            connection.busy = false;
+            connection.lastActiveNanos = System.nanoTime();
+            if (connection.closed) {
+                finish(connection);
+                continue;
+            }
+            if (connection.out.position() > 0) {
+                connection.key.interestOps(SelectionKey.OP_WRITE);
+            } else if (connection.failed) {
+                closeConnection(connection);
+            } else {
+                connection.key.interestOps(SelectionKey.OP_READ);
+                startBatchIfComplete(connection);
+            }
+        }
+    }
+
+    private static boolean hasCompleteRequest(ByteBuffer in) {
+        if (in.position() < BinaryProtocol.LENGTH_FIELD_SIZE) {
+            return false;
+        }
+        int length = in.getInt(0);
+        return length < BinaryProtocol.REQUEST_HEADER_SIZE || length > BinaryProtocol.MAX_MESSAGE_SIZE
+                || in.position() >= BinaryProtocol.LENGTH_FIELD_SIZE + length;
+    }
+
+    /**
+     * Behandlar alla hela förfrågningar i läsbufferten, så länge svaren får
+     * plats i skrivbufferten. Körs på en arbetstråd.
+     */
+    private void processBatch(Connection connection) {
+        ByteBuffer in = connection.in;
+        ByteBuffer out = connection.out;
+        in.flip();
+        while (in.remaining() >= BinaryProtocol.LENGTH_FIELD_SIZE) {
+            int length = in.getInt(in.position());
+            if (length < BinaryProtocol.REQUEST_HEADER_SIZE || length > BinaryProtocol.MAX_MESSAGE_SIZE) {
+                connection.failed = true;
+                break;
+            }
+            if (in.remaining() < BinaryProtocol.LENGTH_FIELD_SIZE + length) {
+                break;
+            }
+            if (out.remaining() < BinaryProtocol.LENGTH_FIELD_SIZE + BinaryProtocol.MAX_MESSAGE_SIZE) {
+                break; // Vänta tills svaren skickats
+            }
+
+            int end = in.position() + BinaryProtocol.LENGTH_FIELD_SIZE + length;
+            int limit = in.limit();
+            in.position(in.position() + BinaryProtocol.LENGTH_FIELD_SIZE).limit(end);
+            handle(connection, in, out);
+            in.limit(limit).position(end);
+            requests.increment();
+        }
+        in.compact();
+    }
+
+    /**
+     * Avkodar en förfrågan och skriver svaret. Svaret begränsas till
+     * MAX_MESSAGE_SIZE; får det inte plats ersätts det av en felstatus.
+     */
+    private void handle(Connection connection, ByteBuffer request, ByteBuffer out) {
+        int requestId = request.getInt();
+        byte operation = request.get();
+
+        int start = out.position();
+        int limit = out.limit();
+        out.limit(start + BinaryProtocol.LENGTH_FIELD_SIZE + BinaryProtocol.MAX_MESSAGE_SIZE);
+        out.position(start + BinaryProtocol.LENGTH_FIELD_SIZE);
+        out.putInt(requestId).put(operation);
+        int statusPosition = out.position();
+        out.put(BinaryProtocol.STATUS_OK);
+
+        byte status;
+        try {
+            status = execute(connection, operation, request, out);
+            if (status == BinaryProtocol.STATUS_OK && request.hasRemaining()) {
+                // Överbliven data betyder att förfrågan inte följer protokollet
+                status = BinaryProtocol.STATUS_MALFORMED_REQUEST;
+            }
+        } catch (BufferUnderflowException e) {
+            status = BinaryProtocol.STATUS_MALFORMED_REQUEST;
+        } catch (BufferOverflowException e) {
+            status = BinaryProtocol.STATUS_RESPONSE_TOO_LARGE;
+        } catch (RuntimeException e) {
+            status = BinaryProtocol.STATUS_INTERNAL_ERROR;
+        }
+
+        if (status != BinaryProtocol.STATUS_OK) {
+            // Data skrivs bara för lyckade svar
+            out.position(statusPosition + 1);
+        }
+        out.put(statusPosition, status);
+        out.putInt(start, out.position() - start - BinaryProtocol.LENGTH_FIELD_SIZE);
+        out.limit(limit);
+    }
+
+    /**
+     * Utför en operation och skriver svarsdata efter statusfältet.
+     * @return svarets status
+     */
+    private byte execute(Connection connection, byte operation, ByteBuffer request, ByteBuffer out) {
+        if (operation == BinaryProtocol.AUTHENTICATE) {
+            String cardNumber = BinaryProtocol.getString(request);
+            String pin = BinaryProtocol.getString(request);
+            String terminalId = BinaryProtocol.getString(request);
+            // Id:t binds till anslutningen vid första inloggningen, så det går inte
+            // att byta id mellan försöken för att slippa terminalens gräns
+            if (connection.terminalId == null) {
+                if (!bankSystem.getTerminals().isRegistered(terminalId)) {
+                    return BinaryProtocol.STATUS_UNKNOWN_TERMINAL;
+                }
+                connection.terminalId = terminalId;
+            } else if (!connection.terminalId.equals(terminalId)) {
+                return BinaryProtocol.STATUS_ACCESS_DENIED;
+            }
+            LoginResult login = bankSystem.getAuthService().login(cardNumber, pin, terminalId);
+            if (login.isSuccess()) {
+                // En ny inloggning ersätter den förra, så dess session avslutas
+                logout(connection);
+                connection.cardNumber = cardNumber;
+                connection.sessionToken = login.getSessionToken();
+                connection.accountNumbers = null;
+            }
+            return BinaryProtocol.statusOf(login.getResult());
+        }
+        if (operation < BinaryProtocol.LIST_ACCOUNTS || operation > BinaryProtocol.DEPOSIT) {
+            return BinaryProtocol.STATUS_UNKNOWN_OPERATION;
+        }
+        if (connection.cardNumber == null) {
+            return BinaryProtocol.STATUS_NOT_AUTHENTICATED;
+        }
+        // Sessionen kan ha gått ut eller kortet blockerats sedan inloggningen
+        if (bankSystem.getAuthService().validateSession(connection.sessionToken) == null) {
+            connection.cardNumber = null;
+            connection.sessionToken = null;
+            connection.accountNumbers = null;
+            return BinaryProtocol.STATUS_NOT_AUTHENTICATED;
+        }
+
+        switch (operation) {
+            case BinaryProtocol.LIST_ACCOUNTS -> {
+                List<Account> accounts = linkedAccounts(connection);
+                out.putShort((short) accounts.size());
+                for (Account account : accounts) {
+                    BinaryProtocol.putString(out, account.getAccountNumber());
+                    BinaryProtocol.putString(out, account.getAccountName());
+                    out.putLong(account.getBalanceInOre());
+                }
+                return BinaryProtocol.STATUS_OK;
+            }
+            case BinaryProtocol.BALANCE -> {
+                String accountNumber = BinaryProtocol.getString(request);
+                if (!hasAccess(connection, accountNumber)) {
+                    return BinaryProtocol.STATUS_ACCESS_DENIED;
+                }
+                Account account = bankSystem.getAccountService().getAccount(accountNumber);
+                if (account == null) {
+                    return BinaryProtocol.STATUS_ACCOUNT_NOT_FOUND;
+                }
+                out.putLong(account.getBalanceInOre());
+                return BinaryProtocol.STATUS_OK;
+            }
+            case BinaryProtocol.WITHDRAW -> {
+                String accountNumber = BinaryProtocol.getString(request);
+                long amountInOre = request.getLong();
+                if (!hasAccess(connection, accountNumber)) {
+                    return BinaryProtocol.STATUS_ACCESS_DENIED;
+                }
+                return writeResult(bankSystem.getAccountService()
+                        .withdrawWithCardInOre(accountNumber, connection.cardNumber, amountInOre), out);
+            }
+            default -> {
+                String accountNumber = BinaryProtocol.getString(request);
+                int denominations = request.get() & 0xFF;
+                Map<Integer, Integer> notes = new HashMap<>();
+                for (int i = 0; i < denominations; i++) {
+                    notes.merge(request.getShort() & 0xFFFF, request.getShort() & 0xFFFF, Integer::sum);
+                }
+                if (!hasAccess(connection, accountNumber)) {
+                    return BinaryProtocol.STATUS_ACCESS_DENIED;
+                }
+                return writeResult(bankSystem.getAccountService().deposit(accountNumber, notes, true), out);
+            }
+        }
+    }
+
+    private static byte writeResult(TransactionResult result, ByteBuffer out) {
+        if (!result.isSuccess()) {
+            return BinaryProtocol.statusOf(result.getErrorCode());
+        }
+        out.putLong(result.hasNewBalance() ? result.getNewBalanceInOre() : 0L);
+        return BinaryProtocol.STATUS_OK;
+    }
+
+    private List<Account> linkedAccounts(Connection connection) {
+        List<Account> accounts = bankSystem.getAccountService().getAccountRepository()
+                .findByCardNumber(connection.cardNumber);
+        Set<String> accountNumbers = new HashSet<>();
+        for (Account account : accounts) {
+            accountNumbers.add(account.getAccountNumber());
+        }
+        connection.accountNumbers = accountNumbers;
+        return accounts;
+    }
+
+    private boolean hasAccess(Connection connection, String accountNumber) {
+        if (connection.accountNumbers == null) {
+            linkedAccounts(connection);
+        }
+        return connection.accountNumbers.contains(accountNumber);
+    }
+
+    private void closeConnection(Connection connection) {
+        if (connection.closed) {
+            return;
+        }
+        connection.closed = true;
+        openConnections--;
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {
+            // Anslutningen är stängd ändå
+        }
+        // Buffertar och session som en arbetstråd fortfarande använder lämnas tillbaka när omgången är klar
+        if (!connection.busy) {
+            finish(connection);
+        }
+    }
+
+    /**
+     * Avslutar en stängd anslutnings session och lämnar tillbaka dess buffertar.
+     */
+    private void finish(Connection connection) {
+        logout(connection);
+        release(readBufferPool, connection.in);
+        release(writeBufferPool, connection.out);
+    }
+
+    private void logout(Connection connection) {
+        if (connection.sessionToken != null) {
+            bankSystem.getAuthService().logout(connection.sessionToken);
+            connection.sessionToken = null;
+        }
+    }
+
+    private static ByteBuffer borrow(ArrayDeque<ByteBuffer> pool, int size) {
+        ByteBuffer buffer = pool.poll();
+        return buffer != null ? buffer.clear() : ByteBuffer.allocateDirect(size);
+    }
+
+    private static void release(ArrayDeque<ByteBuffer> pool, ByteBuffer buffer) {
+        if (pool.size() < MAX_POOLED_BUFFERS) {
+            pool.push(buffer.clear());
+        }
+    }
+
+    /**
+     * Tillståndet för en anslutning. Läs- och skrivbufferten används av
+     * selektortråden, utom under en omgång då arbetstråden äger dem.
+     */
+    private static final class Connection {
+        final SocketChannel channel;
+        final ByteBuffer in;
+        final ByteBuffer out;
+        SelectionKey key;
+        volatile boolean failed;
+        // Sätts och läses bara av selektortråden
+        boolean busy;
+        boolean closed;
+        long lastActiveNanos;
+
+        // Terminalen som anslutningen loggat in från; sätts vid första inloggningen
+        String terminalId;
+
+        // Inloggat kort, dess session och de konton det har tillgång till
+        String cardNumber;
+        String sessionToken;
+        Set<String> accountNumbers;
+
+        Connection(SocketChannel channel, ByteBuffer in, ByteBuffer out) {
+            this.channel = channel;
+            this.in = in;
+            this.out = out;
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.bank.server;
+
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.validation.ErrorCode;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Det binära protokollet mellan terminaler och BinaryAtmServer.
+ *
+ * Alla tal är big-endian. Varje meddelande inleds med sin längd (int,
+ * exklusive själva längdfältet), så flera förfrågningar kan skickas i följd
+ * utan att vänta på svar (pipelining). Svaren kommer i samma ordning.
+ *
+ * Förfrågan: [längd][förfrågans id (int)][operation (byte)][data]
+ * Svar:      [längd][förfrågans id (int)][operation (byte)][status (byte)][data]
+ *
+ * Operationer och data:
+ * - AUTHENTICATE:  förfrågan [kortnummer][PIN][terminal-id]; svar utan data
+ * - LIST_ACCOUNTS: förfrågan utan data; svar [antal (short)] och per konto
+ *                  [kontonummer][namn][saldo i ören (long)]
+ * - BALANCE:       förfrågan [kontonummer]; svar [saldo i ören (long)]
+ * - WITHDRAW:      förfrågan [kontonummer][belopp i ören (long)]; svar [nytt saldo (long)]
+ * - DEPOSIT:       förfrågan [kontonummer][antal valörer (byte)] och per valör
+ *                  [valör (short)][antal sedlar (short)]; svar [nytt saldo (long)]
+ *
+ * Strängar kodas som [längd (short)][UTF-8]. Data i svaret finns bara när
+ * status är STATUS_OK. Terminal-id:t är terminalens eget id, som
+ * inloggningsförsöken begränsas per. Det måste vara registrerat i
+ * TerminalRegistry (annars STATUS_UNKNOWN_TERMINAL) och gäller för hela
+ * anslutningen; ett annat id i en senare AUTHENTICATE ger STATUS_ACCESS_DENIED.
+ */
+public final class BinaryProtocol {
+    public static final byte AUTHENTICATE = 1;
+    public static final byte LIST_ACCOUNTS = 2;
+    public static final byte BALANCE = 3;
+    public static final byte WITHDRAW = 4;
+    public static final byte DEPOSIT = 5;
+
+    // Status för lyckade operationer och misslyckad autentisering
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_INVALID_CARD = 1;
+    public static final byte STATUS_WRONG_PIN = 2;
+    public static final byte STATUS_CARD_BLOCKED = 3;
+    public static final byte STATUS_AUTHENTICATION_FAILED = 4;
+    public static final byte STATUS_SERVICE_BUSY = 5;
+    public static final byte STATUS_RATE_LIMITED = 6;
+    public static final byte STATUS_UNKNOWN_TERMINAL = 7;
+
+    // Status för misslyckade transaktioner, motsvarar ErrorCode
+    public static final byte STATUS_ACCOUNT_NOT_FOUND = 0x10;
+    public static final byte STATUS_INVALID_AMOUNT = 0x11;
+    public static final byte STATUS_INSUFFICIENT_FUNDS = 0x12;
+    public static final byte STATUS_TRANSACTION_FAILED = 0x13;
+    public static final byte STATUS_VALIDATION_ERROR = 0x14;
+
+    // Status för fel i själva protokollet
+    public static final byte STATUS_NOT_AUTHENTICATED = 0x40;
+    public static final byte STATUS_ACCESS_DENIED = 0x41;
+    public static final byte STATUS_MALFORMED_REQUEST = 0x42;
+    public static final byte STATUS_UNKNOWN_OPERATION = 0x43;
+    public static final byte STATUS_RESPONSE_TOO_LARGE = 0x44;
+    public static final byte STATUS_INTERNAL_ERROR = 0x45;
+
+    /** Storlek på längdfältet som inleder varje meddelande. */
+    public static final int LENGTH_FIELD_SIZE = 4;
+    /** Förfrågans id och operation. */
+    public static final int REQUEST_HEADER_SIZE = 5;
+    /** Förfrågans id, operation och status. */
+    public static final int RESPONSE_HEADER_SIZE = 6;
+    /** Största tillåtna meddelande, exklusive längdfältet. */
+    public static final int MAX_MESSAGE_SIZE = 8 * 1024;
+
+    private BinaryProtocol() {
+        // Endast konstanter och statiska hjälpmetoder
+    }
+
+    /**
+     * Översätter ett autentiseringsresultat till en status.
+     */
+    public static byte statusOf(AuthenticationResult result) {
+        return switch (result) {
+            case SUCCESS -> STATUS_OK;
+            case INVALID_CARD -> STATUS_INVALID_CARD;
+            case WRONG_PIN -> STATUS_WRONG_PIN;
+            case CARD_BLOCKED -> STATUS_CARD_BLOCKED;
+            case SERVICE_BUSY -> STATUS_SERVICE_BUSY;
+            case RATE_LIMITED -> STATUS_RATE_LIMITED;
+            default -> STATUS_AUTHENTICATION_FAILED;
+        };
+    }
+
+    /**
+     * Översätter felkoden i ett misslyckat TransactionResult till en status.
+     */
+    public static byte statusOf(ErrorCode errorCode) {
+        if (errorCode == null) {
+            return STATUS_TRANSACTION_FAILED;
+        }
+        return switch (errorCode) {
+            case ACCOUNT_NOT_FOUND -> STATUS_ACCOUNT_NOT_FOUND;
+            case INVALID_AMOUNT -> STATUS_INVALID_AMOUNT;
+            case INSUFFICIENT_FUNDS -> STATUS_INSUFFICIENT_FUNDS;
+            case VALIDATION_ERROR -> STATUS_VALIDATION_ERROR;
+            case SERVICE_BUSY -> STATUS_SERVICE_BUSY;
+            default -> STATUS_TRANSACTION_FAILED;
+        };
+    }
+
+    /**
+     * Läser en sträng med längdprefix.
+     *
+     * @throws BufferUnderflowException om strängen går utanför meddelandet
+     */
+    public static String getString(ByteBuffer buffer) {
+        int length = buffer.getShort() & 0xFFFF;
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Skriver en sträng med längdprefix direkt som UTF-8, utan att först
+     * skapa en byte-array. Längden fylls i när tecknen skrivits.
+     */
+    public static void putString(ByteBuffer buffer, String value) {
+        int lengthPosition = buffer.position();
+        buffer.putShort((short) 0);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+        buffer.putShort(lengthPosition, (short) (buffer.position() - lengthPosition - 2));
+    }
+}
@@ -0,0 +1,357 @@
+package com.bank.server.http;
+
+import com.bank.BankSystem;
+import com.bank.model.Account;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.LoginResult;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import com.bank.util.MoneyFormatter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ett HTTP/JSON-API för backoffice-verktyg, byggt på JDK:ns inbyggda HttpServer.
+ *
+ * Varje förfrågan hanteras på en egen virtuell tråd, så förfrågningar som
+ * väntar på ett repository binder inga plattformstrådar. Svaren skrivs som
+ * JSON direkt till anslutningen med JsonWriter (chunked encoding), och
+ * anslutningar hålls öppna mellan förfrågningar (keep-alive) eftersom
+ * förfrågans kropp alltid läses klart och svaret alltid stängs.
+ *
+ * Endpoints:
+ * - GET  /api/accounts/{kontonummer}          saldo och namn för ett konto
+ * - POST /api/accounts/{kontonummer}/deposits  insättning; formulärdata valör=antal, t.ex. 500=2&100=1
+ * - POST /api/authenticate                     inloggning; formulärdata card=...&pin=...&terminal=...; svarar med sessionToken
+ * - GET  /api/cards/{kortnummer}/accounts      konton kopplade till kortet; kräver kortets sessionToken
+ * - POST /api/logout                           avslutar sessionen
+ *
+ * Endpoints som kräver en session tar emot token i headern
+ * "Authorization: Bearer {sessionToken}". Terminalen vid inloggning måste
+ * vara registrerad i BankSystems TerminalRegistry.
+ *
+ * Servern lyssnar bara på loopback-adressen; den har ingen egen
+ * behörighetskontroll för backoffice-användare.
+ */
+public class HttpApiServer implements Closeable {
+    private static final String CONTEXT = "/api/";
+    private static final int MAX_BODY_SIZE = 8 * 1024;
+    private static final int WRITE_BUFFER_SIZE = 4 * 1024;
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final BankSystem bankSystem;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    private final LongAdder requests = new LongAdder();
+
+    static {
+        // Chunked-svar skrivs i flera små delar; med Nagles algoritm väntar varje
+        // svar då på klientens fördröjda ACK (runt 40 ms). Måste sättas innan
+        // JDK:ns HttpServer läser sin konfiguration, och kan överstyras med -D.
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+    }
+
+    /**
+     * Startar servern.
+     *
+     * @param bankSystem Services som API:t använder
+     * @param port Porten att lyssna på, eller 0 för en ledig port
+     * @throws IOException om porten inte kan öppnas
+     */
+    public HttpApiServer(BankSystem bankSystem, int port) throws IOException {
+        this.bankSystem = bankSystem;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.createContext(CONTEXT, this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * Hämtar porten som servern lyssnar på.
+     * @return den lokala porten
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Hämtar antalet behandlade förfrågningar.
+     * @return antal förfrågningar
+     */
+    public long getRequestCount() {
+        return requests.sum();
+    }
+
+    /**
+     * Stänger servern och väntar kort på pågående förfrågningar. De avbryts
+     * inte med interrupt, så en transaktion som redan påbörjats hinner
+     * skrivas klart till loggen.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        requests.increment();
+        try (exchange) {
+            try {
+                route(exchange);
+            } catch (RuntimeException e) {
+                // Går bara om inga headers skickats än; annars stängs anslutningen
+                sendError(exchange, 500, "Internt fel");
+            }
+        }
+    }
+
+    private void route(HttpExchange exchange) throws IOException {
+        Map<String, String> form;
+        try {
+            form = readForm(exchange);
+        } catch (IllegalArgumentException e) {
+            sendError(exchange, 400, "Ogiltig förfrågan");
+            return;
+        }
+
+        // T.ex. "accounts/1001/deposits" -> ["accounts", "1001", "deposits"]
+        String[] path = exchange.getRequestURI().getPath().substring(CONTEXT.length()).split("/");
+        String method = exchange.getRequestMethod();
+
+        if (path.length == 2 && path[0].equals("accounts") && method.equals("GET")) {
+            getAccount(exchange, path[1]);
+        } else if (path.length == 3 && path[0].equals("accounts") && path[2].equals("deposits")
+                && method.equals("POST")) {
+            deposit(exchange, path[1], form);
+        } else if (path.length == 1 && path[0].equals("authenticate") && method.equals("POST")) {
+            authenticate(exchange, form);
+        } else if (path.length == 3 && path[0].equals("cards") && path[2].equals("accounts")
+                && method.equals("GET")) {
+            getCardAccounts(exchange, path[1]);
+        } else if (path.length == 1 && path[0].equals("logout") && method.equals("POST")) {
+            logout(exchange);
+        } else {
+            sendError(exchange, 404, "Okänd resurs");
+        }
+    }
+
+    private void getAccount(HttpExchange exchange, String accountNumber) throws IOException {
+        Account account = bankSystem.getAccountService().getAccount(accountNumber);
+        if (account == null) {
+            sendError(exchange, 404, "Kontot hittades inte");
+            return;
+        }
+        try (JsonWriter json = startResponse(exchange, 200)) {
+            writeAccount(json, account);
+        }
+    }
+
+    private void deposit(HttpExchange exchange, String accountNumber, Map<String, String> form) throws IOException {
+        Map<Integer, Integer> notes = new HashMap<>();
+        try {
+            for (Map.Entry<String, String> entry : form.entrySet()) {
+                int count = Integer.parseInt(entry.getValue());
+                if (count <= 0) {
+                    sendError(exchange, 400, "Antal sedlar måste vara större än noll");
+                    return;
+                }
+                notes.put(Integer.parseInt(entry.getKey()), count);
+            }
+        } catch (NumberFormatException e) {
+            sendError(exchange, 400, "Valörer och antal måste vara heltal");
+            return;
+        }
+        if (notes.isEmpty()) {
+            sendError(exchange, 400, "Inga sedlar angivna");
+            return;
+        }
+
+        // En förfrågan till API:t räknas som bekräftad
+        TransactionResult result = bankSystem.getAccountService().deposit(accountNumber, notes, true);
+        try (JsonWriter json = startResponse(exchange, statusOf(result))) {
+            json.beginObject().name("success").value(result.isSuccess());
+            if (result.isSuccess()) {
+                if (result.hasNewBalance()) {
+                    json.name("newBalanceInOre").value(result.getNewBalanceInOre());
+                    json.name("newBalance").value(MoneyFormatter.format(result.getNewBalanceInOre()));
+                }
+            } else {
+                json.name("errorCode").value(result.getErrorCode() != null ? result.getErrorCode().name() : null);
+                json.name("message").value(result.getMessage());
+            }
+            json.endObject();
+        }
+    }
+
+    private void authenticate(HttpExchange exchange, Map<String, String> form) throws IOException {
+        String cardNumber = form.get("card");
+        String pin = form.get("pin");
+        // Terminalens eget id; servern lyssnar bara på loopback, så adressen skiljer inte terminaler åt
+        String terminalId = form.get("terminal");
+        if (cardNumber == null || pin == null || terminalId == null || terminalId.isBlank()) {
+            sendError(exchange, 400, "Kortnummer, PIN och terminal krävs");
+            return;
+        }
+        // Bara registrerade id, annars kunde en klient byta id vid varje försök
+        if (!bankSystem.getTerminals().isRegistered(terminalId)) {
+            sendError(exchange, 403, "Okänd terminal");
+            return;
+        }
+        LoginResult login = bankSystem.getAuthService().login(cardNumber, pin, terminalId);
+        AuthenticationResult result = login.getResult();
+        int status = result == AuthenticationResult.SUCCESS ? 200
+                : result == AuthenticationResult.SERVICE_BUSY ? 503
+                : result == AuthenticationResult.RATE_LIMITED ? 429 : 401;
+        try (JsonWriter json = startResponse(exchange, status)) {
+            json.beginObject()
+                    .name("result").value(result.name())
+                    .name("message").value(result.getMessage());
+            if (login.isSuccess()) {
+                json.name("sessionToken").value(login.getSessionToken());
+            }
+            json.endObject();
+        }
+    }
+
+    private void getCardAccounts(HttpExchange exchange, String cardNumber) throws IOException {
+        String sessionToken = sessionTokenOf(exchange);
+        if (sessionToken == null) {
+            sendError(exchange, 401, "Session krävs");
+            return;
+        }
+        // Sessionen måste tillhöra just det här kortet, inte bara vilken session som helst
+        if (!cardNumber.equals(bankSystem.getAuthService().validateSession(sessionToken))) {
+            sendError(exchange, 403, "Sessionen gäller inte kortet");
+            return;
+        }
+        List<Account> accounts = bankSystem.getAccountService().getAccountRepository().findByCardNumber(cardNumber);
+        try (JsonWriter json = startResponse(exchange, 200)) {
+            json.beginObject().name("cardNumber").value(cardNumber).name("accounts").beginArray();
+            for (Account account : accounts) {
+                writeAccount(json, account);
+            }
+            json.endArray().endObject();
+        }
+    }
+
+    private void logout(HttpExchange exchange) throws IOException {
+        String sessionToken = sessionTokenOf(exchange);
+        boolean closed = sessionToken != null && bankSystem.getAuthService().logout(sessionToken);
+        try (JsonWriter json = startResponse(exchange, closed ? 200 : 401)) {
+            json.beginObject().name("success").value(closed).endObject();
+        }
+    }
+
+    /**
+     * Hämtar sessionens token ur Authorization-headern.
+     * @return token, eller null om headern saknas
+     */
+    private static String sessionTokenOf(HttpExchange exchange) {
+        String authorization = exchange.getRequestHeaders().getFirst("Authorization");
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        return authorization.substring(BEARER_PREFIX.length()).trim();
+    }
+
+    private static void writeAccount(JsonWriter json, Account account) throws IOException {
+        json.beginObject()
+                .name("accountNumber").value(account.getAccountNumber())
+                .name("accountName").value(account.getAccountName())
+                .name("balanceInOre").value(account.getBalanceInOre())
+                .name("balance").value(account.getFormattedBalance())
+                .endObject();
+    }
+
+    private static int statusOf(TransactionResult result) {
+        if (result.isSuccess()) {
+            return 200;
+        }
+        ErrorCode errorCode = result.getErrorCode();
+        if (errorCode == ErrorCode.ACCOUNT_NOT_FOUND) {
+            return 404;
+        }
+        if (errorCode == ErrorCode.SERVICE_BUSY) {
+            return 503;
+        }
+        return errorCode == ErrorCode.INSUFFICIENT_FUNDS ? 409 : 422;
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        if (exchange.getResponseCode() != -1) {
+            return; // Svaret har redan börjat skickas
+        }
+        try (JsonWriter json = startResponse(exchange, status)) {
+            json.beginObject().name("error").value(message).endObject();
+        }
+    }
+
+    /**
+     * Skickar headers och returnerar en JsonWriter direkt mot svarets kropp.
+     * Längden är okänd i förväg, så svaret skickas med chunked encoding.
+     */
+    private static JsonWriter startResponse(HttpExchange exchange, int status) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, 0);
+        return new JsonWriter(new BufferedWriter(
+                new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8), WRITE_BUFFER_SIZE));
+    }
+
+    /**
+     * Läser formulärdata från kroppen (POST) eller query-strängen.
+     * Kroppen läses alltid klart så att anslutningen kan återanvändas.
+     *
+     * @throws IllegalArgumentException om kroppen är för stor eller felkodad
+     */
+    private static Map<String, String> readForm(HttpExchange exchange) throws IOException {
+        String data;
+        try (InputStream body = exchange.getRequestBody()) {
+            byte[] bytes = body.readNBytes(MAX_BODY_SIZE + 1);
+            if (bytes.length > MAX_BODY_SIZE) {
+                throw new IllegalArgumentException("Request body too large");
+            }
+            data = bytes.length > 0 ? new String(bytes, StandardCharsets.UTF_8)
+                    : exchange.getRequestURI().getRawQuery();
+        }
+
+        Map<String, String> form = new HashMap<>();
+        if (data == null || data.isEmpty()) {
+            return form;
+        }
+        for (String pair : data.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int separator = pair.indexOf('=');
+            String name = separator < 0 ? pair : pair.substring(0, separator);
+            String value = separator < 0 ? "" : pair.substring(separator + 1);
+            form.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+        return form;
+    }
+}
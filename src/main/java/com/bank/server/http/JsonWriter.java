@@ -0,0 +1,180 @@
+package com.bank.server.http;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Skriver JSON direkt till en Writer, utan reflektion och utan att bygga
+ * hela dokumentet i minnet först.
+ *
+ * Anroparen beskriver strukturen i tur och ordning:
+ *   json.beginObject().name("saldo").value(50000).endObject();
+ * Kommatecken och escaping av strängar sköts av skrivaren. Felaktig
+ * nästling upptäcks och ger IllegalStateException.
+ */
+public final class JsonWriter implements Closeable, Flushable {
+    private static final int MAX_DEPTH = 32;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final Writer out;
+
+    // Per nivå: true för objekt, false för array
+    private final boolean[] isObject = new boolean[MAX_DEPTH];
+    // Per nivå: om något värde redan skrivits, dvs. om nästa behöver ett kommatecken
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    // Ett namn har skrivits och väntar på sitt värde
+    private boolean afterName;
+
+    /**
+     * Skapar en skrivare. Writer:n bör vara buffrad.
+     * @param out Destinationen
+     */
+    public JsonWriter(Writer out) {
+        this.out = out;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open(true, '{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close(true, '}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open(false, '[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close(false, ']');
+    }
+
+    /**
+     * Skriver namnet på nästa fält i det aktuella objektet.
+     * @param name Fältets namn
+     */
+    public JsonWriter name(String name) throws IOException {
+        if (depth == 0 || !isObject[depth - 1] || afterName) {
+            throw new IllegalStateException("Name outside of object");
+        }
+        if (hasValue[depth - 1]) {
+            out.write(',');
+        }
+        hasValue[depth - 1] = true;
+        writeString(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        beforeValue();
+        if (value == null) {
+            out.write("null");
+        } else {
+            writeString(value);
+        }
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    /**
+     * Stänger den underliggande Writer:n.
+     * @throws IllegalStateException om ett objekt eller en array inte avslutats
+     */
+    @Override
+    public void close() throws IOException {
+        out.close();
+        if (depth != 0) {
+            throw new IllegalStateException("Unclosed object or array");
+        }
+    }
+
+    private JsonWriter open(boolean object, char bracket) throws IOException {
+        beforeValue();
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("Nesting too deep");
+        }
+        isObject[depth] = object;
+        hasValue[depth] = false;
+        depth++;
+        out.write(bracket);
+        return this;
+    }
+
+    private JsonWriter close(boolean object, char bracket) throws IOException {
+        if (depth == 0 || isObject[depth - 1] != object || afterName) {
+            throw new IllegalStateException("Mismatched " + bracket);
+        }
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth == 0) {
+            return;
+        }
+        if (isObject[depth - 1]) {
+            throw new IllegalStateException("Value in object without name");
+        }
+        if (hasValue[depth - 1]) {
+            out.write(',');
+        }
+        hasValue[depth - 1] = true;
+    }
+
+    private void writeString(String value) throws IOException {
+        out.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\' && c != '\u2028' && c != '\u2029') {
+                continue;
+            }
+            // U+2028 och U+2029 escapas så att svaret även går att bädda in i JavaScript
+            // Skriv den oförändrade delen i ett svep och därefter escape-sekvensen
+            out.write(value, start, i - start);
+            switch (c) {
+                case '"' -> out.write("\\\"");
+                case '\\' -> out.write("\\\\");
+                case '\n' -> out.write("\\n");
+                case '\r' -> out.write("\\r");
+                case '\t' -> out.write("\\t");
+                default -> {
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xF]);
+                    out.write(HEX[(c >> 8) & 0xF]);
+                    out.write(HEX[(c >> 4) & 0xF]);
+                    out.write(HEX[c & 0xF]);
+                }
+            }
+            start = i + 1;
+        }
+        out.write(value, start, value.length() - start);
+        out.write('"');
+    }
+}
@@ -1,12 +1,29 @@
 package com.bank.service.account;
 
 import com.bank.model.Account;
+import com.bank.model.Money;
 import com.bank.repository.AccountRepository;
+import com.bank.repository.BalanceTransfer;
+import com.bank.repository.BalanceUpdate;
+import com.bank.service.ledger.Ledger;
+import com.bank.service.ledger.LedgerEvent;
 import com.bank.service.validation.ErrorCode;
+import com.bank.service.transaction.BatchOperation;
+import com.bank.service.transaction.IdempotencyCache;
 import com.bank.service.transaction.OperationResult;
 import com.bank.service.transaction.TransactionResult;
+import com.bank.util.BankConstants;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.OptionalLong;
+import java.util.function.LongConsumer;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Supplier;
 
 /**
  * Service-klass för hantering av konton i bankomaten.
@@ -16,16 +33,69 @@ import java.util.Map;
  * kontoinformation, saldokontroll och saldouppdatering.
  *
  * Uppdaterad för att hantera både uttag och insättningar.
+ * Uppdaterad så att saldoändringar görs atomiskt i repositoryt, vilket gör
+ * klassen säker att dela mellan flera samtidiga sessioner.
+ * Belopp hanteras internt som heltal i ören (se Money); metoderna som tar
+ * kronor som double omvandlar beloppet en gång och delegerar sedan.
+ *
+ * Uttag och insättningar kan ges en idempotensnyckel. Ett omförsök med samma
+ * nyckel, t.ex. efter en timeout i terminalen, får då det ursprungliga
+ * resultatet tillbaka i stället för att operationen görs igen.
+ *
+ * Med en Ledger sparas varje saldoändring dessutom som en händelse i
+ * huvudboken, i samma kritiska avsnitt som ändringen. Saldot i repositoryt
+ * är då en projektion av huvudboken som uppdateras stegvis, och händelser
+ * kan återföras med reverse.
+ *
+ * Med WithdrawalLimits räknas varje uttag mot kontots (och kortets)
+ * tim- och dygnsgräns innan saldot ändras.
  */
 public class AccountService {
     private final AccountRepository accountRepository;
+    private final IdempotencyCache idempotencyCache;
+    private final Ledger ledger;
+    private final WithdrawalLimits withdrawalLimits;
 
     /**
      * Skapar en ny AccountService med det angivna repository.
      * @param accountRepository Repository för kontolagring och -åtkomst
      */
     public AccountService(AccountRepository accountRepository) {
+        this(accountRepository, new IdempotencyCache());
+    }
+
+    /**
+     * Skapar en ny AccountService med en egen tabell för idempotensnycklar.
+     * @param accountRepository Repository för kontolagring och -åtkomst
+     * @param idempotencyCache Tabell som kommer ihåg resultat per idempotensnyckel
+     */
+    public AccountService(AccountRepository accountRepository, IdempotencyCache idempotencyCache) {
+        this(accountRepository, idempotencyCache, null);
+    }
+
+    /**
+     * Skapar en ny AccountService som sparar alla saldoändringar i en huvudbok.
+     * @param accountRepository Repository för kontolagring och -åtkomst
+     * @param idempotencyCache Tabell som kommer ihåg resultat per idempotensnyckel
+     * @param ledger Huvudbok för saldoändringar, eller null
+     */
+    public AccountService(AccountRepository accountRepository, IdempotencyCache idempotencyCache, Ledger ledger) {
+        this(accountRepository, idempotencyCache, ledger, null);
+    }
+
+    /**
+     * Skapar en ny AccountService som dessutom begränsar uttag per timme och dygn.
+     * @param accountRepository Repository för kontolagring och -åtkomst
+     * @param idempotencyCache Tabell som kommer ihåg resultat per idempotensnyckel
+     * @param ledger Huvudbok för saldoändringar, eller null
+     * @param withdrawalLimits Uttagsgränser per konto och kort, eller null
+     */
+    public AccountService(AccountRepository accountRepository, IdempotencyCache idempotencyCache, Ledger ledger,
+                          WithdrawalLimits withdrawalLimits) {
         this.accountRepository = accountRepository;
+        this.idempotencyCache = idempotencyCache;
+        this.ledger = ledger;
+        this.withdrawalLimits = withdrawalLimits;
     }
 
     /**
@@ -42,33 +112,50 @@ public class AccountService {
         return accountRepository;
     }
 
+    public IdempotencyCache getIdempotencyCache() {
+        return idempotencyCache;
+    }
+
+    /**
+     * Hämtar huvudboken.
+     * @return huvudboken, eller null om servicen skapades utan
+     */
+    public Ledger getLedger() {
+        return ledger;
+    }
+
+    /**
+     * Hämtar uttagsgränserna.
+     * @return gränserna, eller null om servicen skapades utan
+     */
+    public WithdrawalLimits getWithdrawalLimits() {
+        return withdrawalLimits;
+    }
+
     /**
      * Uppdaterar saldot på ett befintligt konto.
      * Eftersom Account-klassen är immutable skapas ett nytt konto med
      * samma kontonummer och namn men med det nya saldot.
      * @param accountNumber Kontonumret för kontot som ska uppdateras
-     * @param newBalance Det nya saldot för kontot
+     * @param newBalance Det nya saldot för kontot i kronor
      * @return Det uppdaterade kontot om det lyckas, annars null
      */
     public Account updatedBalance(String accountNumber, double newBalance) {
-        // Hämta befintligt konto
-        Account account = getAccount(accountNumber);
-        if (account == null) {
-            return null; // returnerar null när existerande konto som ska uppdateras inte finns.
-        }
+        long newBalanceInOre = Money.ofKronor(newBalance);
 
-        /** Skapa ett nytt konto med uppdaterat saldo (eftersom Account är immutable)
+        /** Repositoryt skapar ett nytt konto med uppdaterat saldo (eftersom Account är immutable)
          * Detta är inte samma sak som att skapa ett nytt bankkonto från användarens perspektiv.
          * Från systemets perspektiv ersätter vi representationen av samma konto
          * med en ny version som har uppdaterat saldo.
          */
-        Account updatedAccount = new Account(
-                account.getAccountNumber(), account.getAccountName(), newBalance
-        );
+        long[] previousBalance = new long[1];
+        BalanceUpdate update = updateBalanceIf(accountNumber, balance -> true, balance -> {
+            previousBalance[0] = balance;
+            return newBalanceInOre;
+        }, null, balanceAfter -> ledger.recordAdjustment(accountNumber, balanceAfter - previousBalance[0], balanceAfter));
 
-        // ersätter befintligt accountobjekt med updatedAccount med nytt saldo
-        accountRepository.saveAccount(updatedAccount);
-        return updatedAccount;
+        // returnerar null när existerande konto som ska uppdateras inte finns.
+        return update.getAccount();
     }
 
     /**
@@ -92,10 +179,21 @@ public class AccountService {
      * Returnerar detaljerad information om saldokontroll och eventuella fel.
      *
      * @param accountNumber Kontonumret som ska kontrolleras
-     * @param amount Beloppet som ska verifieras mot saldot
+     * @param amount Beloppet i kronor som ska verifieras mot saldot
      * @return OperationResult med detaljerad information om saldokontroll
      */
     public OperationResult hasEnoughBalance(String accountNumber, double amount) {
+        return hasEnoughBalanceInOre(accountNumber, Money.ofKronor(amount));
+    }
+
+    /**
+     * Verifierar om ett konto har tillräckligt med pengar för ett begärt belopp i ören.
+     *
+     * @param accountNumber Kontonumret som ska kontrolleras
+     * @param amountInOre Beloppet i ören som ska verifieras mot saldot
+     * @return OperationResult med detaljerad information om saldokontroll
+     */
+    public OperationResult hasEnoughBalanceInOre(String accountNumber, long amountInOre) {
         // Hämtar konto
         Account account = getAccount(accountNumber);
 
@@ -103,10 +201,10 @@ public class AccountService {
             return OperationResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
         }
 
-        if (account.getBalance() >= amount) {
+        if (account.getBalanceInOre() >= amountInOre) {
             return OperationResult.success("Tillräckligt saldo tillgängligt");
         } else {
-            return OperationResult.failure("Otillräckligt saldo. Tillgängligt: " + account.getBalance() + " kr, Begärt: " + amount + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+            return OperationResult.failure("Otillräckligt saldo. Tillgängligt: " + account.getBalance() + " kr, Begärt: " + Money.toKronor(amountInOre) + " kr", ErrorCode.INSUFFICIENT_FUNDS);
         }
     }
 
@@ -115,29 +213,312 @@ public class AccountService {
      * Metoden validerar beloppet och kontots saldo innan uttaget genomförs.
      *
      * @param accountNumber Kontonumret för kontot
-     * @param amount Beloppet som ska tas ut
+     * @param amount Beloppet i kronor som ska tas ut
      * @return TransactionResult med information om uttaget lyckades eller varför det misslyckades
      */
     public TransactionResult withdraw(String accountNumber, double amount) {
+        return withdraw(accountNumber, amount, null);
+    }
+
+    /**
+     * Tar ut ett belopp från ett konto högst en gång per idempotensnyckel.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amount Beloppet i kronor som ska tas ut
+     * @param idempotencyKey Terminalens unika nyckel för uttaget, eller null
+     * @return TransactionResult med information om uttaget lyckades eller varför det misslyckades;
+     *         vid ett omförsök resultatet från första försöket
+     */
+    public TransactionResult withdraw(String accountNumber, double amount, String idempotencyKey) {
+        // Kontrollera att beloppet är ett giltigt tal innan det omvandlas till ören
+        if (!(amount > 0)) {
+            return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        long amountInOre;
+        try {
+            amountInOre = Money.ofKronor(amount);
+        } catch (IllegalArgumentException e) {
+            return TransactionResult.failure("Ogiltigt belopp: " + amount, ErrorCode.INVALID_AMOUNT);
+        }
+        return withdrawInOre(accountNumber, amountInOre, idempotencyKey);
+    }
+
+    /**
+     * Tar ut ett belopp i ören från ett konto om det finns tillräckligt med saldo.
+     * Hela flödet använder heltalsaritmetik och skapar inga wrapper-objekt.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amountInOre Beloppet i ören som ska tas ut
+     * @return TransactionResult med information om uttaget lyckades eller varför det misslyckades
+     */
+    public TransactionResult withdrawInOre(String accountNumber, long amountInOre) {
+        return applyWithdrawal(accountNumber, null, amountInOre, null);
+    }
+
+    /**
+     * Tar ut ett belopp i ören med ett kort. Uttaget räknas då även mot
+     * kortets uttagsgränser, inte bara kontots.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param cardNumber Kortet som uttaget görs med
+     * @param amountInOre Beloppet i ören som ska tas ut
+     * @return TransactionResult med information om uttaget lyckades eller varför det misslyckades
+     */
+    public TransactionResult withdrawWithCardInOre(String accountNumber, String cardNumber, long amountInOre) {
+        return applyWithdrawal(accountNumber, cardNumber, amountInOre, null);
+    }
+
+    /**
+     * Tar ut ett belopp i ören från ett konto högst en gång per idempotensnyckel.
+     *
+     * Nyckeln ska vara unik per uttag och terminal, t.ex. terminal-id och
+     * löpnummer. Med ett beständigt repository sparas nyckeln tillsammans med
+     * det nya saldot, så ett lyckat uttag känns igen även efter en omstart.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amountInOre Beloppet i ören som ska tas ut
+     * @param idempotencyKey Terminalens unika nyckel för uttaget, eller null
+     * @return TransactionResult med information om uttaget lyckades eller varför det misslyckades;
+     *         vid ett omförsök resultatet från första försöket
+     */
+    public TransactionResult withdrawInOre(String accountNumber, long amountInOre, String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return applyWithdrawal(accountNumber, null, amountInOre, null);
+        }
+        return executeOnce(idempotencyKey, () -> applyWithdrawal(accountNumber, null, amountInOre, idempotencyKey));
+    }
+
+    private TransactionResult applyWithdrawal(String accountNumber, String cardNumber, long amountInOre,
+                                              String idempotencyKey) {
         // Kontrollera att beloppet är positivt
-        if (amount <= 0) {
+        if (amountInOre <= 0) {
             return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
         }
+        if (withdrawalLimits == null) {
+            return applyWithdrawal(accountNumber, amountInOre, idempotencyKey);
+        }
 
-        // Hämta kontot
-        Account account = getAccount(accountNumber);
-        if (account == null) {
+        // Räkna uttaget mot gränserna först och ta tillbaka det om uttaget inte går igenom,
+        // så att samtidiga uttag inte tillsammans kan överskrida en gräns
+        long acquiredAt = withdrawalLimits.tryAcquire(accountNumber, cardNumber, amountInOre);
+        if (acquiredAt < 0) {
+            return TransactionResult.failure("Uttagsgränsen är nådd", ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED);
+        }
+        TransactionResult result = applyWithdrawal(accountNumber, amountInOre, idempotencyKey);
+        if (!result.isSuccess()) {
+            withdrawalLimits.release(accountNumber, cardNumber, amountInOre, acquiredAt);
+        }
+        return result;
+    }
+
+    private TransactionResult applyWithdrawal(String accountNumber, long amountInOre, String idempotencyKey) {
+
+        // Kontrollera saldot och minska det med uttagsbeloppet i ett enda atomiskt steg,
+        // så att två samtidiga uttag inte båda kan godkännas mot samma saldo
+        BalanceUpdate update;
+        try {
+            update = updateBalanceIf(accountNumber,
+                    balance -> balance >= amountInOre, balance -> balance - amountInOre, idempotencyKey,
+                    balanceAfter -> ledger.recordWithdrawal(accountNumber, amountInOre, balanceAfter));
+        } catch (IllegalStateException e) {
+            // Repositoryts tabell med idempotensnycklar är full; inget har ändrats
+            return TransactionResult.failure("Tjänsten är upptagen, försök igen senare", ErrorCode.SERVICE_BUSY);
+        }
+
+        switch (update.getStatus()) {
+            case ACCOUNT_NOT_FOUND:
+                return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            case CONDITION_FAILED:
+                return TransactionResult.failure("Otillräckligt saldo. Tillgängligt: " + update.getAccount().getBalance() + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+            default:
+                return TransactionResult.success(update.getAccount().getBalanceInOre());
+        }
+    }
+
+    /**
+     * Överför ett belopp mellan två konton, t.ex. mellan två konton kopplade
+     * till samma kort.
+     *
+     * @param fromAccountNumber Kontot som pengarna dras från
+     * @param toAccountNumber Kontot som pengarna sätts in på
+     * @param amount Beloppet i kronor
+     * @return TransactionResult med avsändarkontots nya saldo, eller varför överföringen misslyckades
+     */
+    public TransactionResult transfer(String fromAccountNumber, String toAccountNumber, double amount) {
+        if (!(amount > 0)) {
+            return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        long amountInOre;
+        try {
+            amountInOre = Money.ofKronor(amount);
+        } catch (IllegalArgumentException e) {
+            return TransactionResult.failure("Ogiltigt belopp: " + amount, ErrorCode.INVALID_AMOUNT);
+        }
+        return transferInOre(fromAccountNumber, toAccountNumber, amountInOre);
+    }
+
+    /**
+     * Överför ett belopp i ören mellan två konton.
+     *
+     * Uttaget och insättningen görs i ett enda atomiskt steg i repositoryt,
+     * så pengarna finns alltid på exakt ett av kontona, även när många
+     * överföringar mellan samma konton pågår samtidigt i båda riktningarna.
+     *
+     * @param fromAccountNumber Kontot som pengarna dras från
+     * @param toAccountNumber Kontot som pengarna sätts in på
+     * @param amountInOre Beloppet i ören
+     * @return TransactionResult med avsändarkontots nya saldo, eller varför överföringen misslyckades
+     */
+    public TransactionResult transferInOre(String fromAccountNumber, String toAccountNumber, long amountInOre) {
+        if (amountInOre <= 0) {
+            return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        if (fromAccountNumber.equals(toAccountNumber)) {
+            return TransactionResult.failure("Kan inte överföra till samma konto", ErrorCode.VALIDATION_ERROR);
+        }
+
+        BalanceTransfer transfer;
+        try {
+            transfer = ledger == null
+                    ? accountRepository.transfer(fromAccountNumber, toAccountNumber, amountInOre)
+                    : ledger.withAccounts(fromAccountNumber, toAccountNumber, () -> {
+                        BalanceTransfer done = accountRepository.transfer(fromAccountNumber, toAccountNumber, amountInOre);
+                        if (done.isTransferred()) {
+                            ledger.recordTransfer(fromAccountNumber, toAccountNumber, amountInOre,
+                                    done.getFromAccount().getBalanceInOre(), done.getToAccount().getBalanceInOre());
+                        }
+                        return done;
+                    });
+        } catch (ArithmeticException e) {
+            return TransactionResult.failure("Ogiltigt belopp", ErrorCode.INVALID_AMOUNT);
+        }
+
+        switch (transfer.getStatus()) {
+            case FROM_ACCOUNT_NOT_FOUND:
+            case TO_ACCOUNT_NOT_FOUND:
+                return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            case INSUFFICIENT_FUNDS:
+                return TransactionResult.failure("Otillräckligt saldo. Tillgängligt: " + transfer.getFromAccount().getBalance() + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+            default:
+                return TransactionResult.success(transfer.getFromAccount().getBalanceInOre());
+        }
+    }
+
+    /**
+     * Reserverar ett belopp för ett kontantuttag. Beloppet dras från saldot
+     * direkt, så det inte kan tas ut två gånger, men kan föras tillbaka med
+     * releaseHoldInOre om uttaget aldrig genomförs. Används av HoldService,
+     * som också räknar reservationen mot uttagsgränserna och tar tillbaka
+     * den från gränserna när reservationen släpps.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amountInOre Beloppet i ören
+     * @param holdId Reservationens id, som sparas i huvudboken
+     * @return TransactionResult med saldot efter reservationen, eller varför den misslyckades
+     */
+    public TransactionResult holdInOre(String accountNumber, long amountInOre, long holdId) {
+        if (amountInOre <= 0) {
+            return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        BalanceUpdate update = updateBalanceIf(accountNumber,
+                balance -> balance >= amountInOre, balance -> balance - amountInOre, null,
+                balanceAfter -> ledger.recordHold(accountNumber, amountInOre, balanceAfter, holdId));
+
+        switch (update.getStatus()) {
+            case ACCOUNT_NOT_FOUND:
+                return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            case CONDITION_FAILED:
+                return TransactionResult.failure("Otillräckligt saldo. Tillgängligt: " + update.getAccount().getBalance() + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+            default:
+                return TransactionResult.success(update.getAccount().getBalanceInOre());
+        }
+    }
+
+    /**
+     * För tillbaka ett reserverat belopp till kontot.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amountInOre Det reserverade beloppet i ören
+     * @param holdId Reservationens id
+     * @return TransactionResult med saldot efter att beloppet förts tillbaka
+     */
+    public TransactionResult releaseHoldInOre(String accountNumber, long amountInOre, long holdId) {
+        BalanceUpdate update = updateBalanceIf(accountNumber,
+                balance -> true, balance -> Money.add(balance, amountInOre), null,
+                balanceAfter -> ledger.recordHoldRelease(accountNumber, amountInOre, balanceAfter, holdId));
+        if (!update.isUpdated()) {
             return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
         }
+        return TransactionResult.success(update.getAccount().getBalanceInOre());
+    }
 
-        // Kontrollera om det finns tillräckligt med saldo
-        if (account.getBalance() < amount) {
-            return TransactionResult.failure("Otillräckligt saldo. Tillgängligt: " + account.getBalance() + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+    /**
+     * Registrerar i huvudboken att en reservation bekräftats och kontanterna
+     * lämnats ut. Saldot ändras inte, eftersom beloppet drogs vid reservationen.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param holdId Reservationens id
+     * @return TransactionResult med kontots saldo, eller varför bekräftelsen inte kunde registreras
+     */
+    public TransactionResult commitHoldInOre(String accountNumber, long holdId) {
+        if (ledger == null) {
+            return TransactionResult.success();
         }
+        return ledger.withAccount(accountNumber, () -> {
+            // Under kontots lås hör saldot ihop med kontots senaste händelse
+            Account account = accountRepository.findByAccountNumber(accountNumber);
+            if (account == null) {
+                return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            }
+            ledger.recordHoldCommit(accountNumber, account.getBalanceInOre(), holdId);
+            return TransactionResult.success(account.getBalanceInOre());
+        });
+    }
 
-        // Uppdatera saldot (minskar med uttagsbeloppet)
-        Account updatedAccount = updatedBalance(accountNumber, account.getBalance() - amount);
-        return TransactionResult.success(updatedAccount.getBalance());
+    /**
+     * Återför en insättning eller ett uttag i huvudboken genom att göra den
+     * motsatta saldoändringen och spara den som en återföring. Varje händelse
+     * kan bara återföras en gång.
+     *
+     * @param sequence Sekvensnumret för händelsen som ska återföras
+     * @return TransactionResult med kontots nya saldo, eller varför återföringen misslyckades
+     */
+    public TransactionResult reverse(long sequence) {
+        if (ledger == null) {
+            return TransactionResult.failure("Ingen huvudbok finns", ErrorCode.VALIDATION_ERROR);
+        }
+        LedgerEvent original = ledger.getEvent(sequence);
+        if (original == null) {
+            return TransactionResult.failure("Händelsen finns inte", ErrorCode.VALIDATION_ERROR);
+        }
+        if (original.getType() != LedgerEvent.Type.DEPOSIT && original.getType() != LedgerEvent.Type.WITHDRAWAL) {
+            return TransactionResult.failure("Händelsen kan inte återföras", ErrorCode.VALIDATION_ERROR);
+        }
+
+        String accountNumber = original.getAccountNumber();
+        long change = -original.getAmountInOre();
+        return ledger.withAccount(accountNumber, () -> {
+            // Kontrolleras under kontots lås, så två samtidiga återföringar inte båda genomförs
+            if (ledger.isReversed(sequence)) {
+                return TransactionResult.failure("Händelsen är redan återförd", ErrorCode.VALIDATION_ERROR);
+            }
+            BalanceUpdate update;
+            try {
+                update = accountRepository.updateBalanceIf(accountNumber,
+                        balance -> change >= 0 || balance >= -change, balance -> Money.add(balance, change));
+            } catch (ArithmeticException e) {
+                return TransactionResult.failure("Ogiltigt belopp", ErrorCode.INVALID_AMOUNT);
+            }
+            switch (update.getStatus()) {
+                case ACCOUNT_NOT_FOUND:
+                    return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+                case CONDITION_FAILED:
+                    return TransactionResult.failure("Otillräckligt saldo. Tillgängligt: " + update.getAccount().getBalance() + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+                default:
+                    ledger.recordReversal(original, update.getAccount().getBalanceInOre());
+                    return TransactionResult.success(update.getAccount().getBalanceInOre());
+            }
+        });
     }
 
     /**
@@ -148,6 +529,29 @@ public class AccountService {
      * @return TransactionResult med information om insättningen lyckades eller varför den misslyckades
      */
     public TransactionResult deposit(String accountNumber, Map<Integer, Integer> notes, boolean confirmed) {
+        return applyDeposit(accountNumber, notes, confirmed, null);
+    }
+
+    /**
+     * Sätter in pengar på ett konto högst en gång per idempotensnyckel.
+     *
+     * @param accountNumber Kontot att sätta in pengar på
+     * @param notes En karta med sedelvalörer och antal
+     * @param confirmed True om användaren bekräftat insättningen
+     * @param idempotencyKey Terminalens unika nyckel för insättningen, eller null
+     * @return TransactionResult med information om insättningen lyckades eller varför den misslyckades;
+     *         vid ett omförsök resultatet från första försöket
+     */
+    public TransactionResult deposit(String accountNumber, Map<Integer, Integer> notes, boolean confirmed,
+                                     String idempotencyKey) {
+        if (idempotencyKey == null) {
+            return applyDeposit(accountNumber, notes, confirmed, null);
+        }
+        return executeOnce(idempotencyKey, () -> applyDeposit(accountNumber, notes, confirmed, idempotencyKey));
+    }
+
+    private TransactionResult applyDeposit(String accountNumber, Map<Integer, Integer> notes, boolean confirmed,
+                                           String idempotencyKey) {
         // Hämta kontot via AccountService
         Account account = getAccount(accountNumber);
         if (account == null) {
@@ -160,49 +564,232 @@ public class AccountService {
         }
 
         try {
-            // Räkna ihop summan av sedlarna
-            int amount = 0;
+            // Räkna ihop summan av sedlarna (i hela kronor)
+            long amount = 0;
             // Går igenom varje post i Map:en där nyckeln är sedelns valör (t.ex. 100 kr)
             // och värdet är hur många sådana sedlar det finns
             for (Map.Entry<Integer, Integer> entry : notes.entrySet()) {
                 int denomination = entry.getKey();   // t.ex. 100, 200, 500
                 int count = entry.getValue();        // hur många sedlar av den valören
 
-                // Kontrollera att valören är giltig
-                boolean isValid = false;
-                for (int validDenomination : com.bank.util.BankConstants.VALID_DENOMINATIONS) {
-                    if (denomination == validDenomination) {
-                        isValid = true;
-                        break;
-                    }
-                }
-
-                // Om inte, returnera fel
-                if (!isValid) {
+                // Kontrollera att valören är giltig, om inte returnera fel
+                if (!isValidDenomination(denomination)) {
                     return TransactionResult.failure("Ogiltig sedelvalör: " + denomination, ErrorCode.INVALID_AMOUNT);
                 }
+                // Ett negativt antal skulle göra insättningen till ett uttag förbi alla kontroller
+                if (count <= 0) {
+                    return TransactionResult.failure("Ogiltigt antal sedlar: " + count, ErrorCode.INVALID_AMOUNT);
+                }
 
                 // Lägg till värdet av sedlarna i totalsumman
-                amount += denomination * count;
+                amount = Math.addExact(amount, Math.multiplyExact((long) denomination, count));
             }
 
-            // Uppdatera kontots saldo med det nya beloppet
-            Account updatedAccount = updatedBalance(accountNumber, account.getBalance() + amount);
-
-            // Logga insättningen
-            System.out.println("Loggad insättning: " + amount + " kr till konto " + accountNumber);
-
-            // Skriv ut kvittoinformation (simulerat)
-            System.out.println("Insättning av " + amount + " kr klar.");
-            System.out.println("Vill du ha kvitto? (Simuleras)");
+            // Lägg till beloppet atomiskt, utan att utgå från ett tidigare läst saldo
+            final long depositInOre = Money.ofKronor(amount);
+            BalanceUpdate update = updateBalanceIf(accountNumber,
+                    balance -> true, balance -> Money.add(balance, depositInOre), idempotencyKey,
+                    balanceAfter -> ledger.recordDeposit(accountNumber, depositInOre, balanceAfter, notes));
+            if (!update.isUpdated()) {
+                return TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            }
 
-            return TransactionResult.success(updatedAccount.getBalance());
+            // Insättningen registreras i ledgern av updateBalanceIf; kvittot hanteras av gränssnittet
+            return TransactionResult.success(update.getAccount().getBalanceInOre());
 
+        } catch (IllegalStateException e) {
+            // Repositoryts tabell med idempotensnycklar är full; inget har ändrats
+            return TransactionResult.failure("Tjänsten är upptagen, försök igen senare", ErrorCode.SERVICE_BUSY);
         } catch (Exception e) {
             return TransactionResult.failure("Fel vid insättning: " + e.getMessage(), ErrorCode.INVALID_AMOUNT);
         }
     }
 
+    /**
+     * Utför många uttag och insättningar i ett anrop, t.ex. en lönekörning
+     * eller insättningar från en uppräkningscentral.
+     *
+     * Operationerna grupperas per konto och varje kontos operationer utförs
+     * i en enda atomisk saldouppdatering i repositoryt (en läsning och en
+     * skrivning), i stället för en uppdatering per operation. Inom kontot
+     * prövas operationerna i batchens ordning mot det löpande saldot, så ett
+     * uttag som inte täcks misslyckas med INSUFFICIENT_FUNDS medan övriga
+     * operationer på kontot genomförs. Operationer på olika konton är
+     * oberoende av varandra; batchen som helhet är inte en transaktion.
+     *
+     * @param operations Operationerna i önskad ordning
+     * @return Ett TransactionResult per operation, i samma ordning; ett lyckat
+     *         resultat innehåller kontots saldo direkt efter operationen
+     */
+    public List<TransactionResult> applyBatch(List<BatchOperation> operations) {
+        TransactionResult[] results = new TransactionResult[operations.size()];
+        // Saldoändring i ören per operation; negativ för uttag
+        long[] deltas = new long[operations.size()];
+
+        // Validera beloppen och gruppera giltiga operationer per konto i den ordning de kom
+        Map<String, List<Integer>> byAccount = new LinkedHashMap<>();
+        for (int i = 0; i < operations.size(); i++) {
+            BatchOperation operation = operations.get(i);
+            TransactionResult invalid = validateBatchOperation(operation, deltas, i);
+            if (invalid != null) {
+                results[i] = invalid;
+            } else {
+                byAccount.computeIfAbsent(operation.getAccountNumber(), account -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<String, List<Integer>> entry : byAccount.entrySet()) {
+            applyToAccount(entry.getKey(), entry.getValue(), operations, deltas, results);
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Räknar ut en operations saldoändring.
+     * @return ett misslyckat resultat om beloppet är ogiltigt, annars null
+     */
+    private static TransactionResult validateBatchOperation(BatchOperation operation, long[] deltas, int index) {
+        long amountInOre = operation.getAmountInOre();
+        Map<Integer, Integer> notes = operation.getNotes();
+        if (notes != null) {
+            long amount = 0;
+            try {
+                for (Map.Entry<Integer, Integer> entry : notes.entrySet()) {
+                    if (!isValidDenomination(entry.getKey())) {
+                        return TransactionResult.failure("Ogiltig sedelvalör: " + entry.getKey(), ErrorCode.INVALID_AMOUNT);
+                    }
+                    if (entry.getValue() < 0) {
+                        return TransactionResult.failure("Ogiltigt antal sedlar: " + entry.getValue(), ErrorCode.INVALID_AMOUNT);
+                    }
+                    amount = Math.addExact(amount, Math.multiplyExact((long) entry.getKey(), entry.getValue()));
+                }
+                amountInOre = Money.ofKronor(amount);
+            } catch (ArithmeticException e) {
+                return TransactionResult.failure("Ogiltigt belopp", ErrorCode.INVALID_AMOUNT);
+            }
+        }
+        if (amountInOre <= 0) {
+            return TransactionResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        deltas[index] = operation.getType() == BatchOperation.Type.WITHDRAWAL ? -amountInOre : amountInOre;
+        return null;
+    }
+
+    /**
+     * Utför ett kontos operationer i en enda saldouppdatering.
+     */
+    private void applyToAccount(String accountNumber, List<Integer> indices, List<BatchOperation> operations,
+                                long[] deltas, TransactionResult[] results) {
+        int count = indices.size();
+        // Saldot efter respektive operation, eller saldot då den nekades
+        long[] balances = new long[count];
+        boolean[] applied = new boolean[count];
+        long[] finalBalance = new long[1];
+
+        // Villkoret går igenom operationerna mot det aktuella saldot under kontots
+        // lås och anropas en gång; skrivningen görs bara om något ändrades
+        BalanceUpdate update = updateBalanceIf(accountNumber, balance -> {
+            long running = balance;
+            boolean changed = false;
+            for (int i = 0; i < count; i++) {
+                long delta = deltas[indices.get(i)];
+                try {
+                    long next = Money.add(running, delta);
+                    if (delta > 0 || next >= 0) {
+                        running = next;
+                        applied[i] = true;
+                        changed = true;
+                    }
+                } catch (ArithmeticException e) {
+                    // Överspill; operationen nekas och saldot lämnas oförändrat
+                }
+                balances[i] = running;
+            }
+            finalBalance[0] = running;
+            return changed;
+        }, balance -> finalBalance[0], null, balanceAfter -> {
+            // En händelse per genomförd operation, med saldot direkt efter den
+            for (int i = 0; i < count; i++) {
+                if (!applied[i]) {
+                    continue;
+                }
+                int index = indices.get(i);
+                if (deltas[index] < 0) {
+                    ledger.recordWithdrawal(accountNumber, -deltas[index], balances[i]);
+                } else {
+                    ledger.recordDeposit(accountNumber, deltas[index], balances[i], operations.get(index).getNotes());
+                }
+            }
+        });
+
+        for (int i = 0; i < count; i++) {
+            int index = indices.get(i);
+            if (update.getStatus() == BalanceUpdate.Status.ACCOUNT_NOT_FOUND) {
+                results[index] = TransactionResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
+            } else if (applied[i]) {
+                results[index] = TransactionResult.success(balances[i]);
+            } else if (deltas[index] < 0) {
+                results[index] = TransactionResult.failure("Otillräckligt saldo. Tillgängligt: "
+                        + Money.toKronor(balances[i]) + " kr", ErrorCode.INSUFFICIENT_FUNDS);
+            } else {
+                results[index] = TransactionResult.failure("Ogiltigt belopp", ErrorCode.INVALID_AMOUNT);
+            }
+        }
+    }
+
+    /**
+     * Utför en operation högst en gång per nyckel. Finns nyckeln inte i
+     * tabellen (t.ex. efter en omstart) frågas repositoryt om en redan
+     * genomförd operation med samma nyckel.
+     */
+    private TransactionResult executeOnce(String idempotencyKey, Supplier<TransactionResult> operation) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > BankConstants.MAX_IDEMPOTENCY_KEY_LENGTH) {
+            return TransactionResult.failure("Ogiltig idempotensnyckel", ErrorCode.VALIDATION_ERROR);
+        }
+        return idempotencyCache.execute(idempotencyKey, () -> {
+            OptionalLong recorded = accountRepository.findOperationBalance(idempotencyKey);
+            if (recorded.isPresent()) {
+                return TransactionResult.success(recorded.getAsLong());
+            }
+            return operation.get();
+        });
+    }
+
+    /**
+     * Uppdaterar saldot i repositoryt. Med en huvudbok görs det under kontots
+     * lås i huvudboken, och recordEvent anropas med det nya saldot om saldot ändrades.
+     */
+    private BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance,
+                                          String idempotencyKey, LongConsumer recordEvent) {
+        if (ledger == null) {
+            return updateBalanceIf(accountNumber, condition, newBalance, idempotencyKey);
+        }
+        return ledger.withAccount(accountNumber, () -> {
+            BalanceUpdate update = updateBalanceIf(accountNumber, condition, newBalance, idempotencyKey);
+            if (update.isUpdated()) {
+                recordEvent.accept(update.getAccount().getBalanceInOre());
+            }
+            return update;
+        });
+    }
+
+    private BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance,
+                                          String idempotencyKey) {
+        // Utan nyckel används det vanliga anropet, som alla repositoryn implementerar själva
+        return idempotencyKey == null
+                ? accountRepository.updateBalanceIf(accountNumber, condition, newBalance)
+                : accountRepository.updateBalanceIf(accountNumber, condition, newBalance, idempotencyKey);
+    }
+
+    private static boolean isValidDenomination(int denomination) {
+        for (int validDenomination : BankConstants.VALID_DENOMINATIONS) {
+            if (denomination == validDenomination) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Hämtar det formaterade saldot för ett konto.
      *
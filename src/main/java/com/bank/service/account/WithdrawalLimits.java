@@ -0,0 +1,92 @@
+package com.bank.service.account;
+
+import com.bank.model.Money;
+import com.bank.util.BankConstants;
+import com.bank.util.SlidingWindowLimiter;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+/**
+ * Gränser för hur mycket som får tas ut per konto och per kort under den
+ * senaste timmen och det senaste dygnet.
+ *
+ * Dygnet räknas i 24 fack om en timme och timmen i 12 fack om fem minuter,
+ * så ett konto eller kort kostar 38 long i minnet oavsett antal uttag.
+ * Högst maxKeys konton respektive kort hålls i minnet; när taket är nått
+ * nekas uttag från nya konton och kort som om gränsen vore nådd.
+ */
+public class WithdrawalLimits {
+    private static final int DAILY = 0;
+
+    private final SlidingWindowLimiter accounts;
+    private final SlidingWindowLimiter cards;
+
+    /**
+     * Skapar gränser enligt BankConstants.
+     */
+    public WithdrawalLimits() {
+        this(Money.ofKronor(BankConstants.DAILY_WITHDRAWAL_LIMIT_KRONOR),
+                Money.ofKronor(BankConstants.HOURLY_WITHDRAWAL_LIMIT_KRONOR),
+                BankConstants.MAX_WITHDRAWAL_LIMIT_KEYS, System::currentTimeMillis);
+    }
+
+    /**
+     * Skapar gränser. Samma gränser gäller för konton och kort.
+     *
+     * @param dailyLimitInOre Högsta uttag per dygn i ören
+     * @param hourlyLimitInOre Högsta uttag per timme i ören
+     * @param maxKeys Högsta antal konton respektive kort som hålls i minnet
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public WithdrawalLimits(long dailyLimitInOre, long hourlyLimitInOre, int maxKeys, LongSupplier clock) {
+        SlidingWindowLimiter.Window daily = SlidingWindowLimiter.window(Duration.ofDays(1), 24, dailyLimitInOre);
+        SlidingWindowLimiter.Window hourly = SlidingWindowLimiter.window(Duration.ofHours(1), 12, hourlyLimitInOre);
+        this.accounts = new SlidingWindowLimiter(maxKeys, clock, daily, hourly);
+        this.cards = new SlidingWindowLimiter(maxKeys, clock, daily, hourly);
+    }
+
+    /**
+     * Räknar ett uttag mot kontots och kortets gränser om det ryms i båda.
+     *
+     * @param accountNumber Kontot
+     * @param cardNumber Kortet, eller null om uttaget inte görs med kort
+     * @param amountInOre Beloppet i ören
+     * @return tidpunkten som uttaget räknades på (till release), eller -1 om en gräns skulle överskridas
+     */
+    public long tryAcquire(String accountNumber, String cardNumber, long amountInOre) {
+        long acquiredAt = accounts.tryAcquire(accountNumber, amountInOre);
+        if (acquiredAt < 0 || cardNumber == null) {
+            return acquiredAt;
+        }
+        if (cards.tryAcquire(cardNumber, amountInOre) < 0) {
+            accounts.release(accountNumber, amountInOre, acquiredAt);
+            return -1;
+        }
+        return acquiredAt;
+    }
+
+    /**
+     * Tar tillbaka ett uttag som räknats men inte genomfördes.
+     *
+     * @param accountNumber Kontot
+     * @param cardNumber Kortet, eller null
+     * @param amountInOre Beloppet i ören
+     * @param acquiredAt Tidpunkten som tryAcquire returnerade
+     */
+    public void release(String accountNumber, String cardNumber, long amountInOre, long acquiredAt) {
+        accounts.release(accountNumber, amountInOre, acquiredAt);
+        if (cardNumber != null) {
+            cards.release(cardNumber, amountInOre, acquiredAt);
+        }
+    }
+
+    /**
+     * Hämtar hur mycket som tagits ut från kontot det senaste dygnet.
+     * @param accountNumber Kontot
+     * @return uttaget belopp i ören
+     */
+    public long getDailyWithdrawnInOre(String accountNumber) {
+        return accounts.used(accountNumber, DAILY);
+    }
+}
@@ -0,0 +1,68 @@
+package com.bank.service.async;
+
+import com.bank.service.account.AccountService;
+import com.bank.service.transaction.TransactionResult;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynkron fasad för AccountService.
+ *
+ * Varje metod delegerar till motsvarande synkrona metod och kör den via en
+ * AsyncExecutor, så anropande tråd kan fortsätta medan uttag och
+ * insättningar väntar på repositoryt. Se AsyncExecutor för hur timeout
+ * och avbrytning fungerar.
+ */
+public class AsyncAccountService {
+    private final AccountService accountService;
+    private final AsyncExecutor executor;
+
+    /**
+     * Skapar en asynkron fasad.
+     *
+     * @param accountService Den synkrona servicen som utför operationerna
+     * @param executor Executorn som operationerna körs på
+     */
+    public AsyncAccountService(AccountService accountService, AsyncExecutor executor) {
+        this.accountService = accountService;
+        this.executor = executor;
+    }
+
+    /**
+     * Gör ett uttag asynkront.
+     *
+     * @param accountNumber Kontonumret
+     * @param amount Belopp i kronor
+     * @return Framtid med resultatet av uttaget
+     */
+    public CompletableFuture<TransactionResult> withdrawAsync(String accountNumber, double amount) {
+        return executor.submit(() -> accountService.withdraw(accountNumber, amount));
+    }
+
+    /**
+     * Gör ett uttag asynkront med beloppet i ören.
+     *
+     * @param accountNumber Kontonumret
+     * @param amountInOre Belopp i ören
+     * @return Framtid med resultatet av uttaget
+     */
+    public CompletableFuture<TransactionResult> withdrawInOreAsync(String accountNumber, long amountInOre) {
+        return executor.submit(() -> accountService.withdrawInOre(accountNumber, amountInOre));
+    }
+
+    /**
+     * Gör en insättning asynkront.
+     *
+     * @param accountNumber Kontonumret
+     * @param notes Antal sedlar per valör
+     * @param confirmed Om användaren bekräftat insättningen
+     * @return Framtid med resultatet av insättningen
+     */
+    public CompletableFuture<TransactionResult> depositAsync(String accountNumber, Map<Integer, Integer> notes,
+                                                             boolean confirmed) {
+        // Kopiera sedlarna så att anroparen kan återanvända sin map direkt
+        Map<Integer, Integer> notesCopy = Map.copyOf(notes);
+        return executor.submit(() -> accountService.deposit(accountNumber, notesCopy, confirmed));
+    }
+}
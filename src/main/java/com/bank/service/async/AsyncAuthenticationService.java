@@ -0,0 +1,39 @@
+package com.bank.service.async;
+
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.Authenticator;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Asynkron fasad för autentisering.
+ *
+ * Delegerar till en synkron Authenticator och kör anropet via en
+ * AsyncExecutor. Se AsyncExecutor för hur timeout och avbrytning fungerar.
+ */
+public class AsyncAuthenticationService {
+    private final Authenticator authenticator;
+    private final AsyncExecutor executor;
+
+    /**
+     * Skapar en asynkron fasad.
+     *
+     * @param authenticator Den synkrona autentiseringen, t.ex. AuthenticationService
+     * @param executor Executorn som anropen körs på
+     */
+    public AsyncAuthenticationService(Authenticator authenticator, AsyncExecutor executor) {
+        this.authenticator = authenticator;
+        this.executor = executor;
+    }
+
+    /**
+     * Autentiserar ett kort asynkront.
+     *
+     * @param cardNumber Kortnumret
+     * @param pin PIN-koden
+     * @return Framtid med resultatet av autentiseringen
+     */
+    public CompletableFuture<AuthenticationResult> authenticateAsync(String cardNumber, String pin) {
+        return executor.submit(() -> authenticator.authenticate(cardNumber, pin));
+    }
+}
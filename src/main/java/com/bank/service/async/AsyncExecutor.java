@@ -0,0 +1,106 @@
+package com.bank.service.async;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Kör synkrona serviceanrop i bakgrunden och returnerar CompletableFuture.
+ *
+ * Anropen körs på en valfri ExecutorService. Med virtuella trådar (se
+ * virtualThreads()) kan tusentals samtidiga anrop vänta på långsamma
+ * repositories eller sedelräknare utan att binda lika många plattformstrådar.
+ *
+ * Timeout och avbrytning:
+ * Om framtiden avbryts med cancel, eller avslutas med TimeoutException (via
+ * standardtimeouten eller anroparens egen orTimeout), körs uppgiften aldrig
+ * om den inte hunnit starta. En pågående uppgift får däremot köra klart utan
+ * interrupt: en interrupt mitt i en skrivning till loggen stänger dess
+ * FileChannel för alla trådar. En operation som redan påbörjats kan alltså
+ * ha genomförts, så en avbruten transaktion ska betraktas som okänd och inte
+ * som misslyckad.
+ */
+public class AsyncExecutor implements AutoCloseable {
+    private final ExecutorService executor;
+    private final Duration defaultTimeout;
+
+    /**
+     * Skapar en AsyncExecutor med en egen executor.
+     *
+     * @param executor Executorn som anropen körs på; stängs av close()
+     * @param defaultTimeout Tidsgräns för varje anrop, eller null för ingen gräns
+     */
+    public AsyncExecutor(ExecutorService executor, Duration defaultTimeout) {
+        if (defaultTimeout != null && (defaultTimeout.isZero() || defaultTimeout.isNegative())) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.executor = executor;
+        this.defaultTimeout = defaultTimeout;
+    }
+
+    /**
+     * Skapar en AsyncExecutor där varje anrop får en egen virtuell tråd.
+     *
+     * @param defaultTimeout Tidsgräns för varje anrop, eller null för ingen gräns
+     * @return En ny AsyncExecutor
+     */
+    public static AsyncExecutor virtualThreads(Duration defaultTimeout) {
+        return new AsyncExecutor(Executors.newVirtualThreadPerTaskExecutor(), defaultTimeout);
+    }
+
+    /**
+     * Kör en uppgift i bakgrunden.
+     *
+     * @param task Uppgiften
+     * @return En framtid som avslutas med uppgiftens resultat eller undantag
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> running;
+        try {
+            running = executor.submit(() -> {
+                if (result.isDone()) {
+                    return; // Avbruten eller för sen innan den hann starta
+                }
+                try {
+                    result.complete(task.get());
+                } catch (Throwable failure) {
+                    result.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled() || failure instanceof TimeoutException) {
+                running.cancel(false);
+            }
+        });
+        if (defaultTimeout != null) {
+            result.orTimeout(defaultTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    /**
+     * Stänger executorn och väntar kort på pågående anrop. Anrop som inte
+     * hunnit klart avbryts inte, av samma skäl som vid cancel.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
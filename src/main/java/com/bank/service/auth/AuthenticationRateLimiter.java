@@ -0,0 +1,96 @@
+package com.bank.service.auth;
+
+import com.bank.util.BankConstants;
+import com.bank.util.TokenBucketLimiter;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Begränsar hur ofta inloggningar får försökas per terminal och per kort.
+ *
+ * Gränsen per terminal bromsar en terminal som prövar många kortnummer,
+ * vilket blockeringen efter MAX_FAILED_ATTEMPTS inte gör eftersom den bara
+ * gäller ett kort i taget. Gränsen per kort bromsar försök mot samma kort
+ * från många terminaler. Dessutom finns en gemensam gräns för okända
+ * kortnummer från alla terminaler, så att den som prövar kortnummer bromsas
+ * även om den lyckas byta terminal-id mellan försöken.
+ */
+public class AuthenticationRateLimiter {
+    private static final String UNKNOWN_CARD_KEY = "*";
+
+    private final TokenBucketLimiter terminals;
+    private final TokenBucketLimiter cards;
+    private final TokenBucketLimiter unknownCards;
+
+    /**
+     * Skapar gränser enligt BankConstants.
+     */
+    public AuthenticationRateLimiter() {
+        this(BankConstants.AUTH_ATTEMPTS_PER_MINUTE_PER_TERMINAL, BankConstants.AUTH_BURST_PER_TERMINAL,
+                BankConstants.AUTH_ATTEMPTS_PER_MINUTE_PER_CARD, BankConstants.AUTH_BURST_PER_CARD,
+                BankConstants.AUTH_UNKNOWN_CARDS_PER_MINUTE, BankConstants.AUTH_UNKNOWN_CARD_BURST,
+                BankConstants.MAX_AUTH_RATE_LIMIT_KEYS, System::currentTimeMillis);
+    }
+
+    /**
+     * Skapar gränser.
+     *
+     * @param terminalPerMinute Försök per minut och terminal
+     * @param terminalBurst Försök i följd per terminal
+     * @param cardPerMinute Försök per minut och kort
+     * @param cardBurst Försök i följd per kort
+     * @param maxKeys Högsta antal terminaler respektive kort som hålls i minnet
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public AuthenticationRateLimiter(int terminalPerMinute, int terminalBurst, int cardPerMinute, int cardBurst,
+                                     int maxKeys, LongSupplier clock) {
+        this(terminalPerMinute, terminalBurst, cardPerMinute, cardBurst, BankConstants.AUTH_UNKNOWN_CARDS_PER_MINUTE,
+                BankConstants.AUTH_UNKNOWN_CARD_BURST, maxKeys, clock);
+    }
+
+    /**
+     * Skapar gränser, inklusive den gemensamma gränsen för okända kortnummer.
+     *
+     * @param terminalPerMinute Försök per minut och terminal
+     * @param terminalBurst Försök i följd per terminal
+     * @param cardPerMinute Försök per minut och kort
+     * @param cardBurst Försök i följd per kort
+     * @param unknownCardPerMinute Okända kortnummer per minut, alla terminaler tillsammans
+     * @param unknownCardBurst Okända kortnummer i följd, alla terminaler tillsammans
+     * @param maxKeys Högsta antal terminaler respektive kort som hålls i minnet
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public AuthenticationRateLimiter(int terminalPerMinute, int terminalBurst, int cardPerMinute, int cardBurst,
+                                     int unknownCardPerMinute, int unknownCardBurst, int maxKeys, LongSupplier clock) {
+        this.terminals = new TokenBucketLimiter(terminalPerMinute, terminalBurst, maxKeys, clock);
+        this.cards = new TokenBucketLimiter(cardPerMinute, cardBurst, maxKeys, clock);
+        this.unknownCards = new TokenBucketLimiter(unknownCardPerMinute, unknownCardBurst, 4, clock);
+    }
+
+    /**
+     * Räknar ett försök från en terminal. Försök utan terminal-id räknas
+     * mot en gemensam standardterminal i stället för att slippa gränsen.
+     * @param terminalId Terminalen, eller null om den är okänd
+     * @return true om försöket får göras
+     */
+    public boolean tryTerminal(String terminalId) {
+        return terminals.tryAcquire(terminalId != null ? terminalId : BankConstants.DEFAULT_TERMINAL_ID);
+    }
+
+    /**
+     * Räknar ett försök mot ett kort.
+     * @param cardNumber Kortet
+     * @return true om försöket får göras
+     */
+    public boolean tryCard(String cardNumber) {
+        return cards.tryAcquire(cardNumber);
+    }
+
+    /**
+     * Räknar ett försök med ett okänt kortnummer mot den gemensamma gränsen.
+     * @return true om försöket får besvaras som ett okänt kort
+     */
+    public boolean tryUnknownCard() {
+        return unknownCards.tryAcquire(UNKNOWN_CARD_KEY);
+    }
+}
@@ -5,7 +5,9 @@ public enum AuthenticationResult {
     SUCCESS("Autentisering lyckades"),
     INVALID_CARD("Ogiltigt kort"),
     WRONG_PIN("Felaktig PIN-kod"),
-    CARD_BLOCKED("Kortet är blockerat");
+    CARD_BLOCKED("Kortet är blockerat"),
+    SERVICE_BUSY("Tjänsten är upptagen, försök igen"),
+    RATE_LIMITED("För många försök, vänta en stund");
 
     private final String message;
 
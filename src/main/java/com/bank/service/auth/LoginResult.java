@@ -0,0 +1,43 @@
+package com.bank.service.auth;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Resultatet av en inloggning som startar en session.
+ *
+ * En lyckad inloggning innehåller sessionens token, som terminalen skickar
+ * med i följande anrop och som går ut efter en tids inaktivitet.
+ */
+public class LoginResult {
+    private final AuthenticationResult result;
+    private final String sessionToken;
+
+    private LoginResult(AuthenticationResult result, String sessionToken) {
+        this.result = result;
+        this.sessionToken = sessionToken;
+    }
+
+    public static LoginResult success(String sessionToken) {
+        return new LoginResult(AuthenticationResult.SUCCESS, sessionToken);
+    }
+
+    public static LoginResult failure(AuthenticationResult result) {
+        return new LoginResult(result, null);
+    }
+
+    // Getters
+    public boolean isSuccess() { return result == AuthenticationResult.SUCCESS; }
+    public AuthenticationResult getResult() { return result; }
+
+    /**
+     * Hämtar sessionens token.
+     * @return token för sessionen
+     * @throws NoSuchElementException om inloggningen misslyckades
+     */
+    public String getSessionToken() {
+        if (sessionToken == null) {
+            throw new NoSuchElementException("No session was started");
+        }
+        return sessionToken;
+    }
+}
@@ -0,0 +1,125 @@
+package com.bank.service.auth;
+
+import com.bank.model.Card;
+import com.bank.util.BankConstants;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * En begränsad trådpool för de dyra PIN-hashningarna.
+ *
+ * En PBKDF2-verifiering tar millisekunder av ren CPU-tid. Körs den direkt på
+ * anropande tråd, t.ex. en virtuell tråd per session, kan tusentals samtidiga
+ * inloggningar binda alla bärartrådar och svälta övriga anrop. Här körs
+ * hashningen i stället på ett fast antal plattformstrådar, normalt en per
+ * kärna, medan anroparen väntar.
+ *
+ * Kön framför trådarna är begränsad. När den är full avvisas nya
+ * verifieringar direkt med RejectedExecutionException i stället för att
+ * köa obegränsat, så att överlast syns som SERVICE_BUSY hos terminalen och
+ * väntetiden för godkända anrop hålls nere.
+ */
+public class PinVerificationPool implements AutoCloseable {
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * Skapar en pool med en tråd per kärna och kölängden i BankConstants.
+     */
+    public PinVerificationPool() {
+        this(Runtime.getRuntime().availableProcessors(), BankConstants.PIN_VERIFICATION_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Skapar en pool.
+     *
+     * @param threads Antal trådar som hashar
+     * @param queueCapacity Högsta antal verifieringar som väntar på en tråd
+     */
+    public PinVerificationPool(int threads, int queueCapacity) {
+        if (threads <= 0 || queueCapacity <= 0) {
+            throw new IllegalArgumentException("Threads and queue capacity must be positive");
+        }
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), task -> {
+                    Thread thread = new Thread(task, "pin-verifier-" + threadNumber.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * Jämför en PIN-kod med kortets lagrade PIN på en av poolens trådar och
+     * väntar på svaret. Kortets försöksräknare ändras inte.
+     *
+     * @param card Kortet
+     * @param pin PIN-koden
+     * @return true om PIN-koden är korrekt
+     * @throws RejectedExecutionException om kön är full
+     */
+    public boolean matches(Card card, String pin) {
+        return run(() -> card.matchesPin(pin));
+    }
+
+    /**
+     * Hashar om kortets PIN-kod på en av poolens trådar och väntar tills det är klart.
+     *
+     * @param card Kortet
+     * @param verifiedPin En PIN-kod som just verifierats
+     * @throws RejectedExecutionException om kön är full
+     */
+    public void rehash(Card card, String verifiedPin) {
+        run(() -> {
+            card.rehashPin(verifiedPin);
+            return null;
+        });
+    }
+
+    /**
+     * Hämtar antalet verifieringar som väntar på en tråd.
+     * @return köns längd just nu
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    private <T> T run(Callable<T> task) {
+        Future<T> future = executor.submit(task);
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException("Interrupted while waiting for PIN verification", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    /**
+     * Stänger poolen och väntar kort på pågående verifieringar.
+     */
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,230 @@
+package com.bank.service.auth;
+
+import com.bank.util.BankConstants;
+import com.bank.util.TimingWheel;
+
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/**
+ * Inloggade sessioner med en slumpad token per session.
+ *
+ * En session går ut när den inte använts på idle-tiden, och senast när den
+ * funnits i maxlivslängden, oavsett användning. Utgången sköts av ett
+ * TimingWheel: varje session har en tidsgräns i hjulet, och när gränsen går
+ * ut kontrolleras sessionens senaste användning. Har den använts läggs en ny
+ * gräns, annars tas sessionen bort. Att använda en session skriver därför
+ * bara en tidsstämpel, och borttagning kräver aldrig att alla sessioner
+ * gås igenom.
+ *
+ * Ingen bakgrundstråd behövs: hjulet flyttas fram av anropen själva när ett
+ * tick passerat, av den tråd som först får låset. Antalet sessioner i minnet
+ * följer därmed antalet sessioner som faktiskt är aktiva.
+ *
+ * Per kort räknas antalet aktiva sessioner, så hasActiveSession kan svara
+ * med en enda uppslagning utan att skapa några objekt.
+ */
+public class SessionStore {
+    private static final int TOKEN_BYTES = 16;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final long idleTimeoutMillis;
+    private final long maxLifetimeMillis;
+    private final long tickMillis;
+    private final LongSupplier clock;
+    private final TimingWheel<Session> timeouts;
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final Map<String, Integer> sessionsPerCard = new ConcurrentHashMap<>();
+    private final ReentrantLock expiryLock = new ReentrantLock();
+    // Tidpunkten då hjulet nästa gång behöver flyttas fram
+    private volatile long nextExpiryMillis;
+
+    /**
+     * Skapar en SessionStore med tidsgränserna i BankConstants.
+     */
+    public SessionStore() {
+        this(Duration.ofSeconds(BankConstants.SESSION_IDLE_TIMEOUT_SECONDS),
+                Duration.ofSeconds(BankConstants.SESSION_MAX_LIFETIME_SECONDS), System::currentTimeMillis);
+    }
+
+    /**
+     * Skapar en SessionStore.
+     *
+     * @param idleTimeout Tid utan användning tills en session går ut
+     * @param maxLifetime Tid från inloggning tills en session går ut oavsett användning
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public SessionStore(Duration idleTimeout, Duration maxLifetime, LongSupplier clock) {
+        if (idleTimeout.isZero() || idleTimeout.isNegative() || maxLifetime.isZero() || maxLifetime.isNegative()) {
+            throw new IllegalArgumentException("Session timeouts must be positive");
+        }
+        this.idleTimeoutMillis = idleTimeout.toMillis();
+        this.maxLifetimeMillis = maxLifetime.toMillis();
+        this.tickMillis = Math.min(BankConstants.SESSION_TIMER_TICK_MILLIS, idleTimeoutMillis);
+        this.clock = clock;
+        long now = clock.getAsLong();
+        this.timeouts = new TimingWheel<>(tickMillis, now);
+        this.nextExpiryMillis = now + tickMillis;
+    }
+
+    /**
+     * Startar en session för ett kort som just autentiserats.
+     *
+     * @param cardNumber Kortnumret
+     * @return sessionens token
+     */
+    public String open(String cardNumber) {
+        long now = clock.getAsLong();
+        expireIfDue(now);
+        byte[] bytes = new byte[TOKEN_BYTES];
+        RANDOM.nextBytes(bytes);
+        String token = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        Session session = new Session(token, cardNumber, now, now + maxLifetimeMillis);
+        sessionsPerCard.merge(cardNumber, 1, Integer::sum);
+        sessions.put(token, session);
+        session.timeout = timeouts.schedule(session, session.deadline());
+        return token;
+    }
+
+    /**
+     * Kontrollerar att en session är aktiv och räknar anropet som användning.
+     *
+     * @param token Sessionens token
+     * @return kortnumret för sessionen, eller null om den inte finns eller gått ut
+     */
+    public String touch(String token) {
+        long now = clock.getAsLong();
+        expireIfDue(now);
+        Session session = token == null ? null : sessions.get(token);
+        if (session == null) {
+            return null;
+        }
+        if (now >= session.deadline()) {
+            end(session);
+            return null;
+        }
+        session.lastUsedMillis = now;
+        return session.cardNumber;
+    }
+
+    /**
+     * Avslutar en session, t.ex. när kortet matas ut.
+     *
+     * @param token Sessionens token
+     * @return true om sessionen fanns
+     */
+    public boolean close(String token) {
+        Session session = token == null ? null : sessions.get(token);
+        return session != null && end(session);
+    }
+
+    /**
+     * Kontrollerar om ett kort har minst en aktiv session. Skapar inga objekt.
+     *
+     * @param cardNumber Kortnumret
+     * @return true om kortet har en session som inte gått ut
+     */
+    public boolean hasActiveSession(String cardNumber) {
+        expireIfDue(clock.getAsLong());
+        return cardNumber != null && sessionsPerCard.containsKey(cardNumber);
+    }
+
+    /**
+     * Hämtar antalet aktiva sessioner.
+     * @return antal sessioner
+     */
+    public int size() {
+        return sessions.size();
+    }
+
+    /**
+     * Tar bort alla sessioner som gått ut. Anropas automatiskt av övriga
+     * metoder när ett tick passerat, men kan också anropas direkt.
+     *
+     * @return antal sessioner som togs bort
+     */
+    public int expireSessions() {
+        expiryLock.lock();
+        try {
+            return advance(clock.getAsLong());
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    private void expireIfDue(long now) {
+        // Snabb väg utan lås och utan objekt medan inget tick har passerat
+        if (now < nextExpiryMillis || !expiryLock.tryLock()) {
+            return;
+        }
+        try {
+            advance(now);
+        } finally {
+            expiryLock.unlock();
+        }
+    }
+
+    private int advance(long now) {
+        int[] expired = new int[1];
+        timeouts.advance(now, session -> {
+            if (sessions.get(session.token) != session) {
+                return; // Redan avslutad
+            }
+            long deadline = session.deadline();
+            if (now >= deadline) {
+                if (end(session)) {
+                    expired[0]++;
+                }
+            } else {
+                // Använd sedan gränsen lades; lägg en ny vid den nya gränsen
+                session.timeout = timeouts.schedule(session, deadline);
+            }
+        });
+        nextExpiryMillis = now - Math.floorMod(now, tickMillis) + tickMillis;
+        return expired[0];
+    }
+
+    /**
+     * Tar bort en session.
+     * @return true om anroparen tog bort den
+     */
+    private boolean end(Session session) {
+        if (!sessions.remove(session.token, session)) {
+            return false;
+        }
+        sessionsPerCard.computeIfPresent(session.cardNumber, (card, count) -> count == 1 ? null : count - 1);
+        TimingWheel.Timeout<Session> timeout = session.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return true;
+    }
+
+    /**
+     * En session och dess tidsstämplar.
+     */
+    private final class Session {
+        final String token;
+        final String cardNumber;
+        final long expiresAtMillis;
+        volatile long lastUsedMillis;
+        volatile TimingWheel.Timeout<Session> timeout;
+
+        Session(String token, String cardNumber, long now, long expiresAtMillis) {
+            this.token = token;
+            this.cardNumber = cardNumber;
+            this.lastUsedMillis = now;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        long deadline() {
+            return Math.min(expiresAtMillis, lastUsedMillis + idleTimeoutMillis);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package com.bank.service.auth;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * De terminaler som banken känner till.
+ *
+ * Servrar som låter terminalen ange sitt id vid inloggning tar bara emot id
+ * som finns här. Annars kunde en klient byta id vid varje försök och därmed
+ * aldrig bromsas av gränsen per terminal i AuthenticationRateLimiter.
+ */
+public class TerminalRegistry {
+    private final Set<String> terminalIds = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Registrerar en terminal.
+     * @param terminalId Terminalens id
+     * @throws IllegalArgumentException om id:t är tomt
+     */
+    public void register(String terminalId) {
+        if (terminalId == null || terminalId.isBlank()) {
+            throw new IllegalArgumentException("Terminal id must not be blank");
+        }
+        terminalIds.add(terminalId);
+    }
+
+    /**
+     * Kontrollerar om en terminal är registrerad.
+     * @param terminalId Terminalens id
+     * @return true om terminalen är känd
+     */
+    public boolean isRegistered(String terminalId) {
+        return terminalId != null && terminalIds.contains(terminalId);
+    }
+}
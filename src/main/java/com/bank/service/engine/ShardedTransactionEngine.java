@@ -0,0 +1,324 @@
+package com.bank.service.engine;
+
+import com.bank.service.account.AccountService;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.util.RingBuffer;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Kör uttag och insättningar på ett fast antal shard-trådar, där varje konto
+ * alltid hanteras av samma tråd.
+ *
+ * Konton fördelas på shards utifrån kontonumrets hash. Kommandon läggs i
+ * shardens RingBuffer (låsfri, begränsad) och shard-tråden tar ut dem i
+ * omgångar och utför dem i tur och ordning. Eftersom varje konto bara har en
+ * skrivande tråd tävlar uttag mot samma konto aldrig om lås eller CAS; ett
+ * "hett" konto blir en kö på sin shard i stället för en låskonvoj mellan
+ * många trådar.
+ *
+ * Själva operationen utförs av AccountService, så validering, felkoder och
+ * beständighet är desamma som i den vanliga vägen. Repositoryts lås tas
+ * fortfarande men är i praktiken okonkurrerade; de gör det säkert att blanda
+ * motorn med direkta anrop till AccountService.
+ *
+ * Beständighet:
+ * Varje omgång körs i repositoryts runBatch, så ett beständigt repository
+ * gör en enda fsync för hela omgången i stället för en per kommando, och
+ * shard-tråden köar inte sina konton bakom en fsync per operation.
+ * Resultaten lämnas ut först när hela omgången är beständig.
+ *
+ * Mottryck: när en shards kö är full väntar anroparen (med tilltagande
+ * pauser) tills det finns plats, i stället för att kön växer obegränsat.
+ */
+public class ShardedTransactionEngine implements AutoCloseable {
+    private static final int BATCH_SIZE = 256;
+    private static final int IDLE_SPINS = 100;
+
+    private final AccountService accountService;
+    private final Shard[] shards;
+    private volatile boolean closed;
+
+    /**
+     * Skapar och startar motorn.
+     *
+     * @param accountService Servicen som utför operationerna
+     * @param shardCount Antal shard-trådar
+     * @param queueCapacity Kapacitet för varje shards kö
+     * @throws IllegalArgumentException om antal eller kapacitet inte är positiva
+     */
+    public ShardedTransactionEngine(AccountService accountService, int shardCount, int queueCapacity) {
+        if (shardCount <= 0) {
+            throw new IllegalArgumentException("Shard count must be positive");
+        }
+        this.accountService = accountService;
+        this.shards = new Shard[shardCount];
+        for (int i = 0; i < shardCount; i++) {
+            shards[i] = new Shard(queueCapacity);
+        }
+        for (int i = 0; i < shardCount; i++) {
+            shards[i].thread = Thread.ofPlatform().name("transaction-shard-" + i).daemon(true).start(shards[i]);
+        }
+    }
+
+    /**
+     * Gör ett uttag på kontots shard.
+     *
+     * @param accountNumber Kontonumret
+     * @param amountInOre Belopp i ören
+     * @return Framtid med resultatet av uttaget
+     */
+    public CompletableFuture<TransactionResult> withdrawInOre(String accountNumber, long amountInOre) {
+        return submit(new Command(accountNumber, amountInOre, null));
+    }
+
+    /**
+     * Gör en bekräftad insättning på kontots shard.
+     *
+     * @param accountNumber Kontonumret
+     * @param notes Sedelvalörer och antal
+     * @return Framtid med resultatet av insättningen
+     */
+    public CompletableFuture<TransactionResult> deposit(String accountNumber, Map<Integer, Integer> notes) {
+        return submit(new Command(accountNumber, 0, notes));
+    }
+
+    /**
+     * Hämtar antalet utförda kommandon på alla shards.
+     * @return antal kommandon
+     */
+    public long getProcessedCount() {
+        long processed = 0;
+        for (Shard shard : shards) {
+            processed += shard.processed.sum();
+        }
+        return processed;
+    }
+
+    /**
+     * Hämtar antalet omgångar som shard-trådarna tagit ut ur sina köer.
+     * Processed delat med detta är den genomsnittliga omgångens storlek.
+     * @return antal omgångar
+     */
+    public long getBatchCount() {
+        long batches = 0;
+        for (Shard shard : shards) {
+            batches += shard.batches.sum();
+        }
+        return batches;
+    }
+
+    public int getShardCount() {
+        return shards.length;
+    }
+
+    /**
+     * Stänger motorn. Kommandon som redan köats utförs innan trådarna avslutas;
+     * nya kommandon avvisas med RejectedExecutionException.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        for (Shard shard : shards) {
+            LockSupport.unpark(shard.thread);
+        }
+        try {
+            for (Shard shard : shards) {
+                shard.thread.join(TimeUnit.SECONDS.toMillis(5));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<TransactionResult> submit(Command command) {
+        if (closed) {
+            command.result.completeExceptionally(new RejectedExecutionException("Engine is closed"));
+            return command.result;
+        }
+        Shard shard = shardFor(command.accountNumber);
+        int attempts = 0;
+        while (!shard.queue.offer(command)) {
+            if (closed) {
+                command.result.completeExceptionally(new RejectedExecutionException("Engine is closed"));
+                return command.result;
+            }
+            backOff(attempts++);
+        }
+        if (shard.sleeping) {
+            LockSupport.unpark(shard.thread);
+        }
+        if (shard.finished && command.claim()) {
+            // Shard-tråden avslutades innan den hann se kommandot
+            command.result.completeExceptionally(new RejectedExecutionException("Engine is closed"));
+        }
+        return command.result;
+    }
+
+    private Shard shardFor(String accountNumber) {
+        int h = accountNumber.hashCode();
+        h ^= (h >>> 16);
+        return shards[Math.floorMod(h, shards.length)];
+    }
+
+    private static void backOff(int attempts) {
+        if (attempts < 64) {
+            Thread.onSpinWait();
+        } else if (attempts < 128) {
+            Thread.yield();
+        } else {
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(50));
+        }
+    }
+
+    /**
+     * Utför ett kommando utan att lämna ut resultatet, som väntar tills
+     * omgången är beständig.
+     * @return true om kommandot utfördes
+     */
+    private boolean execute(Command command) {
+        if (command.result.isDone() || !command.claim()) {
+            return false; // Avbruten, eller avvisad vid stängning, innan den hann utföras
+        }
+        try {
+            command.outcome = command.notes == null
+                    ? accountService.withdrawInOre(command.accountNumber, command.amountInOre)
+                    : accountService.deposit(command.accountNumber, command.notes, true);
+        } catch (RuntimeException e) {
+            command.failure = e;
+        }
+        return true;
+    }
+
+    /**
+     * Ett uttag (notes == null) eller en insättning.
+     */
+    private static final class Command {
+        final String accountNumber;
+        final long amountInOre;
+        final Map<Integer, Integer> notes;
+        final CompletableFuture<TransactionResult> result = new CompletableFuture<>();
+        // Utfallet innan omgången är beständig; används bara av shard-tråden
+        TransactionResult outcome;
+        RuntimeException failure;
+        // Antingen shard-tråden eller en avvisning vid stängning får kommandot, aldrig båda
+        private final AtomicBoolean claimed = new AtomicBoolean();
+
+        Command(String accountNumber, long amountInOre, Map<Integer, Integer> notes) {
+            this.accountNumber = accountNumber;
+            this.amountInOre = amountInOre;
+            this.notes = notes;
+        }
+
+        boolean claim() {
+            return claimed.compareAndSet(false, true);
+        }
+    }
+
+    /**
+     * En kö och tråden som ensam tömmer den.
+     */
+    private final class Shard implements Runnable {
+        final RingBuffer<Command> queue;
+        final LongAdder processed = new LongAdder();
+        final LongAdder batches = new LongAdder();
+        // Omgångens utförda kommandon, vars resultat lämnas ut efter synkningen
+        private final ArrayList<Command> executed = new ArrayList<>(BATCH_SIZE);
+        private final Consumer<Command> executeCommand = this::executeInBatch;
+        private final Runnable drainTask = this::drainIntoBatch;
+        private int drained;
+        Thread thread;
+        // Sätts innan tråden parkerar, så att producenter vet att den måste väckas
+        volatile boolean sleeping;
+        // Sätts när tråden tömt kön efter stängning
+        volatile boolean finished;
+
+        Shard(int queueCapacity) {
+            this.queue = new RingBuffer<>(queueCapacity);
+        }
+
+        @Override
+        public void run() {
+            int idle = 0;
+            while (!closed) {
+                int drained = drainBatch();
+                if (drained > 0) {
+                    processed.add(drained);
+                    batches.increment();
+                    idle = 0;
+                } else if (idle++ < IDLE_SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    sleeping = true;
+                    // Kontrollera kön igen efter flaggan, annars kan en väckning missas
+                    if (queue.isEmpty() && !closed) {
+                        LockSupport.park(this);
+                    }
+                    sleeping = false;
+                    idle = 0;
+                }
+            }
+
+            // Utför det som köades innan stängningen. Töms en gång till efter att
+            // finished satts, för kommandon som köades precis innan producenten såg flaggan.
+            drainRemaining();
+            finished = true;
+            drainRemaining();
+        }
+
+        private void drainRemaining() {
+            while (!queue.isEmpty()) {
+                int drained = drainBatch();
+                processed.add(drained);
+                if (drained == 0) {
+                    Thread.onSpinWait(); // En producent har reserverat men inte skrivit klart
+                }
+            }
+        }
+
+        /**
+         * Tar ut och utför en omgång med en enda synkning i repositoryt, och
+         * lämnar sedan ut resultaten. Misslyckas synkningen är ingen av
+         * omgångens ändringar bekräftad, så alla får felet.
+         * @return antal kommandon som togs ut
+         */
+        private int drainBatch() {
+            drained = 0;
+            RuntimeException syncFailure = null;
+            try {
+                accountService.getAccountRepository().runBatch(drainTask);
+            } catch (RuntimeException e) {
+                syncFailure = e;
+            }
+            for (Command command : executed) {
+                if (syncFailure != null) {
+                    command.result.completeExceptionally(syncFailure);
+                } else if (command.failure != null) {
+                    command.result.completeExceptionally(command.failure);
+                } else {
+                    command.result.complete(command.outcome);
+                }
+            }
+            executed.clear();
+            return drained;
+        }
+
+        private void drainIntoBatch() {
+            drained = queue.drain(executeCommand, BATCH_SIZE);
+        }
+
+        private void executeInBatch(Command command) {
+            if (execute(command)) {
+                executed.add(command);
+            }
+        }
+    }
+}
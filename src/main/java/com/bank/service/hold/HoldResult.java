@@ -0,0 +1,64 @@
+package com.bank.service.hold;
+
+import com.bank.service.validation.ErrorCode;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Resultatet av en reservation för ett kontantuttag.
+ *
+ * Ett lyckat resultat innehåller reservationens id, som används för att
+ * bekräfta eller släppa den, och saldot efter att beloppet reserverats.
+ */
+public class HoldResult {
+    private final boolean success;
+    private final String message;
+    private final ErrorCode errorCode;
+    private final long holdId;
+    private final long newBalanceInOre;
+
+    private HoldResult(boolean success, String message, ErrorCode errorCode, long holdId, long newBalanceInOre) {
+        this.success = success;
+        this.message = message;
+        this.errorCode = errorCode;
+        this.holdId = holdId;
+        this.newBalanceInOre = newBalanceInOre;
+    }
+
+    public static HoldResult success(long holdId, long newBalanceInOre) {
+        return new HoldResult(true, "Belopp reserverat", null, holdId, newBalanceInOre);
+    }
+
+    public static HoldResult failure(String message, ErrorCode errorCode) {
+        return new HoldResult(false, message, errorCode, -1, 0);
+    }
+
+    // Getters
+    public boolean isSuccess() { return success; }
+    public String getMessage() { return message; }
+    public ErrorCode getErrorCode() { return errorCode; }
+
+    /**
+     * Hämtar reservationens id.
+     * @return id för reservationen
+     * @throws NoSuchElementException om reservationen misslyckades
+     */
+    public long getHoldId() {
+        if (!success) {
+            throw new NoSuchElementException("No hold was created");
+        }
+        return holdId;
+    }
+
+    /**
+     * Hämtar saldot efter reservationen i ören.
+     * @return saldot i ören
+     * @throws NoSuchElementException om reservationen misslyckades
+     */
+    public long getNewBalanceInOre() {
+        if (!success) {
+            throw new NoSuchElementException("No new balance present");
+        }
+        return newBalanceInOre;
+    }
+}
@@ -0,0 +1,289 @@
+package com.bank.service.hold;
+
+import com.bank.service.account.AccountService;
+import com.bank.service.account.WithdrawalLimits;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import com.bank.util.BankConstants;
+import com.bank.util.TimingWheel;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Kontantuttag i två steg: reservera, och sedan bekräfta eller släppa.
+ *
+ * En reservation drar beloppet från saldot direkt, så samma pengar inte kan
+ * tas ut två gånger medan sedlarna matas ut. När sedlarna lämnats ut
+ * bekräftas reservationen med commit och uttaget är klart. Fastnar
+ * sedelautomaten släpps reservationen med release och beloppet förs
+ * tillbaka. En reservation som varken bekräftats eller släppts inom
+ * tidsgränsen släpps automatiskt.
+ *
+ * En reservation räknas mot kontots och kortets uttagsgränser när den görs,
+ * om AccountService har gränser. Släpps reservationen, manuellt eller när
+ * tidsgränsen passeras, tas beloppet tillbaka från gränserna igen.
+ *
+ * Tidsgränserna ligger i ett TimingWheel som flyttas fram av en
+ * bakgrundstråd, så miljontals reservationer kräver varken en genomsökning
+ * eller en tråd var. Varje reservation avslutas exakt en gång: commit,
+ * release och utgång tävlar om den med en CAS och bara vinnaren ändrar saldot.
+ *
+ * Reservationerna hålls i minnet. Efter en omstart räknas en reservation
+ * som inte hann avslutas som bekräftad, precis som ett vanligt uttag. I
+ * huvudboken syns den skillnaden: en bekräftad reservation har en
+ * HOLD_COMMIT, en som aldrig avslutades har varken den eller HOLD_RELEASE.
+ */
+public final class HoldService implements AutoCloseable {
+    private static final int ACTIVE = 0;
+    private static final int COMMITTED = 1;
+    private static final int RELEASED = 2;
+
+    private final AccountService accountService;
+    private final long holdTimeoutMillis;
+    private final LongSupplier clock;
+    private final TimingWheel<Hold> timeouts;
+    private final Map<Long, Hold> holds = new ConcurrentHashMap<>();
+    private final AtomicLong nextHoldId = new AtomicLong(1);
+    private final LongAdder expiredCount = new LongAdder();
+    private final ScheduledExecutorService executor;
+
+    /**
+     * Skapar en HoldService med tidsgränsen i BankConstants och startar
+     * bakgrundstråden som släpper utgångna reservationer.
+     *
+     * @param accountService Servicen som ändrar saldona
+     */
+    public HoldService(AccountService accountService) {
+        this(accountService, Duration.ofSeconds(BankConstants.HOLD_TIMEOUT_SECONDS));
+    }
+
+    /**
+     * Skapar en HoldService och startar bakgrundstråden som släpper utgångna
+     * reservationer.
+     *
+     * @param accountService Servicen som ändrar saldona
+     * @param holdTimeout Tid tills en reservation släpps automatiskt
+     */
+    public HoldService(AccountService accountService, Duration holdTimeout) {
+        this(accountService, holdTimeout, System::currentTimeMillis, true);
+    }
+
+    /**
+     * Skapar en HoldService utan bakgrundstråd och med en egen klocka, t.ex.
+     * i tester; utgångna reservationer släpps när expireHolds anropas.
+     *
+     * @param accountService Servicen som ändrar saldona
+     * @param holdTimeout Tid tills en reservation släpps automatiskt
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public HoldService(AccountService accountService, Duration holdTimeout, LongSupplier clock) {
+        this(accountService, holdTimeout, clock, false);
+    }
+
+    private HoldService(AccountService accountService, Duration holdTimeout, LongSupplier clock, boolean startTimer) {
+        if (holdTimeout.isZero() || holdTimeout.isNegative()) {
+            throw new IllegalArgumentException("Hold timeout must be positive");
+        }
+        this.accountService = accountService;
+        this.holdTimeoutMillis = holdTimeout.toMillis();
+        this.clock = clock;
+        this.timeouts = new TimingWheel<>(BankConstants.HOLD_TIMER_TICK_MILLIS, clock.getAsLong());
+        if (startTimer) {
+            this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "hold-expiry");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::expireHolds, BankConstants.HOLD_TIMER_TICK_MILLIS,
+                    BankConstants.HOLD_TIMER_TICK_MILLIS, TimeUnit.MILLISECONDS);
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * Reserverar ett belopp för ett kontantuttag som inte görs med kort.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param amountInOre Beloppet i ören
+     * @return HoldResult med reservationens id och saldot efteråt, eller varför den misslyckades
+     */
+    public HoldResult reserveInOre(String accountNumber, long amountInOre) {
+        return reserveInOre(accountNumber, null, amountInOre);
+    }
+
+    /**
+     * Reserverar ett belopp för ett kontantuttag med ett kort.
+     *
+     * @param accountNumber Kontonumret för kontot
+     * @param cardNumber Kortet som uttaget görs med, eller null
+     * @param amountInOre Beloppet i ören
+     * @return HoldResult med reservationens id och saldot efteråt, eller varför den misslyckades
+     */
+    public HoldResult reserveInOre(String accountNumber, String cardNumber, long amountInOre) {
+        if (amountInOre <= 0) {
+            return HoldResult.failure("Belopp måste vara större än noll", ErrorCode.INVALID_AMOUNT);
+        }
+        // Räkna reservationen mot gränserna först, som ett vanligt uttag
+        WithdrawalLimits limits = accountService.getWithdrawalLimits();
+        long acquiredAt = -1;
+        if (limits != null) {
+            acquiredAt = limits.tryAcquire(accountNumber, cardNumber, amountInOre);
+            if (acquiredAt < 0) {
+                return HoldResult.failure("Uttagsgränsen är nådd", ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED);
+            }
+        }
+        long holdId = nextHoldId.getAndIncrement();
+        TransactionResult debit = accountService.holdInOre(accountNumber, amountInOre, holdId);
+        if (!debit.isSuccess()) {
+            if (limits != null) {
+                limits.release(accountNumber, cardNumber, amountInOre, acquiredAt);
+            }
+            return HoldResult.failure(debit.getMessage(), debit.getErrorCode());
+        }
+        Hold hold = new Hold(holdId, accountNumber, cardNumber, amountInOre, acquiredAt);
+        holds.put(holdId, hold);
+        hold.timeout = timeouts.schedule(hold, clock.getAsLong() + holdTimeoutMillis);
+        return HoldResult.success(holdId, debit.getNewBalanceInOre());
+    }
+
+    /**
+     * Bekräftar en reservation när kontanterna lämnats ut. Bekräftelsen
+     * sparas i huvudboken som en HOLD_COMMIT.
+     *
+     * @param holdId Reservationens id
+     * @return TransactionResult som lyckas om reservationen fortfarande var aktiv
+     */
+    public TransactionResult commit(long holdId) {
+        Hold hold = claim(holdId, COMMITTED);
+        if (hold == null) {
+            return TransactionResult.failure("Reservationen finns inte eller är redan avslutad", ErrorCode.HOLD_NOT_FOUND);
+        }
+        return accountService.commitHoldInOre(hold.accountNumber, hold.id);
+    }
+
+    /**
+     * Släpper en reservation och för tillbaka beloppet, t.ex. när
+     * sedelautomaten fastnat.
+     *
+     * @param holdId Reservationens id
+     * @return TransactionResult med saldot efteråt, eller varför reservationen inte kunde släppas
+     */
+    public TransactionResult release(long holdId) {
+        Hold hold = claim(holdId, RELEASED);
+        if (hold == null) {
+            return TransactionResult.failure("Reservationen finns inte eller är redan avslutad", ErrorCode.HOLD_NOT_FOUND);
+        }
+        return giveBack(hold);
+    }
+
+    /**
+     * Släpper alla reservationer vars tidsgräns passerats. Anropas av
+     * bakgrundstråden, eller direkt när servicen skapats utan tråd.
+     *
+     * @return antal reservationer som släpptes
+     */
+    public synchronized int expireHolds() {
+        int[] released = new int[1];
+        timeouts.advance(clock.getAsLong(), hold -> {
+            if (claim(hold.id, RELEASED) != null) {
+                giveBack(hold);
+                expiredCount.increment();
+                released[0]++;
+            }
+        });
+        return released[0];
+    }
+
+    /**
+     * Hämtar antalet reservationer som varken bekräftats eller släppts.
+     * @return antal aktiva reservationer
+     */
+    public int getActiveHoldCount() {
+        return holds.size();
+    }
+
+    /**
+     * Hämtar antalet reservationer som släppts för att tidsgränsen passerats.
+     * @return antal utgångna reservationer
+     */
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    /**
+     * Stoppar bakgrundstråden. Aktiva reservationer lämnas som de är.
+     */
+    @Override
+    public void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Avslutar en aktiv reservation.
+     * @return reservationen om anroparen avslutade den, null om den inte fanns eller redan avslutats
+     */
+    private Hold claim(long holdId, int finalState) {
+        Hold hold = holds.get(holdId);
+        if (hold == null || !hold.state.compareAndSet(ACTIVE, finalState)) {
+            return null;
+        }
+        holds.remove(holdId);
+        TimingWheel.Timeout<Hold> timeout = hold.timeout;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+        return hold;
+    }
+
+    /**
+     * För tillbaka en släppt reservations belopp till kontot och tar
+     * tillbaka det från uttagsgränserna.
+     */
+    private TransactionResult giveBack(Hold hold) {
+        TransactionResult result = accountService.releaseHoldInOre(hold.accountNumber, hold.amountInOre, hold.id);
+        WithdrawalLimits limits = accountService.getWithdrawalLimits();
+        if (limits != null && hold.acquiredAt >= 0) {
+            limits.release(hold.accountNumber, hold.cardNumber, hold.amountInOre, hold.acquiredAt);
+        }
+        return result;
+    }
+
+    /**
+     * En reservation och dess tillstånd.
+     */
+    private static final class Hold {
+        final long id;
+        final String accountNumber;
+        final String cardNumber;
+        final long amountInOre;
+        // Tidpunkten som reservationen räknades mot uttagsgränserna, eller -1
+        final long acquiredAt;
+        final AtomicInteger state = new AtomicInteger(ACTIVE);
+        volatile TimingWheel.Timeout<Hold> timeout;
+
+        Hold(long id, String accountNumber, String cardNumber, long amountInOre, long acquiredAt) {
+            this.id = id;
+            this.accountNumber = accountNumber;
+            this.cardNumber = cardNumber;
+            this.amountInOre = amountInOre;
+            this.acquiredAt = acquiredAt;
+        }
+    }
+}
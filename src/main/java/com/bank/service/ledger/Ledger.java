@@ -0,0 +1,540 @@
+package com.bank.service.ledger;
+
+import com.bank.util.BankConstants;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * En huvudbok där varje saldoändring sparas som en händelse som aldrig
+ * ändras eller tas bort.
+ *
+ * Kontonas saldon i repositoryt är en projektion av huvudboken som hålls
+ * uppdaterad stegvis: AccountService ändrar saldot och lägger till
+ * händelsen i samma kritiska avsnitt (withAccount), så saldot läses
+ * fortfarande i O(1) medan huvudboken visar hur det uppstod.
+ *
+ * Händelserna får ett globalt, stigande sekvensnummer. Varje händelse
+ * innehåller saldot efter ändringen, så ett kontos saldo vid en viss
+ * tidpunkt hittas med binärsökning i kontots historik.
+ *
+ * Checkpoints:
+ * För att återskapa alla saldon vid en tidpunkt sparas en checkpoint var
+ * checkpointInterval:e händelse. En checkpoint innehåller bara de saldon som
+ * ändrats sedan den förra, så den är aldrig större än intervallet, oavsett
+ * antal konton. Var fullCheckpointEvery:e checkpoint sparas dessutom alla
+ * saldon. Saldona vid en tidpunkt fås från närmaste fullständiga checkpoint,
+ * checkpoints efter den och händelserna efter den sista av dem.
+ *
+ * Endast de maxFullCheckpoints senaste fullständiga checkpoints behålls,
+ * tillsammans med checkpoints efter den äldsta av dem, så minnet för
+ * checkpoints är begränsat. Saldon före den äldsta behållna återskapas från
+ * händelserna, som alltid finns kvar.
+ *
+ * Trådsäkerhet:
+ * Händelser för samma konto läggs till under ett av flera striped lås, så
+ * kontots historik hamnar i samma ordning som ändringarna. Händelser för
+ * olika konton kan läggas till parallellt.
+ */
+public class Ledger {
+    private static final int CHUNK_BITS = 14;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final int LOCK_STRIPES =
+            Integer.highestOneBit(Math.max(16, Runtime.getRuntime().availableProcessors() * 4) * 2 - 1);
+
+    private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+    private final AtomicLong nextSequence = new AtomicLong();
+    // Alla händelser i sekvensordning, i block om CHUNK_SIZE
+    private final List<AtomicReferenceArray<LedgerEvent>> chunks = new CopyOnWriteArrayList<>();
+    private final Map<String, AccountHistory> histories = new ConcurrentHashMap<>();
+    private final Set<Long> reversed = ConcurrentHashMap.newKeySet();
+
+    private final int checkpointInterval;
+    private final int fullCheckpointEvery;
+    private final int maxFullCheckpoints;
+    // Skapar och rensar checkpoints; skrivare som inte får låset låter bli i stället för att vänta
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    // Saldon som ändrats fram till och med händelsen med nyckelns sekvensnummer
+    private final TreeMap<Long, Map<String, Long>> checkpoints = new TreeMap<>();
+    // Alla saldon efter händelsen med nyckelns sekvensnummer
+    private final TreeMap<Long, Map<String, Long>> fullCheckpoints = new TreeMap<>();
+    // Alla saldon vid den senaste checkpointen
+    private final Map<String, Long> latestBalances = new HashMap<>();
+    // Checkpoints till och med detta sekvensnummer har tagits bort
+    private long trimmedThrough = -1;
+    private volatile long nextCheckpointAt;
+    private volatile int checkpointCount;
+
+    /**
+     * Skapar en tom huvudbok med checkpoint-inställningarna i BankConstants.
+     */
+    public Ledger() {
+        this(BankConstants.LEDGER_CHECKPOINT_INTERVAL);
+    }
+
+    /**
+     * Skapar en tom huvudbok med checkpoint-intervallet som anges och övriga
+     * checkpoint-inställningar från BankConstants.
+     *
+     * @param checkpointInterval Antal händelser mellan två checkpoints
+     * @throws IllegalArgumentException om intervallet inte är positivt
+     */
+    public Ledger(int checkpointInterval) {
+        this(checkpointInterval, BankConstants.LEDGER_FULL_CHECKPOINT_EVERY, BankConstants.LEDGER_MAX_FULL_CHECKPOINTS);
+    }
+
+    /**
+     * Skapar en tom huvudbok.
+     *
+     * @param checkpointInterval Antal händelser mellan två checkpoints
+     * @param fullCheckpointEvery Var hur många checkpoints som alla saldon sparas
+     * @param maxFullCheckpoints Högsta antal fullständiga checkpoints som behålls
+     * @throws IllegalArgumentException om något värde inte är positivt
+     */
+    public Ledger(int checkpointInterval, int fullCheckpointEvery, int maxFullCheckpoints) {
+        if (checkpointInterval <= 0 || fullCheckpointEvery <= 0 || maxFullCheckpoints <= 0) {
+            throw new IllegalArgumentException("Checkpoint settings must be positive");
+        }
+        this.checkpointInterval = checkpointInterval;
+        this.fullCheckpointEvery = fullCheckpointEvery;
+        this.maxFullCheckpoints = maxFullCheckpoints;
+        this.nextCheckpointAt = checkpointInterval - 1;
+        for (int i = 0; i < locks.length; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Utför en saldoändring under kontots lås. Händelser för kontot får bara
+     * läggas till inifrån change.
+     *
+     * @param accountNumber Kontot som ändras
+     * @param change Ändrar saldot och lägger till händelsen
+     * @return det change returnerar
+     */
+    public <T> T withAccount(String accountNumber, Supplier<T> change) {
+        ReentrantLock lock = lockFor(accountNumber);
+        lock.lock();
+        try {
+            return change.get();
+        } finally {
+            lock.unlock();
+            checkpointIfDue();
+        }
+    }
+
+    /**
+     * Utför en ändring av två konton under båda kontonas lås. Låsen tas i
+     * stigande ordning, så två anrop med kontona i omvänd ordning kan inte
+     * låsa varandra.
+     *
+     * @param firstAccountNumber Det ena kontot
+     * @param secondAccountNumber Det andra kontot
+     * @param change Ändrar saldona och lägger till händelserna
+     * @return det change returnerar
+     */
+    public <T> T withAccounts(String firstAccountNumber, String secondAccountNumber, Supplier<T> change) {
+        int firstStripe = stripeOf(firstAccountNumber);
+        int secondStripe = stripeOf(secondAccountNumber);
+        ReentrantLock first = locks[Math.min(firstStripe, secondStripe)];
+        ReentrantLock second = locks[Math.max(firstStripe, secondStripe)];
+        first.lock();
+        try {
+            if (second != first) {
+                second.lock();
+            }
+            try {
+                return change.get();
+            } finally {
+                if (second != first) {
+                    second.unlock();
+                }
+            }
+        } finally {
+            first.unlock();
+            checkpointIfDue();
+        }
+    }
+
+    /**
+     * Lägger till en insättning.
+     *
+     * @param accountNumber Kontot
+     * @param amountInOre Insatt belopp i ören
+     * @param balanceAfterInOre Saldot efter insättningen
+     * @param notes Sedlarna, eller null om beloppet inte sattes in som sedlar
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordDeposit(String accountNumber, long amountInOre, long balanceAfterInOre,
+                                     Map<Integer, Integer> notes) {
+        return append(LedgerEvent.Type.DEPOSIT, accountNumber, amountInOre, balanceAfterInOre,
+                notes != null ? Map.copyOf(notes) : null, null, -1);
+    }
+
+    /**
+     * Lägger till ett uttag.
+     *
+     * @param accountNumber Kontot
+     * @param amountInOre Uttaget belopp i ören, positivt
+     * @param balanceAfterInOre Saldot efter uttaget
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordWithdrawal(String accountNumber, long amountInOre, long balanceAfterInOre) {
+        return append(LedgerEvent.Type.WITHDRAWAL, accountNumber, -amountInOre, balanceAfterInOre, null, null, -1);
+    }
+
+    /**
+     * Lägger till en justering där saldot satts direkt, t.ex. av en administratör.
+     *
+     * @param accountNumber Kontot
+     * @param changeInOre Saldoändringen i ören
+     * @param balanceAfterInOre Saldot efter justeringen
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordAdjustment(String accountNumber, long changeInOre, long balanceAfterInOre) {
+        return append(LedgerEvent.Type.ADJUSTMENT, accountNumber, changeInOre, balanceAfterInOre, null, null, -1);
+    }
+
+    /**
+     * Lägger till en överföring som två händelser, en per konto. Anropas
+     * inifrån withAccounts.
+     *
+     * @param fromAccountNumber Avsändarkontot
+     * @param toAccountNumber Mottagarkontot
+     * @param amountInOre Beloppet i ören, positivt
+     * @param fromBalanceAfterInOre Avsändarkontots saldo efter överföringen
+     * @param toBalanceAfterInOre Mottagarkontots saldo efter överföringen
+     * @return händelsen för avsändarkontot
+     */
+    public LedgerEvent recordTransfer(String fromAccountNumber, String toAccountNumber, long amountInOre,
+                                      long fromBalanceAfterInOre, long toBalanceAfterInOre) {
+        LedgerEvent debit = append(LedgerEvent.Type.TRANSFER, fromAccountNumber, -amountInOre,
+                fromBalanceAfterInOre, null, toAccountNumber, -1);
+        append(LedgerEvent.Type.TRANSFER, toAccountNumber, amountInOre, toBalanceAfterInOre,
+                null, fromAccountNumber, -1);
+        return debit;
+    }
+
+    /**
+     * Lägger till en reservation, där beloppet dras direkt men kan släppas igen.
+     *
+     * @param accountNumber Kontot
+     * @param amountInOre Reserverat belopp i ören, positivt
+     * @param balanceAfterInOre Saldot efter reservationen
+     * @param holdId Reservationens id
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordHold(String accountNumber, long amountInOre, long balanceAfterInOre, long holdId) {
+        return append(LedgerEvent.Type.HOLD, accountNumber, -amountInOre, balanceAfterInOre, null, null, holdId);
+    }
+
+    /**
+     * Lägger till att en reservation släppts och beloppet förts tillbaka.
+     *
+     * @param accountNumber Kontot
+     * @param amountInOre Det släppta beloppet i ören, positivt
+     * @param balanceAfterInOre Saldot efter att beloppet förts tillbaka
+     * @param holdId Reservationens id
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordHoldRelease(String accountNumber, long amountInOre, long balanceAfterInOre, long holdId) {
+        return append(LedgerEvent.Type.HOLD_RELEASE, accountNumber, amountInOre, balanceAfterInOre, null, null, holdId);
+    }
+
+    /**
+     * Lägger till att en reservation bekräftats och kontanterna lämnats ut.
+     * Beloppet drogs redan av reservationen, så saldot ändras inte.
+     *
+     * @param accountNumber Kontot
+     * @param balanceInOre Kontots nuvarande saldo
+     * @param holdId Reservationens id
+     * @return den nya händelsen
+     */
+    public LedgerEvent recordHoldCommit(String accountNumber, long balanceInOre, long holdId) {
+        return append(LedgerEvent.Type.HOLD_COMMIT, accountNumber, 0, balanceInOre, null, null, holdId);
+    }
+
+    /**
+     * Lägger till en återföring av en tidigare händelse på samma konto.
+     *
+     * @param original Händelsen som tas tillbaka
+     * @param balanceAfterInOre Saldot efter återföringen
+     * @return den nya händelsen
+     * @throws IllegalStateException om händelsen redan återförts
+     */
+    public LedgerEvent recordReversal(LedgerEvent original, long balanceAfterInOre) {
+        requireLocked(original.getAccountNumber());
+        if (!reversed.add(original.getSequence())) {
+            throw new IllegalStateException("Event " + original.getSequence() + " is already reversed");
+        }
+        return append(LedgerEvent.Type.REVERSAL, original.getAccountNumber(), -original.getAmountInOre(),
+                balanceAfterInOre, null, null, original.getSequence());
+    }
+
+    /**
+     * Kontrollerar om en händelse har återförts.
+     * @param sequence Händelsens sekvensnummer
+     * @return true om en återföring av händelsen finns
+     */
+    public boolean isReversed(long sequence) {
+        return reversed.contains(sequence);
+    }
+
+    /**
+     * Hämtar en händelse.
+     * @param sequence Händelsens sekvensnummer
+     * @return händelsen, eller null om den inte finns
+     */
+    public LedgerEvent getEvent(long sequence) {
+        if (sequence < 0 || sequence >= nextSequence.get()) {
+            return null;
+        }
+        return awaitEvent(sequence);
+    }
+
+    /**
+     * Hämtar antalet händelser.
+     * @return antal händelser, vilket också är nästa sekvensnummer
+     */
+    public long size() {
+        return nextSequence.get();
+    }
+
+    /**
+     * Hämtar ett kontos alla händelser i ordning.
+     * @param accountNumber Kontot
+     * @return händelserna, tom om kontot saknar händelser
+     */
+    public List<LedgerEvent> getHistory(String accountNumber) {
+        AccountHistory history = histories.get(accountNumber);
+        return history != null ? history.snapshot() : Collections.emptyList();
+    }
+
+    /**
+     * Hämtar ett kontos saldo direkt efter en viss händelse i huvudboken.
+     *
+     * @param accountNumber Kontot
+     * @param sequence Sekvensnumret att läsa saldot vid
+     * @return saldot i ören, eller tomt om kontot inte hade några händelser då
+     */
+    public OptionalLong balanceAt(String accountNumber, long sequence) {
+        AccountHistory history = histories.get(accountNumber);
+        if (history == null) {
+            return OptionalLong.empty();
+        }
+        LedgerEvent event = history.lastAtOrBefore(sequence);
+        return event != null ? OptionalLong.of(event.getBalanceAfterInOre()) : OptionalLong.empty();
+    }
+
+    /**
+     * Återskapar alla kontons saldon direkt efter en viss händelse, från
+     * närmaste fullständiga checkpoint, checkpoints efter den och
+     * händelserna efter den sista av dem.
+     *
+     * @param sequence Sekvensnumret att återskapa saldona vid
+     * @return kontonummer och saldo i ören för alla konton som hade händelser då
+     * @throws IllegalArgumentException om händelsen inte finns
+     */
+    public Map<String, Long> balancesAt(long sequence) {
+        if (sequence < -1 || sequence >= nextSequence.get()) {
+            throw new IllegalArgumentException("No ledger event with sequence " + sequence);
+        }
+        Map<String, Long> balances;
+        long from;
+        checkpointLock.lock();
+        try {
+            Map.Entry<Long, Map<String, Long>> full = fullCheckpoints.floorEntry(sequence);
+            balances = full != null ? new HashMap<>(full.getValue()) : new HashMap<>();
+            from = full != null ? full.getKey() + 1 : 0;
+            // Checkpoints före den äldsta fullständiga är borttagna; då spelas händelserna upp från början
+            if (from > trimmedThrough && from <= sequence) {
+                for (Map.Entry<Long, Map<String, Long>> checkpoint
+                        : checkpoints.subMap(from, true, sequence, true).entrySet()) {
+                    balances.putAll(checkpoint.getValue());
+                    from = checkpoint.getKey() + 1;
+                }
+            }
+        } finally {
+            checkpointLock.unlock();
+        }
+        for (long s = from; s <= sequence; s++) {
+            LedgerEvent event = awaitEvent(s);
+            balances.put(event.getAccountNumber(), event.getBalanceAfterInOre());
+        }
+        return balances;
+    }
+
+    /**
+     * Hämtar antalet checkpoints som skapats.
+     * @return antal checkpoints
+     */
+    public int getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Hämtar antalet fullständiga checkpoints som finns kvar.
+     * @return antal behållna fullständiga checkpoints
+     */
+    public int getFullCheckpointCount() {
+        checkpointLock.lock();
+        try {
+            return fullCheckpoints.size();
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    private LedgerEvent append(LedgerEvent.Type type, String accountNumber, long amountInOre,
+                               long balanceAfterInOre, Map<Integer, Integer> notes,
+                               String counterpartAccountNumber, long reference) {
+        requireLocked(accountNumber);
+        long sequence = nextSequence.getAndIncrement();
+        LedgerEvent event = new LedgerEvent(sequence, type, accountNumber, amountInOre, balanceAfterInOre,
+                notes, counterpartAccountNumber, reference, System.currentTimeMillis());
+        chunkFor(sequence).set((int) (sequence & CHUNK_MASK), event);
+        histories.computeIfAbsent(accountNumber, account -> new AccountHistory()).add(event);
+        return event;
+    }
+
+    private AtomicReferenceArray<LedgerEvent> chunkFor(long sequence) {
+        int index = (int) (sequence >>> CHUNK_BITS);
+        if (index >= chunks.size()) {
+            synchronized (chunks) {
+                while (index >= chunks.size()) {
+                    chunks.add(new AtomicReferenceArray<>(CHUNK_SIZE));
+                }
+            }
+        }
+        return chunks.get(index);
+    }
+
+    /**
+     * Hämtar en händelse vars sekvensnummer delats ut. Skrivaren har då bara
+     * kvar att lägga in händelsen i sitt block, så väntan är mycket kort.
+     */
+    private LedgerEvent awaitEvent(long sequence) {
+        while (true) {
+            int index = (int) (sequence >>> CHUNK_BITS);
+            if (index < chunks.size()) {
+                LedgerEvent event = chunks.get(index).get((int) (sequence & CHUNK_MASK));
+                if (event != null) {
+                    return event;
+                }
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    private void checkpointIfDue() {
+        // Gör en annan tråd redan checkpoints tar den även med de som blivit aktuella nu
+        if (nextSequence.get() > nextCheckpointAt && checkpointLock.tryLock()) {
+            try {
+                checkpoint();
+            } finally {
+                checkpointLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Skapar de checkpoints som saknas, var och en från händelserna sedan den
+     * förra. Anropas med checkpointLock.
+     */
+    private void checkpoint() {
+        // Läser om antalet varje varv, så checkpoints som blir aktuella under tiden också skapas
+        while (nextCheckpointAt < nextSequence.get()) {
+            long target = nextCheckpointAt;
+            Map<String, Long> changed = new HashMap<>();
+            for (long s = target - checkpointInterval + 1; s <= target; s++) {
+                LedgerEvent event = awaitEvent(s);
+                changed.put(event.getAccountNumber(), event.getBalanceAfterInOre());
+            }
+            latestBalances.putAll(changed);
+            checkpoints.put(target, Collections.unmodifiableMap(changed));
+            int count = checkpointCount + 1;
+            if (count % fullCheckpointEvery == 0) {
+                fullCheckpoints.put(target, Map.copyOf(latestBalances));
+                if (fullCheckpoints.size() > maxFullCheckpoints) {
+                    fullCheckpoints.pollFirstEntry();
+                    // Checkpoints till och med den nu äldsta fullständiga behövs inte längre
+                    trimmedThrough = fullCheckpoints.firstKey();
+                    checkpoints.headMap(trimmedThrough, true).clear();
+                }
+            }
+            checkpointCount = count;
+            nextCheckpointAt = target + checkpointInterval;
+        }
+    }
+
+    private void requireLocked(String accountNumber) {
+        if (!lockFor(accountNumber).isHeldByCurrentThread()) {
+            throw new IllegalStateException("Ledger events for " + accountNumber + " must be recorded inside withAccount");
+        }
+    }
+
+    private ReentrantLock lockFor(String accountNumber) {
+        return locks[stripeOf(accountNumber)];
+    }
+
+    private int stripeOf(String accountNumber) {
+        int h = accountNumber.hashCode();
+        h ^= (h >>> 16);
+        return h & (locks.length - 1);
+    }
+
+    /**
+     * Ett kontos händelser. Skrivs bara under kontots lås och kan läsas
+     * utan lås: elementet skrivs innan den volatila storleken ökas.
+     */
+    private static final class AccountHistory {
+        private volatile LedgerEvent[] events = new LedgerEvent[4];
+        private volatile int size;
+
+        void add(LedgerEvent event) {
+            LedgerEvent[] current = events;
+            if (size == current.length) {
+                current = Arrays.copyOf(current, size * 2);
+                events = current;
+            }
+            current[size] = event;
+            size = size + 1;
+        }
+
+        List<LedgerEvent> snapshot() {
+            int count = size;
+            return List.of(Arrays.copyOf(events, count));
+        }
+
+        LedgerEvent lastAtOrBefore(long sequence) {
+            int count = size;
+            LedgerEvent[] current = events;
+            int low = 0;
+            int high = count - 1;
+            LedgerEvent found = null;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (current[middle].getSequence() <= sequence) {
+                    found = current[middle];
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found;
+        }
+    }
+}
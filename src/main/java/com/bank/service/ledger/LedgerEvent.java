@@ -0,0 +1,102 @@
+package com.bank.service.ledger;
+
+import java.util.Map;
+
+/**
+ * En händelse i huvudboken: en ändring av ett kontos saldo.
+ *
+ * Händelser skapas bara av Ledger och ändras aldrig. Beloppet är den
+ * tecknade saldoändringen (negativ för uttag) och balanceAfter saldot direkt
+ * efter händelsen, så varje kontos historik kan granskas som en kedja där
+ * föregående saldo plus belopp ger nästa.
+ *
+ * En reservation (HOLD) drar beloppet direkt. Den följs av en HOLD_RELEASE
+ * med samma reservations-id om beloppet fördes tillbaka, eller av en
+ * HOLD_COMMIT om reservationen bekräftades och kontanterna lämnades ut.
+ * HOLD_COMMIT ändrar inte saldot. En HOLD utan någon av dem har inte
+ * avslutats, t.ex. för att systemet startades om innan det hann ske.
+ */
+public final class LedgerEvent {
+    public enum Type {
+        DEPOSIT,
+        WITHDRAWAL,
+        REVERSAL,
+        TRANSFER,
+        ADJUSTMENT,
+        HOLD,
+        HOLD_RELEASE,
+        HOLD_COMMIT
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final String accountNumber;
+    private final long amountInOre;
+    private final long balanceAfterInOre;
+    private final Map<Integer, Integer> notes;
+    private final String counterpartAccountNumber;
+    // Den återförda händelsens sekvensnummer, eller reservationens id
+    private final long reference;
+    private final long timestampMillis;
+
+    LedgerEvent(long sequence, Type type, String accountNumber, long amountInOre, long balanceAfterInOre,
+                Map<Integer, Integer> notes, String counterpartAccountNumber, long reference,
+                long timestampMillis) {
+        this.sequence = sequence;
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.amountInOre = amountInOre;
+        this.balanceAfterInOre = balanceAfterInOre;
+        this.notes = notes;
+        this.counterpartAccountNumber = counterpartAccountNumber;
+        this.reference = reference;
+        this.timestampMillis = timestampMillis;
+    }
+
+    // Getters
+    public long getSequence() { return sequence; }
+    public Type getType() { return type; }
+    public String getAccountNumber() { return accountNumber; }
+    public long getAmountInOre() { return amountInOre; }
+    public long getBalanceAfterInOre() { return balanceAfterInOre; }
+    public long getTimestampMillis() { return timestampMillis; }
+
+    /**
+     * Hämtar saldot direkt före händelsen.
+     * @return saldot i ören
+     */
+    public long getBalanceBeforeInOre() {
+        return balanceAfterInOre - amountInOre;
+    }
+
+    /**
+     * Hämtar sedlarna för en sedelinsättning.
+     * @return valörer och antal, eller null för andra händelser
+     */
+    public Map<Integer, Integer> getNotes() { return notes; }
+
+    /**
+     * Hämtar motpartens konto för en överföring.
+     * @return kontonumret, eller null för andra händelser
+     */
+    public String getCounterpartAccountNumber() { return counterpartAccountNumber; }
+
+    /**
+     * Hämtar sekvensnumret för händelsen som en återföring tar tillbaka.
+     * @return sekvensnumret, eller -1 för andra händelser
+     */
+    public long getReversedSequence() { return type == Type.REVERSAL ? reference : -1; }
+
+    /**
+     * Hämtar reservationens id för HOLD, HOLD_RELEASE och HOLD_COMMIT.
+     * @return reservationens id, eller -1 för andra händelser
+     */
+    public long getHoldId() {
+        return type == Type.HOLD || type == Type.HOLD_RELEASE || type == Type.HOLD_COMMIT ? reference : -1;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + type + " " + accountNumber + " " + amountInOre + " -> " + balanceAfterInOre;
+    }
+}
@@ -0,0 +1,70 @@
+package com.bank.service.transaction;
+
+import java.util.Map;
+
+/**
+ * En enskild operation i en batch till AccountService.applyBatch.
+ *
+ * Skapas med de statiska metoderna; beloppen valideras först när batchen
+ * körs, så att ett ogiltigt belopp blir ett misslyckat resultat för just
+ * den operationen i stället för ett undantag för hela batchen.
+ */
+public final class BatchOperation {
+    public enum Type {
+        WITHDRAWAL,
+        DEPOSIT
+    }
+
+    private final Type type;
+    private final String accountNumber;
+    private final long amountInOre;
+    private final Map<Integer, Integer> notes;
+
+    private BatchOperation(Type type, String accountNumber, long amountInOre, Map<Integer, Integer> notes) {
+        this.type = type;
+        this.accountNumber = accountNumber;
+        this.amountInOre = amountInOre;
+        this.notes = notes;
+    }
+
+    /**
+     * Ett uttag.
+     *
+     * @param accountNumber Kontonumret
+     * @param amountInOre Belopp i ören
+     */
+    public static BatchOperation withdrawal(String accountNumber, long amountInOre) {
+        return new BatchOperation(Type.WITHDRAWAL, accountNumber, amountInOre, null);
+    }
+
+    /**
+     * En insättning av ett belopp, t.ex. en lön.
+     *
+     * @param accountNumber Kontonumret
+     * @param amountInOre Belopp i ören
+     */
+    public static BatchOperation deposit(String accountNumber, long amountInOre) {
+        return new BatchOperation(Type.DEPOSIT, accountNumber, amountInOre, null);
+    }
+
+    /**
+     * En insättning av sedlar, t.ex. från en uppräkningscentral.
+     *
+     * @param accountNumber Kontonumret
+     * @param notes Sedelvalörer och antal
+     */
+    public static BatchOperation depositNotes(String accountNumber, Map<Integer, Integer> notes) {
+        return new BatchOperation(Type.DEPOSIT, accountNumber, 0, Map.copyOf(notes));
+    }
+
+    // Getters
+    public Type getType() { return type; }
+    public String getAccountNumber() { return accountNumber; }
+    public long getAmountInOre() { return amountInOre; }
+
+    /**
+     * Hämtar sedlarna för en sedelinsättning.
+     * @return valörer och antal, eller null om beloppet anges i ören
+     */
+    public Map<Integer, Integer> getNotes() { return notes; }
+}
@@ -0,0 +1,122 @@
+package com.bank.service.transaction;
+
+import com.bank.service.validation.ErrorCode;
+import com.bank.util.BankConstants;
+import com.bank.util.ExpiringMap;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Kommer ihåg resultatet av uttag och insättningar per idempotensnyckel, så
+ * att en terminal som får timeout och försöker igen får det ursprungliga
+ * resultatet i stället för att operationen görs en gång till.
+ *
+ * Nyckeln registreras innan operationen utförs. Kommer ett omförsök medan
+ * den första operationen fortfarande pågår väntar det på samma resultat.
+ * Kastar operationen ett undantag glöms nyckeln, så ett senare omförsök
+ * utförs på nytt.
+ *
+ * Nycklarna lagras i en ExpiringMap och går ut efter en livslängd (som
+ * standard IDEMPOTENCY_KEY_TTL_HOURS timmar); tabellen är begränsad till
+ * MAX_IDEMPOTENCY_KEYS nycklar. En nyckel som glöms innan livslängden gått
+ * ut skulle låta ett omförsök dra pengar två gånger, så när tabellen är full
+ * avvisas operationer med nya nycklar med SERVICE_BUSY tills den äldsta
+ * generationen gått ut, i stället för att levande nycklar släpps.
+ */
+public class IdempotencyCache {
+    private final ExpiringMap<CompletableFuture<TransactionResult>> results;
+    private final LongAdder duplicates = new LongAdder();
+
+    /**
+     * Skapar en tabell med standardinställningarna i BankConstants.
+     */
+    public IdempotencyCache() {
+        this(Duration.ofHours(BankConstants.IDEMPOTENCY_KEY_TTL_HOURS), BankConstants.MAX_IDEMPOTENCY_KEYS);
+    }
+
+    /**
+     * Skapar en tabell.
+     *
+     * @param timeToLive Minsta tid en nyckel kommer ihåg
+     * @param maxKeys Högsta antal nycklar
+     */
+    public IdempotencyCache(Duration timeToLive, int maxKeys) {
+        this(timeToLive, maxKeys, System::currentTimeMillis);
+    }
+
+    /**
+     * Skapar en tabell med en egen klocka, t.ex. i tester.
+     *
+     * @param timeToLive Minsta tid en nyckel kommer ihåg
+     * @param maxKeys Högsta antal nycklar
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public IdempotencyCache(Duration timeToLive, int maxKeys, LongSupplier clock) {
+        this.results = new ExpiringMap<>(timeToLive, maxKeys, clock, false);
+    }
+
+    /**
+     * Utför operationen om nyckeln är ny, annars returneras resultatet från
+     * första gången nyckeln användes.
+     *
+     * @param key Idempotensnyckeln
+     * @param operation Utför operationen; anropas högst en gång per nyckel och lyckat försök
+     * @return resultatet av operationen, eller SERVICE_BUSY om tabellen är full
+     */
+    public TransactionResult execute(String key, Supplier<TransactionResult> operation) {
+        while (true) {
+            CompletableFuture<TransactionResult> pending = new CompletableFuture<>();
+            CompletableFuture<TransactionResult> existing;
+            try {
+                existing = results.putIfAbsent(key, pending);
+            } catch (IllegalStateException e) {
+                return TransactionResult.failure("Tjänsten är upptagen, försök igen senare", ErrorCode.SERVICE_BUSY);
+            }
+            if (existing == null) {
+                return run(key, pending, operation);
+            }
+            try {
+                TransactionResult original = existing.join();
+                duplicates.increment();
+                return original;
+            } catch (CompletionException e) {
+                // Första försöket kastade ett undantag och nyckeln är borttagen; försök själv
+            }
+        }
+    }
+
+    /**
+     * Hämtar antalet anrop som fått ett tidigare resultat i stället för att utföras.
+     * @return antal dubbletter
+     */
+    public long getDuplicateCount() {
+        return duplicates.sum();
+    }
+
+    /**
+     * Hämtar ungefärligt antal nycklar i tabellen.
+     * @return antal nycklar
+     */
+    public long size() {
+        return results.size();
+    }
+
+    private TransactionResult run(String key, CompletableFuture<TransactionResult> pending,
+                                  Supplier<TransactionResult> operation) {
+        TransactionResult result;
+        try {
+            result = operation.get();
+        } catch (RuntimeException | Error e) {
+            results.remove(key, pending);
+            pending.completeExceptionally(e);
+            throw e;
+        }
+        pending.complete(result);
+        return result;
+    }
+}
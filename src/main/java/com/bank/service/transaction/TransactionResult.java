@@ -2,36 +2,59 @@ package com.bank.service.transaction;
 
 import com.bank.service.validation.ErrorCode;
 
-import java.util.Optional;
-
+import java.util.NoSuchElementException;
+
+/**
+ * Resultatet av en transaktion (uttag eller insättning).
+ *
+ * Det nya saldot lagras som ett primitivt long-värde i ören i stället för
+ * Optional&lt;Double&gt;, så att ett lyckat resultat inte kräver några
+ * wrapper-objekt utöver själva resultatobjektet.
+ */
 public class TransactionResult {
+    private static final TransactionResult SUCCESS_WITHOUT_BALANCE = new TransactionResult(true, null, null, false, 0);
+
     private final boolean success;
     private final String message;
     private final ErrorCode errorCode;
-    private final Optional<Double> newBalance;
+    private final boolean hasNewBalance;
+    private final long newBalanceInOre;
 
-    private TransactionResult(boolean success, String message, ErrorCode errorCode, Double newBalance) {
+    private TransactionResult(boolean success, String message, ErrorCode errorCode, boolean hasNewBalance, long newBalanceInOre) {
         this.success = success;
         this.message = message;
         this.errorCode = errorCode;
-        this.newBalance = Optional.ofNullable(newBalance);
+        this.hasNewBalance = hasNewBalance;
+        this.newBalanceInOre = newBalanceInOre;
     }
 
     public static TransactionResult success() {
-        return new TransactionResult(true, null, null, null);
+        return SUCCESS_WITHOUT_BALANCE;
     }
 
-    public static TransactionResult success(double newBalance) {
-        return new TransactionResult(true, "Operation successful", null, newBalance);
+    public static TransactionResult success(long newBalanceInOre) {
+        return new TransactionResult(true, "Operation successful", null, true, newBalanceInOre);
     }
 
     public static TransactionResult failure(String message, ErrorCode errorCode) {
-        return new TransactionResult(false, message, errorCode, null);
+        return new TransactionResult(false, message, errorCode, false, 0);
     }
 
     // Getters
     public boolean isSuccess() { return success; }
     public String getMessage() { return message; }
     public ErrorCode getErrorCode() { return errorCode; }
-    public Optional<Double> getNewBalance() { return newBalance; }
-}
\ No newline at end of file
+    public boolean hasNewBalance() { return hasNewBalance; }
+
+    /**
+     * Hämtar det nya saldot i ören.
+     * @return det nya saldot i ören
+     * @throws NoSuchElementException om resultatet saknar nytt saldo (kontrollera med hasNewBalance)
+     */
+    public long getNewBalanceInOre() {
+        if (!hasNewBalance) {
+            throw new NoSuchElementException("No new balance present");
+        }
+        return newBalanceInOre;
+    }
+}
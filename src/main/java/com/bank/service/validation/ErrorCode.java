@@ -10,6 +10,8 @@ public enum ErrorCode {
     INSUFFICIENT_FUNDS,
     DEPOSIT_FAILED,
     WITHDRAWAL_FAILED,
+    HOLD_NOT_FOUND,
+    WITHDRAWAL_LIMIT_EXCEEDED,
 
     // Authentication errors
     INVALID_CARD,
@@ -18,5 +20,6 @@ public enum ErrorCode {
 
     // System errors
     REPOSITORY_ERROR,
-    VALIDATION_ERROR
+    VALIDATION_ERROR,
+    SERVICE_BUSY
 }
\ No newline at end of file
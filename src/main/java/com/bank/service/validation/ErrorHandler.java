@@ -1,6 +1,7 @@
 package com.bank.service.validation;
 
 import com.bank.model.Account;
+import com.bank.model.Money;
 import com.bank.service.transaction.OperationResult;
 import com.bank.service.account.AccountService;
 
@@ -10,6 +11,7 @@ import com.bank.service.account.AccountService;
  * felmeddelanden och logga fel för felsökning.
  *
  * Uppdaterad för att använda nya OperationResult-klasser för bättre felhantering.
+ * Uppdaterad för att validera belopp som heltal i ören.
  */
 
 public class ErrorHandler {
@@ -29,10 +31,28 @@ public class ErrorHandler {
      * Uppdaterad för att använda OperationResult från AccountService.
      *
      * @param accountNumber Kontonumret för uttaget
-     * @param amount Beloppet som ska tas ut
+     * @param amount Beloppet i kronor som ska tas ut
      * @return Ett ValidationResult som indikerar om uttaget är giltigt
      */
     public ValidationResult validateWithdrawal(String accountNumber, double amount) {
+        // NaN och orimligt stora belopp kan inte omvandlas till ören
+        long amountInOre;
+        try {
+            amountInOre = Money.ofKronor(amount);
+        } catch (IllegalArgumentException e) {
+            return ValidationResult.failure("Please enter a valid amount");
+        }
+        return validateWithdrawalInOre(accountNumber, amountInOre);
+    }
+
+    /**
+     * Validerar ett uttag med beloppet angivet i ören.
+     *
+     * @param accountNumber Kontonumret för uttaget
+     * @param amountInOre Beloppet i ören som ska tas ut
+     * @return Ett ValidationResult som indikerar om uttaget är giltigt
+     */
+    public ValidationResult validateWithdrawalInOre(String accountNumber, long amountInOre) {
         // Kontrollera att kontot existerar med OperationResult
         OperationResult accountExistsResult = accountService.accountExists(accountNumber);
         if (!accountExistsResult.isSuccess()) {
@@ -40,18 +60,18 @@ public class ErrorHandler {
         }
 
         // Kontrollera att beloppet är positivt
-        if (amount < 0) {
+        if (amountInOre < 0) {
             return ValidationResult.failure("Please enter a valid amount");
         }
 
         // Kontrollera att det finns tillräckligt med saldo med OperationResult
-        OperationResult balanceResult = accountService.hasEnoughBalance(accountNumber, amount);
+        OperationResult balanceResult = accountService.hasEnoughBalanceInOre(accountNumber, amountInOre);
         if (!balanceResult.isSuccess()) {
             Account account = accountService.getAccount(accountNumber);
-            double balance = account.getBalance();
+            long balanceInOre = account.getBalanceInOre();
             return ValidationResult.failure("Insufficient balance. Available: " +
-                    formatAmount(balance) + ", Requested: " +
-                    formatAmount(amount));
+                    formatAmount(balanceInOre) + ", Requested: " +
+                    formatAmount(amountInOre));
         }
 
         // Alla kontroller passerade
@@ -90,10 +110,10 @@ public class ErrorHandler {
     /**
      * Hjälpmetod för att formatera belopp.
      *
-     * @param amount Beloppet som ska formateras
+     * @param amountInOre Beloppet i ören som ska formateras
      * @return Formaterat belopp som string
      */
-    private String formatAmount(double amount) {
-        return String.format("%.2f", amount);
+    private String formatAmount(long amountInOre) {
+        return String.format("%.2f", Money.toKronor(amountInOre));
     }
 }
\ No newline at end of file
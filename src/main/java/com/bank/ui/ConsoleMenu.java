@@ -1,16 +1,10 @@
 package com.bank.ui;
 
-import com.bank.model.Card;
-import com.bank.model.Account;
-import com.bank.service.account.AccountService;
-import com.bank.service.auth.AuthenticationService;
-import com.bank.repository.AccountRepository;
-import com.bank.repository.CardRepository;
-import com.bank.repository.InMemoryAccountRepository;
-import com.bank.repository.InMemoryCardRepository;
+import com.bank.BankSystem;
 import com.bank.ui.handlers.AccountHandler;
 import com.bank.ui.handlers.AuthenticationHandler;
 import com.bank.ui.handlers.TransactionHandler;
+import com.bank.util.BankConstants;
 
 /**
  * Huvudklassen för bankomatens användargränssnitt.
@@ -19,6 +13,8 @@ import com.bank.ui.handlers.TransactionHandler;
  *
  * Uppdaterad för att använda AccountService för både uttag och insättningar.
  * Uppdaterad för att använda UserInterface abstraction istället av hårdkodad console-interaktion.
+ * Uppdaterad så att services skapas i BankSystem och kan delas mellan flera sessioner.
+ * Uppdaterad så att inloggningens session avslutas när menyn lämnas, även vid fel.
  */
 public class ConsoleMenu {
     private final UserInterface ui;
@@ -32,53 +28,37 @@ public class ConsoleMenu {
      */
     public ConsoleMenu() {
         // Initiera UserInterface - nu kan vi enkelt byta till webb/mobile senare
-        this.ui = new ConsoleUI();
-
-        // Initiera repositories
-        AccountRepository accountRepository = new InMemoryAccountRepository();
-        CardRepository cardRepository = new InMemoryCardRepository();
-
-        // Initiera användargränssnittet
-        AccountService accountService = new AccountService(accountRepository);
-        AuthenticationService authService = new AuthenticationService(cardRepository);
-
-        // Skapa testkonton och kort
-        setupTestData(accountRepository, cardRepository);
-
-        // Initiera handlers - alla använder nu UserInterface
-        authHandler = new AuthenticationHandler(ui, authService);
-        accountHandler = new AccountHandler(ui, accountService);
+        this(new ConsoleUI(), BankSystem.withTestData());
+    }
 
-        // TransactionHandler behöver nu bara AccountHandler (som har AccountService)
-        transactionHandler = new TransactionHandler(ui, accountHandler);
+    /**
+     * Skapar en session med ett eget användargränssnitt mot delade services.
+     * Används t.ex. av servern, där varje terminal får en egen ConsoleMenu.
+     *
+     * @param ui Sessionens användargränssnitt
+     * @param bankSystem Services som delas mellan alla sessioner
+     */
+    public ConsoleMenu(UserInterface ui, BankSystem bankSystem) {
+        this(ui, bankSystem, BankConstants.CONSOLE_TERMINAL_ID);
     }
 
     /**
-     * Skapar testdata för utvecklings- och demonstrationssyfte.
-     * Initierar testkort och testkonton och kopplar dem till varandra.
+     * Skapar en session för en viss terminal, vars inloggningsförsök räknas
+     * mot terminalens gräns.
      *
-     * @param accountRepository Repository för kontohantering
-     * @param cardRepository Repository för korthantering
+     * @param ui Sessionens användargränssnitt
+     * @param bankSystem Services som delas mellan alla sessioner
+     * @param terminalId Terminalens id
      */
-    private void setupTestData(AccountRepository accountRepository, CardRepository cardRepository) {
-        // Skapa testkort
-        Card card1 = new Card("123456789012", "12/25", "1234");
-        Card card2 = new Card("098765432109", "06/26", "4321");
-        cardRepository.saveCard(card1);
-        cardRepository.saveCard(card2);
+    public ConsoleMenu(UserInterface ui, BankSystem bankSystem, String terminalId) {
+        this.ui = ui;
 
-        // Skapa testkonton
-        Account account1 = new Account("1001", "Lönekonto", 500.0);
-        Account account2 = new Account("1002", "Sparkonto", 1200.0);
-        Account account3 = new Account("2001", "Resekonto", 3000.0);
-        accountRepository.saveAccount(account1);
-        accountRepository.saveAccount(account2);
-        accountRepository.saveAccount(account3);
+        // Initiera handlers - alla använder nu UserInterface
+        authHandler = new AuthenticationHandler(ui, bankSystem.getAuthService(), terminalId);
+        accountHandler = new AccountHandler(ui, bankSystem.getAccountService());
 
-        // Koppla konton till kort
-        accountRepository.linkAccountToCard("1001", "123456789012");
-        accountRepository.linkAccountToCard("1002", "123456789012");
-        accountRepository.linkAccountToCard("2001", "098765432109");
+        // TransactionHandler behöver nu bara AccountHandler (som har AccountService)
+        transactionHandler = new TransactionHandler(ui, accountHandler);
     }
 
     /**
@@ -99,8 +79,13 @@ public class ConsoleMenu {
         String cardNumber = authHandler.getAuthenticatedCardNumber();
         accountHandler.setAuthenticatedCardNumber(cardNumber);
 
-        // Huvudmenyn visas endast efter lyckad autentisering
-        showMainMenu();
+        // Huvudmenyn visas endast efter lyckad autentisering. Sessionen avslutas
+        // även om terminalen kopplar ner mitt i menyn
+        try {
+            showMainMenu();
+        } finally {
+            authHandler.logout();
+        }
     }
 
     /**
@@ -113,14 +98,21 @@ public class ConsoleMenu {
             ui.showMessage("1. Sätt in pengar");
             ui.showMessage("2. Ta ut pengar");
             ui.showMessage("3. Visa saldo");
+            ui.showMessage("4. Överför mellan konton");
             ui.showMessage("0. Avsluta");
 
             String choice = ui.getInput("Välj ett alternativ: ");
 
+            if (!authHandler.isSessionActive()) {
+                ui.showError("Sessionen har gått ut. Logga in igen.");
+                return;
+            }
+
             switch (choice) {
                 case "1" -> transactionHandler.handleDeposit();
                 case "2" -> transactionHandler.handleWithdrawal();
                 case "3" -> accountHandler.showBalance();
+                case "4" -> transactionHandler.handleTransfer();
                 case "0" -> {
                     ui.showMessage("Avslutar. Hej då!");
                     return;
@@ -0,0 +1,78 @@
+package com.bank.ui;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.io.UncheckedIOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Socket-implementation av UserInterface.
+ * Hanterar användarinteraktion med en terminal som är ansluten över nätverket,
+ * rad för rad i UTF-8, på samma sätt som ConsoleUI gör mot konsolen.
+ *
+ * Om terminalen kopplar ner, eller är inaktiv längre än socketens timeout,
+ * kastar getInput ett UncheckedIOException så att sessionen avslutas.
+ */
+public class SocketUI implements UserInterface, Closeable {
+    private final Socket socket;
+    private final BufferedReader reader;
+    private final PrintWriter writer;
+
+    public SocketUI(Socket socket) throws IOException {
+        this.socket = socket;
+        this.reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+        this.writer = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public String getInput(String prompt) {
+        writer.print(prompt);
+        writer.flush();
+        try {
+            String line = reader.readLine();
+            if (line == null) {
+                throw new EOFException("Terminal disconnected");
+            }
+            return line.trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void showMessage(String message) {
+        writer.println(message);
+        writer.flush();
+    }
+
+    @Override
+    public void showError(String errorMessage) {
+        writer.println("FEL: " + errorMessage);
+        writer.flush();
+    }
+
+    @Override
+    public boolean confirmAction(String message) {
+        String input = getInput(message + " (Y/N): ");
+        return input.toUpperCase().equals("Y");
+    }
+
+    @Override
+    public String maskSensitiveInput(String input) {
+        if (input == null) {
+            return null;
+        }
+        return "*".repeat(input.length());
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -39,6 +39,14 @@ public class AccountHandler {
         this.authenticatedCardNumber = cardNumber;
     }
 
+    /**
+     * Hämtar kortnumret för den autentiserade användaren.
+     * @return kortnumret, eller null om ingen är inloggad
+     */
+    public String getAuthenticatedCardNumber() {
+        return authenticatedCardNumber;
+    }
+
     /**
      * Visar saldot för ett konto som användaren väljer.
      * Om inget konto väljs eller finns tillgängligt, visas inget saldo.
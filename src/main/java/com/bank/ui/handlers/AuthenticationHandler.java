@@ -2,6 +2,7 @@ package com.bank.ui.handlers;
 
 import com.bank.service.auth.AuthenticationResult;
 import com.bank.service.auth.AuthenticationService;
+import com.bank.service.auth.LoginResult;
 import com.bank.ui.UserInterface;
 import com.bank.util.BankConstants;
 
@@ -12,11 +13,15 @@ import com.bank.util.BankConstants;
  * inloggningsförsök.
  *
  * Uppdaterad för att använda UserInterface istället av hårdkodad Scanner.
+ * Uppdaterad så att inloggningen startar en session som hålls vid liv under
+ * menyvalen och avslutas med logout när användaren är klar.
  */
 public class AuthenticationHandler {
     private final UserInterface ui;
     private final AuthenticationService authService;
+    private final String terminalId;
     private String authenticatedCardNumber;
+    private String sessionToken;
 
     /**
      * Skapar en ny AuthenticationHandler med angivna beroenden.
@@ -25,8 +30,20 @@ public class AuthenticationHandler {
      * @param authService Service för verifiering av autentiseringsuppgifter
      */
     public AuthenticationHandler(UserInterface ui, AuthenticationService authService) {
+        this(ui, authService, BankConstants.CONSOLE_TERMINAL_ID);
+    }
+
+    /**
+     * Skapar en AuthenticationHandler för en viss terminal.
+     *
+     * @param ui UserInterface för användarinteraktion
+     * @param authService Service för verifiering av autentiseringsuppgifter
+     * @param terminalId Terminalen som inloggningsförsöken räknas mot
+     */
+    public AuthenticationHandler(UserInterface ui, AuthenticationService authService, String terminalId) {
         this.ui = ui;
         this.authService = authService;
+        this.terminalId = terminalId;
     }
 
     /**
@@ -44,12 +61,14 @@ public class AuthenticationHandler {
             String cardNumber = ui.getInput("Ange ditt kortnummer (12 siffror): ");
             String pin = ui.getInput("Ange din PIN-kod: ");
 
-            AuthenticationResult result = authService.authenticate(cardNumber, pin);
+            LoginResult login = authService.login(cardNumber, pin, terminalId);
+            AuthenticationResult result = login.getResult();
 
             switch (result) {
                 case SUCCESS:
                     ui.showMessage("Inloggning lyckades!");
                     authenticatedCardNumber = cardNumber;
+                    sessionToken = login.getSessionToken();
                     return true;
                 case INVALID_CARD:
                     attempts++;
@@ -63,6 +82,11 @@ public class AuthenticationHandler {
                 case CARD_BLOCKED:
                     ui.showError("Kortet är blockerat. Kontakta kundtjänst.");
                     return false;
+                case SERVICE_BUSY:
+                case RATE_LIMITED:
+                    attempts++;
+                    ui.showError(result.getMessage());
+                    break;
             }
         }
 
@@ -78,4 +102,25 @@ public class AuthenticationHandler {
     public String getAuthenticatedCardNumber() {
         return authenticatedCardNumber;
     }
+
+    /**
+     * Kontrollerar att inloggningens session fortfarande gäller och räknar
+     * anropet som aktivitet i sessionen.
+     *
+     * @return true om sessionen finns och inte har gått ut, annars false
+     */
+    public boolean isSessionActive() {
+        return sessionToken != null && authService.validateSession(sessionToken) != null;
+    }
+
+    /**
+     * Avslutar inloggningens session. Gör inget om ingen är inloggad.
+     */
+    public void logout() {
+        if (sessionToken != null) {
+            authService.logout(sessionToken);
+            sessionToken = null;
+            authenticatedCardNumber = null;
+        }
+    }
 }
\ No newline at end of file
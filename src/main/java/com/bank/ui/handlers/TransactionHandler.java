@@ -1,10 +1,12 @@
 package com.bank.ui.handlers;
 
 import com.bank.model.Account;
+import com.bank.model.Money;
 import com.bank.service.account.AccountService;
 import com.bank.service.transaction.TransactionResult;
 import com.bank.integration.SimulatedNoteCounter;
 import com.bank.util.BankConstants;
+import com.bank.util.MoneyFormatter;
 import com.bank.ui.UserInterface;
 
 import java.util.HashMap;
@@ -12,7 +14,7 @@ import java.util.Map;
 
 /**
  * Hanterar transaktioner i bankomatgränssnittet.
- * Denna klass ansvarar för att hantera insättningar och uttag med bättre felhantering
+ * Denna klass ansvarar för att hantera insättningar, uttag och överföringar med bättre felhantering
  * genom användning av TransactionResult och OperationResult.
  *
  * Uppdaterad för att använda AccountService för både uttag och insättningar.
@@ -48,9 +50,11 @@ public class TransactionHandler {
         // Låt användaren ange belopp
         String amountStr = ui.getInput("Ange belopp att ta ut: ");
         double amount;
+        long amountInOre;
         try {
             amount = Double.parseDouble(amountStr);
-        } catch (NumberFormatException e) {
+            amountInOre = Money.ofKronor(amount);
+        } catch (IllegalArgumentException e) {
             ui.showError("Ogiltigt belopp. Försök igen.");
             return;
         }
@@ -62,7 +66,8 @@ public class TransactionHandler {
 
         if (confirmed) {
             // Använd den nya withdraw-metoden med TransactionResult
-            TransactionResult result = accountService.withdraw(account.getAccountNumber(), amount);
+            TransactionResult result = accountService.withdrawWithCardInOre(account.getAccountNumber(),
+                    accountHandler.getAuthenticatedCardNumber(), amountInOre);
 
             if (result.isSuccess()) {
                 ui.showMessage("Uttag genomfört. Ta dina pengar.");
@@ -73,8 +78,8 @@ public class TransactionHandler {
                     ui.showMessage("Kvitto: Du tog ut " + amount + " kr från konto " +
                             account.getAccountNumber());
                     // Visa nytt saldo från TransactionResult
-                    if (result.getNewBalance().isPresent()) {
-                        ui.showMessage("Nytt saldo: " + String.format("%.2f", result.getNewBalance().get()) + " " + BankConstants.CURRENCY_SYMBOL);
+                    if (result.hasNewBalance()) {
+                        showNewBalance(result.getNewBalanceInOre());
                     }
                 }
             } else {
@@ -128,8 +133,8 @@ public class TransactionHandler {
                     ui.showMessage("Kvitto: Du satte in " + total + " " + BankConstants.CURRENCY_SYMBOL + " på konto " +
                             account.getAccountNumber());
                     // Visa nytt saldo från TransactionResult
-                    if (result.getNewBalance().isPresent()) {
-                        ui.showMessage("Nytt saldo: " + String.format("%.2f", result.getNewBalance().get()) + " " + BankConstants.CURRENCY_SYMBOL);
+                    if (result.hasNewBalance()) {
+                        showNewBalance(result.getNewBalanceInOre());
                     }
                 }
             } else {
@@ -140,4 +145,63 @@ public class TransactionHandler {
             ui.showError("Fel: " + e.getMessage());
         }
     }
+
+    /**
+     * Hanterar en överföring mellan två av kortets konton.
+     */
+    public void handleTransfer() {
+        ui.showMessage("Från vilket konto?");
+        Account from = accountHandler.selectAccount();
+        if (from == null) return;
+
+        ui.showMessage("Till vilket konto?");
+        Account to = accountHandler.selectAccount();
+        if (to == null) return;
+        if (to.getAccountNumber().equals(from.getAccountNumber())) {
+            ui.showError("Välj två olika konton.");
+            return;
+        }
+
+        ui.showMessage("Aktuellt saldo: " + from.getFormattedBalance());
+        String amountStr = ui.getInput("Ange belopp att överföra: ");
+        double amount;
+        long amountInOre;
+        try {
+            amount = Double.parseDouble(amountStr);
+            amountInOre = Money.ofKronor(amount);
+        } catch (IllegalArgumentException e) {
+            ui.showError("Ogiltigt belopp. Försök igen.");
+            return;
+        }
+
+        boolean confirmed = ui.confirmAction("Bekräfta överföring av " + amount + " kr från konto "
+                + from.getAccountNumber() + " till konto " + to.getAccountNumber() + "?");
+        if (!confirmed) {
+            ui.showMessage("Överföring avbruten.");
+            return;
+        }
+
+        AccountService accountService = accountHandler.getAccountService();
+        TransactionResult result = accountService.transferInOre(from.getAccountNumber(), to.getAccountNumber(), amountInOre);
+        if (result.isSuccess()) {
+            ui.showMessage("Överföring genomförd.");
+            if (result.hasNewBalance()) {
+                showNewBalance(result.getNewBalanceInOre());
+            }
+        } else {
+            ui.showError("Överföringen misslyckades: " + result.getMessage());
+        }
+    }
+
+    /**
+     * Visar det nya saldot på kvittot.
+     * Beloppet skrivs direkt in i raden av MoneyFormatter utan mellanliggande strängar.
+     *
+     * @param newBalanceInOre Det nya saldot i ören
+     */
+    private void showNewBalance(long newBalanceInOre) {
+        StringBuilder line = new StringBuilder(40).append("Nytt saldo: ");
+        MoneyFormatter.formatTo(line, newBalanceInOre);
+        ui.showMessage(line.toString());
+    }
 }
\ No newline at end of file
@@ -7,13 +7,32 @@ package com.bank.util;
 public class BankConstants {
     // Befintliga konstanter
     public static final String CARD_NUMBER_PATTERN = "\\d{12}";
+    public static final int CARD_NUMBER_LENGTH = 12;
     public static final int MAX_FAILED_ATTEMPTS = 3;
 
+    // Hashning av PIN-koder
+    public static final int PIN_HASH_ITERATIONS = 20_000;
+    public static final int PIN_VERIFICATION_QUEUE_CAPACITY = 1_000;
+
     // Nya konstanter för konfiguration
 
     // Autentisering
     public static final int MAX_AUTHENTICATION_ATTEMPTS = 3;
 
+    // Takt för inloggningsförsök per terminal och per kort
+    public static final int AUTH_ATTEMPTS_PER_MINUTE_PER_TERMINAL = 30;
+    public static final int AUTH_BURST_PER_TERMINAL = 10;
+    public static final int AUTH_ATTEMPTS_PER_MINUTE_PER_CARD = 6;
+    public static final int AUTH_BURST_PER_CARD = 5;
+    // Tak för hinkar i minnet; när det är nått nekas inloggning med nya nycklar
+    public static final int MAX_AUTH_RATE_LIMIT_KEYS = 1_000_000;
+    // Okända kortnummer från alla terminaler tillsammans
+    public static final int AUTH_UNKNOWN_CARDS_PER_MINUTE = 300;
+    public static final int AUTH_UNKNOWN_CARD_BURST = 50;
+    public static final String CONSOLE_TERMINAL_ID = "console";
+    // Försök utan terminal-id delar på en gemensam terminalgräns
+    public static final String DEFAULT_TERMINAL_ID = "default";
+
     // Sedelvalörer
     public static final int[] VALID_DENOMINATIONS = {100, 200, 500};
 
@@ -22,6 +41,37 @@ public class BankConstants {
     public static final String CURRENCY_DECIMAL_SEPARATOR = ",";
     public static final String CURRENCY_THOUSANDS_SEPARATOR = " ";
 
+    // Server för flera terminaler
+    public static final int DEFAULT_SERVER_PORT = 4040;
+    public static final int DEFAULT_BINARY_SERVER_PORT = 4041;
+    public static final int DEFAULT_HTTP_PORT = 8080;
+    public static final int MAX_CONCURRENT_SESSIONS = 200;
+    public static final int SESSION_IDLE_TIMEOUT_SECONDS = 120;
+    public static final int SESSION_MAX_LIFETIME_SECONDS = 900;
+    public static final int SESSION_TIMER_TICK_MILLIS = 1_000;
+
+    // Idempotensnycklar för omförsök från terminaler
+    public static final int IDEMPOTENCY_KEY_TTL_HOURS = 24;
+    // Hälften per generation, dvs. ungefär en miljon operationer med nyckel per
+    // livslängd; därutöver avvisas nya nycklar i stället för att glömma gamla
+    public static final int MAX_IDEMPOTENCY_KEYS = 2_000_000;
+    public static final int MAX_IDEMPOTENCY_KEY_LENGTH = 64;
+
+    // Huvudbok
+    public static final int LEDGER_CHECKPOINT_INTERVAL = 10_000;
+    public static final int LEDGER_FULL_CHECKPOINT_EVERY = 100;
+    public static final int LEDGER_MAX_FULL_CHECKPOINTS = 4;
+
+    // Reservationer för kontantuttag
+    public static final int HOLD_TIMEOUT_SECONDS = 120;
+    public static final int HOLD_TIMER_TICK_MILLIS = 100;
+
+    // Uttagsgränser per konto och per kort
+    public static final long DAILY_WITHDRAWAL_LIMIT_KRONOR = 20_000;
+    public static final long HOURLY_WITHDRAWAL_LIMIT_KRONOR = 10_000;
+    // Tak för konton respektive kort i minnet; när det är nått nekas uttag med nya nycklar
+    public static final int MAX_WITHDRAWAL_LIMIT_KEYS = 4_000_000;
+
     // UI meddelanden
     public static final String CONFIRM_YES = "Y";
     public static final String CONFIRM_NO = "N";
@@ -0,0 +1,170 @@
+package com.bank.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Ett trådsäkert Bloomfilter för strängar, t.ex. kortnummer.
+ *
+ * Filtret kan svara "finns definitivt inte" eller "finns kanske". Ett
+ * nej är alltid korrekt, medan ett ja kan vara fel med en sannolikhet
+ * (false positive rate) som beror på storleken och antalet element.
+ *
+ * Storleken väljs utifrån förväntat antal element och önskad felfrekvens,
+ * men kan begränsas av en minnesbudget; då blir felfrekvensen högre än
+ * önskat i stället för att filtret växer. Bitar sätts med atomära
+ * OR-operationer, så add och mightContain kan anropas från flera trådar
+ * samtidigt utan lås.
+ */
+public final class BloomFilter {
+    private static final VarHandle BITS = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final double LN2 = Math.log(2);
+
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashCount;
+    // Bara tillägg som satte minst en ny bit, så att samma element sparat igen inte räknas
+    private final LongAdder insertions = new LongAdder();
+
+    private BloomFilter(long bitCount, int hashCount) {
+        this.bits = new long[(int) ((bitCount + 63) / 64)];
+        this.bitCount = (long) bits.length * 64;
+        this.hashCount = hashCount;
+    }
+
+    /**
+     * Skapar ett filter dimensionerat för en viss felfrekvens.
+     *
+     * @param expectedInsertions Förväntat antal element
+     * @param falsePositiveRate Önskad andel felaktiga "finns kanske", t.ex. 0.01
+     * @return Ett nytt tomt filter
+     * @throws IllegalArgumentException om parametrarna är ogiltiga
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate) {
+        return create(expectedInsertions, falsePositiveRate, Long.MAX_VALUE);
+    }
+
+    /**
+     * Skapar ett filter dimensionerat för en viss felfrekvens, men aldrig
+     * större än minnesbudgeten.
+     *
+     * @param expectedInsertions Förväntat antal element
+     * @param falsePositiveRate Önskad andel felaktiga "finns kanske", t.ex. 0.01
+     * @param maxBytes Högsta antal bytes som bitarna får använda
+     * @return Ett nytt tomt filter
+     * @throws IllegalArgumentException om parametrarna är ogiltiga
+     */
+    public static BloomFilter create(long expectedInsertions, double falsePositiveRate, long maxBytes) {
+        if (expectedInsertions <= 0) {
+            throw new IllegalArgumentException("Expected insertions must be positive");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("False positive rate must be between 0 and 1");
+        }
+        if (maxBytes < 8) {
+            throw new IllegalArgumentException("Memory budget must be at least 8 bytes");
+        }
+
+        // Optimal storlek: m = -n * ln(p) / ln(2)^2
+        double optimalBits = -expectedInsertions * Math.log(falsePositiveRate) / (LN2 * LN2);
+        double maxBits = Math.min((double) maxBytes * 8, (double) Integer.MAX_VALUE * 64);
+        long bitCount = (long) Math.max(64, Math.min(optimalBits, maxBits));
+
+        // Optimalt antal hashfunktioner för den storlek som faktiskt blev: k = m/n * ln(2)
+        int hashCount = (int) Math.max(1, Math.min(30, Math.round((double) bitCount / expectedInsertions * LN2)));
+        return new BloomFilter(bitCount, hashCount);
+    }
+
+    /**
+     * Lägger till ett element.
+     * @param value Elementet
+     */
+    public void add(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        boolean changed = false;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            long mask = 1L << bit;
+            int word = (int) (bit >>> 6);
+            if (((long) BITS.getAcquire(bits, word) & mask) == 0
+                    && ((long) BITS.getAndBitwiseOrRelease(bits, word, mask) & mask) == 0) {
+                changed = true;
+            }
+        }
+        if (changed) {
+            insertions.increment();
+        }
+    }
+
+    /**
+     * Kontrollerar om ett element kan finnas i filtret.
+     *
+     * @param value Elementet
+     * @return false om elementet definitivt inte lagts till, true om det kanske har det
+     */
+    public boolean mightContain(String value) {
+        long h1 = hash(value);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L);
+        for (int i = 0; i < hashCount; i++) {
+            long bit = index(h1 + i * h2);
+            if (((long) BITS.getAcquire(bits, (int) (bit >>> 6)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Uppskattar den aktuella felfrekvensen utifrån antalet tillagda element:
+     * (1 - e^(-k*n/m))^k. Ett element som läggs till igen, t.ex. när ett kort
+     * sparas om, räknas inte en gång till eftersom det inte satte några nya bitar.
+     * @return förväntad andel felaktiga "finns kanske"
+     */
+    public double expectedFalsePositiveRate() {
+        double fill = 1 - Math.exp(-(double) hashCount * insertions.sum() / bitCount);
+        return Math.pow(fill, hashCount);
+    }
+
+    /**
+     * Hämtar filtrets storlek i bytes.
+     * @return antal bytes som bitarna använder
+     */
+    public long getSizeInBytes() {
+        return (long) bits.length * 8;
+    }
+
+    /**
+     * Hämtar antalet hashfunktioner som används per element.
+     * @return antal hashfunktioner
+     */
+    public int getHashCount() {
+        return hashCount;
+    }
+
+    private long index(long combinedHash) {
+        return (combinedHash & Long.MAX_VALUE) % bitCount;
+    }
+
+    /**
+     * 64-bitars hash över strängens tecken (FNV-1a följt av en blandning),
+     * utan att skapa en byte-array.
+     */
+    private static long hash(String value) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < value.length(); i++) {
+            h = (h ^ value.charAt(i)) * 0x100000001B3L;
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -1,8 +1,141 @@
 package com.bank.util;
 // Klass för validering
 
+import java.nio.ByteBuffer;
+
+/**
+ * Validerar kortnummer utan reguljära uttryck och utan att skapa objekt.
+ *
+ * isValidCardNumber kontrollerar bara formatet (CARD_NUMBER_LENGTH siffror),
+ * eftersom kort som redan utfärdats inte alltid har en Luhn-siffra.
+ * Nya kortnummer, t.ex. vid import av en batch med nyutfärdade kort,
+ * kontrolleras dessutom med Luhn-algoritmen via isValidNewCardNumber och
+ * validateBatch.
+ */
 public class CardValidator {
-    public boolean isValidCardNumber(String cardNumber) {
-        return cardNumber != null && cardNumber.matches(BankConstants.CARD_NUMBER_PATTERN);
+    // En dubblerad siffra, med siffersumman tagen om den blir tvåsiffrig
+    private static final int[] LUHN_DOUBLED = {0, 2, 4, 6, 8, 1, 3, 5, 7, 9};
+
+    /**
+     * Kontrollerar att ett kortnummer består av exakt CARD_NUMBER_LENGTH siffror.
+     * @param cardNumber Kortnumret
+     * @return true om formatet är giltigt
+     */
+    public boolean isValidCardNumber(CharSequence cardNumber) {
+        if (cardNumber == null || cardNumber.length() != BankConstants.CARD_NUMBER_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < cardNumber.length(); i++) {
+            char c = cardNumber.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Kontrollerar formatet och Luhn-siffran för ett nytt kortnummer.
+     * @param cardNumber Kortnumret
+     * @return true om formatet är giltigt och Luhn-summan stämmer
+     */
+    public boolean isValidNewCardNumber(CharSequence cardNumber) {
+        if (cardNumber == null || cardNumber.length() != BankConstants.CARD_NUMBER_LENGTH) {
+            return false;
+        }
+        // Siffrorna gås igenom bakifrån; varannan dubbleras, med start på den näst sista
+        int sum = 0;
+        boolean doubled = false;
+        for (int i = cardNumber.length() - 1; i >= 0; i--) {
+            int digit = cardNumber.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            sum += doubled ? LUHN_DOUBLED[digit] : digit;
+            doubled = !doubled;
+        }
+        return sum % 10 == 0;
+    }
+
+    /**
+     * Validerar många nya kortnummer på en gång, t.ex. vid import av en batch
+     * med nyutfärdade kort.
+     *
+     * @param cardNumbers Kortnumren
+     * @param valid Fylls med resultatet per kortnummer; minst lika lång som cardNumbers
+     * @return antal giltiga kortnummer
+     */
+    public int validateBatch(CharSequence[] cardNumbers, boolean[] valid) {
+        if (valid.length < cardNumbers.length) {
+            throw new IllegalArgumentException("Result array is too short");
+        }
+        int count = 0;
+        for (int i = 0; i < cardNumbers.length; i++) {
+            valid[i] = isValidNewCardNumber(cardNumbers[i]);
+            if (valid[i]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Validerar nya kortnummer som ligger efter varandra i en buffert, t.ex.
+     * en inläst importfil, med CARD_NUMBER_LENGTH ASCII-siffror per kort och
+     * inga avskiljare. Bufferten läses från position till limit utan att
+     * positionen ändras.
+     *
+     * @param records Kortnumren
+     * @param valid Fylls med resultatet per kortnummer
+     * @return antal giltiga kortnummer
+     * @throws IllegalArgumentException om bufferten inte innehåller hela kortnummer
+     *                                  eller om valid är för kort
+     */
+    public int validateBatch(ByteBuffer records, boolean[] valid) {
+        int length = BankConstants.CARD_NUMBER_LENGTH;
+        int start = records.position();
+        int bytes = records.limit() - start;
+        if (bytes % length != 0) {
+            throw new IllegalArgumentException("Buffer does not hold whole card numbers");
+        }
+        int cards = bytes / length;
+        if (valid.length < cards) {
+            throw new IllegalArgumentException("Result array is too short");
+        }
+        int count = 0;
+        if (records.hasArray()) {
+            // Läs direkt ur arrayen för att slippa gränskontrollen i varje get
+            byte[] array = records.array();
+            int base = records.arrayOffset() + start;
+            for (int card = 0; card < cards; card++) {
+                valid[card] = luhn(array, base + card * length, length);
+                if (valid[card]) {
+                    count++;
+                }
+            }
+            return count;
+        }
+        byte[] record = new byte[length];
+        for (int card = 0; card < cards; card++) {
+            records.get(start + card * length, record);
+            valid[card] = luhn(record, 0, length);
+            if (valid[card]) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static boolean luhn(byte[] digits, int offset, int length) {
+        int sum = 0;
+        for (int i = 0; i < length; i++) {
+            int digit = digits[offset + i] - '0';
+            if (digit < 0 || digit > 9) {
+                return false;
+            }
+            // Räknat bakifrån dubbleras varannan siffra, med start på den näst sista
+            sum += ((length - i) & 1) == 0 ? LUHN_DOUBLED[digit] : digit;
+        }
+        return sum % 10 == 0;
     }
 }
@@ -0,0 +1,270 @@
+package com.bank.util;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * En trådsäker karta där nycklar försvinner av sig själva efter en tid.
+ *
+ * I stället för en tidsstämpel och en städtråd per nyckel delas nycklarna in
+ * i två generationer: den aktuella, där nya nycklar hamnar, och den förra.
+ * När den aktuella generationen är en livslängd gammal blir den den förra,
+ * och den tidigare förra generationen släpps i sin helhet. Varje nyckel
+ * finns därmed kvar minst en livslängd och högst två, och uppslagning,
+ * insättning och utgång är O(1) utan någon per-nyckel-bokföring.
+ *
+ * Kartan är också begränsad till halva maxstorleken per generation. Som
+ * standard roteras en full generation direkt, så vid extrem belastning kan
+ * nycklar försvinna innan livslängden gått ut. Där en nyckel som försvinner
+ * i förtid är ett fel, t.ex. för idempotensnycklar, kan kartan i stället
+ * skapas så att nya nycklar avvisas med IllegalStateException tills den
+ * aktuella generationen roterar av sig själv. Minnet växer aldrig obegränsat.
+ *
+ * Trådsäkerhet:
+ * De två generationerna publiceras tillsammans som ett oföränderligt par, så
+ * en uppslagning ser alltid båda från samma tidpunkt och missar inte en
+ * nyckel som flyttas av en samtidig rotation. Insättningar görs under ett
+ * delat läslås och rotationer under skrivlåset, så en insättning kan inte
+ * hamna i en generation som hunnit bli den förra medan en annan tråd redan
+ * lagt till samma nyckel i den nya. Uppslagningar tar inget lås.
+ */
+public final class ExpiringMap<V> {
+    private final long generationMillis;
+    private final int maxPerGeneration;
+    private final LongSupplier clock;
+    private final boolean rotateWhenFull;
+
+    // Läslåset tas vid insättning, skrivlåset vid rotation
+    private final ReentrantReadWriteLock rotationLock = new ReentrantReadWriteLock();
+    private volatile Generations<V> generations;
+
+    /**
+     * Skapar en karta som använder systemklockan.
+     *
+     * @param timeToLive Minsta tid en nyckel finns kvar
+     * @param maxSize Högsta antal nycklar totalt
+     * @throws IllegalArgumentException om tiden eller storleken inte är positiv
+     */
+    public ExpiringMap(Duration timeToLive, int maxSize) {
+        this(timeToLive, maxSize, System::currentTimeMillis);
+    }
+
+    /**
+     * Skapar en karta med en egen klocka, t.ex. i tester.
+     *
+     * @param timeToLive Minsta tid en nyckel finns kvar
+     * @param maxSize Högsta antal nycklar totalt
+     * @param clock Ger aktuell tid i millisekunder
+     */
+    public ExpiringMap(Duration timeToLive, int maxSize, LongSupplier clock) {
+        this(timeToLive, maxSize, clock, true);
+    }
+
+    /**
+     * Skapar en karta med en egen klocka och valt beteende när den är full.
+     *
+     * @param timeToLive Minsta tid en nyckel finns kvar
+     * @param maxSize Högsta antal nycklar totalt
+     * @param clock Ger aktuell tid i millisekunder
+     * @param rotateWhenFull true om en full generation ska roteras i förtid,
+     *                       false om nya nycklar i stället ska avvisas
+     */
+    public ExpiringMap(Duration timeToLive, int maxSize, LongSupplier clock, boolean rotateWhenFull) {
+        if (timeToLive.isZero() || timeToLive.isNegative()) {
+            throw new IllegalArgumentException("Time to live must be positive");
+        }
+        if (maxSize < 2) {
+            throw new IllegalArgumentException("Max size must be at least 2");
+        }
+        this.generationMillis = timeToLive.toMillis();
+        this.maxPerGeneration = maxSize / 2;
+        this.clock = clock;
+        this.rotateWhenFull = rotateWhenFull;
+        long now = clock.getAsLong();
+        this.generations = new Generations<>(new Generation<>(now), new Generation<>(now));
+    }
+
+    /**
+     * Hämtar värdet för en nyckel.
+     * @return värdet, eller null om nyckeln saknas eller har gått ut
+     */
+    public V get(String key) {
+        rotateIfDue();
+        Generations<V> both = generations;
+        V value = both.current.entries.get(key);
+        return value != null ? value : both.previous.entries.get(key);
+    }
+
+    /**
+     * Lägger till ett värde om nyckeln inte redan finns.
+     * @return det befintliga värdet, eller null om det nya lades till
+     * @throws IllegalStateException om kartan är full och inte roterar när den blir full
+     */
+    public V putIfAbsent(String key, V value) {
+        rotateIfDue();
+        Generation<V> generation;
+        boolean full;
+        rotationLock.readLock().lock();
+        try {
+            Generations<V> both = generations;
+            V existing = both.previous.entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            generation = both.current;
+            if (!rotateWhenFull) {
+                existing = generation.entries.get(key);
+                if (existing != null) {
+                    return existing;
+                }
+                checkCapacity(generation);
+            }
+            existing = generation.entries.putIfAbsent(key, value);
+            if (existing != null) {
+                return existing;
+            }
+            full = generation.size.incrementAndGet() >= maxPerGeneration;
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+        if (full && rotateWhenFull) {
+            rotate(generation);
+        }
+        return null;
+    }
+
+    /**
+     * Hämtar värdet för en nyckel och håller nyckeln vid liv, eller skapar
+     * ett nytt värde om nyckeln saknas.
+     *
+     * En nyckel som finns i den förra generationen flyttas till den aktuella,
+     * så en nyckel som används minst en gång per livslängd går inte ut.
+     *
+     * @param key Nyckeln
+     * @param factory Skapar ett nytt värde för nyckeln
+     * @return det befintliga eller nya värdet
+     * @throws IllegalStateException om kartan är full och inte roterar när den blir full
+     */
+    public V computeIfAbsent(String key, Function<String, ? extends V> factory) {
+        rotateIfDue();
+        // Snabb väg utan lås för nycklar som redan finns i den aktuella generationen
+        V value = generations.current.entries.get(key);
+        if (value != null) {
+            return value;
+        }
+        Generation<V> generation;
+        V created;
+        rotationLock.readLock().lock();
+        try {
+            Generations<V> both = generations;
+            generation = both.current;
+            value = generation.entries.get(key);
+            if (value != null) {
+                return value;
+            }
+            V older = both.previous.entries.get(key);
+            if (older == null && !rotateWhenFull) {
+                checkCapacity(generation);
+            }
+            created = older != null ? older : factory.apply(key);
+            value = generation.entries.putIfAbsent(key, created);
+            if (value != null) {
+                return value;
+            }
+            if (generation.size.incrementAndGet() < maxPerGeneration || !rotateWhenFull) {
+                return created;
+            }
+        } finally {
+            rotationLock.readLock().unlock();
+        }
+        rotate(generation);
+        return created;
+    }
+
+    /**
+     * Tar bort en nyckel om den har det angivna värdet.
+     */
+    public void remove(String key, V value) {
+        Generations<V> both = generations;
+        both.current.entries.remove(key, value);
+        both.previous.entries.remove(key, value);
+    }
+
+    /**
+     * Går igenom alla nycklar som inte gått ut, äldst generation först.
+     * Nycklar som läggs till under genomgången kan komma med eller inte.
+     */
+    public void forEach(BiConsumer<String, V> visitor) {
+        rotateIfDue();
+        Generations<V> both = generations;
+        both.previous.entries.forEach(visitor);
+        both.current.entries.forEach(visitor);
+    }
+
+    /**
+     * Hämtar ungefärligt antal nycklar, inklusive sådana som snart går ut.
+     * @return antal nycklar
+     */
+    public long size() {
+        Generations<V> both = generations;
+        return both.current.entries.mappingCount() + both.previous.entries.mappingCount();
+    }
+
+    private void checkCapacity(Generation<V> generation) {
+        // Samtidiga insättningar kan gå förbi gränsen med högst en nyckel per tråd
+        if (generation.size.get() >= maxPerGeneration) {
+            throw new IllegalStateException("Map is full until the current generation expires");
+        }
+    }
+
+    private void rotateIfDue() {
+        Generation<V> generation = generations.current;
+        if (clock.getAsLong() - generation.startMillis >= generationMillis) {
+            rotate(generation);
+        }
+    }
+
+    private void rotate(Generation<V> expected) {
+        rotationLock.writeLock().lock();
+        try {
+            Generations<V> both = generations;
+            if (both.current != expected) {
+                return; // En annan tråd har redan roterat
+            }
+            long now = clock.getAsLong();
+            // Har även den förra generationen hunnit gå ut är båda inaktuella
+            Generation<V> previous = now - expected.startMillis >= 2 * generationMillis ? new Generation<>(now) : expected;
+            generations = new Generations<>(new Generation<>(now), previous);
+        } finally {
+            rotationLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Den aktuella och den förra generationen, som byts ut tillsammans.
+     */
+    private static final class Generations<V> {
+        final Generation<V> current;
+        final Generation<V> previous;
+
+        Generations(Generation<V> current, Generation<V> previous) {
+            this.current = current;
+            this.previous = previous;
+        }
+    }
+
+    private static final class Generation<V> {
+        final ConcurrentHashMap<String, V> entries = new ConcurrentHashMap<>();
+        final AtomicInteger size = new AtomicInteger();
+        final long startMillis;
+
+        Generation(long startMillis) {
+            this.startMillis = startMillis;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.bank.util;
+
+import com.bank.model.Money;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+
+/**
+ * Formaterar belopp i ören enligt svensk standard, t.ex. "1 234 567,89 kr".
+ *
+ * Siffrorna skrivs direkt in i en StringBuilder eller CharBuffer som
+ * anroparen äger, utan String.format, replace eller andra mellanliggande
+ * strängar. Avgränsare och valutasymbol hämtas från BankConstants.
+ */
+public final class MoneyFormatter {
+    // Tiopotenser för att hitta första siffran utan division i loop
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L,
+            100_000_000L, 1_000_000_000L, 10_000_000_000L, 100_000_000_000L,
+            1_000_000_000_000L, 10_000_000_000_000L, 100_000_000_000_000L,
+            1_000_000_000_000_000L, 10_000_000_000_000_000L, 100_000_000_000_000_000L,
+            1_000_000_000_000_000_000L
+    };
+
+    private MoneyFormatter() {
+        // Endast statiska hjälpmetoder
+    }
+
+    /**
+     * Formaterar ett belopp till en ny sträng med valutasymbol.
+     *
+     * @param amountInOre Beloppet i ören
+     * @return Formaterat belopp, t.ex. "5 000,00 kr"
+     */
+    public static String format(long amountInOre) {
+        return formatTo(new StringBuilder(24), amountInOre).toString();
+    }
+
+    /**
+     * Skriver ett belopp med valutasymbol i slutet av en StringBuilder.
+     *
+     * @param out Bufferten som beloppet läggs till i
+     * @param amountInOre Beloppet i ören
+     * @return Samma StringBuilder, för kedjade anrop
+     */
+    public static StringBuilder formatTo(StringBuilder out, long amountInOre) {
+        return write(out, amountInOre, true);
+    }
+
+    /**
+     * Skriver ett belopp med valutasymbol i en CharBuffer.
+     *
+     * @param out Bufferten som beloppet skrivs till
+     * @param amountInOre Beloppet i ören
+     * @return Samma CharBuffer, för kedjade anrop
+     * @throws java.nio.BufferOverflowException om bufferten är för liten
+     */
+    public static CharBuffer formatTo(CharBuffer out, long amountInOre) {
+        return write(out, amountInOre, true);
+    }
+
+    /**
+     * Skriver ett belopp utan valutasymbol, t.ex. "5 000,00".
+     *
+     * @param out Bufferten som beloppet läggs till i
+     * @param amountInOre Beloppet i ören
+     * @return Samma StringBuilder, för kedjade anrop
+     */
+    public static StringBuilder formatAmountTo(StringBuilder out, long amountInOre) {
+        return write(out, amountInOre, false);
+    }
+
+    /**
+     * Gemensam formateringslogik för både StringBuilder och CharBuffer.
+     * Båda implementerar Appendable och kastar aldrig IOException i praktiken.
+     */
+    private static <A extends Appendable> A write(A out, long amountInOre, boolean withCurrency) {
+        try {
+            // Dela upp innan absolutbeloppet tas, så att även Long.MIN_VALUE fungerar
+            long kronor = Math.abs(amountInOre / Money.ORE_PER_KRONA);
+            int ore = (int) Math.abs(amountInOre % Money.ORE_PER_KRONA);
+
+            if (amountInOre < 0) {
+                out.append('-');
+            }
+
+            // Skriv kronorna från högsta siffran, med avgränsare var tredje siffra
+            int digits = digitCount(kronor);
+            for (int position = digits - 1; position >= 0; position--) {
+                out.append((char) ('0' + (kronor / POWERS_OF_TEN[position]) % 10));
+                if (position > 0 && position % 3 == 0) {
+                    out.append(BankConstants.CURRENCY_THOUSANDS_SEPARATOR);
+                }
+            }
+
+            // Ören skrivs alltid med två siffror
+            out.append(BankConstants.CURRENCY_DECIMAL_SEPARATOR);
+            out.append((char) ('0' + ore / 10));
+            out.append((char) ('0' + ore % 10));
+
+            if (withCurrency) {
+                out.append(' ');
+                out.append(BankConstants.CURRENCY_SYMBOL);
+            }
+            return out;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Räknar antalet siffror i ett icke-negativt tal (minst en, för noll).
+     */
+    private static int digitCount(long value) {
+        int digits = 1;
+        while (digits < POWERS_OF_TEN.length && value >= POWERS_OF_TEN[digits]) {
+            digits++;
+        }
+        return digits;
+    }
+}
@@ -0,0 +1,151 @@
+package com.bank.util;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.function.Consumer;
+
+/**
+ * En begränsad, låsfri kö för många producenter och en enda konsument (MPSC).
+ *
+ * Kön är en ring av fack där varje fack har ett sekvensnummer som talar om
+ * vems tur det är: en producent reserverar nästa position med CAS och skriver
+ * elementet, och konsumenten läser facken i ordning utan några atomära
+ * operationer alls. Storleken är alltid en tvåpotens så att positionen kan
+ * räknas fram med en bitmask.
+ *
+ * offer misslyckas i stället för att blockera när kön är full, så att
+ * anroparen själv väljer mottryck. poll och drain får bara anropas från
+ * konsumenttråden.
+ */
+public final class RingBuffer<E> {
+    private static final VarHandle SEQUENCES = MethodHandles.arrayElementVarHandle(long[].class);
+    private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(Object[].class);
+    private static final VarHandle TAIL;
+
+    static {
+        try {
+            TAIL = MethodHandles.lookup().findVarHandle(RingBuffer.class, "tail", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final long[] sequences;
+    private final Object[] elements;
+    private final int mask;
+
+    // Nästa position för en producent; ändras bara med CAS
+    @SuppressWarnings("unused")
+    private volatile long tail;
+    // Nästa position för konsumenten; läses av andra trådar bara i size()
+    private volatile long head;
+
+    /**
+     * Skapar en kö.
+     *
+     * @param capacity Minsta kapacitet; avrundas uppåt till en tvåpotens
+     * @throws IllegalArgumentException om kapaciteten inte är positiv eller för stor
+     */
+    public RingBuffer(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException("Capacity must be between 1 and 2^30");
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.sequences = new long[size];
+        this.elements = new Object[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    /**
+     * Lägger till ett element om det finns plats. Kan anropas från flera trådar.
+     *
+     * @param element Elementet, inte null
+     * @return true om elementet lades till, false om kön är full
+     */
+    public boolean offer(E element) {
+        if (element == null) {
+            throw new NullPointerException("element");
+        }
+        long position = (long) TAIL.getVolatile(this);
+        while (true) {
+            int index = (int) position & mask;
+            long sequence = (long) SEQUENCES.getAcquire(sequences, index);
+            long difference = sequence - position;
+            if (difference == 0) {
+                // Facket är ledigt för denna position; försök ta det
+                if (TAIL.compareAndSet(this, position, position + 1)) {
+                    ELEMENTS.set(elements, index, element);
+                    SEQUENCES.setRelease(sequences, index, position + 1);
+                    return true;
+                }
+                position = (long) TAIL.getVolatile(this);
+            } else if (difference < 0) {
+                // Facket har inte tömts sedan förra varvet
+                return false;
+            } else {
+                // En annan producent hann före
+                position = (long) TAIL.getVolatile(this);
+            }
+        }
+    }
+
+    /**
+     * Tar ut nästa element. Får bara anropas från konsumenttråden.
+     * @return elementet, eller null om kön är tom
+     */
+    public E poll() {
+        long position = head;
+        int index = (int) position & mask;
+        if ((long) SEQUENCES.getAcquire(sequences, index) != position + 1) {
+            // Tom, eller så har producenten reserverat facket men inte skrivit klart
+            return null;
+        }
+        @SuppressWarnings("unchecked")
+        E element = (E) ELEMENTS.get(elements, index);
+        ELEMENTS.set(elements, index, null);
+        SEQUENCES.setRelease(sequences, index, position + mask + 1);
+        head = position + 1;
+        return element;
+    }
+
+    /**
+     * Tar ut upp till limit element i ordning och lämnar dem till consumer.
+     * Får bara anropas från konsumenttråden.
+     *
+     * @param consumer Tar emot varje element
+     * @param limit Högsta antal element
+     * @return antal element som togs ut
+     */
+    public int drain(Consumer<? super E> consumer, int limit) {
+        int drained = 0;
+        E element;
+        while (drained < limit && (element = poll()) != null) {
+            consumer.accept(element);
+            drained++;
+        }
+        return drained;
+    }
+
+    /**
+     * Hämtar ungefärligt antal element i kön.
+     * @return antal element, som kan ha ändrats när värdet returneras
+     */
+    public int size() {
+        long size = (long) TAIL.getVolatile(this) - head;
+        return (int) Math.max(0, Math.min(size, capacity()));
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+}
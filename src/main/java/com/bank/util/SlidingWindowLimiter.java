@@ -0,0 +1,211 @@
+package com.bank.util;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Begränsar summan per nyckel (t.ex. uttagna ören per kort) inom ett eller
+ * flera glidande tidsfönster, t.ex. per timme och per dygn.
+ *
+ * Varje fönster delas in i ett fast antal fack. Varje nyckel har en enda
+ * long-array där varje fönster upptar sitt senaste facknummer följt av en
+ * ring med facken; fack som hunnit bli för gamla nollställs när nyckeln
+ * används nästa gång, så ingen bakgrundsstädning behövs. Summan över ett
+ * fönster är summan av facken, så ett belopp kan räknas bort upp till en
+ * facklängd innan hela fönstret passerat.
+ *
+ * Kontroll och ökning sker atomiskt under arrayens monitor, så bara anrop
+ * för samma nyckel tävlar med varandra. Nycklarna hålls i en ExpiringMap med
+ * det längsta fönstret som livslängd: en nyckel som inte använts på ett helt
+ * fönster har summan noll och kan glömmas, och antalet nycklar är begränsat.
+ * Kartan roterar aldrig i förtid, eftersom det skulle nollställa summor som
+ * fortfarande gäller. När den är full nekas i stället ökningar för nya
+ * nycklar tills den äldsta generationen löpt ut.
+ */
+public final class SlidingWindowLimiter {
+    private final long[] bucketMillis;
+    private final int[] bucketCounts;
+    private final long[] limits;
+    // Var i nyckelns array respektive fönster börjar
+    private final int[] offsets;
+    private final int stateLength;
+    private final LongSupplier clock;
+    private final ExpiringMap<long[]> states;
+
+    /**
+     * Ett tidsfönster med sin gräns.
+     */
+    public static final class Window {
+        final Duration length;
+        final int buckets;
+        final long limit;
+
+        private Window(Duration length, int buckets, long limit) {
+            this.length = length;
+            this.buckets = buckets;
+            this.limit = limit;
+        }
+    }
+
+    /**
+     * Beskriver ett fönster.
+     *
+     * @param length Fönstrets längd
+     * @param buckets Antal fack; fler fack ger jämnare glidning men mer minne per nyckel
+     * @param limit Högsta summa inom fönstret
+     * @return fönstret
+     * @throws IllegalArgumentException om längden inte delas jämnt av antalet fack
+     */
+    public static Window window(Duration length, int buckets, long limit) {
+        if (buckets <= 0 || length.toMillis() <= 0 || length.toMillis() % buckets != 0) {
+            throw new IllegalArgumentException("Window length must be a positive multiple of the bucket count");
+        }
+        if (limit < 0) {
+            throw new IllegalArgumentException("Limit must not be negative");
+        }
+        return new Window(length, buckets, limit);
+    }
+
+    /**
+     * Skapar en begränsare.
+     *
+     * @param maxKeys Högsta antal nycklar som hålls i minnet
+     * @param clock Ger aktuell tid i millisekunder
+     * @param windows Fönstren; en ökning godkänns bara om den ryms i alla
+     */
+    public SlidingWindowLimiter(int maxKeys, LongSupplier clock, Window... windows) {
+        if (windows.length == 0) {
+            throw new IllegalArgumentException("At least one window is required");
+        }
+        this.bucketMillis = new long[windows.length];
+        this.bucketCounts = new int[windows.length];
+        this.limits = new long[windows.length];
+        this.offsets = new int[windows.length];
+        Duration longest = Duration.ZERO;
+        int length = 0;
+        for (int w = 0; w < windows.length; w++) {
+            bucketCounts[w] = windows[w].buckets;
+            bucketMillis[w] = windows[w].length.toMillis() / windows[w].buckets;
+            limits[w] = windows[w].limit;
+            offsets[w] = length;
+            length += 1 + windows[w].buckets;
+            if (windows[w].length.compareTo(longest) > 0) {
+                longest = windows[w].length;
+            }
+        }
+        this.stateLength = length;
+        this.clock = clock;
+        this.states = new ExpiringMap<>(longest, maxKeys, clock, false);
+    }
+
+    /**
+     * Ökar nyckelns summa om ökningen ryms i alla fönster.
+     *
+     * @param key Nyckeln
+     * @param amount Ökningen, större än noll
+     * @return tidpunkten som ökningen registrerades på (till release), eller -1 om någon
+     *         gräns skulle överskridas eller nyckeln är ny och kartan full
+     */
+    public long tryAcquire(String key, long amount) {
+        long now = clock.getAsLong();
+        long[] state;
+        try {
+            state = states.computeIfAbsent(key, k -> newState());
+        } catch (IllegalStateException e) {
+            return -1; // Full karta nekar hellre än glömmer summor som gäller
+        }
+        synchronized (state) {
+            for (int w = 0; w < offsets.length; w++) {
+                long used = advance(state, w, now);
+                if (amount > limits[w] - used) {
+                    return -1;
+                }
+            }
+            for (int w = 0; w < offsets.length; w++) {
+                state[bucketIndex(w, now / bucketMillis[w])] += amount;
+            }
+        }
+        return now;
+    }
+
+    /**
+     * Tar tillbaka en ökning, t.ex. när uttaget som räknades inte gick igenom.
+     * Fack som hunnit lämna fönstret lämnas som de är.
+     *
+     * @param key Nyckeln
+     * @param amount Ökningen som ska tas tillbaka
+     * @param acquiredAt Tidpunkten som tryAcquire returnerade
+     */
+    public void release(String key, long amount, long acquiredAt) {
+        long[] state = states.get(key);
+        if (state == null) {
+            return;
+        }
+        synchronized (state) {
+            for (int w = 0; w < offsets.length; w++) {
+                long slot = acquiredAt / bucketMillis[w];
+                long latest = state[offsets[w]];
+                if (slot <= latest && slot > latest - bucketCounts[w]) {
+                    int index = bucketIndex(w, slot);
+                    state[index] = Math.max(0, state[index] - amount);
+                }
+            }
+        }
+    }
+
+    /**
+     * Hämtar nyckelns summa inom ett fönster.
+     *
+     * @param key Nyckeln
+     * @param window Fönstrets index i den ordning de angavs
+     * @return summan inom fönstret just nu
+     */
+    public long used(String key, int window) {
+        long[] state = states.get(key);
+        if (state == null) {
+            return 0;
+        }
+        synchronized (state) {
+            return advance(state, window, clock.getAsLong());
+        }
+    }
+
+    private long[] newState() {
+        long[] state = new long[stateLength];
+        for (int offset : offsets) {
+            state[offset] = Long.MIN_VALUE / 2; // Inget fack har använts ännu
+        }
+        return state;
+    }
+
+    /**
+     * Nollställer fack som lämnat fönstret sedan nyckeln användes senast och
+     * returnerar fönstrets summa.
+     */
+    private long advance(long[] state, int window, long now) {
+        int offset = offsets[window];
+        int buckets = bucketCounts[window];
+        long slot = now / bucketMillis[window];
+        long latest = state[offset];
+        if (slot > latest) {
+            if (slot - latest >= buckets) {
+                Arrays.fill(state, offset + 1, offset + 1 + buckets, 0);
+            } else {
+                for (long s = latest + 1; s <= slot; s++) {
+                    state[bucketIndex(window, s)] = 0;
+                }
+            }
+            state[offset] = slot;
+        }
+        long sum = 0;
+        for (int i = offset + 1; i <= offset + buckets; i++) {
+            sum += state[i];
+        }
+        return sum;
+    }
+
+    private int bucketIndex(int window, long slot) {
+        return offsets[window] + 1 + (int) Math.floorMod(slot, (long) bucketCounts[window]);
+    }
+}
@@ -0,0 +1,220 @@
+package com.bank.util;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Ett hierarkiskt tidshjul för att låta många tidsgränser gå ut utan att
+ * söka igenom dem och utan en tråd eller ett schemalagt jobb per gräns.
+ *
+ * Tiden delas in i tick. Hjulet har LEVELS nivåer med 64 fack vardera:
+ * nivå 0 har ett fack per tick, nivå 1 ett fack per 64 tick och så vidare.
+ * En tidsgräns läggs i facket på den lägsta nivå som räcker för hur långt
+ * bort den ligger. När nivå 0 har gått ett varv flyttas nästa fack på nivå 1
+ * ner till nivå 0 (och motsvarande uppåt), så varje tidsgräns flyttas högst
+ * LEVELS gånger innan den går ut. Schemaläggning, avbokning och utgång är
+ * därmed O(1) per tidsgräns oavsett hur många som finns.
+ *
+ * Trådsäkerhet:
+ * schedule och Timeout.cancel kan anropas från alla trådar; nya tidsgränser
+ * köas låsfritt och läggs in i hjulet av advance. advance får bara anropas
+ * av en tråd i taget. Avbokade tidsgränser tas bort först när deras fack
+ * töms.
+ */
+public final class TimingWheel<T> {
+    private static final int WHEEL_BITS = 6;
+    private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+    private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+    private static final int LEVELS = 4;
+    // Längsta avstånd i tick som hjulet kan hålla utan att lägga om gränsen
+    private static final long MAX_SPAN = 1L << (WHEEL_BITS * LEVELS);
+
+    private final long tickMillis;
+    private final long startMillis;
+    // Facken som enkellänkade listor av Timeout, så ingen extra allokering behövs
+    @SuppressWarnings("unchecked")
+    private final Timeout<T>[][] wheels = (Timeout<T>[][]) new Timeout<?>[LEVELS][WHEEL_SIZE];
+    private final ConcurrentLinkedQueue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pending = new AtomicLong();
+    // Senaste behandlade tick; ändras bara av advance
+    private long currentTick;
+
+    /**
+     * Skapar ett tomt hjul.
+     *
+     * @param tickMillis Längden på ett tick i millisekunder; tidsgränser avrundas uppåt till hela tick
+     * @param startMillis Tidpunkten för tick noll
+     * @throws IllegalArgumentException om ticklängden inte är positiv
+     */
+    public TimingWheel(long tickMillis, long startMillis) {
+        if (tickMillis <= 0) {
+            throw new IllegalArgumentException("Tick length must be positive");
+        }
+        this.tickMillis = tickMillis;
+        this.startMillis = startMillis;
+    }
+
+    /**
+     * Schemalägger en tidsgräns.
+     *
+     * @param item Det som ska lämnas till advance när gränsen gått ut
+     * @param deadlineMillis Tidpunkten då gränsen går ut
+     * @return en Timeout som kan avbokas
+     */
+    public Timeout<T> schedule(T item, long deadlineMillis) {
+        long elapsed = Math.max(0, deadlineMillis - startMillis);
+        Timeout<T> timeout = new Timeout<>(item, (elapsed + tickMillis - 1) / tickMillis, pending);
+        pending.incrementAndGet();
+        scheduled.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Flyttar fram hjulet till den angivna tiden och lämnar alla tidsgränser
+     * som gått ut och inte avbokats till onExpired, i tickordning.
+     * Får bara anropas av en tråd i taget.
+     *
+     * @param nowMillis Aktuell tid
+     * @param onExpired Tar emot det schemalagda objektet för varje utgången gräns
+     * @return antal utgångna tidsgränser
+     */
+    public int advance(long nowMillis, Consumer<? super T> onExpired) {
+        int expired = 0;
+        // Lägg in nyschemalagda gränser innan tiden flyttas fram
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            expired += place(timeout, onExpired);
+        }
+
+        long targetTick = Math.max(0, nowMillis - startMillis) / tickMillis;
+        while (currentTick < targetTick) {
+            currentTick++;
+            cascade();
+            Timeout<T> slot = wheels[0][(int) (currentTick & WHEEL_MASK)];
+            wheels[0][(int) (currentTick & WHEEL_MASK)] = null;
+            while (slot != null) {
+                Timeout<T> next = slot.next;
+                slot.next = null;
+                expired += place(slot, onExpired);
+                slot = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * Hämtar antalet tidsgränser som varken gått ut eller avbokats.
+     * @return antal väntande tidsgränser
+     */
+    public long size() {
+        return pending.get();
+    }
+
+    /**
+     * Flyttar ner facken på högre nivåer vars tid har kommit.
+     */
+    private void cascade() {
+        for (int level = 1; level < LEVELS; level++) {
+            int shift = WHEEL_BITS * level;
+            if ((currentTick & ((1L << shift) - 1)) != 0) {
+                return; // Nivån under har inte gått ett helt varv
+            }
+            int index = (int) ((currentTick >>> shift) & WHEEL_MASK);
+            Timeout<T> slot = wheels[level][index];
+            wheels[level][index] = null;
+            while (slot != null) {
+                Timeout<T> next = slot.next;
+                slot.next = null;
+                insert(slot);
+                slot = next;
+            }
+        }
+    }
+
+    /**
+     * Lägger en gräns i hjulet, eller lämnar ut den om den redan gått ut.
+     * @return 1 om gränsen gick ut, annars 0
+     */
+    private int place(Timeout<T> timeout, Consumer<? super T> onExpired) {
+        if (timeout.isCancelled()) {
+            return 0;
+        }
+        if (timeout.deadlineTick <= currentTick) {
+            if (timeout.expire()) {
+                onExpired.accept(timeout.item);
+                return 1;
+            }
+            return 0;
+        }
+        insert(timeout);
+        return 0;
+    }
+
+    private void insert(Timeout<T> timeout) {
+        if (timeout.isCancelled()) {
+            return;
+        }
+        // Gränser längre bort än hjulet räcker läggs sist och läggs om när de flyttas ner
+        long tick = Math.min(timeout.deadlineTick, currentTick + MAX_SPAN - 1);
+        long distance = tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && distance >= (1L << (WHEEL_BITS * (level + 1)))) {
+            level++;
+        }
+        int index = (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+        timeout.next = wheels[level][index];
+        wheels[level][index] = timeout;
+    }
+
+    /**
+     * En schemalagd tidsgräns.
+     */
+    public static final class Timeout<T> {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final T item;
+        private final long deadlineTick;
+        private final AtomicLong pending;
+        private final AtomicInteger state = new AtomicInteger(WAITING);
+        // Nästa gräns i samma fack; används bara av tråden som kör advance
+        private Timeout<T> next;
+
+        private Timeout(T item, long deadlineTick, AtomicLong pending) {
+            this.item = item;
+            this.deadlineTick = deadlineTick;
+            this.pending = pending;
+        }
+
+        /**
+         * Avbokar tidsgränsen.
+         * @return true om den avbokades, false om den redan gått ut eller avbokats
+         */
+        public boolean cancel() {
+            if (state.compareAndSet(WAITING, CANCELLED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        public boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        public boolean isExpired() {
+            return state.get() == EXPIRED;
+        }
+
+        private boolean expire() {
+            if (state.compareAndSet(WAITING, EXPIRED)) {
+                pending.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bank.util;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Begränsar hur ofta något får hända per nyckel (t.ex. inloggningsförsök per
+ * kort) med en token bucket: en hink med plats för burst polletter som fylls
+ * på med en pollett per intervall, där varje anrop kostar en pollett.
+ *
+ * Hinken lagras som ett enda long per nyckel: tidpunkten då hinken åter är
+ * full (GCRA, "theoretical arrival time"). Ett anrop flyttar tidpunkten fram
+ * ett intervall och godkänns om den då ligger högst burst intervall framåt i
+ * tiden. Uppdateringen görs med CAS, så anrop för samma nyckel tävlar utan
+ * lås och anrop för olika nycklar påverkar inte varandra alls.
+ *
+ * En hink som varit orörd i burst intervall är full och därmed likvärdig med
+ * en ny, så nycklarna hålls i en ExpiringMap med den tiden som livslängd och
+ * antalet nycklar i minnet är begränsat. Kartan roterar aldrig i förtid, så
+ * den som hittar på många nya nycklar kan inte tömma hinkar som fortfarande
+ * används. När kartan är full nekas anrop med nya nycklar i stället.
+ */
+public final class TokenBucketLimiter {
+    private final long intervalMicros;
+    private final long burstMicros;
+    private final LongSupplier clock;
+    private final ExpiringMap<AtomicLong> buckets;
+
+    /**
+     * Skapar en begränsare.
+     *
+     * @param perMinute Antal polletter som fylls på per minut
+     * @param burst Hinkens storlek, dvs. hur många anrop som får göras i följd
+     * @param maxKeys Högsta antal nycklar som hålls i minnet
+     * @param clock Ger aktuell tid i millisekunder
+     * @throws IllegalArgumentException om takten eller storleken inte är positiv
+     */
+    public TokenBucketLimiter(int perMinute, int burst, int maxKeys, LongSupplier clock) {
+        if (perMinute <= 0 || burst <= 0) {
+            throw new IllegalArgumentException("Rate and burst must be positive");
+        }
+        this.intervalMicros = Duration.ofMinutes(1).toNanos() / 1_000 / perMinute;
+        this.burstMicros = intervalMicros * burst;
+        this.clock = clock;
+        this.buckets = new ExpiringMap<>(Duration.ofNanos(burstMicros * 1_000).plusMillis(1), maxKeys, clock, false);
+    }
+
+    /**
+     * Tar en pollett ur nyckelns hink om det finns någon.
+     *
+     * @param key Nyckeln
+     * @return true om anropet godkändes, false om hinken är tom eller om
+     *         nyckeln är ny och kartan full
+     */
+    public boolean tryAcquire(String key) {
+        long now = clock.getAsLong() * 1_000;
+        AtomicLong bucket;
+        try {
+            // Noll betyder att hinken redan är full; lambdan fångar inget och skapar inga objekt
+            bucket = buckets.computeIfAbsent(key, k -> new AtomicLong());
+        } catch (IllegalStateException e) {
+            return false; // Full karta nekar hellre än glömmer hinkar som används
+        }
+        while (true) {
+            long fullAt = bucket.get();
+            long next = Math.max(fullAt, now) + intervalMicros;
+            if (next - now > burstMicros) {
+                return false;
+            }
+            if (bucket.compareAndSet(fullAt, next)) {
+                return true;
+            }
+        }
+    }
+}
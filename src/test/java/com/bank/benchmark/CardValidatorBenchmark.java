@@ -0,0 +1,72 @@
+package com.bank.benchmark;
+
+import com.bank.util.BankConstants;
+import com.bank.util.CardValidator;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+/**
+ * Jämför validering av kortnummer med String.matches (som kompilerar ett
+ * nytt Pattern vid varje anrop) mot CardValidator, både ett kort i taget
+ * och i batch från en buffert.
+ *
+ * Körs som ett vanligt program:
+ *   java -cp ... com.bank.benchmark.CardValidatorBenchmark [antal kortnummer]
+ *
+ * Varje mätning upprepas några gånger så att JIT hinner kompilera koden;
+ * den bästa tiden per kortnummer skrivs ut.
+ */
+public class CardValidatorBenchmark {
+    private static final int ROUNDS = 5;
+
+    // Skrivs till så att JIT inte kan ta bort valideringen
+    private static int sink;
+
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        String[] cardNumbers = new String[count];
+        Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            cardNumbers[i] = String.format("%012d", Math.floorMod(random.nextLong(), 1_000_000_000_000L));
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(String.join("", cardNumbers).getBytes(StandardCharsets.US_ASCII));
+        CardValidator validator = new CardValidator();
+        boolean[] valid = new boolean[count];
+
+        long regex = Long.MAX_VALUE;
+        long format = Long.MAX_VALUE;
+        long luhn = Long.MAX_VALUE;
+        long batch = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String cardNumber : cardNumbers) {
+                sink += cardNumber.matches(BankConstants.CARD_NUMBER_PATTERN) ? 1 : 0;
+            }
+            regex = Math.min(regex, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (String cardNumber : cardNumbers) {
+                sink += validator.isValidCardNumber(cardNumber) ? 1 : 0;
+            }
+            format = Math.min(format, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            for (String cardNumber : cardNumbers) {
+                sink += validator.isValidNewCardNumber(cardNumber) ? 1 : 0;
+            }
+            luhn = Math.min(luhn, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            sink += validator.validateBatch(buffer, valid);
+            batch = Math.min(batch, System.nanoTime() - start);
+        }
+
+        System.out.printf("String.matches:             %6.1f ns/kort%n", (double) regex / count);
+        System.out.printf("isValidCardNumber:          %6.1f ns/kort%n", (double) format / count);
+        System.out.printf("isValidNewCardNumber (Luhn):%6.1f ns/kort%n", (double) luhn / count);
+        System.out.printf("validateBatch (buffert):    %6.1f ns/kort%n", (double) batch / count);
+        System.out.println("(" + sink + ")");
+    }
+}
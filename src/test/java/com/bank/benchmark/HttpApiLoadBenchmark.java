@@ -0,0 +1,141 @@
+package com.bank.benchmark;
+
+import com.bank.BankSystem;
+import com.bank.server.http.HttpApiServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lasttest för HttpApiServer. Ett antal klienter skickar förfrågningar i
+ * en slinga över återanvända keep-alive-anslutningar och mäter genomströmning
+ * och svarstider.
+ *
+ * Utan URL startas en inbyggd server med testdata:
+ *   java -cp ... com.bank.benchmark.HttpApiLoadBenchmark [klienter] [sekunder] [bas-URL]
+ * t.ex. 64 10 http://localhost:8080 för att köra mot en redan startad server.
+ *
+ * Var åttonde förfrågan är en insättning, resten är saldoförfrågningar.
+ */
+public class HttpApiLoadBenchmark {
+    private static final int WARMUP_SECONDS = 2;
+    private static final int DEPOSIT_EVERY = 8;
+
+    public static void main(String[] args) throws Exception {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : 32;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        HttpApiServer embedded = null;
+        String baseUrl;
+        if (args.length > 2) {
+            baseUrl = args[2];
+        } else {
+            embedded = new HttpApiServer(BankSystem.withTestData(), 0);
+            baseUrl = "http://localhost:" + embedded.getPort();
+        }
+
+        try {
+            run(baseUrl, clients, WARMUP_SECONDS);
+            Result result = run(baseUrl, clients, seconds);
+            result.print(clients, seconds);
+        } finally {
+            if (embedded != null) {
+                embedded.close();
+            }
+        }
+    }
+
+    private static Result run(String baseUrl, int clients, int seconds) throws Exception {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        HttpRequest balance = HttpRequest.newBuilder(URI.create(baseUrl + "/api/accounts/1001")).build();
+        HttpRequest deposit = HttpRequest.newBuilder(URI.create(baseUrl + "/api/accounts/1002/deposits"))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString("100=1"))
+                .build();
+
+        LongAdder errors = new LongAdder();
+        long deadline = System.nanoTime() + Duration.ofSeconds(seconds).toNanos();
+        List<Future<long[]>> futures = new ArrayList<>();
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int c = 0; c < clients; c++) {
+                futures.add(executor.submit(() -> {
+                    // Svarstider i mikrosekunder, växer vid behov
+                    long[] latencies = new long[1024];
+                    int count = 0;
+                    while (System.nanoTime() < deadline) {
+                        HttpRequest request = count % DEPOSIT_EVERY == 0 ? deposit : balance;
+                        long start = System.nanoTime();
+                        try {
+                            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+                            if (response.statusCode() != 200) {
+                                errors.increment();
+                            }
+                        } catch (IOException e) {
+                            errors.increment();
+                        }
+                        if (count == latencies.length) {
+                            latencies = Arrays.copyOf(latencies, count * 2);
+                        }
+                        latencies[count++] = (System.nanoTime() - start) / 1_000;
+                    }
+                    return Arrays.copyOf(latencies, count);
+                }));
+            }
+        }
+
+        List<long[]> perClient = new ArrayList<>();
+        for (Future<long[]> future : futures) {
+            perClient.add(future.get());
+        }
+        return new Result(perClient, errors.sum());
+    }
+
+    private static final class Result {
+        private final long[] latencies;
+        private final long errors;
+
+        Result(List<long[]> perClient, long errors) {
+            int total = 0;
+            for (long[] latencies : perClient) {
+                total += latencies.length;
+            }
+            this.latencies = new long[total];
+            int offset = 0;
+            for (long[] latencies : perClient) {
+                System.arraycopy(latencies, 0, this.latencies, offset, latencies.length);
+                offset += latencies.length;
+            }
+            Arrays.sort(this.latencies);
+            this.errors = errors;
+        }
+
+        void print(int clients, int seconds) {
+            System.out.printf("%d klienter, %d s: %,d förfrågningar (%,.0f/s), %d fel%n",
+                    clients, seconds, latencies.length, (double) latencies.length / seconds, errors);
+            System.out.printf("svarstid µs: p50 %d, p90 %d, p99 %d, p99.9 %d, max %d%n",
+                    percentile(0.50), percentile(0.90), percentile(0.99), percentile(0.999),
+                    latencies.length == 0 ? 0 : latencies[latencies.length - 1]);
+        }
+
+        private long percentile(double p) {
+            if (latencies.length == 0) {
+                return 0;
+            }
+            return latencies[(int) Math.min(latencies.length - 1, (long) Math.ceil(p * latencies.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.bank.benchmark;
+
+import com.bank.model.Card;
+import com.bank.repository.InMemoryCardRepository;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.auth.PinVerificationPool;
+import com.bank.util.BankConstants;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mäter hur många inloggningar per sekund och kärna AuthenticationService
+ * klarar med hashade PIN-koder och kostnaden i BankConstants, när
+ * hashningen görs på en PinVerificationPool med en tråd per kärna.
+ *
+ * Körs som ett vanligt program:
+ *   java -cp ... com.bank.benchmark.PinHashBenchmark [anropande trådar] [sekunder]
+ *
+ * Anroparna är fler än poolens trådar, så kön hålls fylld; inloggningar som
+ * avvisas med SERVICE_BUSY räknas separat.
+ */
+public class PinHashBenchmark {
+    private static final int CARDS = 1_000;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        int callers = args.length > 0 ? Integer.parseInt(args[0]) : cores * 4;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        InMemoryCardRepository repository = new InMemoryCardRepository();
+        for (int i = 0; i < CARDS; i++) {
+            repository.saveCard(Card.withHashedPin(cardNumber(i), "12/30", "1234"));
+        }
+
+        try (PinVerificationPool pool = new PinVerificationPool(cores, BankConstants.PIN_VERIFICATION_QUEUE_CAPACITY)) {
+            AuthenticationService authService = new AuthenticationService(repository, pool);
+            for (int round = 0; round < ROUNDS; round++) {
+                run(authService, callers, seconds, cores);
+            }
+        }
+    }
+
+    private static void run(AuthenticationService authService, int callers, int seconds, int cores)
+            throws InterruptedException {
+        AtomicLong succeeded = new AtomicLong();
+        AtomicLong busy = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        long end = System.nanoTime() + seconds * 1_000_000_000L;
+        Thread[] threads = new Thread[callers];
+        for (int t = 0; t < callers; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = first; System.nanoTime() < end; i++) {
+                    AuthenticationResult result = authService.authenticate(cardNumber(i % CARDS), "1234");
+                    if (result == AuthenticationResult.SUCCESS) {
+                        succeeded.incrementAndGet();
+                    } else if (result == AuthenticationResult.SERVICE_BUSY) {
+                        busy.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        double elapsed = (System.nanoTime() - started) / 1e9;
+        double perSecond = succeeded.get() / elapsed;
+        System.out.printf("%,d iterationer: %,.0f inloggningar/s, %,.0f per kärna (%d kärnor), %,d avvisade%n",
+                BankConstants.PIN_HASH_ITERATIONS, perSecond, perSecond / cores, cores, busy.get());
+    }
+
+    private static String cardNumber(int i) {
+        return String.format("%012d", i);
+    }
+}
@@ -0,0 +1,153 @@
+package com.bank.benchmark;
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.engine.ShardedTransactionEngine;
+import com.bank.service.transaction.TransactionResult;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Jämför uttag direkt via AccountService (striped lås i repositoryt) med
+ * uttag via ShardedTransactionEngine, när de flesta uttagen går mot ett
+ * fåtal "heta" konton.
+ *
+ * Körs som ett vanligt program:
+ *   java -cp ... com.bank.benchmark.ShardedEngineBenchmark [trådar] [shards] [uttag per tråd]
+ *
+ * Via motorn har varje tråd upp till WINDOW uttag på gång samtidigt, som en
+ * terminalserver med många samtidiga sessioner. Svarstiden mäts från anrop
+ * till svar i båda fallen.
+ */
+public class ShardedEngineBenchmark {
+    private static final int ACCOUNTS = 10_000;
+    private static final int HOT_ACCOUNTS = 4;
+    private static final double HOT_SHARE = 0.9;
+    private static final int WINDOW = 64;
+    private static final int ROUNDS = 3;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int shards = args.length > 1 ? Integer.parseInt(args[1])
+                : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        int perThread = args.length > 2 ? Integer.parseInt(args[2]) : 200_000;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            System.out.println("Omgång " + (round + 1));
+            print("lås", threads, perThread, runLocked(threads, perThread));
+            print("shards=" + shards, threads, perThread, runSharded(threads, shards, perThread));
+        }
+    }
+
+    private static AccountService newService() {
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        for (int i = 0; i < ACCOUNTS; i++) {
+            repository.saveAccount(Account.withBalanceInOre(accountNumber(i), "Konto " + i, Long.MAX_VALUE / 2));
+        }
+        return new AccountService(repository);
+    }
+
+    private static Measurement runLocked(int threads, int perThread) throws Exception {
+        AccountService service = newService();
+        return run(threads, perThread, (thread, latencies) -> {
+            for (int i = 0; i < perThread; i++) {
+                String account = pickAccount();
+                long start = System.nanoTime();
+                service.withdrawInOre(account, 1);
+                latencies[i] = System.nanoTime() - start;
+            }
+        });
+    }
+
+    private static Measurement runSharded(int threads, int shards, int perThread) throws Exception {
+        AccountService service = newService();
+        try (ShardedTransactionEngine engine = new ShardedTransactionEngine(service, shards, 4096)) {
+            return run(threads, perThread, (thread, latencies) -> {
+                List<CompletableFuture<TransactionResult>> window = new ArrayList<>(WINDOW);
+                for (int i = 0; i < perThread; i++) {
+                    final int index = i;
+                    long start = System.nanoTime();
+                    window.add(engine.withdrawInOre(pickAccount(), 1)
+                            .whenComplete((result, failure) -> latencies[index] = System.nanoTime() - start));
+                    if (window.size() == WINDOW) {
+                        CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+                        window.clear();
+                    }
+                }
+                CompletableFuture.allOf(window.toArray(new CompletableFuture<?>[0])).join();
+            });
+        }
+    }
+
+    private interface Worker {
+        void run(int thread, long[] latencies);
+    }
+
+    private static Measurement run(int threads, int perThread, Worker worker) throws Exception {
+        long[][] latencies = new long[threads][perThread];
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> running = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            final int thread = t;
+            running.add(Thread.ofPlatform().start(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                worker.run(thread, latencies[thread]);
+            }));
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread thread : running) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        long[] all = new long[threads * perThread];
+        for (int t = 0; t < threads; t++) {
+            System.arraycopy(latencies[t], 0, all, t * perThread, perThread);
+        }
+        Arrays.sort(all);
+        return new Measurement(elapsed, all);
+    }
+
+    private static String pickAccount() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int index = random.nextDouble() < HOT_SHARE ? random.nextInt(HOT_ACCOUNTS) : random.nextInt(ACCOUNTS);
+        return accountNumber(index);
+    }
+
+    private static String accountNumber(int index) {
+        return Integer.toString(100_000 + index);
+    }
+
+    private static void print(String name, int threads, int perThread, Measurement m) {
+        long operations = (long) threads * perThread;
+        System.out.printf("  %-10s %,12.0f uttag/s   p50 %,8d ns   p99 %,10d ns   p99.9 %,10d ns%n",
+                name, operations / (m.elapsedNanos / 1e9),
+                m.percentile(0.50), m.percentile(0.99), m.percentile(0.999));
+    }
+
+    private static final class Measurement {
+        final long elapsedNanos;
+        final long[] sortedLatencies;
+
+        Measurement(long elapsedNanos, long[] sortedLatencies) {
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+        }
+
+        long percentile(double p) {
+            return sortedLatencies[(int) Math.min(sortedLatencies.length - 1,
+                    (long) Math.ceil(p * sortedLatencies.length) - 1)];
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.bank.benchmark;
+
+import com.bank.model.Account;
+import com.bank.repository.PersistentAccountRepository;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Jämför uppstartstid för PersistentAccountRepository när hela loggen måste
+ * spelas upp mot när en snapshot läses och bara loggens svans spelas upp.
+ *
+ * Körs som ett vanligt program, t.ex. med 1 och 10 miljoner konton:
+ *   java -Xmx8g -cp ... com.bank.benchmark.SnapshotStartupBenchmark 1000000 10000000
+ *
+ * Varje mätning görs på en nyöppnad katalog och upprepas några gånger; den
+ * bästa tiden skrivs ut för att minska brus från JIT och sidcache.
+ */
+public class SnapshotStartupBenchmark {
+    private static final int ROUNDS = 3;
+    private static final int BATCH_SIZE = 100_000;
+    // Andel konton som ändras efter snapshoten och alltså finns i loggens svans
+    private static final double TAIL_FRACTION = 0.01;
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0 ? new int[]{1_000_000} : new int[args.length];
+        for (int i = 0; i < args.length; i++) {
+            sizes[i] = Integer.parseInt(args[i]);
+        }
+        for (int accounts : sizes) {
+            run(accounts);
+        }
+    }
+
+    private static void run(int accountCount) throws IOException {
+        Path directory = Files.createTempDirectory("snapshot-benchmark");
+        try {
+            populate(directory, accountCount);
+            long replayNanos = bestOpenTime(directory, accountCount);
+
+            int tailUpdates = (int) (accountCount * TAIL_FRACTION);
+            try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+                repository.snapshot();
+                List<Account> changed = new ArrayList<>(tailUpdates);
+                for (int i = 0; i < tailUpdates; i++) {
+                    changed.add(account(i, 1));
+                }
+                repository.saveAccounts(changed);
+            }
+            long snapshotNanos = bestOpenTime(directory, accountCount);
+
+            System.out.printf("%,d konton: full loggåteruppspelning %,d ms, snapshot + svans (%,d poster) %,d ms, %.1fx%n",
+                    accountCount, replayNanos / 1_000_000, tailUpdates, snapshotNanos / 1_000_000,
+                    (double) replayNanos / snapshotNanos);
+        } finally {
+            deleteRecursively(directory);
+        }
+    }
+
+    private static void populate(Path directory, int accountCount) throws IOException {
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+            List<Account> batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < accountCount; i++) {
+                batch.add(account(i, 0));
+                if (batch.size() == BATCH_SIZE) {
+                    repository.saveAccounts(batch);
+                    batch.clear();
+                }
+            }
+            repository.saveAccounts(batch);
+        }
+    }
+
+    private static long bestOpenTime(Path directory, int expectedAccounts) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+                long elapsed = System.nanoTime() - start;
+                if (repository.getAccountCount() != expectedAccounts) {
+                    throw new IllegalStateException("Expected " + expectedAccounts + " accounts, found "
+                            + repository.getAccountCount());
+                }
+                best = Math.min(best, elapsed);
+            }
+        }
+        return best;
+    }
+
+    private static Account account(int index, int version) {
+        return Account.withBalanceInOre(String.format("%010d", index), "Konto " + index, 100_000L + version);
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+}
@@ -80,4 +80,20 @@ public class AccountTest {
             new Account("12345", null, 5000.0);
         });
     }
+
+    /**
+     * Testar att saldot lagras exakt i ören utan avrundningsfel.
+     * 0.1 + 0.2 är inte exakt 0.3 som double, men ska bli exakt 30 öre.
+     */
+    @Test
+    public void shouldStoreBalanceExactlyInOre() {
+        // Arrange & Act
+        Account account = new Account("12345", "Lönekonto", 0.1 + 0.2);
+        Account fromOre = Account.withBalanceInOre("12345", "Lönekonto", 123_456L);
+
+        // Assert
+        assertEquals(30L, account.getBalanceInOre());
+        assertEquals(0.3, account.getBalance());
+        assertEquals(1234.56, fromOre.getBalance());
+    }
 }
@@ -0,0 +1,101 @@
+package com.bank.model;
+// Testar Card-modellens PIN-verifiering och blockering
+
+import com.bank.util.BankConstants;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardTest {
+
+    /**
+     * Testar att kortet blockeras efter MAX_FAILED_ATTEMPTS felaktiga försök
+     * och att även rätt PIN nekas därefter.
+     */
+    @Test
+    public void shouldBlockAfterMaxFailedAttempts() {
+        // Arrange
+        Card card = new Card("123456789012", "12/25", "1234");
+
+        // Act
+        for (int i = 0; i < BankConstants.MAX_FAILED_ATTEMPTS; i++) {
+            assertFalse(card.verifyPin("0000"));
+        }
+
+        // Assert
+        assertTrue(card.isBlocked());
+        assertEquals(BankConstants.MAX_FAILED_ATTEMPTS, card.getFailedAttempts());
+        assertFalse(card.verifyPin("1234"), "Ett blockerat kort nekar även rätt PIN");
+    }
+
+    /**
+     * Testar att rätt PIN nollställer räknaren och att ett sparat tillstånd
+     * återskapas oförändrat.
+     */
+    @Test
+    public void shouldResetAttemptsOnCorrectPinAndRestoreSavedState() {
+        // Arrange
+        Card card = new Card("123456789012", "12/25", "1234");
+        card.verifyPin("0000");
+        int stateAfterFailure = card.getSecurityState();
+
+        // Act
+        assertTrue(card.verifyPin("1234"));
+
+        // Assert
+        assertEquals(0, card.getFailedAttempts());
+        assertNotEquals(stateAfterFailure, card.getSecurityState());
+        Card restored = new Card("123456789012", "12/25", "1234", true, 2);
+        assertTrue(restored.isBlocked());
+        assertEquals(2, restored.getFailedAttempts());
+    }
+
+    /**
+     * Testar att många samtidiga felaktiga försök mot samma kort aldrig
+     * räknas förbi gränsen och att inget försök efter blockeringen godkänns.
+     */
+    @Test
+    public void shouldNeverExceedThresholdUnderConcurrentAttempts() throws Exception {
+        int threads = 16;
+        for (int round = 0; round < 200; round++) {
+            // Arrange
+            Card card = new Card("123456789012", "12/25", "1234");
+            CountDownLatch start = new CountDownLatch(1);
+            AtomicInteger accepted = new AtomicInteger();
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int t = 0; t < threads; t++) {
+                boolean correct = t == 0;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int i = 0; i < 10; i++) {
+                            if (card.verifyPin(correct ? "1234" : "0000")) {
+                                accepted.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+
+            // Act
+            start.countDown();
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+            // Assert
+            assertTrue(card.isBlocked(), "150 felaktiga försök måste blockera kortet");
+            assertEquals(BankConstants.MAX_FAILED_ATTEMPTS, card.getFailedAttempts(),
+                    "Räknaren får aldrig passera gränsen");
+            assertFalse(card.verifyPin("1234"));
+            assertTrue(accepted.get() <= 10);
+        }
+    }
+}
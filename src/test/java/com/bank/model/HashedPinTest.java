@@ -0,0 +1,58 @@
+package com.bank.model;
+// Testar hashade PIN-koder
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HashedPinTest {
+
+    /**
+     * Testar att en hashad PIN verifieras, att fel PIN nekas och att den
+     * kodade formen kan läsas tillbaka utan att innehålla PIN-koden.
+     */
+    @Test
+    public void shouldVerifyAndRoundTripEncodedHash() {
+        // Arrange
+        HashedPin hashed = HashedPin.create("1234", 1_000);
+
+        // Act
+        HashedPin parsed = HashedPin.parse(hashed.getEncoded());
+
+        // Assert
+        assertTrue(HashedPin.isHashed(hashed.getEncoded()));
+        assertFalse(hashed.getEncoded().contains("1234"));
+        assertEquals(1_000, parsed.getIterations());
+        assertTrue(parsed.verifyPin("1234"));
+        assertFalse(parsed.verifyPin("1235"));
+        assertFalse(parsed.verifyPin(null));
+    }
+
+    /**
+     * Testar att samma PIN får olika hash tack vare saltet.
+     */
+    @Test
+    public void shouldUseRandomSalt() {
+        assertNotEquals(HashedPin.create("1234", 1_000).getEncoded(), HashedPin.create("1234", 1_000).getEncoded());
+    }
+
+    /**
+     * Testar att ett kort med PIN i klartext markeras för omhashning och att
+     * omhashningen behåller PIN-koden men tar bort klartexten.
+     */
+    @Test
+    public void shouldRehashLegacyPlainPin() {
+        // Arrange
+        Card card = new Card("123456789012", "12/25", "1234");
+        assertTrue(card.needsRehash());
+
+        // Act
+        card.rehashPin("1234");
+
+        // Assert
+        assertTrue(HashedPin.isHashed(card.getPin()));
+        assertFalse(card.needsRehash());
+        assertTrue(card.verifyPin("1234"));
+        assertFalse(card.verifyPin("4321"));
+    }
+}
@@ -87,4 +87,49 @@ public class AccountRepositoryTest {
         assertNotNull(accounts);
         assertTrue(accounts.isEmpty());
     }
-}
\ No newline at end of file
+
+    /**
+     * Testar att kopplingar kan kontrolleras och räknas per konto, och att
+     * samma koppling inte läggs till två gånger.
+     */
+    @Test
+    public void shouldCheckAndCountLinksWithoutDuplicates() {
+        // Arrange
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        repository.saveAccount(new Account("12345", "Lönekonto", 5000.0));
+        repository.saveAccount(new Account("67890", "Sparkonto", 10000.0));
+
+        // Act
+        repository.linkAccountToCard("12345", "123456789012");
+        repository.linkAccountToCard("12345", "098765432109");
+        repository.linkAccountToCard("12345", "123456789012");
+
+        // Assert
+        assertTrue(repository.isAccountLinkedToCard("12345", "123456789012"));
+        assertTrue(repository.isAccountLinkedToCard("12345", "098765432109"));
+        assertFalse(repository.isAccountLinkedToCard("67890", "123456789012"));
+        assertFalse(repository.isAccountLinkedToCard("12345", "111111111111"));
+        assertEquals(2, repository.getNumberOfLinkedCards("12345"));
+        assertEquals(0, repository.getNumberOfLinkedCards("67890"));
+        assertEquals(1, repository.findByCardNumber("123456789012").size());
+    }
+
+    /**
+     * Testar att flera konton kan hämtas i ett anrop och att saknade konton
+     * utelämnas medan ordningen behålls.
+     */
+    @Test
+    public void shouldFindSeveralAccountsInOneCall() {
+        // Arrange
+        accountRepository.saveAccount(new Account("12345", "Lönekonto", 5000.0));
+        accountRepository.saveAccount(new Account("67890", "Sparkonto", 10000.0));
+
+        // Act
+        List<Account> accounts = accountRepository.findByAccountNumbers(List.of("67890", "nonexistent", "12345"));
+
+        // Assert
+        assertEquals(2, accounts.size());
+        assertEquals("67890", accounts.get(0).getAccountNumber());
+        assertEquals("12345", accounts.get(1).getAccountNumber());
+    }
+}
@@ -0,0 +1,131 @@
+package com.bank.repository;
+// Testar att Bloomfiltret avvisar okända kort utan att nå det underliggande repositoryt
+
+import com.bank.model.Card;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.util.BloomFilter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BloomFilterCardRepositoryTest {
+    private CountingCardRepository backing;
+    private BloomFilterCardRepository repository;
+
+    @BeforeEach
+    public void setUp() {
+        backing = new CountingCardRepository();
+        repository = new BloomFilterCardRepository(backing, BloomFilter.create(1_000, 0.01));
+    }
+
+    /**
+     * Testar att sparade kort alltid hittas och att okända kort oftast
+     * avvisas av filtret utan uppslagning i repositoryt.
+     */
+    @Test
+    public void shouldFindSavedCardsAndRejectUnknownWithoutLookup() {
+        // Arrange
+        for (int i = 0; i < 1_000; i++) {
+            repository.saveCard(new Card(String.format("%012d", i), "12/25", "1234"));
+        }
+
+        // Act
+        for (int i = 0; i < 1_000; i++) {
+            assertNotNull(repository.findCardByCardNumber(String.format("%012d", i)));
+        }
+        int lookupsBefore = backing.lookups;
+        for (int i = 1_000; i < 11_000; i++) {
+            assertNull(repository.findCardByCardNumber(String.format("%012d", i)));
+        }
+
+        // Assert - med 1 % felfrekvens ska nästan alla okända kort stoppas
+        int reachedBacking = backing.lookups - lookupsBefore;
+        assertTrue(reachedBacking < 300, "För många okända kort nådde repositoryt: " + reachedBacking);
+        assertEquals(11_000, repository.getLookupCount());
+        assertEquals(10_000 - reachedBacking, repository.getRejectedCount());
+        assertEquals(reachedBacking, repository.getFalsePositiveCount());
+    }
+
+    /**
+     * Testar att autentisering ger INVALID_CARD för okända kort även med filtret.
+     */
+    @Test
+    public void shouldReturnInvalidCardThroughFilter() {
+        // Arrange
+        AuthenticationService authService = new AuthenticationService(repository);
+        authService.registerCard(new Card("123456789012", "12/25", "1234"));
+
+        // Act & Assert
+        assertEquals(AuthenticationResult.SUCCESS, authService.authenticate("123456789012", "1234"));
+        assertEquals(AuthenticationResult.INVALID_CARD, authService.authenticate("999999999999", "1234"));
+    }
+
+    /**
+     * Testar att kort som redan fanns i repositoryt kan registreras i filtret.
+     */
+    @Test
+    public void shouldFindCardsRegisteredAfterTheFact() {
+        // Arrange
+        backing.saveCard(new Card("123456789012", "12/25", "1234"));
+
+        // Act
+        repository.registerExisting(List.of("123456789012"));
+
+        // Assert
+        assertNotNull(repository.findCardByCardNumber("123456789012"));
+    }
+
+    /**
+     * Testar att minnesbudgeten begränsar filtrets storlek.
+     */
+    @Test
+    public void shouldRespectMemoryBudget() {
+        // Act
+        BloomFilter unlimited = BloomFilter.create(1_000_000, 0.001);
+        BloomFilter limited = BloomFilter.create(1_000_000, 0.001, 64 * 1024);
+
+        // Assert
+        assertTrue(unlimited.getSizeInBytes() > 1_000_000);
+        assertTrue(limited.getSizeInBytes() <= 64 * 1024);
+        assertThrows(IllegalArgumentException.class, () -> BloomFilter.create(100, 1.5));
+    }
+
+    /**
+     * Testar att ett element som läggs till igen inte höjer den uppskattade
+     * felfrekvensen, eftersom filtret inte blir fullare.
+     */
+    @Test
+    public void shouldNotCountReaddedValues() {
+        // Arrange
+        BloomFilter filter = BloomFilter.create(1_000, 0.01);
+        filter.add("123456789012");
+        double once = filter.expectedFalsePositiveRate();
+
+        // Act
+        for (int i = 0; i < 100; i++) {
+            filter.add("123456789012");
+        }
+
+        // Assert
+        assertEquals(once, filter.expectedFalsePositiveRate());
+        filter.add("210987654321");
+        assertTrue(filter.expectedFalsePositiveRate() > once);
+    }
+
+    /**
+     * Ett repository som räknar hur många uppslagningar som når det.
+     */
+    private static class CountingCardRepository extends InMemoryCardRepository {
+        int lookups;
+
+        @Override
+        public Card findCardByCardNumber(String cardNumber) {
+            lookups++;
+            return super.findCardByCardNumber(cardNumber);
+        }
+    }
+}
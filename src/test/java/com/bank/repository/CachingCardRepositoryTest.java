@@ -0,0 +1,91 @@
+package com.bank.repository;
+// Testar cachen framför CardRepository: träffar, utkastning och write-through
+
+import com.bank.model.Card;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CachingCardRepositoryTest {
+
+    /**
+     * Testar att upprepade uppslagningar besvaras från cachen.
+     */
+    @Test
+    public void shouldServeRepeatedLookupsFromCache() {
+        // Arrange
+        InMemoryCardRepository backing = new InMemoryCardRepository();
+        backing.saveCard(new Card("123456789012", "12/25", "1234"));
+        CachingCardRepository cache = new CachingCardRepository(backing, 100);
+
+        // Act
+        for (int i = 0; i < 10; i++) {
+            assertNotNull(cache.findCardByCardNumber("123456789012"));
+        }
+        assertNull(cache.findCardByCardNumber("999999999999"));
+
+        // Assert
+        assertEquals(9, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1, cache.size(), "Okända kort ska inte cachas");
+    }
+
+    /**
+     * Testar att cachen aldrig växer över maxstorleken och att ofta använda
+     * kort överlever en genomsökning av många kort som bara läses en gång.
+     */
+    @Test
+    public void shouldStayBoundedAndKeepFrequentlyUsedCards() {
+        // Arrange
+        InMemoryCardRepository backing = new InMemoryCardRepository();
+        for (int i = 0; i < 10_000; i++) {
+            backing.saveCard(new Card(String.format("%012d", i), "12/25", "1234"));
+        }
+        CachingCardRepository cache = new CachingCardRepository(backing, 1_000);
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < 100; i++) {
+                cache.findCardByCardNumber(String.format("%012d", i));
+            }
+        }
+
+        // Act - en genomsökning av kort som bara läses en gång
+        for (int i = 100; i < 10_000; i++) {
+            cache.findCardByCardNumber(String.format("%012d", i));
+        }
+        long hitsBefore = cache.getHitCount();
+        for (int i = 0; i < 100; i++) {
+            cache.findCardByCardNumber(String.format("%012d", i));
+        }
+
+        // Assert
+        assertTrue(cache.size() <= 1_000);
+        assertTrue(cache.getEvictionCount() >= 9_000);
+        assertTrue(cache.getHitCount() - hitsBefore >= 90, "Ofta använda kort ska finnas kvar i cachen");
+    }
+
+    /**
+     * Testar att kortets tillstånd skrivs igenom till det underliggande repositoryt
+     * och att ett ersatt kort syns direkt i cachen.
+     */
+    @Test
+    public void shouldWriteThroughBlockedState() {
+        // Arrange
+        InMemoryCardRepository backing = new InMemoryCardRepository();
+        CachingCardRepository cache = new CachingCardRepository(backing, 10);
+        AuthenticationService authService = new AuthenticationService(cache);
+        authService.registerCard(new Card("123456789012", "12/25", "1234"));
+
+        // Act
+        authService.authenticate("123456789012", "0000");
+        assertEquals(1, backing.findCardByCardNumber("123456789012").getFailedAttempts());
+        Card replaced = new Card("123456789012", "01/30", "1234", true, 3);
+        cache.saveCard(replaced);
+
+        // Assert
+        assertSame(replaced, backing.findCardByCardNumber("123456789012"));
+        assertSame(replaced, cache.findCardByCardNumber("123456789012"));
+        assertEquals(AuthenticationResult.CARD_BLOCKED, authService.authenticate("123456789012", "1234"));
+    }
+}
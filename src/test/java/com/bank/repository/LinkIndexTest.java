@@ -0,0 +1,59 @@
+package com.bank.repository;
+// Testar det kompakta indexet för kopplingar mellan kort och konton
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LinkIndexTest {
+
+    /**
+     * Testar att kopplingar returneras i den ordning de lades till, i båda riktningarna.
+     */
+    @Test
+    public void shouldKeepInsertionOrderInBothDirections() {
+        // Arrange
+        LinkIndex index = new LinkIndex();
+
+        // Act
+        index.add("1001", "123456789012");
+        index.add("1002", "123456789012");
+        index.add("1001", "098765432109");
+
+        // Assert
+        assertEquals(List.of("1001", "1002"), index.accountsOf("123456789012"));
+        assertEquals(List.of("123456789012", "098765432109"), index.cardsOf("1001"));
+        assertEquals(List.of(), index.accountsOf("111111111111"));
+        assertEquals(3, index.size());
+    }
+
+    /**
+     * Testar att indexet växer korrekt med många kort och konton och att
+     * medlemskontroller stämmer efter tillväxten.
+     */
+    @Test
+    public void shouldGrowAndKeepAllLinks() {
+        // Arrange
+        LinkIndex index = new LinkIndex();
+        int cards = 2_000;
+        int accountsPerCard = 5;
+
+        // Act
+        for (int card = 0; card < cards; card++) {
+            for (int i = 0; i < accountsPerCard; i++) {
+                assertTrue(index.add("konto-" + (card + i), "kort-" + card));
+            }
+        }
+
+        // Assert
+        assertEquals(cards * accountsPerCard, index.size());
+        assertFalse(index.add("konto-10", "kort-10"), "Befintlig koppling ska inte läggas till igen");
+        assertTrue(index.contains("konto-1004", "kort-1000"));
+        assertFalse(index.contains("konto-1005", "kort-1000"));
+        assertEquals(accountsPerCard, index.accountsOf("kort-1999").size());
+        assertEquals(accountsPerCard, index.countCardsOf("konto-1000"));
+        assertEquals(1, index.countCardsOf("konto-0"));
+    }
+}
@@ -0,0 +1,348 @@
+package com.bank.repository;
+// Testar att konton och kort överlever omstart via write-ahead-loggen
+
+import com.bank.model.Account;
+import com.bank.model.Card;
+import com.bank.repository.wal.WriteAheadLog;
+import com.bank.service.account.AccountService;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.transaction.TransactionResult;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PersistentRepositoryTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Testar att sparade konton, saldoändringar och kortkopplingar finns kvar
+     * efter att repositoryt stängts och öppnats igen.
+     */
+    @Test
+    public void shouldRestoreAccountsBalancesAndLinksAfterRestart() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("accounts");
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(logFile)) {
+            repository.saveAccount(new Account("12345", "Lönekonto", 5000.0));
+            repository.linkAccountToCard("12345", "123456789012");
+            AccountService service = new AccountService(repository);
+
+            // Act
+            service.withdraw("12345", 1250.5);
+            service.deposit("12345", Map.of(100, 2), true);
+        }
+
+        // Assert
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(logFile)) {
+            Account account = reopened.findByAccountNumber("12345");
+            assertNotNull(account);
+            assertEquals("Lönekonto", account.getAccountName());
+            assertEquals(394_950L, account.getBalanceInOre(), "5000 - 1250,50 + 200 = 3949,50 kr");
+
+            List<Account> linked = reopened.findByCardNumber("123456789012");
+            assertEquals(1, linked.size());
+            assertEquals("12345", linked.get(0).getAccountNumber());
+        }
+    }
+
+    /**
+     * Testar att en överföring loggas som en post och spelas upp med båda
+     * kontonas saldon efter omstart.
+     */
+    @Test
+    public void shouldRestoreTransferAfterRestart() throws IOException {
+        // Arrange
+        Path directory = tempDir.resolve("transfer");
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+            repository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+            repository.saveAccount(new Account("1002", "Sparkonto", 100.0));
+            long appendedBefore = repository.getLog().getAppendedSequence();
+
+            // Act
+            BalanceTransfer transfer = repository.transfer("1001", "1002", 12_550);
+
+            // Assert
+            assertTrue(transfer.isTransferred());
+            assertEquals(appendedBefore + 1, repository.getLog().getAppendedSequence(), "En loggpost per överföring");
+        }
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(directory)) {
+            assertEquals(37_450L, reopened.findByAccountNumber("1001").getBalanceInOre());
+            assertEquals(22_550L, reopened.findByAccountNumber("1002").getBalanceInOre());
+        }
+    }
+
+    /**
+     * Testar att felaktiga PIN-försök och blockering sparas, så att ett
+     * blockerat kort inte blir upplåst av en omstart.
+     */
+    @Test
+    public void shouldRestoreBlockedCardAfterRestart() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("cards");
+        try (PersistentCardRepository repository = new PersistentCardRepository(logFile)) {
+            AuthenticationService authService = new AuthenticationService(repository);
+            authService.registerCard(new Card("123456789012", "12/25", "1234"));
+
+            // Act - tre felaktiga försök blockerar kortet
+            authService.authenticate("123456789012", "0000");
+            authService.authenticate("123456789012", "0000");
+            authService.authenticate("123456789012", "0000");
+        }
+
+        // Assert
+        try (PersistentCardRepository reopened = new PersistentCardRepository(logFile)) {
+            Card card = reopened.findCardByCardNumber("123456789012");
+            assertNotNull(card);
+            assertTrue(card.isBlocked(), "Kortet ska fortfarande vara blockerat");
+            assertEquals(AuthenticationResult.CARD_BLOCKED,
+                    new AuthenticationService(reopened).authenticate("123456789012", "1234"));
+        }
+    }
+
+    /**
+     * Testar att en halvskriven post i slutet av loggen (t.ex. efter strömavbrott)
+     * ignoreras och att tidigare poster läses in korrekt.
+     */
+    @Test
+    public void shouldIgnoreTornRecordAtEndOfLog() throws IOException {
+        // Arrange
+        Path logFile = tempDir.resolve("accounts");
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(logFile)) {
+            repository.saveAccount(new Account("12345", "Lönekonto", 100.0));
+        }
+        Path segment = logFile.resolve("accounts-000001.wal");
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            // En header som utlovar 100 bytes följd av bara tre
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 100, 1, 2, 3, 4, 9, 9, 9}));
+        }
+
+        // Act
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(logFile)) {
+            reopened.saveAccount(new Account("67890", "Sparkonto", 200.0));
+        }
+
+        // Assert
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(logFile)) {
+            assertEquals(100.0, reopened.findByAccountNumber("12345").getBalance());
+            assertEquals(200.0, reopened.findByAccountNumber("67890").getBalance());
+        }
+    }
+
+    /**
+     * Testar att loggen slutar ta emot poster när en misslyckad skrivning inte
+     * kan kapas bort, så att inga senare poster hamnar efter en trasig post,
+     * och att tidigare poster finns kvar efter omstart.
+     */
+    @Test
+    public void shouldRefuseAppendsAfterUnrecoverableWriteFailure() throws IOException {
+        // Arrange
+        Path directory = tempDir.resolve("log");
+        try (WriteAheadLog log = new WriteAheadLog(directory, "test")) {
+            log.append(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+            log.syncAll();
+
+            // Act - en interrupt stänger kanalen mitt i skrivningen, så posten kan inte kapas
+            Thread.currentThread().interrupt();
+            try {
+                assertThrows(IOException.class, () -> log.append(ByteBuffer.wrap(new byte[]{4, 5, 6})));
+            } finally {
+                Thread.interrupted();
+            }
+
+            // Assert
+            assertThrows(IOException.class, () -> log.append(ByteBuffer.wrap(new byte[]{7, 8, 9})));
+        }
+        try (WriteAheadLog reopened = new WriteAheadLog(directory, "test")) {
+            List<byte[]> records = new ArrayList<>();
+            reopened.replay(record -> {
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                records.add(bytes);
+            });
+            assertEquals(1, records.size());
+            assertArrayEquals(new byte[]{1, 2, 3}, records.get(0));
+        }
+    }
+
+    /**
+     * Testar att samtidiga transaktioner delar på fsync (group commit) och
+     * att alla ändringar ändå är beständiga.
+     */
+    @Test
+    public void shouldGroupConcurrentCommitsAndKeepAllChanges() throws Exception {
+        // Arrange
+        Path logFile = tempDir.resolve("accounts");
+        int threads = 8;
+        int depositsPerThread = 50;
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(logFile)) {
+            repository.saveAccount(new Account("12345", "Lönekonto", 0.0));
+            AccountService service = new AccountService(repository);
+            long syncsBefore = repository.getLog().getSyncCount();
+
+            // Act
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            for (int i = 0; i < threads * depositsPerThread; i++) {
+                executor.submit(() -> service.deposit("12345", Map.of(100, 1), true));
+            }
+            executor.shutdown();
+            assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+            // Assert - aldrig fler fsync än transaktioner
+            long syncs = repository.getLog().getSyncCount() - syncsBefore;
+            assertTrue(syncs <= threads * depositsPerThread, "Varje transaktion ska högst kosta en fsync");
+        }
+
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(logFile)) {
+            assertEquals(threads * depositsPerThread * 100.0, reopened.findByAccountNumber("12345").getBalance());
+        }
+    }
+
+    /**
+     * Testar att sync som pågår samtidigt som roll() inte misslyckas för att
+     * det gamla segmentet stängs, och att alla poster finns kvar.
+     */
+    @Test
+    public void shouldSyncConcurrentlyWithRoll() throws Exception {
+        // Arrange
+        Path directory = tempDir.resolve("rolling");
+        int threads = 4;
+        int recordsPerThread = 200;
+        try (WriteAheadLog log = new WriteAheadLog(directory, "test")) {
+            ExecutorService executor = Executors.newFixedThreadPool(threads + 1);
+            List<Future<?>> writers = new ArrayList<>();
+
+            // Act
+            for (int t = 0; t < threads; t++) {
+                writers.add(executor.submit(() -> {
+                    for (int i = 0; i < recordsPerThread; i++) {
+                        log.sync(log.append(ByteBuffer.wrap(new byte[]{1, 2, 3})));
+                    }
+                    return null;
+                }));
+            }
+            Future<?> roller = executor.submit(() -> {
+                while (!writers.stream().allMatch(Future::isDone)) {
+                    log.roll();
+                }
+                return null;
+            });
+
+            // Assert - get() kastar om någon sync eller roll misslyckades
+            for (Future<?> writer : writers) {
+                writer.get(30, TimeUnit.SECONDS);
+            }
+            roller.get(30, TimeUnit.SECONDS);
+            executor.shutdown();
+        }
+        try (WriteAheadLog reopened = new WriteAheadLog(directory, "test")) {
+            int[] records = new int[1];
+            reopened.replay(record -> records[0]++);
+            assertEquals(threads * recordsPerThread, records[0]);
+        }
+    }
+
+    /**
+     * Testar att ett uttag med idempotensnyckel inte görs igen när terminalen
+     * försöker på nytt efter en omstart, varken från loggen eller från en snapshot.
+     */
+    @Test
+    public void shouldRememberIdempotencyKeysAfterRestart() throws IOException {
+        // Arrange
+        Path directory = tempDir.resolve("accounts");
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+            repository.saveAccount(new Account("12345", "Lönekonto", 5000.0));
+            AccountService service = new AccountService(repository);
+            service.withdrawInOre("12345", 100_000, "terminal-1:1");
+            repository.snapshot();
+            service.withdrawInOre("12345", 100_000, "terminal-1:2");
+        }
+
+        // Act
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(directory)) {
+            AccountService service = new AccountService(reopened);
+            TransactionResult fromSnapshot = service.withdrawInOre("12345", 100_000, "terminal-1:1");
+            TransactionResult fromLog = service.withdrawInOre("12345", 100_000, "terminal-1:2");
+
+            // Assert
+            assertEquals(400_000L, fromSnapshot.getNewBalanceInOre());
+            assertEquals(300_000L, fromLog.getNewBalanceInOre());
+            assertEquals(300_000L, reopened.findByAccountNumber("12345").getBalanceInOre());
+        }
+    }
+
+    /**
+     * Testar att en snapshot ersätter äldre loggsegment och att ändringar
+     * gjorda efter snapshoten spelas upp ovanpå den vid omstart.
+     */
+    @Test
+    public void shouldRestoreFromSnapshotAndLogTail() throws IOException {
+        // Arrange
+        Path directory = tempDir.resolve("accounts");
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(directory)) {
+            repository.saveAccount(new Account("12345", "Lönekonto", 1000.0));
+            repository.saveAccount(new Account("67890", "Sparkonto", 500.0));
+            repository.linkAccountToCard("12345", "123456789012");
+            repository.linkAccountToCard("67890", "123456789012");
+
+            // Act
+            assertTrue(repository.snapshot());
+            assertFalse(repository.snapshot(), "Ingen ny snapshot när inget ändrats");
+            new AccountService(repository).withdraw("12345", 300.0);
+            repository.saveAccount(new Account("11111", "Nytt konto", 50.0));
+        }
+
+        // Assert
+        assertFalse(Files.exists(directory.resolve("accounts-000001.wal")), "Gamla segment ska tas bort");
+        assertTrue(Files.exists(directory.resolve("accounts-000002.snap")));
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(directory)) {
+            assertEquals(70_000L, reopened.findByAccountNumber("12345").getBalanceInOre());
+            assertEquals(50_000L, reopened.findByAccountNumber("67890").getBalanceInOre());
+            assertEquals(5_000L, reopened.findByAccountNumber("11111").getBalanceInOre());
+            assertEquals(2, reopened.findByCardNumber("123456789012").size());
+            assertEquals(1, reopened.getNumberOfLinkedCards("12345"));
+        }
+    }
+
+    /**
+     * Testar att kortens säkerhetstillstånd följer med i snapshoten.
+     */
+    @Test
+    public void shouldRestoreCardsFromSnapshot() throws IOException {
+        // Arrange
+        Path directory = tempDir.resolve("cards");
+        try (PersistentCardRepository repository = new PersistentCardRepository(directory)) {
+            AuthenticationService authService = new AuthenticationService(repository);
+            authService.registerCard(new Card("123456789012", "12/25", "1234"));
+            authService.registerCard(new Card("098765432109", "12/25", "4321"));
+            authService.authenticate("098765432109", "0000");
+
+            // Act
+            repository.snapshot();
+        }
+
+        // Assert
+        try (PersistentCardRepository reopened = new PersistentCardRepository(directory)) {
+            assertEquals(1, reopened.findCardByCardNumber("098765432109").getFailedAttempts());
+            assertEquals(AuthenticationResult.SUCCESS,
+                    new AuthenticationService(reopened).authenticate("123456789012", "1234"));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package com.bank.server;
+// Testar att servern kör flera terminalsessioner samtidigt mot delade services
+
+import com.bank.BankSystem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AtmServerTest {
+    private AtmServer server;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new AtmServer(BankSystem.withTestData(), 0, 2, Duration.ofSeconds(10));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    /**
+     * Testar att två terminaler kan vara inloggade samtidigt och att ett
+     * uttag i den ena syns som nytt saldo i den andra.
+     */
+    @Test
+    public void shouldServeConcurrentSessionsWithSharedServices() throws IOException {
+        try (Terminal first = new Terminal(server.getPort());
+             Terminal second = new Terminal(server.getPort())) {
+            // Arrange - båda loggar in med samma kort
+            first.login("123456789012", "1234");
+            second.login("123456789012", "1234");
+
+            // Act - uttag i första terminalen
+            first.send("2", "1", "200", "Y", "N");
+            first.readUntil("Uttag genomfört");
+
+            // Assert - saldot i andra terminalen visar uttaget
+            second.send("3", "1");
+            second.readUntil("Saldo på konto 1001");
+            assertTrue(second.readUntil(" kr").contains("300,00"));
+        }
+    }
+
+    /**
+     * Testar att nya terminaler nekas när gränsen för samtidiga sessioner är nådd.
+     */
+    @Test
+    public void shouldRejectSessionsOverTheLimit() throws IOException {
+        try (Terminal first = new Terminal(server.getPort());
+             Terminal second = new Terminal(server.getPort())) {
+            first.readUntil("kortnummer");
+            second.readUntil("kortnummer");
+
+            // Act
+            try (Terminal third = new Terminal(server.getPort())) {
+                // Assert
+                assertTrue(third.readUntil("Servern är full").contains("Servern är full"));
+            }
+            assertEquals(1, server.getRejectedSessionCount());
+            assertEquals(2, server.getActiveSessionCount());
+        }
+    }
+
+    /**
+     * En enkel terminal som skickar rader och läser serverns svar.
+     */
+    private static class Terminal implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final PrintWriter out;
+
+        Terminal(int port) throws IOException {
+            socket = new Socket(InetAddress.getLoopbackAddress(), port);
+            socket.setSoTimeout(5_000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+        }
+
+        void login(String cardNumber, String pin) throws IOException {
+            readUntil("kortnummer");
+            send(cardNumber);
+            readUntil("PIN-kod");
+            send(pin);
+            readUntil("Välj ett alternativ");
+        }
+
+        void send(String... lines) {
+            for (String line : lines) {
+                out.println(line);
+            }
+        }
+
+        /**
+         * Läser tecken tills texten dykt upp och returnerar allt som lästs.
+         * Prompter avslutas inte med radbrytning, så läsningen sker tecken för tecken.
+         */
+        String readUntil(String text) throws IOException {
+            StringBuilder received = new StringBuilder();
+            while (received.indexOf(text) < 0) {
+                int c = in.read();
+                if (c < 0) {
+                    fail("Anslutningen stängdes innan \"" + text + "\" togs emot: " + received);
+                }
+                received.append((char) c);
+            }
+            return received.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
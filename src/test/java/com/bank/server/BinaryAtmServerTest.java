@@ -0,0 +1,313 @@
+package com.bank.server;
+// Testar det binära protokollet med flera förfrågningar i samma skrivning
+
+import com.bank.BankSystem;
+import com.bank.util.BankConstants;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BinaryAtmServerTest {
+    private BankSystem bankSystem;
+    private BinaryAtmServer server;
+    private SocketChannel channel;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        bankSystem = BankSystem.withTestData();
+        server = new BinaryAtmServer(bankSystem, 0);
+        channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        channel.close();
+        server.close();
+    }
+
+    /**
+     * Testar att förfrågningar som skickas i följd utan att vänta besvaras
+     * i samma ordning.
+     */
+    @Test
+    public void shouldAnswerPipelinedRequestsInOrder() throws IOException {
+        // Arrange - inloggning, kontolista, uttag och saldo i en och samma skrivning
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        int start = begin(requests, 1, BinaryProtocol.AUTHENTICATE);
+        BinaryProtocol.putString(requests, "123456789012");
+        BinaryProtocol.putString(requests, "1234");
+        BinaryProtocol.putString(requests, "terminal-1");
+        end(requests, start);
+        end(requests, begin(requests, 2, BinaryProtocol.LIST_ACCOUNTS));
+        start = begin(requests, 3, BinaryProtocol.WITHDRAW);
+        BinaryProtocol.putString(requests, "1001");
+        requests.putLong(20_000);
+        end(requests, start);
+        start = begin(requests, 4, BinaryProtocol.BALANCE);
+        BinaryProtocol.putString(requests, "1001");
+        end(requests, start);
+
+        // Act
+        send(requests);
+
+        // Assert
+        ByteBuffer auth = readResponse(1, BinaryProtocol.AUTHENTICATE);
+        assertEquals(BinaryProtocol.STATUS_OK, auth.get());
+
+        ByteBuffer list = readResponse(2, BinaryProtocol.LIST_ACCOUNTS);
+        assertEquals(BinaryProtocol.STATUS_OK, list.get());
+        assertEquals(2, list.getShort());
+        assertEquals("1001", BinaryProtocol.getString(list));
+        assertEquals("Lönekonto", BinaryProtocol.getString(list));
+        assertEquals(50_000, list.getLong());
+
+        ByteBuffer withdraw = readResponse(3, BinaryProtocol.WITHDRAW);
+        assertEquals(BinaryProtocol.STATUS_OK, withdraw.get());
+        assertEquals(30_000, withdraw.getLong());
+
+        ByteBuffer balance = readResponse(4, BinaryProtocol.BALANCE);
+        assertEquals(BinaryProtocol.STATUS_OK, balance.get());
+        assertEquals(30_000, balance.getLong());
+    }
+
+    /**
+     * Testar att konton inte kan nås före inloggning eller via ett annat kort.
+     */
+    @Test
+    public void shouldDenyAccountsOfOtherCards() throws IOException {
+        // Arrange
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        int start = begin(requests, 1, BinaryProtocol.BALANCE);
+        BinaryProtocol.putString(requests, "1001");
+        end(requests, start);
+        start = begin(requests, 2, BinaryProtocol.AUTHENTICATE);
+        BinaryProtocol.putString(requests, "123456789012");
+        BinaryProtocol.putString(requests, "1234");
+        BinaryProtocol.putString(requests, "terminal-1");
+        end(requests, start);
+        start = begin(requests, 3, BinaryProtocol.BALANCE);
+        BinaryProtocol.putString(requests, "2001");
+        end(requests, start);
+
+        // Act
+        send(requests);
+
+        // Assert
+        assertEquals(BinaryProtocol.STATUS_NOT_AUTHENTICATED, readResponse(1, BinaryProtocol.BALANCE).get());
+        assertEquals(BinaryProtocol.STATUS_OK, readResponse(2, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_ACCESS_DENIED, readResponse(3, BinaryProtocol.BALANCE).get());
+    }
+
+    /**
+     * Testar att fel i tjänsten och trasiga förfrågningar ger en status
+     * utan att anslutningen stängs.
+     */
+    @Test
+    public void shouldReportErrorsWithoutClosingConnection() throws IOException {
+        // Arrange
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        int start = begin(requests, 1, BinaryProtocol.AUTHENTICATE);
+        BinaryProtocol.putString(requests, "123456789012");
+        BinaryProtocol.putString(requests, "0000");
+        BinaryProtocol.putString(requests, "terminal-1");
+        end(requests, start);
+        start = begin(requests, 2, BinaryProtocol.AUTHENTICATE);
+        requests.putShort((short) 100); // Längre sträng än meddelandet
+        end(requests, start);
+        end(requests, begin(requests, 3, (byte) 99));
+
+        // Act
+        send(requests);
+
+        // Assert
+        assertEquals(BinaryProtocol.STATUS_WRONG_PIN, readResponse(1, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_MALFORMED_REQUEST, readResponse(2, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_UNKNOWN_OPERATION, readResponse(3, (byte) 99).get());
+        assertEquals(3, server.getRequestCount());
+    }
+
+    /**
+     * Testar att en ny inloggning avslutar den förra sessionen och att
+     * sessionen avslutas när terminalen kopplar ner.
+     */
+    @Test
+    public void shouldEndSessionOnReauthenticationAndDisconnect() throws Exception {
+        // Arrange
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        for (int requestId = 1; requestId <= 2; requestId++) {
+            int start = begin(requests, requestId, BinaryProtocol.AUTHENTICATE);
+            BinaryProtocol.putString(requests, "123456789012");
+            BinaryProtocol.putString(requests, "1234");
+            BinaryProtocol.putString(requests, "terminal-1");
+            end(requests, start);
+        }
+        send(requests);
+        assertEquals(BinaryProtocol.STATUS_OK, readResponse(1, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_OK, readResponse(2, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(1, bankSystem.getAuthService().getSessionStore().size(), "Den första sessionen är avslutad");
+
+        // Act
+        channel.close();
+
+        // Assert
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (bankSystem.getAuthService().getSessionStore().size() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertFalse(bankSystem.getAuthService().hasAccessToBankServices("123456789012"));
+    }
+
+    /**
+     * Testar att inloggningsförsök begränsas per registrerad terminal, att
+     * anslutningen inte kan byta terminal-id för att slippa gränsen och att
+     * okända id avvisas, medan andra terminaler inte påverkas.
+     */
+    @Test
+    public void shouldRateLimitPerRegisteredTerminalBoundToConnection() throws IOException {
+        // Arrange - fler okända kortnummer än terminalens burst, följt av ett byte av id
+        int attempts = BankConstants.AUTH_BURST_PER_TERMINAL + 1;
+        ByteBuffer requests = ByteBuffer.allocate(4096);
+        for (int requestId = 1; requestId <= attempts; requestId++) {
+            authenticate(requests, requestId, String.format("9999%08d", requestId), "0000", "terminal-1");
+        }
+        authenticate(requests, 100, "123456789012", "1234", "terminal-2");
+
+        // Act
+        send(requests);
+
+        // Assert
+        for (int requestId = 1; requestId < attempts; requestId++) {
+            assertEquals(BinaryProtocol.STATUS_INVALID_CARD, readResponse(requestId, BinaryProtocol.AUTHENTICATE).get());
+        }
+        assertEquals(BinaryProtocol.STATUS_RATE_LIMITED, readResponse(attempts, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_ACCESS_DENIED, readResponse(100, BinaryProtocol.AUTHENTICATE).get(),
+                "Anslutningen är bunden till terminal-1");
+
+        // En ny anslutning kan inte använda ett oregistrerat id, men väl en annan terminal
+        channel.close();
+        channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort()));
+        requests.clear();
+        authenticate(requests, 1, "123456789012", "1234", "okänd-terminal");
+        authenticate(requests, 2, "123456789012", "1234", "terminal-2");
+        send(requests);
+        assertEquals(BinaryProtocol.STATUS_UNKNOWN_TERMINAL, readResponse(1, BinaryProtocol.AUTHENTICATE).get());
+        assertEquals(BinaryProtocol.STATUS_OK, readResponse(2, BinaryProtocol.AUTHENTICATE).get());
+    }
+
+    /**
+     * Testar att en inloggad anslutning måste logga in igen när kortet
+     * blockerats efter inloggningen.
+     */
+    @Test
+    public void shouldRequireNewLoginAfterCardIsBlocked() throws IOException {
+        // Arrange
+        ByteBuffer requests = ByteBuffer.allocate(1024);
+        int start = begin(requests, 1, BinaryProtocol.AUTHENTICATE);
+        BinaryProtocol.putString(requests, "123456789012");
+        BinaryProtocol.putString(requests, "1234");
+        BinaryProtocol.putString(requests, "terminal-1");
+        end(requests, start);
+        send(requests);
+        assertEquals(BinaryProtocol.STATUS_OK, readResponse(1, BinaryProtocol.AUTHENTICATE).get());
+        for (int attempt = 0; attempt < BankConstants.MAX_FAILED_ATTEMPTS; attempt++) {
+            bankSystem.getAuthService().login("123456789012", "0000", "terminal-2");
+        }
+
+        // Act
+        requests.clear();
+        start = begin(requests, 2, BinaryProtocol.BALANCE);
+        BinaryProtocol.putString(requests, "1001");
+        end(requests, start);
+        send(requests);
+
+        // Assert
+        assertEquals(BinaryProtocol.STATUS_NOT_AUTHENTICATED, readResponse(2, BinaryProtocol.BALANCE).get());
+    }
+
+    /**
+     * Testar att anslutningar över gränsen stängs direkt och att inaktiva
+     * anslutningar stängs efter tidsgränsen.
+     */
+    @Test
+    public void shouldLimitConnectionsAndCloseIdleOnes() throws Exception {
+        try (BinaryAtmServer limited = new BinaryAtmServer(bankSystem, 0, 1, Duration.ofMillis(200));
+             Socket first = new Socket(InetAddress.getLoopbackAddress(), limited.getPort())) {
+            // Arrange
+            first.setSoTimeout(5_000);
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (limited.getOpenConnectionCount() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+
+            // Act
+            try (Socket second = new Socket(InetAddress.getLoopbackAddress(), limited.getPort())) {
+                second.setSoTimeout(5_000);
+
+                // Assert - den andra stängs direkt, den första när den varit inaktiv för länge
+                assertEquals(-1, second.getInputStream().read());
+            }
+            assertEquals(-1, first.getInputStream().read());
+            assertEquals(1, limited.getRejectedConnectionCount());
+            assertEquals(1, limited.getIdleDisconnectCount());
+        }
+    }
+
+    private static void authenticate(ByteBuffer buffer, int requestId, String cardNumber, String pin,
+                                     String terminalId) {
+        int start = begin(buffer, requestId, BinaryProtocol.AUTHENTICATE);
+        BinaryProtocol.putString(buffer, cardNumber);
+        BinaryProtocol.putString(buffer, pin);
+        BinaryProtocol.putString(buffer, terminalId);
+        end(buffer, start);
+    }
+
+    private static int begin(ByteBuffer buffer, int requestId, byte operation) {
+        int start = buffer.position();
+        buffer.putInt(0).putInt(requestId).put(operation);
+        return start;
+    }
+
+    private static void end(ByteBuffer buffer, int start) {
+        buffer.putInt(start, buffer.position() - start - BinaryProtocol.LENGTH_FIELD_SIZE);
+    }
+
+    private void send(ByteBuffer requests) throws IOException {
+        requests.flip();
+        while (requests.hasRemaining()) {
+            channel.write(requests);
+        }
+    }
+
+    /**
+     * Läser nästa svar och kontrollerar dess id och operation.
+     * @return svaret, placerat på statusfältet
+     */
+    private ByteBuffer readResponse(int expectedId, byte expectedOperation) throws IOException {
+        ByteBuffer length = readFully(BinaryProtocol.LENGTH_FIELD_SIZE);
+        ByteBuffer response = readFully(length.getInt());
+        assertEquals(expectedId, response.getInt());
+        assertEquals(expectedOperation, response.get());
+        return response;
+    }
+
+    private ByteBuffer readFully(int size) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new IOException("Servern stängde anslutningen");
+            }
+        }
+        return buffer.flip();
+    }
+}
@@ -0,0 +1,142 @@
+package com.bank.server.http;
+// Testar HTTP-API:t mot en server med testdata
+
+import com.bank.BankSystem;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HttpApiServerTest {
+    private HttpApiServer server;
+    private HttpClient client;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        server = new HttpApiServer(BankSystem.withTestData(), 0);
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        server.close();
+    }
+
+    /**
+     * Testar att ett kontos saldo kan hämtas och att okända konton ger 404.
+     */
+    @Test
+    public void shouldReturnAccountAsJson() throws Exception {
+        // Act
+        HttpResponse<String> found = get("/api/accounts/1001");
+        HttpResponse<String> missing = get("/api/accounts/9999");
+
+        // Assert
+        assertEquals(200, found.statusCode());
+        assertTrue(found.headers().firstValue("Content-Type").orElse("").startsWith("application/json"));
+        assertTrue(found.body().contains("\"accountNumber\":\"1001\""));
+        assertTrue(found.body().contains("\"balanceInOre\":50000"));
+        assertEquals(404, missing.statusCode());
+    }
+
+    /**
+     * Testar att en insättning returnerar nytt saldo, att ogiltiga valörer
+     * ger felkoden från AccountService och att negativa antal avvisas.
+     */
+    @Test
+    public void shouldDepositNotes() throws Exception {
+        // Act
+        HttpResponse<String> deposit = post("/api/accounts/1001/deposits", "500=2&100=1");
+        HttpResponse<String> invalid = post("/api/accounts/1001/deposits", "50=1");
+        HttpResponse<String> negative = post("/api/accounts/1001/deposits", "500=-4");
+
+        // Assert
+        assertEquals(200, deposit.statusCode());
+        assertTrue(deposit.body().contains("\"newBalanceInOre\":160000"));
+        assertEquals(422, invalid.statusCode());
+        assertTrue(invalid.body().contains("\"errorCode\":\"INVALID_AMOUNT\""));
+        assertEquals(400, negative.statusCode());
+        assertTrue(get("/api/accounts/1001").body().contains("\"balanceInOre\":160000"));
+    }
+
+    /**
+     * Testar att ett korts konton bara kan listas med en session för just
+     * det kortet, och inte längre efter utloggning.
+     */
+    @Test
+    public void shouldListCardAccountsOnlyWithTheCardsSession() throws Exception {
+        // Arrange
+        HttpResponse<String> withoutSession = get("/api/cards/123456789012/accounts");
+        HttpResponse<String> wrongPin = post("/api/authenticate", "card=123456789012&pin=0000&terminal=backoffice-1");
+        HttpResponse<String> login = post("/api/authenticate", "card=123456789012&pin=1234&terminal=backoffice-1");
+        String token = sessionTokenOf(login);
+        String otherToken = sessionTokenOf(post("/api/authenticate", "card=098765432109&pin=4321&terminal=backoffice-1"));
+
+        // Act
+        HttpResponse<String> after = get("/api/cards/123456789012/accounts", token);
+        HttpResponse<String> otherCard = get("/api/cards/123456789012/accounts", otherToken);
+        HttpResponse<String> logout = post("/api/logout", "", token);
+        HttpResponse<String> afterLogout = get("/api/cards/123456789012/accounts", token);
+
+        // Assert
+        assertEquals(401, withoutSession.statusCode());
+        assertEquals(400, post("/api/authenticate", "card=123456789012&pin=1234").statusCode(),
+                "Terminalens id krävs");
+        assertEquals(403, post("/api/authenticate", "card=123456789012&pin=1234&terminal=okänd").statusCode(),
+                "Bara registrerade terminaler");
+        assertEquals(401, wrongPin.statusCode());
+        assertTrue(wrongPin.body().contains("\"result\":\"WRONG_PIN\""));
+        assertEquals(200, login.statusCode());
+        assertEquals(200, after.statusCode());
+        assertTrue(after.body().contains("\"accountNumber\":\"1001\""));
+        assertTrue(after.body().contains("\"accountNumber\":\"1002\""));
+        assertFalse(after.body().contains("2001"));
+        assertEquals(403, otherCard.statusCode(), "En session för ett annat kort ger inte åtkomst");
+        assertEquals(200, logout.statusCode());
+        assertEquals(403, afterLogout.statusCode());
+    }
+
+    private static String sessionTokenOf(HttpResponse<String> login) {
+        Matcher matcher = Pattern.compile("\"sessionToken\":\"([^\"]+)\"").matcher(login.body());
+        assertTrue(matcher.find(), login.body());
+        return matcher.group(1);
+    }
+
+    private HttpResponse<String> get(String path) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path)).build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> get(String path, String sessionToken) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .header("Authorization", "Bearer " + sessionToken)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String form) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpResponse<String> post(String path, String form, String sessionToken) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .header("Content-Type", "application/x-www-form-urlencoded")
+                .header("Authorization", "Bearer " + sessionToken)
+                .POST(HttpRequest.BodyPublishers.ofString(form))
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+}
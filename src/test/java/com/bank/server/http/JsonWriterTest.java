@@ -0,0 +1,65 @@
+package com.bank.server.http;
+// Testar att JsonWriter skriver giltig JSON med korrekt escaping
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JsonWriterTest {
+
+    /**
+     * Testar nästlade objekt och arrayer med kommatecken på rätt ställen.
+     */
+    @Test
+    public void shouldWriteNestedStructures() throws IOException {
+        // Arrange
+        StringWriter out = new StringWriter();
+        JsonWriter json = new JsonWriter(out);
+
+        // Act
+        json.beginObject()
+                .name("konton").beginArray()
+                .beginObject().name("nummer").value("1001").name("saldo").value(50000).endObject()
+                .value(true)
+                .value((String) null)
+                .endArray()
+                .name("tom").beginObject().endObject()
+                .endObject();
+        json.close();
+
+        // Assert
+        assertEquals("{\"konton\":[{\"nummer\":\"1001\",\"saldo\":50000},true,null],\"tom\":{}}", out.toString());
+    }
+
+    /**
+     * Testar att citattecken, backslash och kontrolltecken escapas.
+     */
+    @Test
+    public void shouldEscapeStrings() throws IOException {
+        // Arrange
+        StringWriter out = new StringWriter();
+
+        // Act
+        new JsonWriter(out).value("Lön \"A\"\\\n\u0001");
+
+        // Assert
+        assertEquals("\"Lön \\\"A\\\"\\\\\\n\\u0001\"", out.toString());
+    }
+
+    /**
+     * Testar att felaktig nästling upptäcks.
+     */
+    @Test
+    public void shouldRejectMismatchedNesting() throws IOException {
+        // Arrange
+        JsonWriter json = new JsonWriter(new StringWriter());
+        json.beginObject();
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, json::endArray);
+        assertThrows(IllegalStateException.class, () -> json.value(1));
+    }
+}
@@ -0,0 +1,135 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.repository.BalanceUpdate;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.transaction.BatchOperation;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för batchmetoden applyBatch i AccountService.
+ */
+class AccountServiceBatchTest {
+
+    private CountingRepository accountRepository;
+    private AccountService accountService;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = new CountingRepository();
+        accountService = new AccountService(accountRepository);
+
+        // Två testkonton med 1000 kr respektive 0 kr
+        accountRepository.saveAccount(new Account("1234", "Testkonto", 1000.0));
+        accountRepository.saveAccount(new Account("5678", "Lönekonto", 0.0));
+    }
+
+    /**
+     * Testar att varje konto uppdateras en gång och att resultaten kommer i
+     * batchens ordning med saldot efter respektive operation.
+     */
+    @Test
+    void applyBatch_shouldUpdateEachAccountOnce() {
+        // Act
+        List<TransactionResult> results = accountService.applyBatch(List.of(
+                BatchOperation.withdrawal("1234", 20_000),
+                BatchOperation.deposit("5678", 2_500_000),
+                BatchOperation.depositNotes("1234", Map.of(500, 1)),
+                BatchOperation.withdrawal("5678", 500_000)));
+
+        // Assert
+        assertEquals(4, results.size());
+        assertEquals(80_000L, results.get(0).getNewBalanceInOre());
+        assertEquals(2_500_000L, results.get(1).getNewBalanceInOre());
+        assertEquals(130_000L, results.get(2).getNewBalanceInOre());
+        assertEquals(2_000_000L, results.get(3).getNewBalanceInOre());
+        assertEquals(130_000L, accountRepository.findByAccountNumber("1234").getBalanceInOre());
+        assertEquals(2_000_000L, accountRepository.findByAccountNumber("5678").getBalanceInOre());
+        assertEquals(2, accountRepository.updates.get(), "En uppdatering per konto");
+    }
+
+    /**
+     * Testar att ett uttag som inte täcks nekas utan att övriga operationer
+     * på samma konto påverkas.
+     */
+    @Test
+    void applyBatch_shouldReportInsufficientFundsPerOperation() {
+        // Act
+        List<TransactionResult> results = accountService.applyBatch(List.of(
+                BatchOperation.withdrawal("1234", 80_000),
+                BatchOperation.withdrawal("1234", 50_000),
+                BatchOperation.withdrawal("1234", 20_000)));
+
+        // Assert
+        assertTrue(results.get(0).isSuccess());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, results.get(1).getErrorCode());
+        assertTrue(results.get(2).isSuccess());
+        assertEquals(0L, results.get(2).getNewBalanceInOre());
+        assertEquals(0L, accountRepository.findByAccountNumber("1234").getBalanceInOre());
+    }
+
+    /**
+     * Testar att ogiltiga belopp och okända konton ger fel för just de
+     * operationerna.
+     */
+    @Test
+    void applyBatch_shouldReportInvalidOperationsIndividually() {
+        // Act
+        List<TransactionResult> results = accountService.applyBatch(List.of(
+                BatchOperation.withdrawal("1234", 0),
+                BatchOperation.depositNotes("1234", Map.of(50, 1)),
+                BatchOperation.withdrawal("9999", 100),
+                BatchOperation.deposit("1234", 100)));
+
+        // Assert
+        assertEquals(ErrorCode.INVALID_AMOUNT, results.get(0).getErrorCode());
+        assertEquals(ErrorCode.INVALID_AMOUNT, results.get(1).getErrorCode());
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, results.get(2).getErrorCode());
+        assertEquals(100_100L, results.get(3).getNewBalanceInOre());
+    }
+
+    /**
+     * Testar att inget skrivs när ingen operation på kontot kan genomföras.
+     */
+    @Test
+    void applyBatch_shouldNotWriteWhenNothingChanges() {
+        // Act
+        List<TransactionResult> results = accountService.applyBatch(List.of(
+                BatchOperation.withdrawal("5678", 100)));
+
+        // Assert
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, results.get(0).getErrorCode());
+        assertEquals(0, accountRepository.writes.get());
+    }
+
+    /**
+     * Räknar saldouppdateringar och faktiska skrivningar.
+     */
+    private static class CountingRepository extends InMemoryAccountRepository {
+        final AtomicInteger updates = new AtomicInteger();
+        final AtomicInteger writes = new AtomicInteger();
+
+        @Override
+        public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition, LongUnaryOperator newBalance) {
+            updates.incrementAndGet();
+            BalanceUpdate update = super.updateBalanceIf(accountNumber, condition, newBalance);
+            if (update.isUpdated()) {
+                writes.incrementAndGet();
+            }
+            return update;
+        }
+    }
+}
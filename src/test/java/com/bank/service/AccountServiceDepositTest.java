@@ -50,6 +50,19 @@ class AccountServiceDepositTest {
         assertEquals(1400.0, updatedAccount.getBalance(), "Saldot bör ha uppdaterats med 400 kr");
     }
 
+    @Test
+    void testDepositRejectsNonPositiveNoteCount() {
+        // Ett negativt antal får inte dra pengar från kontot
+        TransactionResult negative = accountService.deposit("1234", Map.of(500, 2, 100, -15), true);
+        TransactionResult zero = accountService.deposit("1234", Map.of(500, 0), true);
+
+        // Assert
+        assertFalse(negative.isSuccess(), "Negative note count should be rejected");
+        assertEquals(ErrorCode.INVALID_AMOUNT, negative.getErrorCode());
+        assertFalse(zero.isSuccess(), "Zero note count should be rejected");
+        assertEquals(1000.0, accountService.getAccount("1234").getBalance(), "Saldot bör vara oförändrat");
+    }
+
     @Test
     void testDepositNotConfirmed() {
         // Simulerar en insättning som INTE bekräftas
@@ -110,8 +123,8 @@ class AccountServiceDepositTest {
 
         // Assert
         assertTrue(result.isSuccess(), "Empty deposit should succeed technically");
-        assertTrue(result.getNewBalance().isPresent(), "New balance should be available");
-        assertEquals(1000.0, result.getNewBalance().get(), "Balance should be unchanged for 0 kr deposit");
+        assertTrue(result.hasNewBalance(), "New balance should be available");
+        assertEquals(100_000L, result.getNewBalanceInOre(), "Balance should be unchanged for 0 kr deposit");
 
         // Verifiera att saldot är oförändrat
         Account accountAfter = accountService.getAccount("1234");
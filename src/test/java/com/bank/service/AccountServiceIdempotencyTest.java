@@ -0,0 +1,211 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.transaction.IdempotencyCache;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för uttag och insättningar med idempotensnycklar i AccountService.
+ */
+class AccountServiceIdempotencyTest {
+
+    private InMemoryAccountRepository accountRepository;
+    private AccountService accountService;
+    private AtomicLong now;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = new InMemoryAccountRepository();
+        now = new AtomicLong(0);
+        accountService = new AccountService(accountRepository,
+                new IdempotencyCache(Duration.ofHours(1), 1000, now::get));
+
+        accountRepository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+    }
+
+    /**
+     * Testar att ett omförsök med samma nyckel inte drar pengar en gång till
+     * utan får det ursprungliga resultatet.
+     */
+    @Test
+    void withdraw_shouldApplyOnlyOnce_whenRetriedWithSameKey() {
+        // Act
+        TransactionResult first = accountService.withdraw("1001", 100.0, "terminal-7:42");
+        TransactionResult retry = accountService.withdraw("1001", 100.0, "terminal-7:42");
+
+        // Assert
+        assertTrue(first.isSuccess());
+        assertSame(first, retry);
+        assertEquals(40_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(1, accountService.getIdempotencyCache().getDuplicateCount());
+    }
+
+    /**
+     * Testar att ett misslyckat uttag också returneras som det var, även om
+     * saldot hunnit räcka till vid omförsöket.
+     */
+    @Test
+    void withdraw_shouldReturnOriginalFailure_whenRetried() {
+        // Arrange
+        TransactionResult first = accountService.withdraw("1001", 600.0, "terminal-7:43");
+        accountService.deposit("1001", Map.of(500, 1), true);
+
+        // Act
+        TransactionResult retry = accountService.withdraw("1001", 600.0, "terminal-7:43");
+
+        // Assert
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, first.getErrorCode());
+        assertSame(first, retry);
+        assertEquals(100_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Testar att olika nycklar och anrop utan nyckel utförs var för sig.
+     */
+    @Test
+    void deposit_shouldApplyEachDistinctKey() {
+        // Act
+        accountService.deposit("1001", Map.of(100, 1), true, "a");
+        accountService.deposit("1001", Map.of(100, 1), true, "a");
+        accountService.deposit("1001", Map.of(100, 1), true, "b");
+        accountService.deposit("1001", Map.of(100, 1), true, null);
+
+        // Assert
+        assertEquals(80_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Testar att nyckeln glöms när den gått ut, så att ett nytt uttag med
+     * samma nyckel utförs.
+     */
+    @Test
+    void withdraw_shouldApplyAgain_whenKeyHasExpired() {
+        // Arrange
+        accountService.withdrawInOre("1001", 10_000, "k");
+
+        // Act
+        now.set(Duration.ofHours(3).toMillis());
+        TransactionResult later = accountService.withdrawInOre("1001", 10_000, "k");
+
+        // Assert
+        assertEquals(30_000L, later.getNewBalanceInOre());
+    }
+
+    /**
+     * Testar att en full tabell avvisar nya nycklar i stället för att glömma
+     * gamla, så att ett omförsök med en gammal nyckel inte dras en gång till.
+     */
+    @Test
+    void withdraw_shouldRejectNewKeys_whenCacheIsFull() {
+        // Arrange
+        accountService = new AccountService(accountRepository,
+                new IdempotencyCache(Duration.ofHours(1), 4, now::get));
+        accountService.withdrawInOre("1001", 1_000, "k1");
+        accountService.withdrawInOre("1001", 1_000, "k2");
+
+        // Act
+        TransactionResult rejected = accountService.withdrawInOre("1001", 1_000, "k3");
+        TransactionResult retry = accountService.withdrawInOre("1001", 1_000, "k1");
+
+        // Assert
+        assertEquals(ErrorCode.SERVICE_BUSY, rejected.getErrorCode());
+        assertTrue(retry.isSuccess());
+        assertEquals(48_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Testar att en full nyckeltabell i repositoryt ger SERVICE_BUSY utan att
+     * saldot ändras, i stället för att nycklar glöms.
+     */
+    @Test
+    void withdrawAndDeposit_shouldReportServiceBusy_whenRepositoryKeysAreFull() {
+        // Arrange - ett repository vars nyckeltabell är full, som PersistentAccountRepository
+        InMemoryAccountRepository fullRepository = new InMemoryAccountRepository() {
+            @Override
+            protected void onBalanceChanged(Account updatedAccount, String operationKey) {
+                if (operationKey != null) {
+                    throw new IllegalStateException("Map is full until the current generation expires");
+                }
+            }
+        };
+        fullRepository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+        accountService = new AccountService(fullRepository,
+                new IdempotencyCache(Duration.ofHours(1), 1000, now::get));
+
+        // Act
+        TransactionResult withdrawal = accountService.withdrawInOre("1001", 1_000, "k1");
+        TransactionResult deposit = accountService.deposit("1001", Map.of(100, 1), true, "k2");
+
+        // Assert
+        assertEquals(ErrorCode.SERVICE_BUSY, withdrawal.getErrorCode());
+        assertEquals(ErrorCode.SERVICE_BUSY, deposit.getErrorCode());
+        assertEquals(50_000L, fullRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Testar att en tom eller för lång nyckel avvisas utan att saldot ändras.
+     */
+    @Test
+    void withdraw_shouldRejectInvalidKey() {
+        // Act
+        TransactionResult blank = accountService.withdrawInOre("1001", 100, " ");
+        TransactionResult tooLong = accountService.withdrawInOre("1001", 100, "x".repeat(65));
+
+        // Assert
+        assertEquals(ErrorCode.VALIDATION_ERROR, blank.getErrorCode());
+        assertEquals(ErrorCode.VALIDATION_ERROR, tooLong.getErrorCode());
+        assertEquals(50_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Stresstest: många trådar skickar samma uttag samtidigt, som när en
+     * terminal försöker igen medan första försöket fortfarande pågår.
+     * Uttaget får bara göras en gång och alla får samma resultat.
+     */
+    @Test
+    void withdraw_shouldApplyOnce_whenDuplicatesArriveConcurrently() throws Exception {
+        // Arrange
+        int threads = 16;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<TransactionResult>> results = new ArrayList<>();
+
+        // Act
+        try {
+            for (int i = 0; i < threads; i++) {
+                results.add(executor.submit(() -> {
+                    start.await();
+                    return accountService.withdrawInOre("1001", 5_000, "same-key");
+                }));
+            }
+            start.countDown();
+
+            // Assert
+            TransactionResult first = results.get(0).get(10, TimeUnit.SECONDS);
+            for (Future<TransactionResult> result : results) {
+                assertSame(first, result.get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(45_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+}
@@ -0,0 +1,226 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.ledger.Ledger;
+import com.bank.service.ledger.LedgerEvent;
+import com.bank.service.transaction.BatchOperation;
+import com.bank.service.transaction.IdempotencyCache;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för huvudboken som AccountService skriver saldoändringar till.
+ */
+class AccountServiceLedgerTest {
+
+    private InMemoryAccountRepository accountRepository;
+    private Ledger ledger;
+    private AccountService accountService;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = new InMemoryAccountRepository();
+        ledger = new Ledger(4);
+        accountService = new AccountService(accountRepository, new IdempotencyCache(), ledger);
+
+        accountRepository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+        accountRepository.saveAccount(new Account("1002", "Sparkonto", 1200.0));
+    }
+
+    /**
+     * Testar att varje saldoändring blir en händelse med typ, belopp och
+     * saldo efteråt, och att misslyckade operationer inte blir händelser.
+     */
+    @Test
+    void shouldRecordEveryBalanceChange() {
+        // Act
+        accountService.deposit("1001", Map.of(500, 1, 100, 2), true);
+        accountService.withdraw("1001", 100.0);
+        accountService.withdraw("1001", 10_000.0);
+        accountService.transfer("1001", "1002", 50.0);
+        accountService.updatedBalance("1002", 2000.0);
+
+        // Assert
+        List<LedgerEvent> history = accountService.getLedger().getHistory("1001");
+        assertEquals(3, history.size());
+        assertEquals(LedgerEvent.Type.DEPOSIT, history.get(0).getType());
+        assertEquals(Map.of(500, 1, 100, 2), history.get(0).getNotes());
+        assertEquals(120_000L, history.get(0).getBalanceAfterInOre());
+        assertEquals(-10_000L, history.get(1).getAmountInOre());
+        assertEquals(LedgerEvent.Type.TRANSFER, history.get(2).getType());
+        assertEquals("1002", history.get(2).getCounterpartAccountNumber());
+
+        List<LedgerEvent> savings = ledger.getHistory("1002");
+        assertEquals(LedgerEvent.Type.ADJUSTMENT, savings.get(1).getType());
+        assertEquals(75_000L, savings.get(1).getAmountInOre(), "1250 kr -> 2000 kr");
+        assertEquals(5, ledger.size());
+    }
+
+    /**
+     * Testar att en insättning kan återföras en gång och att återföringen
+     * hänvisar till den ursprungliga händelsen.
+     */
+    @Test
+    void reverse_shouldUndoDepositOnce() {
+        // Arrange
+        accountService.deposit("1001", Map.of(200, 1), true);
+        long sequence = ledger.getHistory("1001").get(0).getSequence();
+
+        // Act
+        TransactionResult reversal = accountService.reverse(sequence);
+        TransactionResult again = accountService.reverse(sequence);
+
+        // Assert
+        assertTrue(reversal.isSuccess());
+        assertEquals(50_000L, reversal.getNewBalanceInOre());
+        assertEquals(ErrorCode.VALIDATION_ERROR, again.getErrorCode());
+        LedgerEvent event = ledger.getHistory("1001").get(1);
+        assertEquals(LedgerEvent.Type.REVERSAL, event.getType());
+        assertEquals(sequence, event.getReversedSequence());
+        assertEquals(-20_000L, event.getAmountInOre());
+    }
+
+    /**
+     * Testar att en återförd insättning som redan tagits ut inte kan dra
+     * kontot under noll.
+     */
+    @Test
+    void reverse_shouldFail_whenBalanceNoLongerCoversDeposit() {
+        // Arrange
+        accountService.deposit("1001", Map.of(500, 1), true);
+        accountService.withdraw("1001", 800.0);
+
+        // Act
+        TransactionResult reversal = accountService.reverse(ledger.getHistory("1001").get(0).getSequence());
+
+        // Assert
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, reversal.getErrorCode());
+        assertEquals(20_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+    }
+
+    /**
+     * Testar att saldon vid en tidigare tidpunkt kan återskapas, både för
+     * ett konto och för alla konton från närmaste checkpoint.
+     */
+    @Test
+    void shouldRebuildBalancesAtEarlierPoint() {
+        // Arrange
+        for (int i = 0; i < 10; i++) {
+            accountService.withdrawInOre("1001", 1_000);
+            accountService.applyBatch(List.of(BatchOperation.deposit("1002", 100)));
+        }
+
+        // Act
+        Map<String, Long> atFive = ledger.balancesAt(5);
+        Map<String, Long> atEnd = ledger.balancesAt(ledger.size() - 1);
+
+        // Assert
+        assertEquals(5, ledger.getCheckpointCount(), "20 händelser med intervall 4 ger checkpoints efter händelse 3, 7, 11, 15 och 19");
+        assertEquals(Map.of("1001", 47_000L, "1002", 120_300L), atFive);
+        assertEquals(atFive.get("1001"), ledger.balanceAt("1001", 5).getAsLong());
+        assertEquals(accountRepository.findByAccountNumber("1001").getBalanceInOre(), atEnd.get("1001"));
+        assertEquals(accountRepository.findByAccountNumber("1002").getBalanceInOre(), atEnd.get("1002"));
+        assertTrue(ledger.balanceAt("1001", -1).isEmpty());
+    }
+
+    /**
+     * Testar att checkpoints bara sparar ändrade saldon, att antalet
+     * fullständiga checkpoints är begränsat och att saldon ändå kan
+     * återskapas både före och efter de checkpoints som tagits bort.
+     */
+    @Test
+    void shouldBoundCheckpointsAndStillRebuildBalances() {
+        // Arrange - checkpoint varannan händelse, alla saldon var tredje, högst två behålls
+        Ledger boundedLedger = new Ledger(2, 3, 2);
+        AccountService service = new AccountService(accountRepository, new IdempotencyCache(), boundedLedger);
+        List<Long> expected1001 = new ArrayList<>();
+        List<Long> expected1002 = new ArrayList<>();
+
+        // Act
+        for (int i = 0; i < 20; i++) {
+            service.withdrawInOre("1001", 100);
+            expected1001.add(accountRepository.findByAccountNumber("1001").getBalanceInOre());
+            expected1002.add(accountRepository.findByAccountNumber("1002").getBalanceInOre());
+            service.withdrawInOre("1002", 100);
+            expected1001.add(accountRepository.findByAccountNumber("1001").getBalanceInOre());
+            expected1002.add(accountRepository.findByAccountNumber("1002").getBalanceInOre());
+        }
+
+        // Assert
+        assertEquals(20, boundedLedger.getCheckpointCount());
+        assertEquals(2, boundedLedger.getFullCheckpointCount(), "Bara de två senaste fullständiga behålls");
+        assertEquals(Map.of("1001", 49_900L), boundedLedger.balancesAt(0));
+        for (int s = 1; s < 40; s++) {
+            assertEquals(Map.of("1001", expected1001.get(s), "1002", expected1002.get(s)),
+                    boundedLedger.balancesAt(s), "Saldon efter händelse " + s);
+        }
+    }
+
+    /**
+     * Stresstest: många trådar gör uttag, insättningar och överföringar
+     * samtidigt. Varje kontos historik ska vara en obruten kedja där
+     * föregående saldo plus beloppet ger nästa, och sista saldot ska vara
+     * saldot i repositoryt.
+     */
+    @Test
+    void shouldKeepEachAccountHistoryChainedUnderConcurrency() throws Exception {
+        // Arrange
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+
+        // Act
+        try {
+            for (int t = 0; t < threads; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < 2_000; i++) {
+                        String account = random.nextBoolean() ? "1001" : "1002";
+                        switch (random.nextInt(3)) {
+                            case 0 -> accountService.withdrawInOre(account, 100);
+                            case 1 -> accountService.deposit(account, Map.of(100, 1), true);
+                            default -> accountService.transferInOre(account, account.equals("1001") ? "1002" : "1001", 50);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        for (String account : List.of("1001", "1002")) {
+            List<LedgerEvent> history = ledger.getHistory(account);
+            for (int i = 1; i < history.size(); i++) {
+                assertTrue(history.get(i - 1).getSequence() < history.get(i).getSequence());
+                assertEquals(history.get(i - 1).getBalanceAfterInOre(), history.get(i).getBalanceBeforeInOre());
+            }
+            long current = accountRepository.findByAccountNumber(account).getBalanceInOre();
+            assertEquals(current, history.get(history.size() - 1).getBalanceAfterInOre());
+            assertEquals(current, ledger.balancesAt(ledger.size() - 1).get(account));
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för överföringar mellan konton i AccountService.
+ */
+class AccountServiceTransferTest {
+
+    private InMemoryAccountRepository accountRepository;
+    private AccountService accountService;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = new InMemoryAccountRepository();
+        accountService = new AccountService(accountRepository);
+
+        accountRepository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+        accountRepository.saveAccount(new Account("1002", "Sparkonto", 1200.0));
+    }
+
+    /**
+     * Testar att en överföring drar från ett konto och sätter in på det andra.
+     */
+    @Test
+    void transfer_shouldMoveMoneyBetweenAccounts() {
+        // Act
+        TransactionResult result = accountService.transfer("1001", "1002", 200.0);
+
+        // Assert
+        assertTrue(result.isSuccess());
+        assertEquals(30_000L, result.getNewBalanceInOre());
+        assertEquals(30_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(140_000L, accountRepository.findByAccountNumber("1002").getBalanceInOre());
+    }
+
+    /**
+     * Testar att inget ändras när överföringen inte kan genomföras.
+     */
+    @Test
+    void transfer_shouldLeaveBothAccountsUnchanged_whenItFails() {
+        // Act
+        TransactionResult insufficient = accountService.transfer("1001", "1002", 500.01);
+        TransactionResult missing = accountService.transfer("1001", "9999", 100.0);
+        TransactionResult same = accountService.transfer("1001", "1001", 100.0);
+        TransactionResult negative = accountService.transfer("1001", "1002", -5.0);
+
+        // Assert
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, insufficient.getErrorCode());
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, missing.getErrorCode());
+        assertEquals(ErrorCode.VALIDATION_ERROR, same.getErrorCode());
+        assertEquals(ErrorCode.INVALID_AMOUNT, negative.getErrorCode());
+        assertEquals(50_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(120_000L, accountRepository.findByAccountNumber("1002").getBalanceInOre());
+    }
+
+    /**
+     * Stresstest: många trådar gör slumpmässiga överföringar i båda
+     * riktningarna mellan ett fåtal konton. Ingen överföring får fastna i
+     * ett dödläge, inget saldo får bli negativt och summan av alla saldon
+     * måste vara exakt densamma efteråt.
+     */
+    @Test
+    void transfer_shouldConserveTotalUnderConcurrentOppositeTransfers() throws Exception {
+        // Arrange - åtta konton med 100 kr var
+        int accountCount = 8;
+        for (int i = 0; i < accountCount; i++) {
+            accountRepository.saveAccount(Account.withBalanceInOre("20" + i, "Konto " + i, 10_000));
+        }
+        long totalBefore = totalBalance(accountCount);
+        int threads = 16;
+        int transfersPerThread = 20_000;
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> succeeded = new ArrayList<>();
+
+        // Act
+        for (int t = 0; t < threads; t++) {
+            succeeded.add(executor.submit(() -> {
+                start.await();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int ok = 0;
+                for (int i = 0; i < transfersPerThread; i++) {
+                    int from = random.nextInt(accountCount);
+                    int to = (from + 1 + random.nextInt(accountCount - 1)) % accountCount;
+                    if (accountService.transferInOre("20" + from, "20" + to, 1 + random.nextInt(3_000)).isSuccess()) {
+                        ok++;
+                    }
+                }
+                return ok;
+            }));
+        }
+        start.countDown();
+        executor.shutdown();
+
+        // Assert
+        assertTrue(executor.awaitTermination(60, TimeUnit.SECONDS), "Överföringarna fastnade, möjligt dödläge");
+        int transferred = 0;
+        for (Future<Integer> future : succeeded) {
+            transferred += future.get();
+        }
+        assertTrue(transferred > 0);
+        assertEquals(totalBefore, totalBalance(accountCount));
+        for (int i = 0; i < accountCount; i++) {
+            assertTrue(accountRepository.findByAccountNumber("20" + i).getBalanceInOre() >= 0);
+        }
+    }
+
+    private long totalBalance(int accountCount) {
+        long total = 0;
+        for (int i = 0; i < accountCount; i++) {
+            total += accountRepository.findByAccountNumber("20" + i).getBalanceInOre();
+        }
+        return total;
+    }
+}
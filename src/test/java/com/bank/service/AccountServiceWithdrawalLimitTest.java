@@ -0,0 +1,131 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.model.Money;
+import com.bank.repository.AccountRepository;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.account.WithdrawalLimits;
+import com.bank.service.hold.HoldResult;
+import com.bank.service.hold.HoldService;
+import com.bank.service.transaction.IdempotencyCache;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för uttagsgränser i AccountService.
+ */
+class AccountServiceWithdrawalLimitTest {
+
+    private AtomicLong now;
+    private AccountService accountService;
+
+    @BeforeEach
+    void setUp() {
+        AccountRepository accountRepository = new InMemoryAccountRepository();
+        accountRepository.saveAccount(new Account("1001", "Lönekonto", 50_000.0));
+        accountRepository.saveAccount(new Account("1002", "Sparkonto", 50_000.0));
+        accountRepository.saveAccount(new Account("1003", "Kortkonto", 1000.0));
+
+        // 3000 kr per dygn och 2000 kr per timme
+        now = new AtomicLong(0);
+        WithdrawalLimits limits = new WithdrawalLimits(Money.ofKronor(3000), Money.ofKronor(2000), 1000, now::get);
+        accountService = new AccountService(accountRepository, new IdempotencyCache(), null, limits);
+    }
+
+    /**
+     * Testar att ett uttag över timgränsen nekas utan att saldot ändras.
+     */
+    @Test
+    void withdraw_shouldFail_whenHourlyLimitIsExceeded() {
+        // Act
+        TransactionResult first = accountService.withdraw("1001", 1500.0);
+        TransactionResult second = accountService.withdraw("1001", 600.0);
+
+        // Assert
+        assertTrue(first.isSuccess());
+        assertFalse(second.isSuccess());
+        assertEquals(ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED, second.getErrorCode());
+        assertEquals(48_500.0, accountService.getAccount("1001").getBalance(), 0.001);
+    }
+
+    /**
+     * Testar att dygnsgränsen gäller även när timgränsen har glidit förbi.
+     */
+    @Test
+    void withdraw_shouldFail_whenDailyLimitIsExceeded() {
+        // Act
+        assertTrue(accountService.withdraw("1001", 2000.0).isSuccess());
+        now.set(Duration.ofHours(2).toMillis());
+        TransactionResult result = accountService.withdraw("1001", 1500.0);
+
+        // Assert
+        assertEquals(ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED, result.getErrorCode());
+        assertTrue(accountService.withdraw("1001", 1000.0).isSuccess());
+        assertEquals(Money.ofKronor(3000), accountService.getWithdrawalLimits().getDailyWithdrawnInOre("1001"));
+    }
+
+    /**
+     * Testar att kortets gräns delas mellan alla konton som kortet används mot.
+     */
+    @Test
+    void withdrawWithCard_shouldLimitCardAcrossAccounts() {
+        // Act
+        assertTrue(accountService.withdrawWithCardInOre("1001", "123456789012", Money.ofKronor(1500)).isSuccess());
+        TransactionResult result = accountService.withdrawWithCardInOre("1002", "123456789012", Money.ofKronor(1000));
+
+        // Assert
+        assertEquals(ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED, result.getErrorCode());
+        assertEquals(0, accountService.getWithdrawalLimits().getDailyWithdrawnInOre("1002"),
+                "Kontots räknade belopp tas tillbaka när kortet nekas");
+    }
+
+    /**
+     * Testar att ett uttag som nekas på grund av saldot inte räknas mot gränsen.
+     */
+    @Test
+    void withdraw_shouldNotCountAgainstLimit_whenBalanceIsInsufficient() {
+        // Act
+        TransactionResult result = accountService.withdraw("1003", 1500.0);
+
+        // Assert
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, result.getErrorCode());
+        assertEquals(0, accountService.getWithdrawalLimits().getDailyWithdrawnInOre("1003"));
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, accountService.withdraw("9999", 100.0).getErrorCode());
+        assertEquals(0, accountService.getWithdrawalLimits().getDailyWithdrawnInOre("9999"));
+    }
+
+    /**
+     * Testar att reservationer för kontantuttag räknas mot gränserna och
+     * att en släppt eller utgången reservation tas tillbaka från dem.
+     */
+    @Test
+    void reserve_shouldCountAgainstLimit_untilReleased() {
+        // Arrange
+        HoldService holdService = new HoldService(accountService, Duration.ofSeconds(60), now::get);
+
+        // Act
+        HoldResult committed = holdService.reserveInOre("1001", "123456789012", Money.ofKronor(1000));
+        HoldResult released = holdService.reserveInOre("1001", "123456789012", Money.ofKronor(500));
+        HoldResult expiring = holdService.reserveInOre("1001", "123456789012", Money.ofKronor(500));
+        HoldResult overLimit = holdService.reserveInOre("1002", "123456789012", Money.ofKronor(100));
+        holdService.commit(committed.getHoldId());
+        holdService.release(released.getHoldId());
+        now.addAndGet(Duration.ofSeconds(60).toMillis());
+        holdService.expireHolds();
+
+        // Assert
+        assertTrue(committed.isSuccess() && released.isSuccess() && expiring.isSuccess());
+        assertEquals(ErrorCode.WITHDRAWAL_LIMIT_EXCEEDED, overLimit.getErrorCode(), "Kortets timgräns är nådd");
+        assertEquals(Money.ofKronor(1000), accountService.getWithdrawalLimits().getDailyWithdrawnInOre("1001"),
+                "Bara den bekräftade reservationen ska räknas");
+        assertTrue(accountService.withdrawWithCardInOre("1002", "123456789012", Money.ofKronor(1000)).isSuccess());
+    }
+}
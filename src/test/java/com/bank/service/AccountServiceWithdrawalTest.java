@@ -9,6 +9,12 @@ import com.bank.service.transaction.TransactionResult;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -47,8 +53,8 @@ class AccountServiceWithdrawalTest {
         assertTrue(result.isSuccess(), "Uttaget ska lyckas");
 
         // Kontrollera att det nya saldot returneras
-        assertTrue(result.getNewBalance().isPresent(), "Nytt saldo ska finnas tillgängligt");
-        assertEquals(700.0, result.getNewBalance().get(), "Nytt saldo ska vara 700.0");
+        assertTrue(result.hasNewBalance(), "Nytt saldo ska finnas tillgängligt");
+        assertEquals(70_000L, result.getNewBalanceInOre(), "Nytt saldo ska vara 700,00 kr (70 000 öre)");
 
         // Verifiera att kontot har uppdaterats i repositoryt
         Account updatedAccount = accountService.getAccount("1234");
@@ -120,8 +126,8 @@ class AccountServiceWithdrawalTest {
 
         // Assert
         assertTrue(result.isSuccess(), "Uttag av hela saldot ska lyckas");
-        assertTrue(result.getNewBalance().isPresent(), "Nytt saldo ska finnas tillgängligt");
-        assertEquals(0.0, result.getNewBalance().get(), "Nytt saldo ska vara 0.0");
+        assertTrue(result.hasNewBalance(), "Nytt saldo ska finnas tillgängligt");
+        assertEquals(0L, result.getNewBalanceInOre(), "Nytt saldo ska vara 0 öre");
 
         // Verifiera att kontot har uppdaterats i repositoryt
         Account updatedAccount = accountService.getAccount("1234");
@@ -145,4 +151,37 @@ class AccountServiceWithdrawalTest {
         Account account = accountService.getAccount("1234");
         assertEquals(1000.0, account.getBalance(), "Saldot ska vara oförändrat");
     }
-}
\ No newline at end of file
+
+    /**
+     * Testar att samtidiga uttag från samma konto aldrig övertrasserar kontot
+     * och att inga uppdateringar går förlorade.
+     * 1000 kr och 200 uttag à 10 kr: exakt 100 ska lyckas och saldot bli 0.
+     */
+    @Test
+    void withdraw_shouldNeverOverdraw_whenWithdrawingConcurrently() throws InterruptedException {
+        // Arrange
+        int threads = 8;
+        int withdrawals = 200;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicInteger successful = new AtomicInteger();
+
+        // Act
+        for (int i = 0; i < withdrawals; i++) {
+            executor.submit(() -> {
+                start.await();
+                if (accountService.withdraw("1234", 10.0).isSuccess()) {
+                    successful.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS), "Alla uttag ska hinna köras");
+
+        // Assert
+        assertEquals(100, successful.get(), "Exakt 100 uttag ska rymmas i saldot");
+        assertEquals(0.0, accountService.getAccount("1234").getBalance(), "Saldot ska vara 0.0 och aldrig negativt");
+    }
+}
@@ -0,0 +1,165 @@
+package com.bank.service;
+// Testar de asynkrona fasaderna för uttag, insättning och autentisering
+
+import com.bank.model.Account;
+import com.bank.model.Card;
+import com.bank.repository.BalanceUpdate;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.repository.InMemoryCardRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.async.AsyncAccountService;
+import com.bank.service.async.AsyncAuthenticationService;
+import com.bank.service.async.AsyncExecutor;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.transaction.TransactionResult;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncServiceTest {
+
+    /**
+     * Testar att många samtidiga asynkrona uttag på virtuella trådar ger rätt slutsaldo.
+     */
+    @Test
+    public void shouldRunManyWithdrawalsOnVirtualThreads() throws Exception {
+        // Arrange
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        repository.saveAccount(new Account("12345", "Lönekonto", 1000.0));
+        try (AsyncExecutor executor = AsyncExecutor.virtualThreads(Duration.ofSeconds(10))) {
+            AsyncAccountService service = new AsyncAccountService(new AccountService(repository), executor);
+
+            // Act - 2 000 uttag på 1 kr från ett konto med 1 000 kr
+            List<CompletableFuture<TransactionResult>> results = new ArrayList<>();
+            for (int i = 0; i < 2_000; i++) {
+                results.add(service.withdrawAsync("12345", 1.0));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+
+            // Assert
+            long succeeded = results.stream().filter(result -> result.join().isSuccess()).count();
+            assertEquals(1_000, succeeded);
+            assertEquals(0L, repository.findByAccountNumber("12345").getBalanceInOre());
+        }
+    }
+
+    /**
+     * Testar att insättning och autentisering fungerar via fasaderna.
+     */
+    @Test
+    public void shouldDepositAndAuthenticateAsynchronously() throws Exception {
+        // Arrange
+        InMemoryAccountRepository accounts = new InMemoryAccountRepository();
+        accounts.saveAccount(new Account("12345", "Lönekonto", 0.0));
+        AuthenticationService authService = new AuthenticationService(new InMemoryCardRepository());
+        authService.registerCard(new Card("123456789012", "12/25", "1234"));
+
+        try (AsyncExecutor executor = AsyncExecutor.virtualThreads(null)) {
+            // Act
+            TransactionResult deposit = new AsyncAccountService(new AccountService(accounts), executor)
+                    .depositAsync("12345", Map.of(500, 2), true).get(5, TimeUnit.SECONDS);
+            AuthenticationResult login = new AsyncAuthenticationService(authService, executor)
+                    .authenticateAsync("123456789012", "1234").get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(deposit.isSuccess());
+            assertEquals(100_000L, deposit.getNewBalanceInOre());
+            assertEquals(AuthenticationResult.SUCCESS, login);
+        }
+    }
+
+    /**
+     * Testar att ett anrop som tar för lång tid avslutas med timeout, men att
+     * den pågående uppgiften får köra klart utan interrupt, eftersom en
+     * interrupt mitt i en loggskrivning stänger loggens FileChannel.
+     */
+    @Test
+    public void shouldTimeOutWithoutInterruptingSlowOperation() throws Exception {
+        // Arrange
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicBoolean interrupted = new AtomicBoolean();
+        InMemoryAccountRepository slowRepository = new InMemoryAccountRepository() {
+            @Override
+            public BalanceUpdate updateBalanceIf(String accountNumber, LongPredicate condition,
+                                                 LongUnaryOperator newBalance) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    interrupted.set(true);
+                    Thread.currentThread().interrupt();
+                }
+                try {
+                    return super.updateBalanceIf(accountNumber, condition, newBalance);
+                } finally {
+                    finished.countDown();
+                }
+            }
+        };
+        slowRepository.saveAccount(new Account("12345", "Lönekonto", 1000.0));
+
+        try (AsyncExecutor executor = AsyncExecutor.virtualThreads(Duration.ofMillis(100))) {
+            AsyncAccountService service = new AsyncAccountService(new AccountService(slowRepository), executor);
+
+            // Act
+            CompletableFuture<TransactionResult> result = service.withdrawAsync("12345", 100.0);
+            ExecutionException failure = assertThrows(ExecutionException.class, () -> result.get(5, TimeUnit.SECONDS));
+            release.countDown();
+
+            // Assert
+            assertInstanceOf(TimeoutException.class, failure.getCause());
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            assertTrue(finished.await(5, TimeUnit.SECONDS));
+            assertFalse(interrupted.get(), "En pågående uppgift ska inte avbrytas vid timeout");
+            assertEquals(900.0, slowRepository.findByAccountNumber("12345").getBalance(), 0.001,
+                    "Uttaget ska ha genomförts trots timeout");
+        }
+    }
+
+    /**
+     * Testar att ett anrop som avbryts innan det startat aldrig körs.
+     */
+    @Test
+    public void shouldNotRunOperationCancelledBeforeStart() throws Exception {
+        // Arrange - en enda tråd som hålls upptagen
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicBoolean ran = new AtomicBoolean();
+        try (AsyncExecutor executor = new AsyncExecutor(Executors.newSingleThreadExecutor(), null)) {
+            executor.submit(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return null;
+            });
+
+            // Act
+            CompletableFuture<Boolean> queued = executor.submit(() -> ran.getAndSet(true));
+            assertTrue(queued.cancel(true));
+            release.countDown();
+            executor.submit(() -> true).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(queued.isCancelled());
+            assertFalse(ran.get(), "En avbruten uppgift ska inte köras");
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.bank.service;
+// Testar takten för inloggningsförsök per terminal och kort
+
+import com.bank.model.Card;
+import com.bank.repository.CardRepository;
+import com.bank.repository.InMemoryCardRepository;
+import com.bank.service.auth.AuthenticationRateLimiter;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.auth.SessionStore;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthenticationRateLimitTest {
+
+    private AtomicLong now;
+    private AuthenticationService authService;
+
+    @BeforeEach
+    public void setUp() {
+        CardRepository cardRepository = new InMemoryCardRepository();
+        cardRepository.saveCard(new Card("123456789012", "12/25", "1234"));
+        now = new AtomicLong(1_000_000);
+        // Terminal: 5 i följd, 30 per minut; kort: 2 i följd, 6 per minut
+        AuthenticationRateLimiter rateLimiter = new AuthenticationRateLimiter(30, 5, 6, 2, 1_000, now::get);
+        authService = new AuthenticationService(cardRepository, null,
+                new SessionStore(Duration.ofMinutes(2), Duration.ofMinutes(15), now::get), rateLimiter);
+    }
+
+    /**
+     * Testar att en terminal som prövar många okända kortnummer bromsas,
+     * medan andra terminaler inte påverkas.
+     */
+    @Test
+    public void shouldThrottleTerminalSweepingCardNumbers() {
+        // Act & Assert
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AuthenticationResult.INVALID_CARD,
+                    authService.login(String.format("%012d", i), "0000", "terminal-1").getResult());
+        }
+        assertEquals(AuthenticationResult.RATE_LIMITED,
+                authService.login("000000000099", "0000", "terminal-1").getResult());
+        assertEquals(AuthenticationResult.SUCCESS,
+                authService.login("123456789012", "1234", "terminal-2").getResult());
+
+        now.addAndGet(2_000);
+        assertEquals(AuthenticationResult.INVALID_CARD,
+                authService.login("000000000099", "0000", "terminal-1").getResult(), "En pollett har fyllts på");
+    }
+
+    /**
+     * Testar att inloggning utan terminal-id, som via authenticate, räknas
+     * mot standardterminalen i stället för att slippa terminalgränsen.
+     */
+    @Test
+    public void shouldCountAttemptsWithoutTerminalAgainstDefaultTerminal() {
+        // Act
+        for (int i = 0; i < 5; i++) {
+            assertEquals(AuthenticationResult.INVALID_CARD,
+                    authService.authenticate(String.format("%012d", i), "0000"));
+        }
+        AuthenticationResult limited = authService.login("000000000099", "0000", null).getResult();
+
+        // Assert
+        assertEquals(AuthenticationResult.RATE_LIMITED, limited);
+        assertEquals(AuthenticationResult.SUCCESS,
+                authService.login("123456789012", "1234", "terminal-1").getResult());
+    }
+
+    /**
+     * Testar att okända kortnummer bromsas av den gemensamma gränsen även
+     * när varje försök kommer från en ny terminal.
+     */
+    @Test
+    public void shouldThrottleUnknownCardsAcrossTerminals() {
+        // Arrange - 3 okända kortnummer i följd för alla terminaler tillsammans
+        CardRepository cardRepository = new InMemoryCardRepository();
+        AuthenticationRateLimiter rateLimiter = new AuthenticationRateLimiter(30, 5, 6, 2, 60, 3, 1_000, now::get);
+        AuthenticationService service = new AuthenticationService(cardRepository, null, new SessionStore(), rateLimiter);
+
+        // Act & Assert
+        for (int i = 0; i < 3; i++) {
+            assertEquals(AuthenticationResult.INVALID_CARD,
+                    service.login(String.format("%012d", i), "0000", "terminal-" + i).getResult());
+        }
+        assertEquals(AuthenticationResult.RATE_LIMITED,
+                service.login("000000000099", "0000", "terminal-99").getResult());
+    }
+
+    /**
+     * Testar att försök mot samma kort bromsas även när de kommer från olika
+     * terminaler, innan kortets PIN-räknare påverkas.
+     */
+    @Test
+    public void shouldThrottleAttemptsAgainstOneCard() {
+        // Act
+        assertEquals(AuthenticationResult.WRONG_PIN,
+                authService.login("123456789012", "0000", "terminal-1").getResult());
+        assertEquals(AuthenticationResult.WRONG_PIN,
+                authService.login("123456789012", "0000", "terminal-2").getResult());
+        AuthenticationResult limited = authService.login("123456789012", "1234", "terminal-3").getResult();
+
+        // Assert
+        assertEquals(AuthenticationResult.RATE_LIMITED, limited);
+        now.addAndGet(10_000);
+        assertEquals(AuthenticationResult.SUCCESS, authService.login("123456789012", "1234", "terminal-3").getResult());
+    }
+}
@@ -0,0 +1,89 @@
+package com.bank.service;
+// Testar autentisering mot hashade PIN-koder
+
+import com.bank.model.Card;
+import com.bank.model.HashedPin;
+import com.bank.repository.CardRepository;
+import com.bank.repository.InMemoryCardRepository;
+import com.bank.service.auth.AuthenticationResult;
+import com.bank.service.auth.AuthenticationService;
+import com.bank.service.auth.PinVerificationPool;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AuthenticationServicePinHashTest {
+
+    /**
+     * Testar att ett äldre kort med PIN i klartext hashas om och sparas vid
+     * första lyckade inloggningen, men inte vid fel PIN.
+     */
+    @Test
+    public void shouldRehashLegacyPinOnSuccessfulLogin() {
+        // Arrange
+        CardRepository cardRepository = new InMemoryCardRepository();
+        cardRepository.saveCard(new Card("123456789012", "12/25", "1234"));
+        try (PinVerificationPool pool = new PinVerificationPool(2, 10)) {
+            AuthenticationService authService = new AuthenticationService(cardRepository, pool);
+
+            // Act & Assert
+            assertEquals(AuthenticationResult.WRONG_PIN, authService.authenticate("123456789012", "0000"));
+            assertEquals("1234", cardRepository.findCardByCardNumber("123456789012").getPin());
+
+            assertEquals(AuthenticationResult.SUCCESS, authService.authenticate("123456789012", "1234"));
+            String stored = cardRepository.findCardByCardNumber("123456789012").getPin();
+            assertTrue(HashedPin.isHashed(stored), "PIN-koden ska nu lagras hashad");
+            assertEquals(AuthenticationResult.SUCCESS, authService.authenticate("123456789012", "1234"));
+            assertEquals(stored, cardRepository.findCardByCardNumber("123456789012").getPin(),
+                    "En aktuell hash ska inte hashas om");
+        }
+    }
+
+    /**
+     * Testar att poolen avvisar verifieringar när kön är full i stället för
+     * att köa obegränsat.
+     */
+    @Test
+    public void shouldRejectWhenQueueIsFull() throws Exception {
+        // Arrange
+        CountDownLatch release = new CountDownLatch(1);
+        Card slowCard = new Card("123456789012", "12/25", "1234") {
+            @Override
+            public boolean matchesPin(String enteredPin) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.matchesPin(enteredPin);
+            }
+        };
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try (PinVerificationPool pool = new PinVerificationPool(1, 1)) {
+            // En verifiering körs på poolens enda tråd och en väntar i kön
+            Future<Boolean> running = callers.submit(() -> pool.matches(slowCard, "1234"));
+            Future<Boolean> queued = callers.submit(() -> pool.matches(slowCard, "1234"));
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (pool.getQueueDepth() < 1 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+
+            // Act & Assert
+            assertEquals(1, pool.getQueueDepth());
+            assertThrows(RejectedExecutionException.class, () -> pool.matches(slowCard, "1234"));
+            release.countDown();
+            assertTrue(running.get(5, TimeUnit.SECONDS));
+            assertTrue(queued.get(5, TimeUnit.SECONDS));
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+        }
+    }
+}
@@ -171,13 +171,13 @@ public class ErrorHandlerTest {
         }
 
         @Override
-        public OperationResult hasEnoughBalance(String accountNumber, double amount) {
+        public OperationResult hasEnoughBalanceInOre(String accountNumber, long amountInOre) {
             Account account = getAccount(accountNumber);
             if (account == null) {
                 return OperationResult.failure("Kontot hittades inte", ErrorCode.ACCOUNT_NOT_FOUND);
             }
 
-            if (account.getBalance() >= amount) {
+            if (account.getBalanceInOre() >= amountInOre) {
                 return OperationResult.success("Tillräckligt saldo tillgängligt");
             } else {
                 return OperationResult.failure("Otillräckligt saldo", ErrorCode.INSUFFICIENT_FUNDS);
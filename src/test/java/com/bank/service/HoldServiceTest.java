@@ -0,0 +1,122 @@
+package com.bank.service;
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.hold.HoldResult;
+import com.bank.service.hold.HoldService;
+import com.bank.service.ledger.Ledger;
+import com.bank.service.ledger.LedgerEvent;
+import com.bank.service.transaction.IdempotencyCache;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för kontantuttag i två steg med HoldService.
+ */
+class HoldServiceTest {
+
+    private InMemoryAccountRepository accountRepository;
+    private Ledger ledger;
+    private AtomicLong now;
+    private HoldService holdService;
+
+    @BeforeEach
+    void setUp() {
+        accountRepository = new InMemoryAccountRepository();
+        ledger = new Ledger();
+        now = new AtomicLong(1_000_000);
+        AccountService accountService = new AccountService(accountRepository, new IdempotencyCache(), ledger);
+        holdService = new HoldService(accountService, Duration.ofSeconds(60), now::get);
+
+        accountRepository.saveAccount(new Account("1001", "Lönekonto", 500.0));
+    }
+
+    /**
+     * Testar att en reservation minskar saldot direkt och att en bekräftelse
+     * gör uttaget slutgiltigt.
+     */
+    @Test
+    void reserve_shouldReduceBalanceImmediately_andCommitKeepsIt() {
+        // Act
+        HoldResult hold = holdService.reserveInOre("1001", 20_000);
+        HoldResult second = holdService.reserveInOre("1001", 40_000);
+        TransactionResult commit = holdService.commit(hold.getHoldId());
+
+        // Assert
+        assertTrue(hold.isSuccess());
+        assertEquals(30_000L, hold.getNewBalanceInOre());
+        assertEquals(ErrorCode.INSUFFICIENT_FUNDS, second.getErrorCode(), "Reserverade pengar kan inte reserveras igen");
+        assertTrue(commit.isSuccess());
+        assertEquals(30_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(ErrorCode.HOLD_NOT_FOUND, holdService.release(hold.getHoldId()).getErrorCode());
+        assertEquals(0, holdService.getActiveHoldCount());
+        List<LedgerEvent> history = ledger.getHistory("1001");
+        assertEquals(2, history.size());
+        assertEquals(LedgerEvent.Type.HOLD_COMMIT, history.get(1).getType());
+        assertEquals(hold.getHoldId(), history.get(1).getHoldId());
+        assertEquals(0L, history.get(1).getAmountInOre(), "Bekräftelsen ändrar inte saldot");
+        assertEquals(30_000L, history.get(1).getBalanceAfterInOre());
+    }
+
+    /**
+     * Testar att en släppt reservation för tillbaka beloppet och syns i huvudboken.
+     */
+    @Test
+    void release_shouldReturnAmount() {
+        // Arrange
+        HoldResult hold = holdService.reserveInOre("1001", 20_000);
+
+        // Act
+        TransactionResult release = holdService.release(hold.getHoldId());
+
+        // Assert
+        assertEquals(50_000L, release.getNewBalanceInOre());
+        assertEquals(ErrorCode.HOLD_NOT_FOUND, holdService.commit(hold.getHoldId()).getErrorCode());
+        List<LedgerEvent> history = ledger.getHistory("1001");
+        assertEquals(LedgerEvent.Type.HOLD, history.get(0).getType());
+        assertEquals(LedgerEvent.Type.HOLD_RELEASE, history.get(1).getType());
+        assertEquals(hold.getHoldId(), history.get(1).getHoldId());
+    }
+
+    /**
+     * Testar att en reservation som varken bekräftats eller släppts släpps
+     * automatiskt när tidsgränsen passerats, men inte före.
+     */
+    @Test
+    void expireHolds_shouldReleaseHoldsPastTimeout() {
+        // Arrange
+        HoldResult expiring = holdService.reserveInOre("1001", 10_000);
+        HoldResult committed = holdService.reserveInOre("1001", 10_000);
+        holdService.commit(committed.getHoldId());
+
+        // Act & Assert
+        now.addAndGet(59_000);
+        assertEquals(0, holdService.expireHolds());
+        now.addAndGet(1_000);
+        assertEquals(1, holdService.expireHolds());
+        assertEquals(40_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(ErrorCode.HOLD_NOT_FOUND, holdService.commit(expiring.getHoldId()).getErrorCode());
+        assertEquals(1, holdService.getExpiredCount());
+    }
+
+    /**
+     * Testar att en misslyckad reservation inte ändrar saldot.
+     */
+    @Test
+    void reserve_shouldFail_whenAccountMissingOrAmountInvalid() {
+        // Act & Assert
+        assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, holdService.reserveInOre("9999", 100).getErrorCode());
+        assertEquals(ErrorCode.INVALID_AMOUNT, holdService.reserveInOre("1001", 0).getErrorCode());
+        assertEquals(50_000L, accountRepository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(0, holdService.getActiveHoldCount());
+    }
+}
@@ -0,0 +1,100 @@
+package com.bank.service;
+// Testar sessionslagringen med idle- och maxtid
+
+import com.bank.service.auth.SessionStore;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SessionStoreTest {
+
+    /**
+     * Testar att en session som används hålls vid liv och att en oanvänd
+     * session går ut efter idle-tiden.
+     */
+    @Test
+    public void shouldExpireIdleSessions() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        SessionStore sessions = new SessionStore(Duration.ofMinutes(2), Duration.ofMinutes(15), now::get);
+        String used = sessions.open("123456789012");
+        String idle = sessions.open("098765432109");
+
+        // Act & Assert
+        now.set(Duration.ofSeconds(90).toMillis());
+        assertEquals("123456789012", sessions.touch(used));
+        now.set(Duration.ofSeconds(150).toMillis());
+        assertEquals(1, sessions.expireSessions());
+        assertNull(sessions.touch(idle));
+        assertFalse(sessions.hasActiveSession("098765432109"));
+        assertEquals("123456789012", sessions.touch(used), "Använd session ska leva vidare");
+        assertTrue(sessions.hasActiveSession("123456789012"));
+    }
+
+    /**
+     * Testar att en session går ut vid maxtiden även om den används hela tiden.
+     */
+    @Test
+    public void shouldExpireAtMaxLifetimeEvenWhenUsed() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        SessionStore sessions = new SessionStore(Duration.ofMinutes(2), Duration.ofMinutes(5), now::get);
+        String token = sessions.open("123456789012");
+
+        // Act
+        for (int second = 60; second < 300; second += 60) {
+            now.set(Duration.ofSeconds(second).toMillis());
+            assertNotNull(sessions.touch(token));
+        }
+        now.set(Duration.ofSeconds(301).toMillis());
+
+        // Assert
+        assertNull(sessions.touch(token));
+        assertFalse(sessions.hasActiveSession("123456789012"));
+        assertEquals(0, sessions.size());
+    }
+
+    /**
+     * Testar att kortet har tillgång så länge någon av dess sessioner är
+     * aktiv, och att utloggning bara avslutar den egna sessionen.
+     */
+    @Test
+    public void shouldTrackSessionsPerCard() {
+        // Arrange
+        SessionStore sessions = new SessionStore(Duration.ofMinutes(2), Duration.ofMinutes(15), () -> 0L);
+        String first = sessions.open("123456789012");
+        String second = sessions.open("123456789012");
+
+        // Act & Assert
+        assertNotEquals(first, second);
+        assertTrue(sessions.close(first));
+        assertFalse(sessions.close(first));
+        assertTrue(sessions.hasActiveSession("123456789012"));
+        assertTrue(sessions.close(second));
+        assertFalse(sessions.hasActiveSession("123456789012"));
+        assertNull(sessions.touch("okänd"));
+    }
+
+    /**
+     * Testar att antalet sessioner i minnet hålls nere när många inloggningar
+     * görs över tid utan utloggning.
+     */
+    @Test
+    public void shouldStayBoundedUnderManyLogins() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        SessionStore sessions = new SessionStore(Duration.ofMinutes(2), Duration.ofMinutes(15), now::get);
+
+        // Act: 100 000 inloggningar utspridda över ett dygn
+        for (int i = 0; i < 100_000; i++) {
+            now.set(i * 864L);
+            sessions.open(String.format("%012d", i % 5_000));
+        }
+
+        // Assert: bara de senaste två minuternas inloggningar (plus ett tick) finns kvar
+        assertTrue(sessions.size() <= 150, "Antal sessioner: " + sessions.size());
+    }
+}
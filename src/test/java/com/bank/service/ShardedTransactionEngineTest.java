@@ -0,0 +1,150 @@
+package com.bank.service;
+// Testar att motorn med shard-trådar ger samma resultat som den vanliga vägen
+
+import com.bank.model.Account;
+import com.bank.repository.InMemoryAccountRepository;
+import com.bank.repository.PersistentAccountRepository;
+import com.bank.service.account.AccountService;
+import com.bank.service.engine.ShardedTransactionEngine;
+import com.bank.service.transaction.TransactionResult;
+import com.bank.service.validation.ErrorCode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedTransactionEngineTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Testar att många samtidiga uttag mot samma konto aldrig övertrasserar
+     * och att exakt så många som saldot räcker till godkänns.
+     */
+    @Test
+    public void shouldSerializeWithdrawalsOnHotAccount() throws Exception {
+        // Arrange - 100 kr räcker till 100 uttag om 1 kr
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        repository.saveAccount(new Account("1001", "Lönekonto", 100.0));
+        repository.saveAccount(new Account("1002", "Sparkonto", 100.0));
+        List<CompletableFuture<TransactionResult>> results = new ArrayList<>();
+
+        // Act - 8 trådar lägger 50 uttag var på varje konto
+        try (ShardedTransactionEngine engine = new ShardedTransactionEngine(new AccountService(repository), 2, 16);
+             ExecutorService producers = Executors.newFixedThreadPool(8)) {
+            List<CompletableFuture<List<CompletableFuture<TransactionResult>>>> submitted = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                submitted.add(CompletableFuture.supplyAsync(() -> {
+                    List<CompletableFuture<TransactionResult>> own = new ArrayList<>();
+                    for (int i = 0; i < 50; i++) {
+                        own.add(engine.withdrawInOre("1001", 100));
+                        own.add(engine.withdrawInOre("1002", 100));
+                    }
+                    return own;
+                }, producers));
+            }
+            for (CompletableFuture<List<CompletableFuture<TransactionResult>>> future : submitted) {
+                results.addAll(future.get(10, TimeUnit.SECONDS));
+            }
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+            assertEquals(800, engine.getProcessedCount());
+        }
+
+        // Assert
+        long succeeded = results.stream().filter(f -> f.join().isSuccess()).count();
+        long insufficient = results.stream()
+                .filter(f -> f.join().getErrorCode() == ErrorCode.INSUFFICIENT_FUNDS).count();
+        assertEquals(200, succeeded);
+        assertEquals(600, insufficient);
+        assertEquals(0, repository.findByAccountNumber("1001").getBalanceInOre());
+        assertEquals(0, repository.findByAccountNumber("1002").getBalanceInOre());
+    }
+
+    /**
+     * Testar att insättningar går via AccountService med samma validering.
+     */
+    @Test
+    public void shouldDepositThroughEngine() throws Exception {
+        // Arrange
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        repository.saveAccount(new Account("1001", "Lönekonto", 0.0));
+
+        try (ShardedTransactionEngine engine = new ShardedTransactionEngine(new AccountService(repository), 4, 8)) {
+            // Act
+            TransactionResult deposit = engine.deposit("1001", Map.of(500, 2)).get(5, TimeUnit.SECONDS);
+            TransactionResult invalid = engine.deposit("1001", Map.of(50, 1)).get(5, TimeUnit.SECONDS);
+            TransactionResult missing = engine.withdrawInOre("9999", 100).get(5, TimeUnit.SECONDS);
+
+            // Assert
+            assertTrue(deposit.isSuccess());
+            assertEquals(100_000, deposit.getNewBalanceInOre());
+            assertEquals(ErrorCode.INVALID_AMOUNT, invalid.getErrorCode());
+            assertEquals(ErrorCode.ACCOUNT_NOT_FOUND, missing.getErrorCode());
+        }
+    }
+
+    /**
+     * Testar att en omgång med ett beständigt repository synkas en gång i
+     * stället för en gång per kommando, och att ändringarna finns kvar
+     * efter omstart.
+     */
+    @Test
+    public void shouldSyncEachBatchOnce() throws Exception {
+        // Arrange
+        List<CompletableFuture<TransactionResult>> results = new ArrayList<>();
+        long syncsBefore;
+        long syncs;
+        long batches;
+        try (PersistentAccountRepository repository = new PersistentAccountRepository(tempDir)) {
+            repository.saveAccount(new Account("1001", "Lönekonto", 1000.0));
+            syncsBefore = repository.getLog().getSyncCount();
+
+            // Act
+            try (ShardedTransactionEngine engine = new ShardedTransactionEngine(new AccountService(repository), 1, 256)) {
+                for (int i = 0; i < 200; i++) {
+                    results.add(engine.withdrawInOre("1001", 100));
+                }
+                CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get(10, TimeUnit.SECONDS);
+                batches = engine.getBatchCount();
+            }
+            syncs = repository.getLog().getSyncCount() - syncsBefore;
+        }
+
+        // Assert
+        assertTrue(results.stream().allMatch(f -> f.join().isSuccess()));
+        assertTrue(syncs <= batches, "fsync: " + syncs + ", omgångar: " + batches);
+        try (PersistentAccountRepository reopened = new PersistentAccountRepository(tempDir)) {
+            assertEquals(80_000, reopened.findByAccountNumber("1001").getBalanceInOre());
+        }
+    }
+
+    /**
+     * Testar att kommandon efter stängning avvisas.
+     */
+    @Test
+    public void shouldRejectCommandsAfterClose() {
+        // Arrange
+        InMemoryAccountRepository repository = new InMemoryAccountRepository();
+        ShardedTransactionEngine engine = new ShardedTransactionEngine(new AccountService(repository), 1, 4);
+
+        // Act
+        engine.close();
+        CompletableFuture<TransactionResult> result = engine.withdrawInOre("1001", 100);
+
+        // Assert
+        ExecutionException failure = assertThrows(ExecutionException.class, result::get);
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+    }
+}
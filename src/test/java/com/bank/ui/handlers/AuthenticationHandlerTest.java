@@ -49,6 +49,20 @@ class AuthenticationHandlerTest {
         assertTrue(mockUI.hasMessage("Inloggning lyckades!"));
     }
 
+    @Test
+    @Timeout(value = 5, unit = TimeUnit.SECONDS)
+    void shouldEndSessionOnLogout() {
+        mockUI.setInputs("123456789012", "1234");
+        authHandler.authenticate();
+        assertTrue(authHandler.isSessionActive());
+
+        authHandler.logout();
+
+        assertFalse(authHandler.isSessionActive());
+        assertFalse(authService.hasAccessToBankServices("123456789012"));
+        assertNull(authHandler.getAuthenticatedCardNumber());
+    }
+
     @Test
     @Timeout(value = 5, unit = TimeUnit.SECONDS)
     void shouldRetryAfterInvalidCard() {
@@ -168,7 +168,7 @@ class TransactionHandlerTest {
 
         // Assert - verifierar kvittoinformation
         assertTrue(mockUI.hasMessage("Kvitto: Du satte in 500 kr på konto 1001"));
-        assertTrue(mockUI.hasMessage("Nytt saldo: 1500,00 kr"));
+        assertTrue(mockUI.hasMessage("Nytt saldo: 1 500,00 kr"));
     }
 
     @Test
@@ -0,0 +1,66 @@
+package com.bank.util;
+// Testar validering av kortnummer
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CardValidatorTest {
+
+    private final CardValidator validator = new CardValidator();
+
+    /**
+     * Testar att formatkontrollen ger samma svar som det tidigare reguljära uttrycket.
+     */
+    @Test
+    public void shouldMatchFormatOfRegex() {
+        String[] samples = {"123456789012", "098765432109", "12345678901", "1234567890123", "12345678901a",
+                "", " 23456789012", "١٢٣٤٥٦٧٨٩٠١٢"};
+        for (String sample : samples) {
+            assertEquals(sample.matches(BankConstants.CARD_NUMBER_PATTERN), validator.isValidCardNumber(sample), sample);
+        }
+        assertFalse(validator.isValidCardNumber(null));
+    }
+
+    /**
+     * Testar Luhn-kontrollen för nya kortnummer.
+     */
+    @Test
+    public void shouldCheckLuhnDigitForNewCardNumbers() {
+        assertTrue(validator.isValidNewCardNumber("123456789015"));
+        assertTrue(validator.isValidNewCardNumber("000000000000"));
+        assertFalse(validator.isValidNewCardNumber("123456789012"), "Fel kontrollsiffra");
+        assertFalse(validator.isValidNewCardNumber("123456789051"), "Omkastade siffror upptäcks");
+        assertFalse(validator.isValidNewCardNumber("12345678901x"));
+        assertFalse(validator.isValidNewCardNumber(null));
+    }
+
+    /**
+     * Testar att batchvalideringen av en array och av en buffert ger samma
+     * resultat som validering ett kort i taget.
+     */
+    @Test
+    public void shouldValidateBatchesFromArrayAndBuffer() {
+        // Arrange
+        String[] cardNumbers = {"123456789015", "123456789012", "79927398713x", "000000000000"};
+        ByteBuffer buffer = ByteBuffer.wrap(String.join("", cardNumbers).getBytes(StandardCharsets.US_ASCII));
+        boolean[] fromArray = new boolean[cardNumbers.length];
+        boolean[] fromBuffer = new boolean[cardNumbers.length];
+
+        // Act
+        int validInArray = validator.validateBatch(cardNumbers, fromArray);
+        int validInBuffer = validator.validateBatch(buffer, fromBuffer);
+
+        // Assert
+        assertEquals(2, validInArray);
+        assertEquals(2, validInBuffer);
+        assertArrayEquals(new boolean[]{true, false, false, true}, fromArray);
+        assertArrayEquals(fromArray, fromBuffer);
+        assertEquals(0, buffer.position(), "Bufferns position ska inte ändras");
+        assertThrows(IllegalArgumentException.class,
+                () -> validator.validateBatch(ByteBuffer.wrap(new byte[13]), new boolean[2]));
+    }
+}
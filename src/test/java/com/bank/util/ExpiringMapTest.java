@@ -0,0 +1,127 @@
+package com.bank.util;
+// Testar kartan där nycklar går ut generationsvis
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiringMapTest {
+
+    /**
+     * Testar att en nyckel finns kvar minst en livslängd och är borta efter två.
+     */
+    @Test
+    public void shouldExpireKeysAfterTimeToLive() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        ExpiringMap<String> map = new ExpiringMap<>(Duration.ofMinutes(10), 100, now::get);
+        map.putIfAbsent("a", "första");
+
+        // Act & Assert
+        now.set(Duration.ofMinutes(9).toMillis());
+        assertEquals("första", map.get("a"));
+        now.set(Duration.ofMinutes(15).toMillis());
+        assertEquals("första", map.get("a"), "Nyckeln ligger nu i förra generationen");
+        assertEquals("första", map.putIfAbsent("a", "andra"), "Befintligt värde i förra generationen vinner");
+        now.set(Duration.ofMinutes(25).toMillis());
+        assertNull(map.get("a"));
+    }
+
+    /**
+     * Testar att kartan roterar i förtid när den är full, så att antalet
+     * nycklar aldrig överstiger maxstorleken.
+     */
+    @Test
+    public void shouldStayBoundedWhenFull() {
+        // Arrange
+        ExpiringMap<Integer> map = new ExpiringMap<>(Duration.ofHours(1), 10, () -> 0L);
+
+        // Act
+        for (int i = 0; i < 1000; i++) {
+            assertNull(map.putIfAbsent("key-" + i, i));
+        }
+
+        // Assert
+        assertTrue(map.size() <= 10, "Storlek: " + map.size());
+        assertEquals(Integer.valueOf(999), map.get("key-999"));
+        assertNull(map.get("key-0"));
+    }
+
+    /**
+     * Testar att en karta som inte roterar när den är full avvisar nya
+     * nycklar men behåller de gamla tills livslängden gått ut.
+     */
+    @Test
+    public void shouldRejectNewKeysWhenFullInsteadOfRotating() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        ExpiringMap<Integer> map = new ExpiringMap<>(Duration.ofHours(1), 10, now::get, false);
+        for (int i = 0; i < 5; i++) {
+            map.putIfAbsent("key-" + i, i);
+        }
+
+        // Act & Assert
+        assertThrows(IllegalStateException.class, () -> map.putIfAbsent("key-5", 5));
+        assertEquals(Integer.valueOf(0), map.putIfAbsent("key-0", 99), "Befintliga nycklar svarar fortfarande");
+        assertEquals(Integer.valueOf(0), map.get("key-0"));
+        now.set(Duration.ofHours(1).toMillis());
+        assertNull(map.putIfAbsent("key-5", 5), "Efter rotationen finns plats igen");
+        assertEquals(Integer.valueOf(0), map.get("key-0"), "Gamla nycklar ligger kvar i förra generationen");
+    }
+
+    /**
+     * Stresstest: flera trådar lägger till samma nyckel samtidigt som kartan
+     * roterar. Exakt en tråd ska få lägga till varje nyckel.
+     */
+    @Test
+    public void shouldLetExactlyOneThreadAddEachKeyDuringRotation() throws Exception {
+        // Arrange
+        int threads = 8;
+        int keys = 2_000;
+        long ttl = Duration.ofMinutes(1).toMillis();
+        AtomicLong now = new AtomicLong(0);
+        ExpiringMap<Integer> map = new ExpiringMap<>(Duration.ofMillis(ttl), 1_000_000, now::get);
+        // Klockan flyttas fram en livslängd före varje nyckel, så varje runda roterar kartan
+        CyclicBarrier barrier = new CyclicBarrier(threads, () -> now.addAndGet(ttl));
+        AtomicIntegerArray winners = new AtomicIntegerArray(keys);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+
+        // Act
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int k = 0; k < keys; k++) {
+                        barrier.await();
+                        if (map.putIfAbsent("key-" + k, thread) == null) {
+                            winners.incrementAndGet(k);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        // Assert
+        for (int k = 0; k < keys; k++) {
+            assertEquals(1, winners.get(k), "Antal trådar som lade till key-" + k);
+        }
+    }
+}
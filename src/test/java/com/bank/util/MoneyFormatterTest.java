@@ -0,0 +1,62 @@
+package com.bank.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testklass för MoneyFormatter.
+ * Kontrollerar svensk formatering med tusentalsavgränsare, decimalkomma och valutasymbol.
+ */
+class MoneyFormatterTest {
+
+    /**
+     * Testar att belopp under tusen formateras utan avgränsare.
+     */
+    @Test
+    void shouldFormatSmallAmounts() {
+        assertEquals("0,00 kr", MoneyFormatter.format(0));
+        assertEquals("0,05 kr", MoneyFormatter.format(5));
+        assertEquals("700,00 kr", MoneyFormatter.format(70_000));
+        assertEquals("999,99 kr", MoneyFormatter.format(99_999));
+    }
+
+    /**
+     * Testar att alla tusental får avgränsare, även för belopp över en miljon.
+     */
+    @Test
+    void shouldAddThousandsSeparatorForEveryGroup() {
+        assertEquals("1 000,00 kr", MoneyFormatter.format(100_000));
+        assertEquals("1 234 567,89 kr", MoneyFormatter.format(123_456_789));
+        assertEquals("12 345 678 901,00 kr", MoneyFormatter.format(1_234_567_890_100L));
+    }
+
+    /**
+     * Testar att negativa belopp får minustecken, även det minsta möjliga värdet.
+     */
+    @Test
+    void shouldFormatNegativeAmounts() {
+        assertEquals("-1 500,50 kr", MoneyFormatter.format(-150_050));
+        assertEquals("-92 233 720 368 547 758,08 kr", MoneyFormatter.format(Long.MIN_VALUE));
+    }
+
+    /**
+     * Testar att beloppet läggs till i anroparens buffertar utan att skriva över innehållet.
+     */
+    @Test
+    void shouldAppendToCallerSuppliedBuffers() {
+        StringBuilder line = new StringBuilder("Saldo: ");
+        MoneyFormatter.formatTo(line, 250_000);
+        assertEquals("Saldo: 2 500,00 kr", line.toString());
+
+        StringBuilder amountOnly = MoneyFormatter.formatAmountTo(new StringBuilder(), 250_000);
+        assertEquals("2 500,00", amountOnly.toString());
+
+        CharBuffer buffer = CharBuffer.allocate(32);
+        MoneyFormatter.formatTo(buffer, 123_456_789);
+        buffer.flip();
+        assertEquals("1 234 567,89 kr", buffer.toString());
+    }
+}
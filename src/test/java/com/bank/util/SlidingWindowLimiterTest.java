@@ -0,0 +1,93 @@
+package com.bank.util;
+// Testar begränsaren med glidande tidsfönster
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SlidingWindowLimiterTest {
+
+    /**
+     * Testar att en ökning nekas när den skulle överskrida gränsen och att
+     * gamla fack glider ut ur fönstret.
+     */
+    @Test
+    public void shouldRejectOverLimitAndSlideOldBucketsOut() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(100, now::get,
+                SlidingWindowLimiter.window(Duration.ofHours(1), 6, 100));
+
+        // Act & Assert
+        assertTrue(limiter.tryAcquire("kort", 60) >= 0);
+        now.set(Duration.ofMinutes(30).toMillis());
+        assertTrue(limiter.tryAcquire("kort", 40) >= 0);
+        assertEquals(-1, limiter.tryAcquire("kort", 1), "Gränsen är nådd");
+        assertEquals(100, limiter.used("kort", 0));
+
+        now.set(Duration.ofMinutes(61).toMillis());
+        assertEquals(40, limiter.used("kort", 0), "Första facket har lämnat fönstret");
+        assertTrue(limiter.tryAcquire("kort", 60) >= 0);
+        assertTrue(limiter.tryAcquire("annat kort", 100) >= 0, "Nycklar räknas var för sig");
+    }
+
+    /**
+     * Testar att en full karta nekar nya nycklar i stället för att nollställa
+     * summor som fortfarande gäller.
+     */
+    @Test
+    public void shouldRejectNewKeysWhenFullInsteadOfResettingSums() {
+        // Arrange - plats för två nycklar per generation
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(4, now::get,
+                SlidingWindowLimiter.window(Duration.ofDays(1), 24, 100));
+        assertTrue(limiter.tryAcquire("kort", 100) >= 0);
+
+        // Act
+        assertTrue(limiter.tryAcquire("ny-1", 10) >= 0);
+        long overflow = limiter.tryAcquire("ny-2", 10);
+
+        // Assert
+        assertEquals(-1, overflow, "Nya nycklar nekas när kartan är full");
+        assertEquals(100, limiter.used("kort", 0), "Kortets summa finns kvar");
+        assertEquals(-1, limiter.tryAcquire("kort", 1));
+    }
+
+    /**
+     * Testar att en ökning bara godkänns om den ryms i alla fönster, och att
+     * release tar tillbaka den.
+     */
+    @Test
+    public void shouldRequireAllWindowsAndSupportRelease() {
+        // Arrange
+        AtomicLong now = new AtomicLong(0);
+        SlidingWindowLimiter limiter = new SlidingWindowLimiter(100, now::get,
+                SlidingWindowLimiter.window(Duration.ofDays(1), 24, 150),
+                SlidingWindowLimiter.window(Duration.ofHours(1), 12, 100));
+
+        // Act & Assert
+        long acquiredAt = limiter.tryAcquire("konto", 100);
+        assertTrue(acquiredAt >= 0);
+        assertEquals(-1, limiter.tryAcquire("konto", 10), "Timgränsen är nådd");
+
+        now.set(Duration.ofHours(2).toMillis());
+        assertEquals(-1, limiter.tryAcquire("konto", 60), "Dygnsgränsen är nådd");
+        limiter.release("konto", 100, acquiredAt);
+        assertEquals(0, limiter.used("konto", 0));
+        assertTrue(limiter.tryAcquire("konto", 100) >= 0);
+    }
+
+    /**
+     * Testar att ogiltiga fönster avvisas.
+     */
+    @Test
+    public void shouldRejectInvalidWindow() {
+        assertThrows(IllegalArgumentException.class,
+                () -> SlidingWindowLimiter.window(Duration.ofMillis(100), 7, 10));
+        assertThrows(IllegalArgumentException.class,
+                () -> SlidingWindowLimiter.window(Duration.ofHours(1), 12, -1));
+    }
+}
@@ -0,0 +1,77 @@
+package com.bank.util;
+// Testar det hierarkiska tidshjulet
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimingWheelTest {
+
+    /**
+     * Testar att tidsgränser går ut i rätt tick, även de som ligger på
+     * högre nivåer och måste flyttas ner, och att avbokade inte går ut.
+     */
+    @Test
+    public void shouldExpireAtDeadlineAcrossLevels() {
+        // Arrange
+        TimingWheel<String> wheel = new TimingWheel<>(10, 0);
+        wheel.schedule("nära", 25);
+        wheel.schedule("nivå 1", 10 * 700);
+        wheel.schedule("nivå 2", 10 * 300_000);
+        TimingWheel.Timeout<String> cancelled = wheel.schedule("avbokad", 50);
+        List<String> expired = new ArrayList<>();
+
+        // Act & Assert
+        assertTrue(cancelled.cancel());
+        wheel.advance(20, expired::add);
+        assertEquals(List.of(), expired, "Gränsen avrundas uppåt till tick 3");
+        wheel.advance(30, expired::add);
+        assertEquals(List.of("nära"), expired);
+        wheel.advance(10 * 699, expired::add);
+        assertEquals(List.of("nära"), expired);
+        wheel.advance(10 * 700, expired::add);
+        assertEquals(List.of("nära", "nivå 1"), expired);
+        wheel.advance(10 * 299_999, expired::add);
+        assertEquals(2, expired.size());
+        wheel.advance(10 * 300_000, expired::add);
+        assertEquals(List.of("nära", "nivå 1", "nivå 2"), expired);
+        assertEquals(0, wheel.size());
+    }
+
+    /**
+     * Testar med slumpmässiga tidsgränser och steg att varje gräns går ut
+     * exakt en gång, inte före sin tid och inte mer än ett tick efter.
+     */
+    @Test
+    public void shouldExpireEachTimeoutOnceAndOnTime() {
+        // Arrange
+        Random random = new Random(42);
+        TimingWheel<Long> timed = new TimingWheel<>(1, 0);
+        int count = 20_000;
+        for (int i = 0; i < count; i++) {
+            long deadline = random.nextInt(1_000_000);
+            timed.schedule(deadline, deadline);
+        }
+
+        // Act
+        long[] now = new long[1];
+        int[] fired = new int[1];
+        while (now[0] < 1_000_000) {
+            now[0] += 1 + random.nextInt(5_000);
+            timed.advance(now[0], deadline -> {
+                assertTrue(deadline <= now[0], "För tidigt: " + deadline);
+                fired[0]++;
+            });
+        }
+
+        // Assert
+        assertEquals(count, fired[0]);
+        assertEquals(0, timed.size());
+        timed.schedule(0L, 0);
+        assertEquals(1, timed.advance(now[0], deadline -> { }), "En gräns i det förflutna går ut direkt");
+    }
+}
@@ -0,0 +1,101 @@
+package com.bank.util;
+// Testar token bucket-begränsaren
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TokenBucketLimiterTest {
+
+    /**
+     * Testar att en full hink släpper igenom burst anrop, att den sedan är
+     * tom och att den fylls på i takt med tiden.
+     */
+    @Test
+    public void shouldAllowBurstThenRefillAtRate() {
+        // Arrange: 6 per minut, dvs. en pollett var tionde sekund
+        AtomicLong now = new AtomicLong(1_000_000);
+        TokenBucketLimiter limiter = new TokenBucketLimiter(6, 3, 100, now::get);
+
+        // Act & Assert
+        assertTrue(limiter.tryAcquire("kort"));
+        assertTrue(limiter.tryAcquire("kort"));
+        assertTrue(limiter.tryAcquire("kort"));
+        assertFalse(limiter.tryAcquire("kort"), "Hinken är tom");
+        assertTrue(limiter.tryAcquire("annat kort"), "Nycklar har egna hinkar");
+
+        now.addAndGet(9_000);
+        assertFalse(limiter.tryAcquire("kort"));
+        now.addAndGet(1_000);
+        assertTrue(limiter.tryAcquire("kort"), "En pollett har fyllts på");
+        assertFalse(limiter.tryAcquire("kort"));
+
+        now.addAndGet(60_000);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(limiter.tryAcquire("kort"), "Hinken är full igen");
+        }
+        assertFalse(limiter.tryAcquire("kort"));
+    }
+
+    /**
+     * Testar att en full karta nekar nya nycklar i stället för att glömma
+     * hinkar som fortfarande används.
+     */
+    @Test
+    public void shouldRejectNewKeysWhenFullInsteadOfResettingBuckets() {
+        // Arrange - plats för två nycklar per generation
+        AtomicLong now = new AtomicLong(1_000_000);
+        TokenBucketLimiter limiter = new TokenBucketLimiter(6, 1, 4, now::get);
+        assertTrue(limiter.tryAcquire("kort"));
+
+        // Act
+        assertTrue(limiter.tryAcquire("ny-1"));
+        boolean overflow = limiter.tryAcquire("ny-2");
+
+        // Assert
+        assertFalse(overflow, "Nya nycklar nekas när kartan är full");
+        assertFalse(limiter.tryAcquire("kort"), "Kortets tomma hink finns kvar");
+    }
+
+    /**
+     * Testar att samtidiga anrop mot samma nyckel aldrig släpper igenom fler
+     * än hinkens storlek.
+     */
+    @Test
+    public void shouldNeverExceedBurstUnderConcurrency() throws Exception {
+        // Arrange
+        TokenBucketLimiter limiter = new TokenBucketLimiter(1, 50, 100, () -> 1_000_000L);
+        AtomicInteger allowed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+
+        // Act
+        for (int t = 0; t < 8; t++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < 1_000; i++) {
+                    if (limiter.tryAcquire("terminal")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+        // Assert
+        assertEquals(50, allowed.get());
+    }
+}